@@ -29,10 +29,13 @@ import com.google.api.services.cloudresourcemanager.v3.model.GetPolicyOptions;
 import com.google.api.services.cloudresourcemanager.v3.model.Policy;
 import com.google.api.services.cloudresourcemanager.v3.model.SetIamPolicyRequest;
 import com.google.common.base.Preconditions;
+import com.google.solutions.jitaccess.common.Exceptions;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -81,38 +84,74 @@ public abstract class AbstractIamClient {
   /**
    * Modify an IAM policy using the optimistic concurrency control-mechanism.
    */
-  @SuppressWarnings("fallthrough")
   public void modifyIamPolicy(
     @NotNull String fullResourcePath,
     @NotNull Consumer<Policy> modify,
     @NotNull String requestReason
   ) throws AccessException, IOException {
+    AsyncRequests.await(modifyIamPolicyAsync(fullResourcePath, modify, requestReason));
+  }
+
+  /**
+   * Modify an IAM policy using the optimistic concurrency control-mechanism.
+   */
+  public @NotNull CompletableFuture<Void> modifyIamPolicyAsync(
+    @NotNull String fullResourcePath,
+    @NotNull Consumer<Policy> modify,
+    @NotNull String requestReason
+  ) {
     Preconditions.checkNotNull(fullResourcePath, "fullResourcePath");
     Preconditions.checkNotNull(modify, "modify");
 
-    final var optionsV3 = new GetPolicyOptions().setRequestedPolicyVersion(3);
-
+    AbstractGoogleJsonClient client;
     try {
-      var client = createClient();
+      client = createClient();
+    }
+    catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
 
-      //
-      // IAM policies use optimistic concurrency control, so we might need to perform
-      // multiple attempts to update the policy.
-      //
-      for (int attempt = 0; attempt < MAX_SET_IAM_POLICY_ATTEMPTS; attempt++) {
-        //
-        // Read current version of policy.
-        //
-        // NB. The API might return a v1 policy even if we
-        // request a v3 policy.
-        //
-        var getRequest = new GetIamPolicy(
-          client,
-          fullResourcePath,
-          new GetIamPolicyRequest()
-            .setOptions(optionsV3));
-        var policy = getRequest.execute();
+    return modifyIamPolicyAsync(client, fullResourcePath, modify, requestReason, 0)
+      .exceptionallyCompose(e -> {
+        var cause = Exceptions.unwrap(e);
+        return CompletableFuture.failedFuture(
+          cause instanceof GoogleJsonResponseException apiException
+            ? translateApiException(fullResourcePath, apiException)
+            : cause);
+      });
+  }
 
+  private @NotNull CompletableFuture<Void> modifyIamPolicyAsync(
+    @NotNull AbstractGoogleJsonClient client,
+    @NotNull String fullResourcePath,
+    @NotNull Consumer<Policy> modify,
+    @NotNull String requestReason,
+    int attempt
+  ) {
+    //
+    // IAM policies use optimistic concurrency control, so we might need to perform
+    // multiple attempts to update the policy.
+    //
+    if (attempt >= MAX_SET_IAM_POLICY_ATTEMPTS) {
+      return CompletableFuture.failedFuture(new AlreadyExistsException(
+        "Failed to update IAM bindings due to concurrent modifications"));
+    }
+
+    //
+    // Read current version of policy.
+    //
+    // NB. The API might return a v1 policy even if we
+    // request a v3 policy.
+    //
+    var getRequest = new GetIamPolicy(
+      client,
+      fullResourcePath,
+      new GetIamPolicyRequest()
+        .setOptions(new GetPolicyOptions().setRequestedPolicyVersion(3)));
+
+    return AsyncRequests
+      .executeAsync(getRequest)
+      .thenCompose(policy -> {
         //
         // Make sure we're using v3; older versions don't support conditions.
         //
@@ -123,72 +162,82 @@ public abstract class AbstractIamClient {
         //
         modify.accept(policy);
 
-        try {
-          var request = new SetIamPolicy(
-            client,
-            fullResourcePath,
-            new SetIamPolicyRequest().setPolicy(policy));
-
-          request.getRequestHeaders().set("x-goog-request-reason", requestReason);
-          request.execute();
+        var setRequest = new SetIamPolicy(
+          client,
+          fullResourcePath,
+          new SetIamPolicyRequest().setPolicy(policy));
+        setRequest.getRequestHeaders().set("x-goog-request-reason", requestReason);
 
-          //
-          // Successful update -> quit loop.
-          //
-          return;
-        }
-        catch (GoogleJsonResponseException e) {
-          if (e.getStatusCode() == 412) {
-            //
-            // Concurrent modification - back off and retry.
-            //
-            try {
-              Thread.sleep(200);
+        return AsyncRequests
+          .executeAsync(setRequest)
+          .<Void>thenApply(p -> null)
+          .exceptionallyCompose(e -> {
+            var cause = Exceptions.unwrap(e);
+            if (cause instanceof GoogleJsonResponseException apiException &&
+              apiException.getStatusCode() == 412) {
+              //
+              // Concurrent modification - back off and retry. Use a
+              // jittered backoff so that competing writers don't collide
+              // again on their next attempt.
+              //
+              // NB. Conflicts don't indicate a problem with the backend,
+              // so they don't count against the retry budget.
+              //
+              return CompletableFuture
+                .supplyAsync(
+                  () -> null,
+                  CompletableFuture.delayedExecutor(
+                    RetryPolicy.shared().backoff(attempt + 1).toMillis(),
+                    TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> modifyIamPolicyAsync(
+                  client,
+                  fullResourcePath,
+                  modify,
+                  requestReason,
+                  attempt + 1));
             }
-            catch (InterruptedException ignored) {
+            else {
+              return CompletableFuture.failedFuture(cause);
             }
-          }
-          else {
-            throw (GoogleJsonResponseException) e.fillInStackTrace();
-          }
+          });
+      });
+  }
+
+  @SuppressWarnings("fallthrough")
+  private static @NotNull Exception translateApiException(
+    @NotNull String fullResourcePath,
+    @NotNull GoogleJsonResponseException e
+  ) {
+    switch (e.getStatusCode()) {
+      case 400:
+        //
+        // One possible reason for an INVALID_ARGUMENT error is that we've tried
+        // to grant a role on a resource that cannot be granted on this type of resource.
+        // If that's the case, provide a more descriptive error message.
+        //
+        if (e.getDetails() != null &&
+          e.getDetails().getErrors() != null &&
+          !e.getDetails().getErrors().isEmpty() &&
+          isRoleNotGrantableErrorMessage(e.getDetails().getErrors().get(0).getMessage())) {
+          return new AccessDeniedException(
+            String.format("Modifying IAM policy of '%s' failed because one of the " +
+              "roles isn't compatible with this resource",
+              fullResourcePath));
+        }
+        else {
+          // Fallthrough.
         }
-      }
 
-      throw new AlreadyExistsException(
-        "Failed to update IAM bindings due to concurrent modifications");
-    }
-    catch (GoogleJsonResponseException e) {
-      switch (e.getStatusCode()) {
-        case 400:
-          //
-          // One possible reason for an INVALID_ARGUMENT error is that we've tried
-          // to grant a role on a resource that cannot be granted on this type of resource.
-          // If that's the case, provide a more descriptive error message.
-          //
-          if (e.getDetails() != null &&
-            e.getDetails().getErrors() != null &&
-            !e.getDetails().getErrors().isEmpty() &&
-            isRoleNotGrantableErrorMessage(e.getDetails().getErrors().get(0).getMessage())) {
-            throw new AccessDeniedException(
-              String.format("Modifying IAM policy of '%s' failed because one of the " +
-                "roles isn't compatible with this resource",
-                fullResourcePath));
-          }
-          else {
-            // Fallthrough.
-          }
-
-        case 401:
-          throw new NotAuthenticatedException("Not authenticated", e);
-
-        case 403:
-          throw new AccessDeniedException(String.format(
-            "Access to '%s' is denied", fullResourcePath),
-            e);
-
-        default:
-          throw (GoogleJsonResponseException) e.fillInStackTrace();
-      }
+      case 401:
+        return new NotAuthenticatedException("Not authenticated", e);
+
+      case 403:
+        return new AccessDeniedException(String.format(
+          "Access to '%s' is denied", fullResourcePath),
+          e);
+
+      default:
+        return (GoogleJsonResponseException) e.fillInStackTrace();
     }
   }
 
@@ -52,9 +52,11 @@ public class AssetInventoryClient {
   }
 
   protected @NotNull CloudAsset createClient() throws IOException {
-    return Builders
-      .newBuilder(CloudAsset.Builder::new, this.credentials, this.httpOptions)
-      .build();
+    return Builders.getClient(
+      CloudAsset.class,
+      CloudAsset.Builder::new,
+      this.credentials,
+      this.httpOptions);
   }
 
   /**
@@ -0,0 +1,902 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.api.client.googleapis.json.GoogleJsonErrorContainer;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClientRequest;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.auth.Credentials;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.solutions.jitaccess.common.Exceptions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Helper class for executing API requests without blocking
+ * the calling thread.
+ * <p>
+ * Requests are prepared by the API client library (so that they
+ * carry the same URL, headers, and credentials as synchronous requests),
+ * but are sent using the shared, non-blocking HTTP client.
+ */
+abstract class AsyncRequests {
+  /**
+   * Headers that the JDK HTTP client manages itself and doesn't
+   * let us set.
+   */
+  private static final Set<String> RESTRICTED_HEADERS = Set.of(
+    "connection",
+    "content-length",
+    "expect",
+    "host",
+    "upgrade");
+
+  private static final @NotNull Pattern CONTENT_ID_PATTERN =
+    Pattern.compile("(?i)Content-ID:\\s*<response-(\\d+)>");
+
+  private static final String CRLF = "\r\n";
+
+  /**
+   * Execute a request asynchronously.
+   * <p>
+   * If the API returns an error, the future fails with a
+   * GoogleJsonResponseException, just like the synchronous
+   * execute() method would.
+   */
+  public static <T> @NotNull CompletableFuture<T> executeAsync(
+    @NotNull AbstractGoogleJsonClientRequest<T> request
+  ) {
+    Preconditions.checkNotNull(request, "request");
+
+    try {
+      //
+      // Let the client library build the request. This runs the
+      // request initializer, which adds the authorization header
+      // and applies timeouts.
+      //
+      // NB. If the credential's access token has expired, the initializer
+      // refreshes it synchronously. Access tokens are cached and refreshed
+      // ahead of expiry, so that's rare.
+      //
+      var apiRequest = request.buildHttpRequest();
+
+      var builder = HttpRequest.newBuilder()
+        .uri(URI.create(apiRequest.getUrl().build()));
+
+      forEachHeader(apiRequest.getHeaders(), builder::header);
+
+      var content = apiRequest.getContent();
+      if (content != null) {
+        var buffer = new ByteArrayOutputStream();
+        content.writeTo(buffer);
+
+        if (content.getType() != null) {
+          builder.setHeader("Content-Type", content.getType());
+        }
+
+        builder.method(
+          apiRequest.getRequestMethod(),
+          HttpRequest.BodyPublishers.ofByteArray(buffer.toByteArray()));
+      }
+      else {
+        builder.method(apiRequest.getRequestMethod(), HttpRequest.BodyPublishers.noBody());
+      }
+
+      var timeout = apiRequest.getConnectTimeout() + apiRequest.getReadTimeout();
+      if (timeout > 0) {
+        builder.timeout(Duration.ofMillis(timeout));
+      }
+
+      var response = sendAsync(apiRequest, builder.build(), 1);
+      return propagateCancellation(
+        response.thenApply(r -> {
+          try {
+            return parseResponse(
+              request,
+              r.statusCode(),
+              decodeBody(r),
+              r.uri().toString());
+          }
+          catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        }),
+        response);
+    }
+    catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Execute multiple requests as a single batch request, without
+   * blocking the calling thread.
+   * <p>
+   * The requests must belong to the same API client. Each request
+   * gets its own future, which fails with a GoogleJsonResponseException
+   * if that particular request failed. If the batch request as a whole
+   * fails, all futures fail.
+   */
+  public static <T> @NotNull List<CompletableFuture<T>> executeBatchAsync(
+    @NotNull List<? extends AbstractGoogleJsonClientRequest<T>> requests
+  ) {
+    Preconditions.checkNotNull(requests, "requests");
+    Preconditions.checkArgument(!requests.isEmpty(), "requests must not be empty");
+
+    var results = requests
+      .stream()
+      .map(r -> new CompletableFuture<T>())
+      .toList();
+
+    try {
+      var client = requests.get(0).getAbstractGoogleClient();
+      var boundary = "batch_" + UUID.randomUUID();
+
+      //
+      // Let the client library build each request, and
+      // embed them into a multipart/mixed body.
+      //
+      var body = new ByteArrayOutputStream();
+      com.google.api.client.http.HttpRequest firstRequest = null;
+      for (int i = 0; i < requests.size(); i++) {
+        var request = requests.get(i);
+        Preconditions.checkArgument(
+          request.getAbstractGoogleClient() == client,
+          "All requests must use the same client");
+
+        var apiRequest = request.buildHttpRequest();
+        if (firstRequest == null) {
+          firstRequest = apiRequest;
+        }
+
+        var part = new StringBuilder()
+          .append("--").append(boundary).append(CRLF)
+          .append("Content-Type: application/http").append(CRLF)
+          .append("Content-Transfer-Encoding: binary").append(CRLF)
+          .append("Content-ID: <").append(i + 1).append(">").append(CRLF)
+          .append(CRLF)
+          .append(apiRequest.getRequestMethod())
+          .append(" ")
+          .append(apiRequest.getUrl().build())
+          .append(" HTTP/1.1")
+          .append(CRLF);
+        forEachHeader(
+          apiRequest.getHeaders(),
+          (name, value) -> part.append(name).append(": ").append(value).append(CRLF));
+
+        var content = apiRequest.getContent();
+        if (content != null && content.getType() != null) {
+          part.append("Content-Type: ").append(content.getType()).append(CRLF);
+        }
+
+        part.append(CRLF);
+        body.write(part.toString().getBytes(StandardCharsets.UTF_8));
+
+        if (content != null) {
+          content.writeTo(body);
+        }
+
+        body.write(CRLF.getBytes(StandardCharsets.UTF_8));
+      }
+
+      body.write(("--" + boundary + "--" + CRLF).getBytes(StandardCharsets.UTF_8));
+
+      //
+      // The outer request carries the same credentials as
+      // the embedded requests.
+      //
+      var builder = HttpRequest.newBuilder()
+        .uri(URI.create(client.getRootUrl() + "batch"))
+        .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()));
+      forEachHeader(firstRequest.getHeaders(), builder::header);
+      builder.setHeader("Content-Type", "multipart/mixed; boundary=" + boundary);
+
+      var timeout = firstRequest.getConnectTimeout() + firstRequest.getReadTimeout();
+      if (timeout > 0) {
+        builder.timeout(Duration.ofMillis(timeout));
+      }
+
+      sendAsync(firstRequest, builder.build(), requests.size())
+        .whenComplete((response, e) -> {
+          try {
+            if (e != null) {
+              throw e;
+            }
+
+            var batchBody = decodeBody(response);
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+              //
+              // The batch request as a whole failed.
+              //
+              parseResponse(
+                requests.get(0),
+                response.statusCode(),
+                batchBody,
+                response.uri().toString());
+            }
+
+            completeBatchResults(requests, results, response, batchBody);
+          }
+          catch (Throwable failure) {
+            results.forEach(r -> r.completeExceptionally(failure));
+          }
+        });
+    }
+    catch (IOException | RuntimeException e) {
+      results.forEach(r -> r.completeExceptionally(e));
+    }
+
+    return results;
+  }
+
+  /**
+   * Send a request using the shared client, and retry it if it
+   * fails with a transient error, as determined by the shared
+   * retry policy.
+   * <p>
+   * Each attempt waits for quota first, as determined by the quota
+   * interceptor that the request initializer installed.
+   * <p>
+   * Cancelling the returned future cancels the attempt that's in
+   * flight, and prevents further attempts.
+   * <p>
+   * If the request fails with a 401 because the access token expired
+   * while the request was in flight, the credentials are refreshed and
+   * the request is sent again, just like the credentials adapter does
+   * for synchronous requests.
+   *
+   * @param apiRequest request, as prepared by the client library
+   * @param request request to send
+   * @param permits number of API requests that the request represents
+   */
+  private static @NotNull CompletableFuture<HttpResponse<byte[]>> sendAsync(
+    @NotNull com.google.api.client.http.HttpRequest apiRequest,
+    @NotNull HttpRequest request,
+    int permits
+  ) throws IOException {
+    Supplier<CompletableFuture<Void>> acquireQuota;
+    Function<HttpRequest, CompletableFuture<HttpRequest>> reauthenticate;
+    if (apiRequest.getInterceptor() instanceof HttpTransport.QuotaInterceptor quotaInterceptor) {
+      acquireQuota = () -> quotaInterceptor.acquireAsync(request.uri().getAuthority(), permits);
+      reauthenticate = r -> reauthenticateAsync(quotaInterceptor.credentials(), r);
+    }
+    else {
+      acquireQuota = () -> CompletableFuture.completedFuture(null);
+      reauthenticate = null;
+    }
+
+    //
+    // The request isn't sent using its own transport, so the metrics
+    // interceptor that the request initializer installed never runs.
+    // Use a separate interceptor to record metrics instead.
+    //
+    var metrics = new HttpTransport.MetricsInterceptor(
+      RequestMetrics.shared(),
+      CircuitBreaker.shared(),
+      null,
+      null,
+      null);
+
+    var result = new CompletableFuture<HttpResponse<byte[]>>();
+    sendAsync(
+      HttpTransport.sharedAsyncClient(),
+      RetryPolicy.shared(),
+      acquireQuota,
+      reauthenticate,
+      metrics,
+      request,
+      result,
+      1)
+      .whenComplete((response, e) -> {
+        if (response != null) {
+          metrics.complete(response.statusCode(), response.body() != null ? response.body().length : 0);
+          result.complete(response);
+        }
+        else if (result.isCancelled()) {
+          metrics.cancel();
+        }
+        else {
+          metrics.complete(RequestMetrics.NO_RESPONSE, 0);
+          result.completeExceptionally(e);
+        }
+      });
+
+    return result;
+  }
+
+  private static @NotNull CompletableFuture<HttpResponse<byte[]>> sendAsync(
+    @NotNull HttpClient client,
+    @NotNull RetryPolicy retryPolicy,
+    @NotNull Supplier<CompletableFuture<Void>> acquireQuota,
+    @Nullable Function<HttpRequest, CompletableFuture<HttpRequest>> reauthenticate,
+    @NotNull HttpTransport.MetricsInterceptor metrics,
+    @NotNull HttpRequest request,
+    @NotNull CompletableFuture<HttpResponse<byte[]>> result,
+    int attempt
+  ) {
+    return acquireQuota
+      .get()
+      .thenCompose(ignored -> {
+        if (result.isDone()) {
+          //
+          // Cancelled while waiting for quota or a retry.
+          //
+          return CompletableFuture.failedFuture(new CancellationException());
+        }
+
+        try {
+          metrics.beginAttempt(
+            request.uri().getAuthority(),
+            request.method(),
+            request.uri().getRawPath());
+        }
+        catch (BackendUnavailableException e) {
+          return CompletableFuture.failedFuture(e);
+        }
+
+        var exchange = client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        propagateCancellation(result, exchange);
+        return exchange;
+      })
+      .thenCompose(response -> {
+        var backend = request.uri().getAuthority();
+        if (response.statusCode() < 400) {
+          retryPolicy.recordSuccess(backend);
+          return CompletableFuture.completedFuture(response);
+        }
+        else if (response.statusCode() == 401 && reauthenticate != null) {
+          //
+          // Refresh credentials and try again, but only once. If the
+          // credentials can't be refreshed, return the original response,
+          // like the credentials adapter does.
+          //
+          return reauthenticate
+            .apply(request)
+            .handle((reauthenticated, e) -> reauthenticated)
+            .thenCompose(reauthenticated -> reauthenticated != null
+              ? sendAsync(client, retryPolicy, acquireQuota, null, metrics, reauthenticated, result, attempt + 1)
+              : CompletableFuture.completedFuture(response));
+        }
+
+        var delay = retryPolicy.nextRetryDelay(
+          backend,
+          request.method(),
+          response.statusCode(),
+          response.headers().firstValue("Retry-After").orElse(null),
+          attempt);
+        if (delay.isEmpty()) {
+          return CompletableFuture.completedFuture(response);
+        }
+
+        //
+        // Retry after the delay, without blocking a thread in the meantime.
+        // Requests and their bodies are immutable, so we can resend them as is.
+        //
+        return CompletableFuture
+          .runAsync(
+            () -> {},
+            CompletableFuture.delayedExecutor(delay.get().toMillis(), TimeUnit.MILLISECONDS))
+          .thenCompose(ignored -> sendAsync(client, retryPolicy, acquireQuota, reauthenticate, metrics, request, result, attempt + 1));
+      });
+  }
+
+  /**
+   * Refresh credentials and create a copy of a request that
+   * carries the refreshed credentials.
+   * <p>
+   * Refreshing credentials blocks, so this runs on a pool thread.
+   */
+  private static @NotNull CompletableFuture<HttpRequest> reauthenticateAsync(
+    @NotNull Credentials credentials,
+    @NotNull HttpRequest request
+  ) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        credentials.refresh();
+
+        var metadata = credentials.getRequestMetadata(request.uri());
+        var replacedHeaders = metadata
+          .keySet()
+          .stream()
+          .map(String::toLowerCase)
+          .collect(Collectors.toSet());
+
+        var builder = HttpRequest.newBuilder(
+          request,
+          (name, value) -> !replacedHeaders.contains(name.toLowerCase()));
+        metadata.forEach((name, values) -> values.forEach(value -> builder.header(name, value)));
+
+        return builder.build();
+      }
+      catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    });
+  }
+
+  private static <T> void completeBatchResults(
+    @NotNull List<? extends AbstractGoogleJsonClientRequest<T>> requests,
+    @NotNull List<CompletableFuture<T>> results,
+    @NotNull HttpResponse<byte[]> response,
+    byte @Nullable [] body
+  ) throws IOException {
+    var boundary = response
+      .headers()
+      .firstValue("Content-Type")
+      .map(AsyncRequests::boundaryOf)
+      .orElseThrow(() -> new IOException("The batch response lacks a multipart boundary"));
+
+    var content = body != null ? new String(body, StandardCharsets.UTF_8) : "";
+    var parts = content.split(Pattern.quote("--" + boundary));
+
+    int partIndex = 0;
+    for (var part : parts) {
+      if (part.isBlank() || part.startsWith("--")) {
+        //
+        // Preamble or closing delimiter.
+        //
+        continue;
+      }
+
+      //
+      // Each part consists of part headers, followed by an
+      // embedded HTTP response.
+      //
+      var embeddedResponse = part.replaceFirst("^\\r?\\n", "").split("\\r?\\n\\r?\\n", 2);
+      if (embeddedResponse.length < 2) {
+        throw new IOException("The batch response contains a malformed part");
+      }
+
+      var index = contentIdOf(embeddedResponse[0]).orElse(partIndex);
+      partIndex++;
+
+      var statusLineAndBody = embeddedResponse[1].split("\\r?\\n\\r?\\n", 2);
+      var statusLine = statusLineAndBody[0].split("\\r?\\n", 2)[0].split(" ");
+      if (statusLine.length < 2 || index < 0 || index >= requests.size()) {
+        throw new IOException("The batch response contains a malformed part");
+      }
+
+      var partBody = statusLineAndBody.length > 1
+        ? statusLineAndBody[1].replaceFirst("\\r?\\n$", "")
+        : "";
+
+      try {
+        results.get(index).complete(parseResponse(
+          requests.get(index),
+          Integer.parseInt(statusLine[1]),
+          partBody.getBytes(StandardCharsets.UTF_8),
+          response.uri().toString()));
+      }
+      catch (IOException | RuntimeException e) {
+        results.get(index).completeExceptionally(e);
+      }
+    }
+
+    //
+    // Fail requests for which the response doesn't contain a part.
+    //
+    for (var result : results) {
+      result.completeExceptionally(
+        new IOException("The batch response lacks a response for a request"));
+    }
+  }
+
+  private static @Nullable String boundaryOf(@NotNull String contentType) {
+    for (var parameter : contentType.split(";")) {
+      var keyAndValue = parameter.trim().split("=", 2);
+      if (keyAndValue.length == 2 && keyAndValue[0].equalsIgnoreCase("boundary")) {
+        return keyAndValue[1].replace("\"", "");
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Extract the request index from a Content-ID header,
+   * which uses the format {@code <response-N>}.
+   */
+  private static @NotNull Optional<Integer> contentIdOf(@NotNull String partHeaders) {
+    var matcher = CONTENT_ID_PATTERN.matcher(partHeaders);
+    return matcher.find()
+      ? Optional.of(Integer.parseInt(matcher.group(1)) - 1)
+      : Optional.empty();
+  }
+
+  private static void forEachHeader(
+    @NotNull HttpHeaders headers,
+    @NotNull BiConsumer<String, String> consumer
+  ) {
+    for (var header : headers.entrySet()) {
+      if (header.getValue() == null ||
+        RESTRICTED_HEADERS.contains(header.getKey().toLowerCase())) {
+        continue;
+      }
+
+      if (header.getValue() instanceof Collection<?> values) {
+        for (var value : values) {
+          consumer.accept(header.getKey(), value.toString());
+        }
+      }
+      else {
+        consumer.accept(header.getKey(), header.getValue().toString());
+      }
+    }
+  }
+
+  /**
+   * Execute a paged request asynchronously and collect the
+   * items of all pages.
+   */
+  public static <TPage, TItem> @NotNull CompletableFuture<List<TItem>> executePagesAsync(
+    @NotNull PageRequestFactory<TPage> requestForPage,
+    @NotNull Function<TPage, List<TItem>> itemsOfPage,
+    @NotNull Function<TPage, String> nextPageToken
+  ) {
+    var result = new CompletableFuture<List<TItem>>();
+    executePagesAsync(
+      requestForPage,
+      itemsOfPage,
+      nextPageToken,
+      null,
+      new LinkedList<>(),
+      result);
+    return result;
+  }
+
+  private static <TPage, TItem> void executePagesAsync(
+    @NotNull PageRequestFactory<TPage> requestForPage,
+    @NotNull Function<TPage, List<TItem>> itemsOfPage,
+    @NotNull Function<TPage, String> nextPageToken,
+    @Nullable String pageToken,
+    @NotNull List<TItem> accumulator,
+    @NotNull CompletableFuture<List<TItem>> result
+  ) {
+    AbstractGoogleJsonClientRequest<TPage> request;
+    try {
+      request = requestForPage.create(pageToken);
+    }
+    catch (IOException e) {
+      result.completeExceptionally(e);
+      return;
+    }
+
+    //
+    // If the result is cancelled, cancel the request for the
+    // current page, and don't request any further pages.
+    //
+    var page = executeAsync(request);
+    propagateCancellation(result, page);
+    page.whenComplete((p, e) -> {
+      if (e != null) {
+        result.completeExceptionally(e);
+        return;
+      }
+
+      try {
+        var items = itemsOfPage.apply(p);
+        if (items != null) {
+          accumulator.addAll(items);
+        }
+
+        var token = nextPageToken.apply(p);
+        if (token == null || token.isEmpty()) {
+          result.complete(accumulator);
+        }
+        else if (!result.isDone()) {
+          executePagesAsync(requestForPage, itemsOfPage, nextPageToken, token, accumulator, result);
+        }
+      }
+      catch (RuntimeException failure) {
+        result.completeExceptionally(failure);
+      }
+    });
+  }
+
+  /**
+   * Cancel a future when another future that depends on it
+   * is cancelled.
+   * <p>
+   * Cancelling a future doesn't affect the futures it depends on,
+   * so without this, requests that nobody waits for anymore would
+   * keep running.
+   *
+   * @return the dependent future
+   */
+  static <T> @NotNull CompletableFuture<T> propagateCancellation(
+    @NotNull CompletableFuture<T> dependent,
+    @NotNull CompletableFuture<?> source
+  ) {
+    dependent.whenComplete((result, e) -> {
+      if (dependent.isCancelled()) {
+        source.cancel(true);
+      }
+    });
+    return dependent;
+  }
+
+  /**
+   * Lazily stream the items of a paged result.
+   * <p>
+   * The first page is fetched eagerly, so that common errors
+   * (such as missing permissions) surface as checked exceptions.
+   * Subsequent pages are fetched in the background: When the caller
+   * starts consuming the items of page N, the request for page N+1
+   * is already in flight. At most one page is fetched ahead, so
+   * that large results aren't held in memory all at once.
+   * <p>
+   * If fetching a subsequent page fails, the stream throws an
+   * UncheckedExecutionException that wraps the AccessException
+   * or IOException.
+   *
+   * @param fetchPage function to fetch a page, gets passed the
+   *                  page token (or null for the first page).
+   */
+  public static <TPage, TItem> @NotNull Stream<TItem> streamPages(
+    @NotNull Function<String, CompletableFuture<TPage>> fetchPage,
+    @NotNull Function<TPage, List<TItem>> itemsOfPage,
+    @NotNull Function<TPage, String> nextPageToken
+  ) throws AccessException, IOException {
+    Preconditions.checkNotNull(fetchPage, "fetchPage");
+    Preconditions.checkNotNull(itemsOfPage, "itemsOfPage");
+    Preconditions.checkNotNull(nextPageToken, "nextPageToken");
+
+    var iterator = new PrefetchingIterator<>(
+      fetchPage,
+      itemsOfPage,
+      nextPageToken,
+      await(fetchPage.apply(null)));
+
+    return StreamSupport
+      .stream(
+        Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+        false)
+      .onClose(iterator::cancel);
+  }
+
+  /**
+   * Wait for a future to complete and rethrow the exception
+   * it failed with, if any.
+   */
+  public static <T> T await(
+    @NotNull CompletableFuture<T> future
+  ) throws AccessException, IOException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("The request was interrupted");
+    }
+    catch (ExecutionException e) {
+      var cause = Exceptions.unwrap(e.getCause());
+      if (cause instanceof AccessException accessException) {
+        throw (AccessException)accessException.fillInStackTrace();
+      }
+      else if (cause instanceof IOException ioException) {
+        throw (IOException)ioException.fillInStackTrace();
+      }
+      else if (cause instanceof RuntimeException runtimeException) {
+        throw (RuntimeException)runtimeException.fillInStackTrace();
+      }
+      else {
+        throw new IOException("The request failed", cause);
+      }
+    }
+  }
+
+  private static byte @Nullable [] decodeBody(
+    @NotNull HttpResponse<byte[]> response
+  ) throws IOException {
+    var body = response.body();
+    if (body != null && body.length > 0 && response
+      .headers()
+      .firstValue("Content-Encoding")
+      .filter(e -> e.equalsIgnoreCase("gzip"))
+      .isPresent()) {
+      try (var stream = new GZIPInputStream(new ByteArrayInputStream(body))) {
+        body = stream.readAllBytes();
+      }
+    }
+
+    return body;
+  }
+
+  private static <T> @Nullable T parseResponse(
+    @NotNull AbstractGoogleJsonClientRequest<T> request,
+    int statusCode,
+    byte @Nullable [] body,
+    @NotNull String uri
+  ) throws IOException {
+    var jsonFactory = request.getAbstractGoogleClient().getJsonFactory();
+    if (statusCode >= 200 && statusCode < 300) {
+      if (body == null ||
+        body.length == 0 ||
+        request.getResponseClass() == Void.class) {
+        return null;
+      }
+
+      try (InputStream stream = new ByteArrayInputStream(body)) {
+        return request
+          .getAbstractGoogleClient()
+          .getObjectParser()
+          .parseAndClose(stream, StandardCharsets.UTF_8, request.getResponseClass());
+      }
+    }
+    else {
+      //
+      // Translate into the same exception that the synchronous
+      // execute() method would throw.
+      //
+      var content = body != null ? new String(body, StandardCharsets.UTF_8) : "";
+
+      GoogleJsonErrorContainer errorContainer;
+      try {
+        errorContainer = jsonFactory
+          .createJsonParser(content)
+          .parseAndClose(GoogleJsonErrorContainer.class);
+      }
+      catch (IOException | IllegalArgumentException e) {
+        errorContainer = null;
+      }
+
+      var details = errorContainer != null ? errorContainer.getError() : null;
+
+      var builder = new HttpResponseException.Builder(
+        statusCode,
+        null,
+        new HttpHeaders())
+        .setContent(content)
+        .setMessage(String.format(
+          "%d %s %s\n%s",
+          statusCode,
+          request.getRequestMethod(),
+          uri,
+          details != null ? details.toPrettyString() : content));
+
+      throw new GoogleJsonResponseException(builder, details);
+    }
+  }
+
+  /**
+   * Iterator over the items of a paged result that fetches
+   * the next page while the items of the current page are
+   * being consumed.
+   */
+  private static class PrefetchingIterator<TPage, TItem> implements Iterator<TItem> {
+    private final @NotNull Function<String, CompletableFuture<TPage>> fetchPage;
+    private final @NotNull Function<TPage, List<TItem>> itemsOfPage;
+    private final @NotNull Function<TPage, String> nextPageToken;
+
+    private @NotNull Iterator<TItem> currentItems = Collections.emptyIterator();
+    private @Nullable CompletableFuture<TPage> nextPage;
+
+    PrefetchingIterator(
+      @NotNull Function<String, CompletableFuture<TPage>> fetchPage,
+      @NotNull Function<TPage, List<TItem>> itemsOfPage,
+      @NotNull Function<TPage, String> nextPageToken,
+      @NotNull TPage firstPage
+    ) {
+      this.fetchPage = fetchPage;
+      this.itemsOfPage = itemsOfPage;
+      this.nextPageToken = nextPageToken;
+
+      advance(firstPage);
+    }
+
+    private void advance(@NotNull TPage page) {
+      //
+      // Start fetching the next page before we hand out
+      // the items of this page.
+      //
+      var token = this.nextPageToken.apply(page);
+      this.nextPage = token != null && !token.isEmpty()
+        ? this.fetchPage.apply(token)
+        : null;
+
+      var items = this.itemsOfPage.apply(page);
+      this.currentItems = items != null
+        ? items.iterator()
+        : Collections.emptyIterator();
+    }
+
+    void cancel() {
+      if (this.nextPage != null) {
+        this.nextPage.cancel(false);
+        this.nextPage = null;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!this.currentItems.hasNext() && this.nextPage != null) {
+        try {
+          advance(await(this.nextPage));
+        }
+        catch (AccessException | IOException e) {
+          this.nextPage = null;
+          throw new UncheckedExecutionException(e);
+        }
+      }
+
+      return this.currentItems.hasNext();
+    }
+
+    @Override
+    public TItem next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      return this.currentItems.next();
+    }
+  }
+
+  /**
+   * Creates a request for a given page.
+   */
+  @FunctionalInterface
+  public interface PageRequestFactory<TPage> {
+    @NotNull AbstractGoogleJsonClientRequest<TPage> create(
+      @Nullable String pageToken
+    ) throws IOException;
+  }
+}
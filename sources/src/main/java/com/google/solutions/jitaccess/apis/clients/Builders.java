@@ -25,11 +25,15 @@ import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClient;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.auth.Credentials;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.solutions.jitaccess.ApplicationVersion;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Helper class for initializing API builders.
@@ -38,23 +42,105 @@ abstract class Builders {
   private static final @NotNull GsonFactory GSON = new GsonFactory();
 
   /**
-   * Create a new Builder that uses default transport and authentication settings.
+   * Maximum number of clients to cache. The application uses a small
+   * number of long-lived credentials (its own, and one per environment),
+   * so the cache only needs to hold a few clients per API.
+   */
+  static final int MAXIMUM_CACHED_CLIENTS = 100;
+
+  /**
+   * Clients, by credential, client class, and options. API clients are
+   * thread-safe and can be reused across requests.
+   * <p>
+   * Clients hold on to their credential, so we can't rely on weak
+   * references to release them. Instead, the cache is bounded and
+   * releases clients that haven't been used for a while.
+   */
+  private static final @NotNull Cache<ClientKey, AbstractGoogleJsonClient> clients =
+    CacheBuilder.newBuilder()
+      .maximumSize(MAXIMUM_CACHED_CLIENTS)
+      .expireAfterAccess(Duration.ofHours(1))
+      .build();
+
+  /**
+   * Create a new Builder that uses the shared transport and default
+   * authentication settings.
    */
   public static @NotNull <TBuilder extends AbstractGoogleJsonClient.Builder> TBuilder newBuilder(
     @NotNull BuilderConstructor<TBuilder> newBuilder,
     @NotNull Credentials credentials,
     @NotNull HttpTransport.Options httpOptions
   ) throws IOException {
+    var builder = newBuilder.create(
+      HttpTransport.sharedTransport(),
+      GSON,
+      HttpTransport.newAuthenticatingRequestInitializer(credentials, httpOptions));
+    builder.setApplicationName(ApplicationVersion.USER_AGENT);
+
+    if (httpOptions.rootUrl() != null) {
+      builder.setRootUrl(httpOptions.rootUrl());
+    }
+
+    return builder;
+  }
+
+  /**
+   * Get a client that uses the shared transport and default
+   * authentication settings. Clients are created on first use
+   * and reused for subsequent calls that use the same credential.
+   */
+  public static @NotNull <TClient extends AbstractGoogleJsonClient> TClient getClient(
+    @NotNull Class<TClient> clientClass,
+    @NotNull BuilderConstructor<? extends AbstractGoogleJsonClient.Builder> newBuilder,
+    @NotNull Credentials credentials,
+    @NotNull HttpTransport.Options httpOptions
+  ) throws IOException {
+    var key = new ClientKey(credentials, clientClass, httpOptions);
     try {
-      var builder = newBuilder.create(
-        HttpTransport.newTransport(),
-        GSON,
-        HttpTransport.newAuthenticatingRequestInitializer(credentials, httpOptions));
-      builder.setApplicationName(ApplicationVersion.USER_AGENT);
-      return builder;
+      return clientClass.cast(clients.get(
+        key,
+        () -> newBuilder(newBuilder, credentials, httpOptions).build()));
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException ioException) {
+        throw (IOException)ioException.fillInStackTrace();
+      }
+      else {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Number of cached clients.
+   */
+  static long cachedClients() {
+    return clients.size();
+  }
+
+  /**
+   * Key for the client cache. Credentials are compared by identity
+   * because their equality can change as tokens are refreshed.
+   */
+  private record ClientKey(
+    @NotNull Credentials credentials,
+    @NotNull Class<?> clientClass,
+    @NotNull HttpTransport.Options httpOptions
+  ) {
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof ClientKey other &&
+        this.credentials == other.credentials &&
+        this.clientClass.equals(other.clientClass) &&
+        this.httpOptions.equals(other.httpOptions);
     }
-    catch (GeneralSecurityException e) {
-      throw new IOException("Creating a client failed", e);
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(
+        System.identityHashCode(this.credentials),
+        this.clientClass,
+        this.httpOptions);
     }
   }
 
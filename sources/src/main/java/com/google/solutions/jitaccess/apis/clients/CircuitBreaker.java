@@ -0,0 +1,444 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breakers that stop sending requests to a backend that is
+ * failing or slow, so that callers fail fast instead of blocking
+ * until their requests time out.
+ * <p>
+ * Each backend has its own breaker, which works as follows:
+ * <ul>
+ *   <li>Closed: requests are sent, and their outcomes are tracked in a
+ *       sliding window. Requests that fail without a response, fail with
+ *       a server or rate limiting error, or take longer than a threshold
+ *       count as failures. If the failure rate exceeds a threshold, the
+ *       breaker opens.</li>
+ *   <li>Open: requests are rejected without being sent. After a while,
+ *       the breaker becomes half-open.</li>
+ *   <li>Half-open: a single probe request is sent. If it succeeds, the
+ *       breaker closes, otherwise it opens again.</li>
+ * </ul>
+ * Each permitted request gets a permit that identifies the state in which
+ * it was permitted. Outcomes of requests that were permitted in a previous
+ * state are ignored, so that a late outcome of a request that was sent
+ * while the breaker was closed can't be mistaken for the probe's outcome.
+ */
+public class CircuitBreaker {
+  private static final long NO_PERMIT = -1;
+
+  private static volatile @NotNull CircuitBreaker shared = new CircuitBreaker(Options.DEFAULT, Listener.NONE);
+
+  private final @NotNull Options options;
+  private final @NotNull Listener listener;
+  private final @NotNull LongSupplier clock;
+  private final @NotNull Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+  CircuitBreaker(
+    @NotNull Options options,
+    @NotNull Listener listener,
+    @NotNull LongSupplier clock
+  ) {
+    Preconditions.checkNotNull(options, "options");
+    Preconditions.checkNotNull(listener, "listener");
+    Preconditions.checkNotNull(clock, "clock");
+
+    this.options = options;
+    this.listener = listener;
+    this.clock = clock;
+  }
+
+  public CircuitBreaker(
+    @NotNull Options options,
+    @NotNull Listener listener
+  ) {
+    this(options, listener, System::nanoTime);
+  }
+
+  /**
+   * Get the process-wide breakers, which apply to all API clients.
+   */
+  public static @NotNull CircuitBreaker shared() {
+    return shared;
+  }
+
+  /**
+   * Replace the process-wide breakers. This closes all breakers
+   * and resets their statistics.
+   */
+  public static void configureShared(
+    @NotNull Options options,
+    @NotNull Listener listener
+  ) {
+    shared = new CircuitBreaker(options, listener);
+  }
+
+  /**
+   * Check if a request can be sent to a backend.
+   *
+   * @param backend host (and port, if non-default) of the backend
+   * @return permit to pass to {@link #record}
+   * @throws BackendUnavailableException if the breaker is open
+   */
+  public long acquire(@NotNull String backend) throws BackendUnavailableException {
+    var permit = breaker(backend).tryAcquire();
+    if (permit == NO_PERMIT) {
+      throw new BackendUnavailableException(String.format(
+        "The backend %s is currently unavailable, try again later",
+        backend));
+    }
+
+    return permit;
+  }
+
+  /**
+   * Record the outcome of a request that was permitted by
+   * {@link #acquire(String)}.
+   *
+   * @param backend host (and port, if non-default) of the backend
+   * @param permit permit returned by {@link #acquire(String)}
+   * @param statusCode status code of the final response, or
+   *                   {@link RequestMetrics#NO_RESPONSE}
+   * @param latencyNanos time taken, including retries
+   */
+  public void record(
+    @NotNull String backend,
+    long permit,
+    int statusCode,
+    long latencyNanos
+  ) {
+    record(backend, permit, statusCode, false, latencyNanos);
+  }
+
+  /**
+   * Record the outcome of a request that was permitted by
+   * {@link #acquire(String)}.
+   *
+   * @param backend host (and port, if non-default) of the backend
+   * @param permit permit returned by {@link #acquire(String)}
+   * @param statusCode status code of the final response, or
+   *                   {@link RequestMetrics#NO_RESPONSE}
+   * @param callerError true if the client treats the response as an
+   *                    error caused by the caller, despite its status
+   *                    code. Such responses show that the backend works,
+   *                    so they only count as failures if they're slow
+   * @param latencyNanos time taken, including retries
+   */
+  public void record(
+    @NotNull String backend,
+    long permit,
+    int statusCode,
+    boolean callerError,
+    long latencyNanos
+  ) {
+    var failed = latencyNanos > this.options.slowCallThreshold.toNanos() ||
+      (!callerError && (statusCode == RequestMetrics.NO_RESPONSE ||
+        statusCode == 429 ||
+        statusCode >= 500));
+
+    breaker(backend).record(permit, failed);
+  }
+
+  /**
+   * Release a permit without recording an outcome, for requests
+   * that were cancelled before they completed.
+   *
+   * @param backend host (and port, if non-default) of the backend
+   * @param permit permit returned by {@link #acquire(String)}
+   */
+  public void release(
+    @NotNull String backend,
+    long permit
+  ) {
+    breaker(backend).release(permit);
+  }
+
+  /**
+   * Get statistics, by backend.
+   */
+  public @NotNull Map<String, Statistics> statistics() {
+    var statistics = new TreeMap<String, Statistics>();
+    this.breakers.forEach((backend, breaker) -> statistics.put(backend, breaker.statistics()));
+    return statistics;
+  }
+
+  private @NotNull Breaker breaker(@NotNull String backend) {
+    return this.breakers.computeIfAbsent(backend, Breaker::new);
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  /**
+   * Listener for state transitions.
+   */
+  @FunctionalInterface
+  public interface Listener {
+    Listener NONE = (backend, previous, current, statistics) -> {};
+
+    /**
+     * Invoked when a breaker changes state. Implementations
+     * must be fast and must not send requests to the backend.
+     */
+    void onStateChanged(
+      @NotNull String backend,
+      @NotNull State previous,
+      @NotNull State current,
+      @NotNull Statistics statistics);
+  }
+
+  /**
+   * Options for circuit breakers.
+   *
+   * @param failureRateThreshold fraction of failed requests in the
+   *                             window at which the breaker opens
+   * @param slowCallThreshold latency above which a request counts
+   *                          as failed
+   * @param windowSize number of recent requests to consider. The
+   *                   breaker doesn't open before half of the window
+   *                   has been filled
+   * @param openDuration time to wait before sending a probe request
+   */
+  public record Options(
+    double failureRateThreshold,
+    @NotNull Duration slowCallThreshold,
+    int windowSize,
+    @NotNull Duration openDuration
+  ) {
+    public static final @NotNull Options DEFAULT = new Options(
+      0.5,
+      Duration.ofSeconds(10),
+      20,
+      Duration.ofSeconds(30));
+
+    public Options {
+      Preconditions.checkArgument(
+        failureRateThreshold > 0 && failureRateThreshold <= 1,
+        "failureRateThreshold must be between 0 and 1");
+      Preconditions.checkArgument(
+        !slowCallThreshold.isNegative() && !slowCallThreshold.isZero(),
+        "slowCallThreshold must be positive");
+      Preconditions.checkArgument(windowSize > 1, "windowSize must be greater than 1");
+      Preconditions.checkArgument(
+        !openDuration.isNegative() && !openDuration.isZero(),
+        "openDuration must be positive");
+    }
+  }
+
+  /**
+   * Snapshot of a breaker.
+   *
+   * @param state current state
+   * @param failureRate fraction of failed requests in the window
+   * @param requests number of requests that were permitted
+   * @param rejected number of requests that were rejected
+   * @param opened number of times the breaker opened
+   */
+  public record Statistics(
+    @NotNull State state,
+    double failureRate,
+    long requests,
+    long rejected,
+    long opened
+  ) {
+    @Override
+    public String toString() {
+      return String.format(
+        "state: %s, failure rate: %.0f%%, requests: %d, rejected: %d, opened: %d",
+        this.state,
+        this.failureRate * 100,
+        this.requests,
+        this.rejected,
+        this.opened);
+    }
+  }
+
+  private class Breaker {
+    private final @NotNull String backend;
+
+    /**
+     * Outcomes of recent requests, true indicates a failure.
+     */
+    private final boolean @NotNull [] window;
+    private int windowCount;
+    private int windowPosition;
+    private int windowFailures;
+
+    private @NotNull State state = State.CLOSED;
+
+    /**
+     * Incremented on every state transition and every probe, so that
+     * permits from previous states or probes can be told apart.
+     */
+    private long generation;
+    private long openedAt;
+    private boolean probeInFlight;
+    private long probeStartedAt;
+
+    private long requests;
+    private long rejected;
+    private long opened;
+
+    Breaker(@NotNull String backend) {
+      this.backend = backend;
+      this.window = new boolean[CircuitBreaker.this.options.windowSize];
+    }
+
+    synchronized long tryAcquire() {
+      var now = CircuitBreaker.this.clock.getAsLong();
+      var openDuration = CircuitBreaker.this.options.openDuration.toNanos();
+
+      if (this.state == State.OPEN) {
+        if (now - this.openedAt < openDuration) {
+          this.rejected++;
+          return NO_PERMIT;
+        }
+
+        transition(State.HALF_OPEN);
+        this.probeInFlight = false;
+      }
+
+      if (this.state == State.HALF_OPEN) {
+        //
+        // Only permit a single probe. If the probe's outcome never gets
+        // recorded, permit another probe after a while.
+        //
+        if (this.probeInFlight && now - this.probeStartedAt < openDuration) {
+          this.rejected++;
+          return NO_PERMIT;
+        }
+
+        this.probeInFlight = true;
+        this.probeStartedAt = now;
+        this.generation++;
+      }
+
+      this.requests++;
+      return this.generation;
+    }
+
+    synchronized void record(long permit, boolean failed) {
+      if (permit != this.generation) {
+        //
+        // Late outcome of a request that was permitted in a previous
+        // state, or of a previous probe, ignore.
+        //
+        return;
+      }
+
+      switch (this.state) {
+        case HALF_OPEN:
+          if (failed) {
+            open();
+          }
+          else {
+            clearWindow();
+            transition(State.CLOSED);
+          }
+          break;
+
+        case OPEN:
+          //
+          // Outcomes of requests that were permitted before the
+          // breaker opened have a previous generation, so this
+          // can't happen.
+          //
+          break;
+
+        case CLOSED:
+          if (this.windowCount == this.window.length) {
+            if (this.window[this.windowPosition]) {
+              this.windowFailures--;
+            }
+          }
+          else {
+            this.windowCount++;
+          }
+
+          this.window[this.windowPosition] = failed;
+          this.windowPosition = (this.windowPosition + 1) % this.window.length;
+          if (failed) {
+            this.windowFailures++;
+          }
+
+          if (this.windowCount >= this.window.length / 2 &&
+            this.windowFailures >= CircuitBreaker.this.options.failureRateThreshold * this.windowCount) {
+            open();
+          }
+          break;
+      }
+    }
+
+    synchronized void release(long permit) {
+      if (permit == this.generation && this.state == State.HALF_OPEN) {
+        //
+        // The probe was cancelled, so permit another one right away.
+        //
+        this.probeInFlight = false;
+      }
+    }
+
+    synchronized @NotNull Statistics statistics() {
+      return new Statistics(
+        this.state,
+        this.windowCount > 0 ? (double)this.windowFailures / this.windowCount : 0,
+        this.requests,
+        this.rejected,
+        this.opened);
+    }
+
+    private void open() {
+      this.openedAt = CircuitBreaker.this.clock.getAsLong();
+      this.opened++;
+      transition(State.OPEN);
+    }
+
+    private void clearWindow() {
+      this.windowCount = 0;
+      this.windowPosition = 0;
+      this.windowFailures = 0;
+    }
+
+    private void transition(@NotNull State state) {
+      var previous = this.state;
+      this.state = state;
+      this.generation++;
+      CircuitBreaker.this.listener.onStateChanged(this.backend, previous, state, statistics());
+    }
+  }
+}
@@ -28,19 +28,27 @@ import com.google.api.services.groupssettings.Groupssettings;
 import com.google.api.services.groupssettings.model.Groups;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.solutions.jitaccess.apis.CustomerId;
 import com.google.solutions.jitaccess.auth.GroupId;
 import com.google.solutions.jitaccess.auth.IamPrincipalId;
 import com.google.solutions.jitaccess.common.Coalesce;
+import com.google.solutions.jitaccess.common.CompletableFutures;
+import com.google.solutions.jitaccess.common.Exceptions;
 import jakarta.inject.Singleton;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Client for the Cloud Identity Groups API.
@@ -52,6 +60,16 @@ public class CloudIdentityGroupsClient {
   private static final String PREDICATE_USERS_AND_SERVICE_ACCOUNTS_ONLY =
     "member.type == 1 || member.type == 2";
   private static final int SEARCH_PAGE_SIZE = 1000;
+
+  /**
+   * Maximum number of requests to combine into a single batch request.
+   */
+  static final int MAX_BATCH_SIZE = 100;
+
+  /**
+   * Name of the searchDirectGroups method, see {@link RequestMetrics#methodOf}.
+   */
+  static final String SEARCH_DIRECT_GROUPS_METHOD = "GET groups/*/memberships:searchDirectGroups";
   public static final String LABEL_DISCUSSION_FORUM = "cloudidentity.googleapis.com/groups.discussion_forum";
   public static final String LABEL_SECURITY = "cloudidentity.googleapis.com/groups.security";
 
@@ -59,6 +77,12 @@ public class CloudIdentityGroupsClient {
   private final @NotNull GoogleCredentials credentials;
   private final @NotNull HttpTransport.Options httpOptions;
 
+  /**
+   * Coalesces concurrent reads, such as lookups for a group that
+   * many users are accessing at the same time.
+   */
+  private final @NotNull RequestCoalescer coalescer = new RequestCoalescer("cloudidentity.googleapis.com");
+
   /**
    * Settings for new groups:
    * <p>
@@ -101,15 +125,19 @@ public class CloudIdentityGroupsClient {
   }
 
   private @NotNull CloudIdentity createClient() throws IOException {
-    return Builders
-      .newBuilder(CloudIdentity.Builder::new, this.credentials, this.httpOptions)
-      .build();
+    return Builders.getClient(
+      CloudIdentity.class,
+      CloudIdentity.Builder::new,
+      this.credentials,
+      this.httpOptions);
   }
 
   private @NotNull Groupssettings createSettingsClient() throws IOException {
-    return Builders
-      .newBuilder(Groupssettings.Builder::new, this.credentials, this.httpOptions)
-      .build();
+    return Builders.getClient(
+      Groupssettings.class,
+      Groupssettings.Builder::new,
+      this.credentials,
+      this.httpOptions);
   }
 
   private static boolean isAlreadyExistsError(
@@ -120,33 +148,80 @@ public class CloudIdentityGroupsClient {
         "ALREADY_EXISTS".equals(e.getDetails().get("status"));
   }
 
-  private static void translateAndThrowApiException(
+  private static @NotNull Exception translateApiException(
     @NotNull GoogleJsonResponseException e
-  ) throws AccessException, IOException {
+  ) {
     switch (e.getStatusCode()) {
       case 400:
-        throw new IllegalArgumentException("Invalid argument", e);
+        return new IllegalArgumentException("Invalid argument", e);
       case 401:
-        throw new NotAuthenticatedException("Not authenticated", e);
+        return new NotAuthenticatedException("Not authenticated", e);
       case 403: {
         if (e.getDetails() != null) {
           var message = e.getDetails().get("message");
           if (message instanceof String &&
             (((String) message).contains("3005") || ((String) message).contains("3006"))) {
-            throw new AccessDeniedException("This feature requires a Cloud Identity Premium or Workspace subscription");
+            return new AccessDeniedException("This feature requires a Cloud Identity Premium or Workspace subscription");
           }
         }
 
-        throw new AccessDeniedException(
+        return new AccessDeniedException(
           "The group or membership does not exist in Cloud Identity, or access to Cloud Identity API is denied", e);
       }
       case 404:
-        throw new ResourceNotFoundException("The group or membership does not exist", e);
+        return new ResourceNotFoundException("The group or membership does not exist", e);
       default:
-        throw (GoogleJsonResponseException)e.fillInStackTrace();
+        return (GoogleJsonResponseException)e.fillInStackTrace();
     }
   }
 
+  private static void translateAndThrowApiException(
+    @NotNull GoogleJsonResponseException e
+  ) throws AccessException, IOException {
+    var translated = translateApiException(e);
+    if (translated instanceof AccessException accessException) {
+      throw accessException;
+    }
+    else if (translated instanceof IOException ioException) {
+      throw ioException;
+    }
+    else {
+      throw (RuntimeException)translated;
+    }
+  }
+
+  /**
+   * Translate API exceptions of a future, analogous to
+   * translateAndThrowApiException.
+   */
+  private static <T> @NotNull CompletableFuture<T> translateApiExceptions(
+    @NotNull CompletableFuture<T> future
+  ) {
+    return future.exceptionallyCompose(e -> {
+      var cause = Exceptions.unwrap(e);
+      return CompletableFuture.failedFuture(
+        cause instanceof GoogleJsonResponseException apiException
+          ? translateApiException(apiException)
+          : cause);
+    });
+  }
+
+  /**
+   * Fetch pages asynchronously, translating API exceptions.
+   */
+  private static <TPage> @NotNull Function<String, CompletableFuture<TPage>> fetchPages(
+    @NotNull AsyncRequests.PageRequestFactory<TPage> requestForPage
+  ) {
+    return pageToken -> {
+      try {
+        return translateApiExceptions(AsyncRequests.executeAsync(requestForPage.create(pageToken)));
+      }
+      catch (IOException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    };
+  }
+
   //---------------------------------------------------------------------
   // Manage groups.
   //---------------------------------------------------------------------
@@ -159,20 +234,44 @@ public class CloudIdentityGroupsClient {
     @NotNull CloudIdentity client,
     @NotNull GroupId email
   ) throws AccessException, IOException {
-    try {
-      var id = client
-        .groups()
-        .lookup()
-        .setGroupKeyId(email.email)
-        .execute()
-        .getName();
+    return this.coalescer.execute("lookupGroup", email, () -> {
+      try {
+        var id = client
+          .groups()
+          .lookup()
+          .setGroupKeyId(email.email)
+          .execute()
+          .getName();
 
-      return new GroupKey(id);
-    }
-    catch (GoogleJsonResponseException e) {
-      translateAndThrowApiException(e);
-      return null; // Unreachable.
-    }
+        return new GroupKey(id);
+      }
+      catch (GoogleJsonResponseException e) {
+        translateAndThrowApiException(e);
+        return null; // Unreachable.
+      }
+    });
+  }
+
+  /**
+   * Lookup a group ID by email.
+   */
+  private @NotNull CompletableFuture<GroupKey> lookupGroupAsync(
+    @NotNull CloudIdentity client,
+    @NotNull GroupId email
+  ) {
+    return this.coalescer.executeAsync("lookupGroup", email, () -> {
+      try {
+        return translateApiExceptions(AsyncRequests
+          .executeAsync(client
+            .groups()
+            .lookup()
+            .setGroupKeyId(email.email))
+          .thenApply(response -> new GroupKey(response.getName())));
+      }
+      catch (IOException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    });
   }
 
   /**
@@ -182,16 +281,18 @@ public class CloudIdentityGroupsClient {
     @NotNull CloudIdentity client,
     @NotNull GroupKey groupKey
   ) throws AccessException, IOException {
-    try {
-      return client
-        .groups()
-        .get(groupKey.toString())
-        .execute();
-    }
-    catch (GoogleJsonResponseException e) {
-      translateAndThrowApiException(e);
-      return null; // Unreachable.
-    }
+    return this.coalescer.execute("getGroup", groupKey, () -> {
+      try {
+        return client
+          .groups()
+          .get(groupKey.toString())
+          .execute();
+      }
+      catch (GoogleJsonResponseException e) {
+        translateAndThrowApiException(e);
+        return null; // Unreachable.
+      }
+    });
   }
 
   /**
@@ -334,6 +435,12 @@ public class CloudIdentityGroupsClient {
       translateAndThrowApiException(e);
       return null; // Unreachable.
     }
+    finally {
+      //
+      // Don't let subsequent reads join reads that predate this write.
+      //
+      this.coalescer.invalidate();
+    }
   }
 
   /**
@@ -360,6 +467,9 @@ public class CloudIdentityGroupsClient {
     catch (GoogleJsonResponseException e) {
       translateAndThrowApiException(e);
     }
+    finally {
+      this.coalescer.invalidate();
+    }
   }
 
   /**
@@ -384,6 +494,9 @@ public class CloudIdentityGroupsClient {
     catch (GoogleJsonResponseException e) {
       translateAndThrowApiException(e);
     }
+    finally {
+      this.coalescer.invalidate();
+    }
   }
 
   //---------------------------------------------------------------------
@@ -398,19 +511,21 @@ public class CloudIdentityGroupsClient {
     @NotNull GroupKey groupKey,
     @NotNull IamPrincipalId member
   ) throws AccessException, IOException {
-    try {
-      return new MembershipId(client
-        .groups()
-        .memberships()
-        .lookup(groupKey.toString())
-        .setMemberKeyId(member.value())
-        .execute()
-        .getName());
-    }
-    catch (GoogleJsonResponseException e) {
-      translateAndThrowApiException(e);
-      return null; // Unreachable.
-    }
+    return this.coalescer.execute("lookupGroupMembership", List.of(groupKey, member), () -> {
+      try {
+        return new MembershipId(client
+          .groups()
+          .memberships()
+          .lookup(groupKey.toString())
+          .setMemberKeyId(member.value())
+          .execute()
+          .getName());
+      }
+      catch (GoogleJsonResponseException e) {
+        translateAndThrowApiException(e);
+        return null; // Unreachable.
+      }
+    });
   }
 
   /**
@@ -420,29 +535,31 @@ public class CloudIdentityGroupsClient {
     @NotNull CloudIdentity client,
     @NotNull MembershipId membershipId
   ) throws AccessException, IOException {
-    try {
-      var membership = client
-        .groups()
-        .memberships()
-        .get(membershipId.id)
-        .execute();
+    return this.coalescer.execute("getMembership", membershipId, () -> {
+      try {
+        var membership = client
+          .groups()
+          .memberships()
+          .get(membershipId.id)
+          .execute();
 
-      //
-      // The API automatically filters out expired memberships.
-      //
-      assert membership
-        .getRoles()
-        .stream()
-        .allMatch(
-          r -> r.getExpiryDetail() == null ||
-            Instant.parse(r.getExpiryDetail().getExpireTime()).isAfter(Instant.now()));
+        //
+        // The API automatically filters out expired memberships.
+        //
+        assert membership
+          .getRoles()
+          .stream()
+          .allMatch(
+            r -> r.getExpiryDetail() == null ||
+              Instant.parse(r.getExpiryDetail().getExpireTime()).isAfter(Instant.now()));
 
-      return membership;
-    }
-    catch (GoogleJsonResponseException e) {
-      translateAndThrowApiException(e);
-      return null; // Unreachable.
-    }
+        return membership;
+      }
+      catch (GoogleJsonResponseException e) {
+        translateAndThrowApiException(e);
+        return null; // Unreachable.
+      }
+    });
   }
 
   /**
@@ -451,7 +568,136 @@ public class CloudIdentityGroupsClient {
   public @NotNull Membership getMembership(
     @NotNull MembershipId membershipId
   ) throws AccessException, IOException {
-    return getMembership(createClient(), membershipId);
+    return AsyncRequests.await(getMembershipAsync(membershipId));
+  }
+
+  /**
+   * Get details for an existing group membership.
+   */
+  public @NotNull CompletableFuture<Membership> getMembershipAsync(
+    @NotNull MembershipId membershipId
+  ) {
+    return this.coalescer.executeAsync("getMembership", membershipId, () -> {
+      try {
+        return translateApiExceptions(AsyncRequests
+          .executeAsync(createClient()
+            .groups()
+            .memberships()
+            .get(membershipId.id))
+          .thenApply(membership -> {
+            //
+            // The API automatically filters out expired memberships.
+            //
+            assert membership
+              .getRoles()
+              .stream()
+              .allMatch(
+                r -> r.getExpiryDetail() == null ||
+                  Instant.parse(r.getExpiryDetail().getExpireTime()).isAfter(Instant.now()));
+
+            return membership;
+          }));
+      }
+      catch (IOException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    });
+  }
+
+  /**
+   * Get details for multiple existing group memberships.
+   *
+   * @return memberships, keyed by ID. Memberships that don't exist
+   * (or have expired) are omitted.
+   */
+  public @NotNull Map<MembershipId, Membership> getMemberships(
+    @NotNull Collection<MembershipId> membershipIds
+  ) throws AccessException, IOException {
+    return AsyncRequests.await(getMembershipsAsync(membershipIds));
+  }
+
+  /**
+   * Get details for multiple existing group memberships.
+   * <p>
+   * Lookups are combined into batch requests of up to MAX_BATCH_SIZE
+   * memberships each, so that resolving N memberships only takes
+   * N / MAX_BATCH_SIZE requests, which are performed concurrently.
+   *
+   * @return memberships, keyed by ID. Memberships that don't exist
+   * (or have expired) are omitted.
+   */
+  public @NotNull CompletableFuture<Map<MembershipId, Membership>> getMembershipsAsync(
+    @NotNull Collection<MembershipId> membershipIds
+  ) {
+    Preconditions.checkNotNull(membershipIds, "membershipIds");
+
+    var uniqueIds = List.copyOf(new LinkedHashSet<>(membershipIds));
+    if (uniqueIds.size() == 1) {
+      //
+      // Not worth the overhead of a batch request.
+      //
+      return getMembershipAsync(uniqueIds.get(0))
+        .handle((membership, e) -> membershipOrEmpty(uniqueIds.get(0), membership, e));
+    }
+
+    var chunks = new LinkedList<CompletableFuture<Map<MembershipId, Membership>>>();
+    try {
+      var client = createClient();
+
+      for (var chunk : Lists.partition(uniqueIds, MAX_BATCH_SIZE)) {
+        var results = AsyncRequests.executeBatchAsync(chunk
+          .stream()
+          .map(id -> {
+            try {
+              return client.groups().memberships().get(id.id);
+            }
+            catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          })
+          .toList());
+
+        var lookups = new LinkedList<CompletableFuture<Map<MembershipId, Membership>>>();
+        for (int i = 0; i < chunk.size(); i++) {
+          var membershipId = chunk.get(i);
+          lookups.add(translateApiExceptions(results.get(i))
+            .handle((membership, e) -> membershipOrEmpty(membershipId, membership, e)));
+        }
+
+        chunks.addAll(lookups);
+      }
+    }
+    catch (IOException | UncheckedIOException e) {
+      return CompletableFuture.failedFuture(Exceptions.unwrap(e));
+    }
+
+    return CompletableFutures
+      .allOf(chunks)
+      .thenApply(maps -> {
+        var memberships = new HashMap<MembershipId, Membership>();
+        maps.forEach(memberships::putAll);
+        return memberships;
+      });
+  }
+
+  /**
+   * Turn the result of a membership lookup into a map, ignoring
+   * memberships that have been removed (or have expired) in the meantime.
+   */
+  private static @NotNull Map<MembershipId, Membership> membershipOrEmpty(
+    @NotNull MembershipId membershipId,
+    Membership membership,
+    Throwable e
+  ) {
+    if (e == null) {
+      return Map.of(membershipId, membership);
+    }
+    else if (Exceptions.unwrap(e) instanceof ResourceNotFoundException) {
+      return Map.of();
+    }
+    else {
+      throw new CompletionException(Exceptions.unwrap(e));
+    }
   }
 
   /**
@@ -489,6 +735,9 @@ public class CloudIdentityGroupsClient {
         translateAndThrowApiException(e);
       }
     }
+    finally {
+      this.coalescer.invalidate();
+    }
   }
 
   private @NotNull MembershipId updateMembership(
@@ -571,6 +820,9 @@ public class CloudIdentityGroupsClient {
         return null; // Unreachable.
       }
     }
+    finally {
+      this.coalescer.invalidate();
+    }
   }
 
   /**
@@ -603,57 +855,127 @@ public class CloudIdentityGroupsClient {
   /**
    * List members of a group.
    */
-  private @NotNull List<Membership> listMemberships(
+  private @NotNull CompletableFuture<List<Membership>> listMembershipsAsync(
     @NotNull CloudIdentity client,
-    @NotNull GroupKey groupKey
-  ) throws AccessException, IOException {
-    try {
-      var result = new ArrayList<Membership>();
-      String pageToken = null;
-      do {
-        var page = client
-          .groups()
-          .memberships()
-          .list(groupKey.toString())
-          .setView("FULL") // Include expiry details
-          .setPageToken(pageToken)
-          .setPageSize(SEARCH_PAGE_SIZE)
-          .execute();
+    @NotNull GroupKey groupKey,
+    @NotNull FieldProjection projection
+  ) {
+    return this.coalescer.executeAsync(
+      "listMemberships",
+      Map.entry(groupKey, projection),
+      () -> translateApiExceptions(AsyncRequests
+        .executePagesAsync(
+          pageToken -> listMembershipsPage(client, groupKey, projection, pageToken),
+          CloudIdentityGroupsClient::membershipsOfPage,
+          ListMembershipsResponse::getNextPageToken)
+        .thenApply(Collections::unmodifiableList)));
+  }
 
-        if (page.getMemberships() != null) {
-          result.addAll(page.getMemberships());
-        }
+  private static @NotNull CloudIdentity.Groups.Memberships.List listMembershipsPage(
+    @NotNull CloudIdentity client,
+    @NotNull GroupKey groupKey,
+    @NotNull FieldProjection projection,
+    String pageToken
+  ) throws IOException {
+    return client
+      .groups()
+      .memberships()
+      .list(groupKey.toString())
+      .setView("FULL") // Include expiry details
+      .setFields(projection.forPage("memberships"))
+      .setPageToken(pageToken)
+      .setPageSize(SEARCH_PAGE_SIZE);
+  }
 
-        pageToken = page.getNextPageToken();
+  private static List<Membership> membershipsOfPage(
+    @NotNull ListMembershipsResponse page
+  ) {
+    //
+    // The API automatically filters out expired memberships.
+    //
+    assert Coalesce.emptyIfNull(page.getMemberships())
+      .stream()
+      .flatMap(m -> Coalesce.emptyIfNull(m.getRoles()).stream())
+      .allMatch(
+        r -> r.getExpiryDetail() == null ||
+        Instant.parse(r.getExpiryDetail().getExpireTime()).isAfter(Instant.now()));
 
-        //
-        // The API automatically filters out expired memberships.
-        //
-        assert Coalesce.emptyIfNull(page.getMemberships())
-          .stream()
-          .flatMap(m -> m.getRoles().stream())
-          .allMatch(
-            r -> r.getExpiryDetail() == null ||
-            Instant.parse(r.getExpiryDetail().getExpireTime()).isAfter(Instant.now()));
+    return page.getMemberships();
+  }
 
-      } while (pageToken != null);
+  /**
+   * List members of a group.
+   */
+  public @NotNull List<Membership> listMemberships(
+    @NotNull GroupId groupId
+  ) throws AccessException, IOException {
+    return listMemberships(groupId, FieldProjection.ALL);
+  }
 
-      return Collections.unmodifiableList(result);
+  /**
+   * List members of a group, only including the fields
+   * of the projection.
+   */
+  public @NotNull List<Membership> listMemberships(
+    @NotNull GroupId groupId,
+    @NotNull FieldProjection projection
+  ) throws AccessException, IOException {
+    return AsyncRequests.await(listMembershipsAsync(groupId, projection));
+  }
+
+  /**
+   * List members of a group.
+   */
+  public @NotNull CompletableFuture<List<Membership>> listMembershipsAsync(
+    @NotNull GroupId groupId
+  ) {
+    return listMembershipsAsync(groupId, FieldProjection.ALL);
+  }
+
+  /**
+   * List members of a group, only including the fields
+   * of the projection.
+   */
+  public @NotNull CompletableFuture<List<Membership>> listMembershipsAsync(
+    @NotNull GroupId groupId,
+    @NotNull FieldProjection projection
+  ) {
+    try {
+      var client = createClient();
+      return lookupGroupAsync(client, groupId)
+        .thenCompose(groupKey -> listMembershipsAsync(client, groupKey, projection));
     }
-    catch (GoogleJsonResponseException e) {
-      translateAndThrowApiException(e);
-      return null; // Unreachable.
+    catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
     }
   }
 
   /**
-   * List members of a group.
+   * List members of a group. Pages are fetched lazily, and the
+   * next page is prefetched while the current page is consumed.
    */
-  public @NotNull List<Membership> listMemberships(
+  public @NotNull Stream<Membership> streamMemberships(
     @NotNull GroupId groupId
+  ) throws AccessException, IOException {
+    return streamMemberships(groupId, FieldProjection.ALL);
+  }
+
+  /**
+   * List members of a group, only including the fields of the
+   * projection. Pages are fetched lazily, and the next page is
+   * prefetched while the current page is consumed.
+   */
+  public @NotNull Stream<Membership> streamMemberships(
+    @NotNull GroupId groupId,
+    @NotNull FieldProjection projection
   ) throws AccessException, IOException {
     var client = createClient();
-    return listMemberships(client, lookupGroup(client, groupId));
+    var groupKey = lookupGroup(client, groupId);
+
+    return AsyncRequests.streamPages(
+      fetchPages(pageToken -> listMembershipsPage(client, groupKey, projection, pageToken)),
+      CloudIdentityGroupsClient::membershipsOfPage,
+      ListMembershipsResponse::getNextPageToken);
   }
 
   /**
@@ -662,53 +984,169 @@ public class CloudIdentityGroupsClient {
   public @NotNull List<MembershipRelation> listMembershipsByUser(
     @NotNull IamPrincipalId member
   ) throws AccessException, IOException {
+    return listMembershipsByUser(member, FieldProjection.ALL);
+  }
+
+  /**
+   * List groups a user is a member of, only including the
+   * fields of the projection.
+   */
+  public @NotNull List<MembershipRelation> listMembershipsByUser(
+    @NotNull IamPrincipalId member,
+    @NotNull FieldProjection projection
+  ) throws AccessException, IOException {
+    return AsyncRequests.await(listMembershipsByUserAsync(member, projection));
+  }
+
+  /**
+   * List groups a user is a member of.
+   */
+  public @NotNull CompletableFuture<List<MembershipRelation>> listMembershipsByUserAsync(
+    @NotNull IamPrincipalId member
+  ) {
+    return listMembershipsByUserAsync(member, FieldProjection.ALL);
+  }
+
+  /**
+   * List groups a user is a member of, only including the
+   * fields of the projection.
+   */
+  public @NotNull CompletableFuture<List<MembershipRelation>> listMembershipsByUserAsync(
+    @NotNull IamPrincipalId member,
+    @NotNull FieldProjection projection
+  ) {
     Preconditions.checkArgument(member.value().indexOf('\'') < 0);
 
+    CloudIdentity client;
     try {
-      var client = createClient();
-      var result = new LinkedList<MembershipRelation>();
-      String pageToken = null;
-      do {
-        var page = client
-          .groups()
-          .memberships()
-          .searchDirectGroups("groups/-")
-          .setQuery(String.format("member_key_id=='%s'", member.value()))
-          .setPageToken(pageToken)
-          .setPageSize(SEARCH_PAGE_SIZE)
-          .execute();
+      client = createClient();
+    }
+    catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    //
+    // This call is on the critical path of resolving a user's
+    // subject, so hedge it if it's slow.
+    //
+    return this.coalescer.executeAsync(
+      "listMembershipsByUser",
+      Map.entry(member, projection),
+      () -> {
+        var memberships = RequestHedger.shared().executeAsync(
+          "cloudidentity.googleapis.com/listMembershipsByUser",
+          () -> AsyncRequests.executePagesAsync(
+            pageToken -> searchDirectGroupsPage(client, member, projection, pageToken),
+            CloudIdentityGroupsClient::membershipRelationsOfPage,
+            SearchDirectGroupsResponse::getNextPageToken));
+
+        return AsyncRequests.propagateCancellation(
+          memberships
+            .thenApply(Collections::<MembershipRelation>unmodifiableList)
+            .<List<MembershipRelation>>exceptionallyCompose(
+              CloudIdentityGroupsClient::translateSearchDirectGroupsException),
+          memberships);
+      });
+  }
+
+  /**
+   * List groups a user is a member of. Pages are fetched lazily, and the
+   * next page is prefetched while the current page is consumed.
+   */
+  public @NotNull Stream<MembershipRelation> streamMembershipsByUser(
+    @NotNull IamPrincipalId member
+  ) throws AccessException, IOException {
+    return streamMembershipsByUser(member, FieldProjection.ALL);
+  }
+
+  /**
+   * List groups a user is a member of, only including the fields of
+   * the projection. Pages are fetched lazily, and the next page is
+   * prefetched while the current page is consumed.
+   */
+  public @NotNull Stream<MembershipRelation> streamMembershipsByUser(
+    @NotNull IamPrincipalId member,
+    @NotNull FieldProjection projection
+  ) throws AccessException, IOException {
+    Preconditions.checkArgument(member.value().indexOf('\'') < 0);
 
-        if (page.getMemberships() != null) {
-          result.addAll(page.getMemberships());
+    var client = createClient();
+    return AsyncRequests.streamPages(
+      pageToken -> {
+        try {
+          return AsyncRequests
+            .executeAsync(searchDirectGroupsPage(client, member, projection, pageToken))
+            .exceptionallyCompose(CloudIdentityGroupsClient::translateSearchDirectGroupsException);
+        }
+        catch (IOException e) {
+          return CompletableFuture.failedFuture(e);
         }
+      },
+      CloudIdentityGroupsClient::membershipRelationsOfPage,
+      SearchDirectGroupsResponse::getNextPageToken);
+  }
 
-        //
-        // The API does **NOT** include expiry details.
-        //
-        assert page.getMemberships() == null || page
-          .getMemberships()
-          .stream()
-          .flatMap(m -> m.getRoles().stream())
-          .allMatch(r -> r.getExpiryDetail() == null);
+  private static @NotNull CloudIdentity.Groups.Memberships.SearchDirectGroups searchDirectGroupsPage(
+    @NotNull CloudIdentity client,
+    @NotNull IamPrincipalId member,
+    @NotNull FieldProjection projection,
+    String pageToken
+  ) throws IOException {
+    return client
+      .groups()
+      .memberships()
+      .searchDirectGroups("groups/-")
+      .setQuery(String.format("member_key_id=='%s'", member.value()))
+      .setFields(projection.forPage("memberships"))
+      .setPageToken(pageToken)
+      .setPageSize(SEARCH_PAGE_SIZE);
+  }
 
-        pageToken = page.getNextPageToken();
-      } while (pageToken != null);
+  private static List<MembershipRelation> membershipRelationsOfPage(
+    @NotNull SearchDirectGroupsResponse page
+  ) {
+    //
+    // The API does **NOT** include expiry details.
+    //
+    assert page.getMemberships() == null || page
+      .getMemberships()
+      .stream()
+      .flatMap(m -> Coalesce.emptyIfNull(m.getRoles()).stream())
+      .allMatch(r -> r.getExpiryDetail() == null);
 
-      return Collections.unmodifiableList(result);
-    }
-    catch (GoogleJsonResponseException e) {
-      if (e.getStatusCode() == 500) {
-        //
-        // The API returns a 500 if the user is invalid,
-        // treat as a 404 instead.
-        //
-        throw new ResourceNotFoundException("Not found", e);
-      }
-      else {
-        translateAndThrowApiException(e);
-      }
+    return page.getMemberships();
+  }
 
-      return null; // Unreachable.
+  /**
+   * Check if this client translates a response into an error that's
+   * caused by the caller, even though its status code indicates a
+   * server error.
+   *
+   * @param method method name, see {@link RequestMetrics#methodOf}
+   */
+  static boolean isCallerError(@NotNull String method, int statusCode) {
+    //
+    // searchDirectGroups returns a 500 if the user is invalid,
+    // see translateSearchDirectGroupsException.
+    //
+    return statusCode == 500 && SEARCH_DIRECT_GROUPS_METHOD.equals(method);
+  }
+
+  private static <T> @NotNull CompletableFuture<T> translateSearchDirectGroupsException(
+    @NotNull Throwable e
+  ) {
+    var cause = Exceptions.unwrap(e);
+    if (cause instanceof GoogleJsonResponseException apiException &&
+      apiException.getStatusCode() == 500) {
+      //
+      // The API returns a 500 if the user is invalid,
+      // treat as a 404 instead.
+      //
+      return CompletableFuture.failedFuture(
+        new ResourceNotFoundException("Not found", apiException));
+    }
+    else {
+      return translateApiExceptions(CompletableFuture.failedFuture(cause));
     }
   }
 
@@ -718,6 +1156,18 @@ public class CloudIdentityGroupsClient {
   public @NotNull List<Group> searchGroups(
     @NotNull String query,
     boolean fullDetails
+  ) throws AccessException, IOException {
+    return searchGroups(query, fullDetails, FieldProjection.ALL);
+  }
+
+  /**
+   * Search for groups that match a certain CEL query, only including
+   * the fields of the projection.
+   */
+  public @NotNull List<Group> searchGroups(
+    @NotNull String query,
+    boolean fullDetails,
+    @NotNull FieldProjection projection
   ) throws AccessException, IOException {
     try {
       var client = createClient();
@@ -731,6 +1181,7 @@ public class CloudIdentityGroupsClient {
           .setPageToken(pageToken)
           .setPageSize(SEARCH_PAGE_SIZE)
           .setView(fullDetails ? "FULL" : "BASIC")
+          .setFields(projection.forPage("groups"))
           .execute();
 
         if (page.getGroups() != null) {
@@ -748,12 +1199,60 @@ public class CloudIdentityGroupsClient {
     }
   }
 
+  /**
+   * Search for groups that match a certain CEL query. Pages are fetched
+   * lazily, and the next page is prefetched while the current page is
+   * consumed.
+   */
+  public @NotNull Stream<Group> streamGroups(
+    @NotNull String query,
+    boolean fullDetails
+  ) throws AccessException, IOException {
+    return streamGroups(query, fullDetails, FieldProjection.ALL);
+  }
+
+  /**
+   * Search for groups that match a certain CEL query, only including
+   * the fields of the projection. Pages are fetched lazily, and the
+   * next page is prefetched while the current page is consumed.
+   */
+  public @NotNull Stream<Group> streamGroups(
+    @NotNull String query,
+    boolean fullDetails,
+    @NotNull FieldProjection projection
+  ) throws AccessException, IOException {
+    var client = createClient();
+    return AsyncRequests.streamPages(
+      fetchPages(pageToken -> client
+        .groups()
+        .search()
+        .setQuery(query)
+        .setPageToken(pageToken)
+        .setPageSize(SEARCH_PAGE_SIZE)
+        .setView(fullDetails ? "FULL" : "BASIC")
+        .setFields(projection.forPage("groups"))),
+      SearchGroupsResponse::getGroups,
+      SearchGroupsResponse::getNextPageToken);
+  }
+
   /**
    * Search for groups by prefix.
    */
   public @NotNull List<Group> searchGroupsByPrefix(
     @NotNull String groupNamePrefix,
     boolean fullDetails
+  ) throws AccessException, IOException {
+    return searchGroupsByPrefix(groupNamePrefix, fullDetails, FieldProjection.ALL);
+  }
+
+  /**
+   * Search for groups by prefix, only including the fields
+   * of the projection.
+   */
+  public @NotNull List<Group> searchGroupsByPrefix(
+    @NotNull String groupNamePrefix,
+    boolean fullDetails,
+    @NotNull FieldProjection projection
   ) throws AccessException, IOException {
     Preconditions.checkArgument(groupNamePrefix.indexOf('\'') < 0);
 
@@ -761,7 +1260,39 @@ public class CloudIdentityGroupsClient {
       String.format("parent=='customers/%s' && group_key.startsWith('%s')",
         this.options.customerId,
         groupNamePrefix),
-      fullDetails);
+      fullDetails,
+      projection);
+  }
+
+  /**
+   * Search for groups by prefix. Pages are fetched lazily, and the
+   * next page is prefetched while the current page is consumed.
+   */
+  public @NotNull Stream<Group> streamGroupsByPrefix(
+    @NotNull String groupNamePrefix,
+    boolean fullDetails
+  ) throws AccessException, IOException {
+    return streamGroupsByPrefix(groupNamePrefix, fullDetails, FieldProjection.ALL);
+  }
+
+  /**
+   * Search for groups by prefix, only including the fields of the
+   * projection. Pages are fetched lazily, and the next page is
+   * prefetched while the current page is consumed.
+   */
+  public @NotNull Stream<Group> streamGroupsByPrefix(
+    @NotNull String groupNamePrefix,
+    boolean fullDetails,
+    @NotNull FieldProjection projection
+  ) throws AccessException, IOException {
+    Preconditions.checkArgument(groupNamePrefix.indexOf('\'') < 0);
+
+    return streamGroups(
+      String.format("parent=='customers/%s' && group_key.startsWith('%s')",
+        this.options.customerId,
+        groupNamePrefix),
+      fullDetails,
+      projection);
   }
 
   /**
@@ -0,0 +1,330 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Manages credentials that are expensive to refresh, such as
+ * impersonated credentials.
+ * <p>
+ * Managed credentials cache their access token and refresh it in
+ * the background before it expires, so that API requests don't
+ * have to wait for a token refresh.
+ */
+public class CredentialManager {
+  private final @NotNull Options options;
+  private final @NotNull ScheduledExecutorService scheduler;
+  private final @NotNull Map<String, ManagedCredentials> credentials = new ConcurrentHashMap<>();
+
+  public CredentialManager(
+    @NotNull Options options,
+    @NotNull ScheduledExecutorService scheduler
+  ) {
+    Preconditions.checkNotNull(options, "options");
+    Preconditions.checkNotNull(scheduler, "scheduler");
+
+    this.options = options;
+    this.scheduler = scheduler;
+  }
+
+  public CredentialManager(@NotNull Options options) {
+    this(
+      options,
+      Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "credential-refresh");
+        thread.setDaemon(true);
+        return thread;
+      }));
+  }
+
+  /**
+   * Manage a credential. The credential's token is refreshed
+   * in the background, starting immediately.
+   *
+   * @param name name of the credential, used for statistics.
+   * @return managed credentials, which must be used in place of
+   * the source credentials.
+   */
+  public @NotNull ManagedCredentials manage(
+    @NotNull String name,
+    @NotNull GoogleCredentials source
+  ) {
+    Preconditions.checkNotNull(name, "name");
+    Preconditions.checkNotNull(source, "source");
+
+    return this.credentials.computeIfAbsent(name, n -> {
+      var managed = new ManagedCredentials(n, source);
+      this.scheduler.execute(managed::backgroundRefresh);
+      return managed;
+    });
+  }
+
+  /**
+   * Get statistics, by credential name.
+   */
+  public @NotNull Map<String, Statistics> statistics() {
+    var statistics = new TreeMap<String, Statistics>();
+    this.credentials.forEach((name, credentials) -> statistics.put(name, credentials.statistics()));
+    return statistics;
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Options for the manager.
+   *
+   * @param refreshMargin time before expiry at which tokens are refreshed.
+   * @param retryInterval time to wait before retrying a failed refresh.
+   */
+  public record Options(
+    @NotNull Duration refreshMargin,
+    @NotNull Duration retryInterval
+  ) {
+    /**
+     * Refresh tokens before the client library considers them
+     * stale (which happens 3m45s before expiry).
+     */
+    public static final @NotNull Options DEFAULT = new Options(
+      Duration.ofMinutes(5),
+      Duration.ofSeconds(30));
+
+    public Options {
+      Preconditions.checkArgument(!refreshMargin.isNegative(), "refreshMargin must not be negative");
+      Preconditions.checkArgument(
+        !retryInterval.isNegative() && !retryInterval.isZero(),
+        "retryInterval must be positive");
+    }
+  }
+
+  /**
+   * Snapshot of refresh statistics for a credential.
+   *
+   * @param expiry expiry of the current token, if any.
+   * @param refreshes number of successful refreshes.
+   * @param failures number of failed refreshes.
+   * @param latency latency of the last refresh.
+   * @param lastError error of the last refresh, if it failed.
+   */
+  public record Statistics(
+    @Nullable Instant expiry,
+    long refreshes,
+    long failures,
+    @NotNull Duration latency,
+    @Nullable String lastError
+  ) {
+    /**
+     * Check if the credential has a token that hasn't expired yet.
+     */
+    public boolean isValid() {
+      return this.expiry != null && this.expiry.isAfter(Instant.now());
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "expiry: %s, refreshes: %d, failures: %d, latency: %d ms%s",
+        this.expiry,
+        this.refreshes,
+        this.failures,
+        this.latency.toMillis(),
+        this.lastError != null ? ", last error: " + this.lastError : "");
+    }
+  }
+
+  /**
+   * Credentials whose token is refreshed in the background.
+   * <p>
+   * Managed credentials are compared by identity so that API clients
+   * created for them can be reused, even as the token changes.
+   */
+  public class ManagedCredentials extends GoogleCredentials {
+    private final @NotNull String name;
+    private final @NotNull GoogleCredentials source;
+
+    /**
+     * Completes after the first refresh attempt, regardless
+     * of whether it succeeded or not.
+     */
+    private final @NotNull CompletableFuture<Void> firstRefresh = new CompletableFuture<>();
+
+    private final @NotNull AtomicLong refreshes = new AtomicLong();
+    private final @NotNull AtomicLong failures = new AtomicLong();
+    private volatile @NotNull Duration latency = Duration.ZERO;
+    private volatile @Nullable Exception lastError;
+
+    private ManagedCredentials(
+      @NotNull String name,
+      @NotNull GoogleCredentials source
+    ) {
+      this.name = name;
+      this.source = source;
+    }
+
+    /**
+     * Underlying credentials.
+     */
+    public @NotNull GoogleCredentials source() {
+      return this.source;
+    }
+
+    /**
+     * Fetch a new token from the source credentials. This method
+     * is normally only called from the background thread, but the
+     * client library might also call it if the background refresh
+     * has been failing and the token has expired.
+     */
+    @Override
+    public AccessToken refreshAccessToken() throws IOException {
+      var start = System.nanoTime();
+      try {
+        var token = this.source.refreshAccessToken();
+        this.refreshes.incrementAndGet();
+        this.lastError = null;
+        return token;
+      }
+      catch (IOException | RuntimeException e) {
+        this.failures.incrementAndGet();
+        this.lastError = e;
+        throw e;
+      }
+      finally {
+        this.latency = Duration.ofNanos(System.nanoTime() - start);
+      }
+    }
+
+    /**
+     * Check that the credentials are usable, without refreshing them.
+     * <p>
+     * Waits for the first background refresh to complete, after that,
+     * the method returns immediately.
+     *
+     * @throws NotAuthenticatedException if the credentials don't have
+     * a valid token because refreshing them failed.
+     */
+    public void verify() throws NotAuthenticatedException, IOException {
+      try {
+        this.firstRefresh.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Waiting for credentials to be refreshed was interrupted", e);
+      }
+      catch (ExecutionException e) {
+        throw new IllegalStateException(e); // Unreachable, the future never fails.
+      }
+
+      if (!statistics().isValid()) {
+        throw new NotAuthenticatedException(
+          String.format("Refreshing the credentials '%s' failed", this.name),
+          this.lastError);
+      }
+    }
+
+    /**
+     * Get statistics for this credential.
+     */
+    public @NotNull Statistics statistics() {
+      var token = getAccessToken();
+      var lastError = this.lastError;
+      return new Statistics(
+        token != null && token.getExpirationTime() != null
+          ? token.getExpirationTime().toInstant()
+          : null,
+        this.refreshes.get(),
+        this.failures.get(),
+        this.latency,
+        lastError != null ? lastError.getMessage() : null);
+    }
+
+    private void backgroundRefresh() {
+      Duration delay;
+      try {
+        refresh();
+
+        var token = getAccessToken();
+        if (token == null || token.getExpirationTime() == null) {
+          //
+          // Token doesn't expire, so there's no need to refresh it again.
+          //
+          return;
+        }
+
+        delay = Duration
+          .between(Instant.now(), token.getExpirationTime().toInstant())
+          .minus(CredentialManager.this.options.refreshMargin);
+        if (delay.isNegative()) {
+          delay = Duration.ZERO;
+        }
+      }
+      catch (Exception e) {
+        //
+        // Keep the current token (if any), and try again later. The
+        // failure is recorded by refreshAccessToken.
+        //
+        delay = CredentialManager.this.options.retryInterval;
+      }
+      finally {
+        this.firstRefresh.complete(null);
+      }
+
+      CredentialManager.this.scheduler.schedule(
+        this::backgroundRefresh,
+        delay.toMillis(),
+        TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return this == obj;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Managed credentials '%s'", this.name);
+    }
+  }
+}
@@ -26,20 +26,39 @@ import org.jetbrains.annotations.NotNull;
 /**
  * @param name name of the check that was performed
  * @param successful result of the check
- * @param details error message in case the check failed
+ * @param details error message in case the check failed, or
+ *                additional information in case it succeeded
+ * @param degraded indicates that the check succeeded, but that
+ *                 some functionality is impaired, for example
+ *                 because a backend is unavailable
  */
 public record DiagnosticsResult(
   @NotNull String name,
   boolean successful,
-  String details
+  String details,
+  boolean degraded
 ) {
   public DiagnosticsResult(@NotNull String name) {
     this(name, true, null);
   }
 
+  public DiagnosticsResult(
+    @NotNull String name,
+    boolean successful,
+    String details
+  ) {
+    this(name, successful, details, false);
+  }
+
   @Override
   public String toString() {
-    if (this.successful) {
+    if (this.successful && this.degraded) {
+      return String.format("%s: Degraded (%s)", this.name, this.details);
+    }
+    else if (this.successful && this.details != null) {
+      return String.format("%s: OK (%s)", this.name, this.details);
+    }
+    else if (this.successful) {
       return String.format("%s: OK", this.name);
     }
     else {
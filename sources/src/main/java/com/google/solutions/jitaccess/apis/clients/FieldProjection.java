@@ -0,0 +1,75 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Set of fields to include in an API response, passed to the API
+ * as the 'fields' parameter to request a partial response.
+ * <p>
+ * Callers that only read a few fields of each item can use a
+ * projection to reduce the size of responses and the time it
+ * takes to parse them.
+ *
+ * @param fields fields of each item, in the API's field mask
+ *               syntax, for example "name,groupKey(id)". Null
+ *               to include all fields.
+ */
+public record FieldProjection(@Nullable String fields) {
+  /**
+   * Include all fields.
+   */
+  public static final @NotNull FieldProjection ALL = new FieldProjection(null);
+
+  public FieldProjection {
+    Preconditions.checkArgument(
+      fields == null || !fields.isBlank(),
+      "fields must not be blank");
+  }
+
+  /**
+   * Create a projection that includes the given fields of each item.
+   */
+  public static @NotNull FieldProjection of(@NotNull String... fields) {
+    Preconditions.checkArgument(fields.length > 0, "fields must not be empty");
+
+    return new FieldProjection(String.join(",", Arrays.asList(fields)));
+  }
+
+  /**
+   * Get the value of the 'fields' parameter for a request that
+   * returns a page of items.
+   *
+   * @param collection name of the field that contains the items
+   * @return parameter value, or null if all fields are included
+   */
+  @Nullable String forPage(@NotNull String collection) {
+    return this.fields == null
+      ? null
+      : String.format("nextPageToken,%s(%s)", collection, this.fields);
+  }
+}
@@ -21,31 +21,129 @@
 
 package com.google.solutions.jitaccess.apis.clients;
 
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.GoogleUtils;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpIOExceptionHandler;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestInitializer;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseInterceptor;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.client.util.SslUtils;
 import com.google.auth.Credentials;
 import com.google.auth.http.HttpCredentialsAdapter;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.solutions.jitaccess.common.Lazy;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import javax.net.ssl.SSLContext;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.net.http.HttpClient;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Factory for creating transports based on the 'javax.net.ssl.trustStore'
  * system property.
+ * <p>
+ * Transports use a connection pool, so that connections (and their TLS
+ * sessions) can be reused across requests. Creating a transport is
+ * expensive, so clients should use the shared transport whenever possible.
  */
 public class HttpTransport {
   private HttpTransport() {}
 
-  public static @NotNull NetHttpTransport newTransport() throws GeneralSecurityException, IOException {
+  private static @NotNull PoolOptions sharedPoolOptions = PoolOptions.DEFAULT;
+
+  /**
+   * Process-wide transport, initialized on first use.
+   */
+  private static final @NotNull Lazy<Pool> sharedPool =
+    Lazy.initializePessimistically(() -> newPool(sharedPoolOptions));
+
+  /**
+   * Process-wide non-blocking client, initialized on first use.
+   */
+  private static final @NotNull Lazy<HttpClient> sharedAsyncClient =
+    Lazy.initializePessimistically(HttpTransport::newAsyncClient);
+
+  /**
+   * Configure the pool used by the shared transport. This method
+   * must be called before the shared transport is used for the
+   * first time, unless the options are unchanged.
+   */
+  public static synchronized void configureSharedTransport(@NotNull PoolOptions options) {
+    Preconditions.checkNotNull(options, "options");
+    Preconditions.checkState(
+      !sharedPool.isDone() || sharedPoolOptions.equals(options),
+      "The shared transport has been initialized already");
+
+    sharedPoolOptions = options;
+  }
+
+  /**
+   * Get the process-wide, pooled transport.
+   */
+  public static @NotNull com.google.api.client.http.HttpTransport sharedTransport() throws IOException {
+    try {
+      return sharedPool.get().transport;
+    }
+    catch (UncheckedExecutionException e) {
+      throw new IOException("Initializing the HTTP transport failed", e.getCause());
+    }
+  }
+
+  /**
+   * Get statistics for the connection pool of the shared transport.
+   */
+  public static @NotNull PoolStatistics sharedTransportStatistics() throws IOException {
+    try {
+      return sharedPool.get().statistics();
+    }
+    catch (UncheckedExecutionException e) {
+      throw new IOException("Initializing the HTTP transport failed", e.getCause());
+    }
+  }
+
+  /**
+   * Create a new transport that uses a dedicated connection pool.
+   */
+  public static @NotNull com.google.api.client.http.HttpTransport newTransport(
+  ) throws GeneralSecurityException, IOException {
+    return newPool(PoolOptions.DEFAULT).transport;
+  }
+
+  /**
+   * Get the process-wide, non-blocking HTTP client. The client
+   * multiplexes requests over HTTP/2 connections where possible, so
+   * it doesn't require a thread per outstanding request.
+   */
+  public static @NotNull HttpClient sharedAsyncClient() throws IOException {
+    try {
+      return sharedAsyncClient.get();
+    }
+    catch (UncheckedExecutionException e) {
+      throw new IOException("Initializing the HTTP client failed", e.getCause());
+    }
+  }
+
+  private static @NotNull SSLContext newSslContext() throws GeneralSecurityException, IOException {
     var trustStore = System.getProperty("javax.net.ssl.trustStore");
     var trustStorePassword = System.getProperty("javax.net.ssl.trustStorePassword");
 
+    KeyStore keyStore;
     if (trustStore != null && trustStorePassword != null) {
       //
       // Use a custom keystore.
@@ -55,21 +153,64 @@ public class HttpTransport {
       // trace and decrypt HTTPS traffic.
       //
       try (var trustStoreStream = new FileInputStream(trustStore)) {
-        var keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
         keyStore.load(trustStoreStream, trustStorePassword.toCharArray());
-
-        return new NetHttpTransport
-          .Builder()
-          .trustCertificates(keyStore)
-          .build();
       }
     }
     else {
       //
       // Use the Google keystore.
       //
-      return GoogleNetHttpTransport.newTrustedTransport();
+      keyStore = GoogleUtils.getCertificateTrustStore();
     }
+
+    return SslUtils.initSslContext(
+      SslUtils.getTlsSslContext(),
+      keyStore,
+      SslUtils.getPkixTrustManagerFactory());
+  }
+
+  private static @NotNull HttpClient newAsyncClient() throws GeneralSecurityException, IOException {
+    return HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2)
+      .followRedirects(HttpClient.Redirect.NEVER)
+      .sslContext(newSslContext())
+      .build();
+  }
+
+  private static @NotNull Pool newPool(
+    @NotNull PoolOptions options
+  ) throws GeneralSecurityException, IOException {
+    Preconditions.checkNotNull(options, "options");
+
+    var sslContext = newSslContext();
+
+    var connectionManager = new PoolingHttpClientConnectionManager(
+      RegistryBuilder.<ConnectionSocketFactory>create()
+        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+        .register("https", new SSLConnectionSocketFactory(sslContext))
+        .build(),
+      null,
+      null,
+      null,
+      options.connectionTimeToLive.isZero() ? -1 : options.connectionTimeToLive.toMillis(),
+      TimeUnit.MILLISECONDS);
+    connectionManager.setMaxTotal(options.maxConnections);
+    connectionManager.setDefaultMaxPerRoute(options.maxConnectionsPerHost);
+
+    //
+    // Check connections that have been idle for a while before
+    // reusing them, the server might have closed them in the meantime.
+    //
+    connectionManager.setValidateAfterInactivity((int)Duration.ofSeconds(2).toMillis());
+
+    var httpClient = ApacheHttpTransport.newDefaultHttpClientBuilder()
+      .setConnectionManager(connectionManager)
+      .evictExpiredConnections()
+      .evictIdleConnections(options.idleTimeout.toMillis(), TimeUnit.MILLISECONDS)
+      .build();
+
+    return new Pool(new ApacheHttpTransport(httpClient), connectionManager);
   }
 
   public static @NotNull HttpRequestInitializer newAuthenticatingRequestInitializer(
@@ -92,15 +233,423 @@ public class HttpTransport {
         if (!httpOptions.connectTimeout.isZero()) {
           request.setConnectTimeout((int) httpOptions.connectTimeout.toMillis());
         }
+
+        //
+        // Retry transient errors. The credentials adapter has already
+        // installed a handler that refreshes credentials on 401 errors,
+        // so we chain to that.
+        //
+        var retryPolicy = RetryPolicy.shared();
+        var retryHandler = new RetryingResponseHandler(
+          retryPolicy,
+          request.getUnsuccessfulResponseHandler());
+        request.setUnsuccessfulResponseHandler(retryHandler);
+        request.setResponseInterceptor(retryHandler);
+        request.setNumberOfRetries(Math.max(
+          request.getNumberOfRetries(),
+          retryPolicy.options().maxAttempts()));
+
+        //
+        // Record latency and outcome of the request, and fail fast if
+        // the backend's circuit breaker is open. The interceptor runs
+        // after waiting for quota, so that the metrics reflect the
+        // backend's latency, not our own.
+        //
+        var metricsInterceptor = new MetricsInterceptor(
+          RequestMetrics.shared(),
+          CircuitBreaker.shared(),
+          request.getInterceptor(),
+          request.getResponseInterceptor(),
+          request.getIOExceptionHandler());
+        request.setResponseInterceptor(metricsInterceptor);
+        request.setIOExceptionHandler(metricsInterceptor);
+
+        //
+        // Meter requests, including retries, against the quota of
+        // the credential. The priority is determined by the thread
+        // that builds the request.
+        //
+        request.setInterceptor(new QuotaInterceptor(
+          QuotaGovernor.shared(),
+          credentials,
+          QuotaGovernor.currentPriority(),
+          metricsInterceptor));
       }
     };
   }
 
+  /**
+   * Interceptor that waits for quota before a request is sent.
+   */
+  static class QuotaInterceptor implements HttpExecuteInterceptor {
+    private final @NotNull QuotaGovernor governor;
+    private final @NotNull Credentials credentials;
+    private final @NotNull QuotaGovernor.Priority priority;
+    private final @Nullable HttpExecuteInterceptor next;
+
+    QuotaInterceptor(
+      @NotNull QuotaGovernor governor,
+      @NotNull Credentials credentials,
+      @NotNull QuotaGovernor.Priority priority,
+      @Nullable HttpExecuteInterceptor next
+    ) {
+      this.governor = governor;
+      this.credentials = credentials;
+      this.priority = priority;
+      this.next = next;
+    }
+
+    /**
+     * Credentials whose quota the interceptor meters.
+     */
+    @NotNull Credentials credentials() {
+      return this.credentials;
+    }
+
+    /**
+     * Wait for quota without blocking, for requests that
+     * aren't sent using the request's own transport.
+     *
+     * @param backend host (and port, if non-default) of the API
+     * @param permits number of API requests
+     */
+    @NotNull CompletableFuture<Void> acquireAsync(@NotNull String backend, int permits) {
+      return this.governor
+        .bucket(this.credentials, backend)
+        .acquireAsync(permits, this.priority);
+    }
+
+    @Override
+    public void intercept(@NotNull HttpRequest request) throws IOException {
+      this.governor
+        .bucket(this.credentials, request.getUrl().toURI().getAuthority())
+        .acquire(1, this.priority);
+
+      if (this.next != null) {
+        this.next.intercept(request);
+      }
+    }
+  }
+
+  /**
+   * Interceptor that records the latency and outcome of a request,
+   * including its retries, and reports the outcome to the backend's
+   * circuit breaker.
+   * <p>
+   * Interceptors are stateful, so each request must use a separate instance.
+   */
+  static class MetricsInterceptor
+    implements HttpExecuteInterceptor, HttpResponseInterceptor, HttpIOExceptionHandler {
+    private final @NotNull RequestMetrics metrics;
+    private final @NotNull CircuitBreaker circuitBreaker;
+    private final @Nullable HttpExecuteInterceptor nextInterceptor;
+    private final @Nullable HttpResponseInterceptor nextResponseInterceptor;
+    private final @Nullable HttpIOExceptionHandler nextIOExceptionHandler;
+
+    private volatile @Nullable RequestMetrics.Recorder recorder;
+    private volatile @Nullable String backend;
+    private volatile @Nullable String method;
+    private volatile long permit;
+    private volatile long start;
+    private volatile int attempts;
+
+    MetricsInterceptor(
+      @NotNull RequestMetrics metrics,
+      @NotNull CircuitBreaker circuitBreaker,
+      @Nullable HttpExecuteInterceptor nextInterceptor,
+      @Nullable HttpResponseInterceptor nextResponseInterceptor,
+      @Nullable HttpIOExceptionHandler nextIOExceptionHandler
+    ) {
+      this.metrics = metrics;
+      this.circuitBreaker = circuitBreaker;
+      this.nextInterceptor = nextInterceptor;
+      this.nextResponseInterceptor = nextResponseInterceptor;
+      this.nextIOExceptionHandler = nextIOExceptionHandler;
+    }
+
+    /**
+     * Record the start of an attempt, for requests that aren't
+     * sent using the request's own transport.
+     *
+     * @param backend host (and port, if non-default) of the API
+     * @throws BackendUnavailableException if this is the first
+     * attempt and the backend's circuit breaker is open
+     */
+    void beginAttempt(
+      @NotNull String backend,
+      @NotNull String httpMethod,
+      @NotNull String path
+    ) throws BackendUnavailableException {
+      if (this.attempts == 0) {
+        //
+        // Retries don't need to be permitted again, the retry
+        // policy takes care of not overloading the backend.
+        //
+        this.permit = this.circuitBreaker.acquire(backend);
+
+        this.method = RequestMetrics.methodOf(httpMethod, path);
+        this.recorder = this.metrics.recorder(backend, this.method);
+        this.backend = backend;
+        this.start = System.nanoTime();
+      }
+
+      this.attempts++;
+    }
+
+    /**
+     * Record the outcome of the final attempt, for requests that
+     * aren't sent using the request's own transport.
+     *
+     * @param statusCode status code, or {@link RequestMetrics#NO_RESPONSE}
+     * @param responseBytes size of the response, or 0 if unknown
+     */
+    void complete(int statusCode, long responseBytes) {
+      var recorder = this.recorder;
+      var backend = this.backend;
+      var method = this.method;
+      if (recorder != null && backend != null && method != null) {
+        var latency = System.nanoTime() - this.start;
+        recorder.record(
+          latency,
+          statusCode,
+          this.attempts,
+          responseBytes);
+        this.circuitBreaker.record(
+          backend,
+          this.permit,
+          statusCode,
+          CloudIdentityGroupsClient.isCallerError(method, statusCode),
+          latency);
+      }
+    }
+
+    /**
+     * Record that the request was cancelled, for requests that
+     * aren't sent using the request's own transport.
+     * <p>
+     * Cancelled requests don't have an outcome, so they're not
+     * recorded, but they release their circuit breaker permit.
+     */
+    void cancel() {
+      var backend = this.backend;
+      if (backend != null) {
+        this.circuitBreaker.release(backend, this.permit);
+      }
+    }
+
+    @Override
+    public void intercept(@NotNull HttpRequest request) throws IOException {
+      var path = request.getUrl().getRawPath();
+      beginAttempt(
+        request.getUrl().toURI().getAuthority(),
+        request.getRequestMethod(),
+        path != null ? path : "");
+
+      if (this.nextInterceptor != null) {
+        this.nextInterceptor.intercept(request);
+      }
+    }
+
+    @Override
+    public void interceptResponse(@NotNull HttpResponse response) throws IOException {
+      //
+      // Only called for the final response.
+      //
+      var contentLength = response.getHeaders().getContentLength();
+      complete(
+        response.getStatusCode(),
+        contentLength != null ? contentLength : 0);
+
+      if (this.nextResponseInterceptor != null) {
+        this.nextResponseInterceptor.interceptResponse(response);
+      }
+    }
+
+    @Override
+    public boolean handleIOException(
+      @NotNull HttpRequest request,
+      boolean supportsRetry
+    ) throws IOException {
+      if (this.nextIOExceptionHandler != null &&
+        this.nextIOExceptionHandler.handleIOException(request, supportsRetry)) {
+        return true;
+      }
+
+      //
+      // The request won't be retried, so this is the final outcome.
+      //
+      complete(RequestMetrics.NO_RESPONSE, 0);
+      return false;
+    }
+  }
+
+  /**
+   * Handler that retries requests according to a retry policy.
+   * <p>
+   * Handlers are stateful, so each request must use a separate instance.
+   */
+  static class RetryingResponseHandler
+    implements HttpUnsuccessfulResponseHandler, HttpResponseInterceptor {
+    private final @NotNull RetryPolicy policy;
+    private final @Nullable HttpUnsuccessfulResponseHandler next;
+    private int attempt = 1;
+
+    RetryingResponseHandler(
+      @NotNull RetryPolicy policy,
+      @Nullable HttpUnsuccessfulResponseHandler next
+    ) {
+      this.policy = policy;
+      this.next = next;
+    }
+
+    @Override
+    public boolean handleResponse(
+      @NotNull HttpRequest request,
+      @NotNull HttpResponse response,
+      boolean supportsRetry
+    ) throws IOException {
+      if (this.next != null && this.next.handleResponse(request, response, supportsRetry)) {
+        return true;
+      }
+      else if (!supportsRetry) {
+        return false;
+      }
+
+      var delay = this.policy.nextRetryDelay(
+        request.getUrl().toURI().getAuthority(),
+        request.getRequestMethod(),
+        response.getStatusCode(),
+        response.getHeaders().getRetryAfter(),
+        this.attempt);
+      if (delay.isEmpty()) {
+        return false;
+      }
+
+      try {
+        Thread.sleep(delay.get().toMillis());
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+
+      this.attempt++;
+      return true;
+    }
+
+    @Override
+    public void interceptResponse(@NotNull HttpResponse response) {
+      //
+      // Only called for the final response. Unsuccessful responses
+      // have been accounted for by handleResponse already.
+      //
+      if (response.isSuccessStatusCode()) {
+        this.policy.recordSuccess(response.getRequest().getUrl().toURI().getAuthority());
+      }
+    }
+  }
+
+  /**
+   * Options for API requests.
+   *
+   * @param connectTimeout connect timeout, or zero for default
+   * @param readTimeout read timeout, or zero for default
+   * @param writeTimeout write timeout, or zero for default
+   * @param rootUrl root URL to use instead of the API's default
+   *                endpoint, for example a local emulator. Null
+   *                to use the default endpoint.
+   */
   public record Options(
     Duration connectTimeout,
     Duration readTimeout,
-    Duration writeTimeout
+    Duration writeTimeout,
+    @Nullable String rootUrl
   ) {
     public static final @NotNull Options DEFAULT = new Options(Duration.ZERO, Duration.ZERO, Duration.ZERO);
+
+    public Options(
+      Duration connectTimeout,
+      Duration readTimeout,
+      Duration writeTimeout
+    ) {
+      this(connectTimeout, readTimeout, writeTimeout, null);
+    }
+
+    public Options {
+      Preconditions.checkArgument(
+        rootUrl == null || rootUrl.endsWith("/"),
+        "rootUrl must end with a slash");
+    }
+  }
+
+  /**
+   * Options for the connection pool of a transport.
+   *
+   * @param maxConnections maximum number of connections, across all hosts
+   * @param maxConnectionsPerHost maximum number of connections to a single host
+   * @param idleTimeout duration after which idle connections are closed
+   * @param connectionTimeToLive maximum lifetime of a connection, or zero
+   *                             for unlimited lifetime
+   */
+  public record PoolOptions(
+    int maxConnections,
+    int maxConnectionsPerHost,
+    @NotNull Duration idleTimeout,
+    @NotNull Duration connectionTimeToLive
+  ) {
+    public static final @NotNull PoolOptions DEFAULT = new PoolOptions(
+      200,
+      50,
+      Duration.ofSeconds(60),
+      Duration.ZERO);
+
+    public PoolOptions {
+      Preconditions.checkArgument(maxConnections > 0, "maxConnections must be positive");
+      Preconditions.checkArgument(maxConnectionsPerHost > 0, "maxConnectionsPerHost must be positive");
+      Preconditions.checkArgument(
+        maxConnectionsPerHost <= maxConnections,
+        "maxConnectionsPerHost must not exceed maxConnections");
+      Preconditions.checkArgument(!idleTimeout.isNegative(), "idleTimeout must not be negative");
+      Preconditions.checkArgument(!connectionTimeToLive.isNegative(), "connectionTimeToLive must not be negative");
+    }
+  }
+
+  /**
+   * Snapshot of connection pool statistics.
+   *
+   * @param leased number of connections that are currently in use
+   * @param pending number of requests waiting for a connection
+   * @param available number of idle connections
+   * @param max maximum number of connections
+   */
+  public record PoolStatistics(
+    int leased,
+    int pending,
+    int available,
+    int max
+  ) {
+    @Override
+    public String toString() {
+      return String.format(
+        "leased: %d, pending: %d, available: %d, max: %d",
+        this.leased,
+        this.pending,
+        this.available,
+        this.max);
+    }
+  }
+
+  private record Pool(
+    @NotNull ApacheHttpTransport transport,
+    @NotNull PoolingHttpClientConnectionManager connectionManager
+  ) {
+    @NotNull PoolStatistics statistics() {
+      var stats = this.connectionManager.getTotalStats();
+      return new PoolStatistics(
+        stats.getLeased(),
+        stats.getPending(),
+        stats.getAvailable(),
+        stats.getMax());
+    }
   }
 }
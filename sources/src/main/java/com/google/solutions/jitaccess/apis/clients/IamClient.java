@@ -48,9 +48,11 @@ public class IamClient {
 
   private @NotNull Iam createClient() throws IOException
   {
-    return Builders
-      .newBuilder(Iam.Builder::new, this.credentials, this.httpOptions)
-      .build();
+    return Builders.getClient(
+      Iam.class,
+      Iam.Builder::new,
+      this.credentials,
+      this.httpOptions);
   }
 
   public IamClient(
@@ -46,9 +46,11 @@ public class IamCredentialsClient {
 
   private @NotNull IAMCredentials createClient() throws IOException
   {
-    return Builders
-      .newBuilder(IAMCredentials.Builder::new, this.credentials, this.httpOptions)
-      .build();
+    return Builders.getClient(
+      IAMCredentials.class,
+      IAMCredentials.Builder::new,
+      this.credentials,
+      this.httpOptions);
   }
 
   public IamCredentialsClient(
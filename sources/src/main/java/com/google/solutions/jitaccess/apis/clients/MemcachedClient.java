@@ -0,0 +1,297 @@
+//
+// Copyright 2022 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.solutions.jitaccess.common.CacheStore;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Cache store that uses a server that speaks the memcached text protocol,
+ * such as Memorystore for Memcached.
+ * <p>
+ * The client keeps a small pool of connections. Connections that
+ * encounter an error are discarded.
+ */
+public class MemcachedClient implements CacheStore {
+  /**
+   * Maximum length of a key, longer keys are hashed.
+   */
+  static final int MAX_KEY_LENGTH = 250;
+
+  /**
+   * Maximum TTL that the protocol treats as relative time.
+   */
+  private static final Duration MAX_TTL = Duration.ofDays(30);
+
+  private final @NotNull Options options;
+  private final @NotNull BlockingQueue<Connection> idleConnections;
+
+  public MemcachedClient(@NotNull Options options) {
+    Preconditions.checkNotNull(options, "options");
+
+    this.options = options;
+    this.idleConnections = new ArrayBlockingQueue<>(options.maxIdleConnections);
+  }
+
+  /**
+   * Convert a key into a form that the protocol permits, which
+   * excludes whitespace and control characters.
+   */
+  static @NotNull String encodeKey(@NotNull String key) {
+    var valid = key.length() <= MAX_KEY_LENGTH && key
+      .chars()
+      .allMatch(c -> c > 0x20 && c < 0x7f);
+
+    return valid
+      ? key
+      : "sha256:" + Hashing.sha256().hashString(key, StandardCharsets.UTF_8);
+  }
+
+  private <T> T execute(@NotNull Operation<T> operation) throws IOException {
+    var connection = this.idleConnections.poll();
+    if (connection == null) {
+      connection = new Connection(this.options);
+    }
+
+    try {
+      var result = operation.execute(connection);
+      if (!this.idleConnections.offer(connection)) {
+        connection.close();
+      }
+
+      return result;
+    }
+    catch (IOException | RuntimeException e) {
+      //
+      // The connection might be in an inconsistent state,
+      // so don't reuse it.
+      //
+      connection.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public @NotNull Optional<byte[]> get(@NotNull String key) throws IOException {
+    var encodedKey = encodeKey(key);
+    return execute(connection -> {
+      connection.writeLine("get " + encodedKey);
+
+      var line = connection.readLine();
+      if (line.equals("END")) {
+        return Optional.empty();
+      }
+
+      //
+      // Response has the format VALUE <key> <flags> <bytes>.
+      //
+      var header = line.split(" ");
+      if (header.length < 4 || !header[0].equals("VALUE") || !header[1].equals(encodedKey)) {
+        throw new MemcachedException("Unexpected response to get: " + line);
+      }
+
+      var value = connection.readBlock(Integer.parseInt(header[3]));
+      connection.expectLine("END");
+      return Optional.of(value);
+    });
+  }
+
+  @Override
+  public void put(
+    @NotNull String key,
+    byte @NotNull [] value,
+    @NotNull Duration ttl
+  ) throws IOException {
+    Preconditions.checkArgument(
+      !ttl.isNegative() && !ttl.isZero() && ttl.compareTo(MAX_TTL) <= 0,
+      "ttl must be positive and must not exceed 30 days");
+
+    var encodedKey = encodeKey(key);
+    execute(connection -> {
+      connection.writeLine(String.format(
+        "set %s 0 %d %d",
+        encodedKey,
+        Math.max(1, ttl.toSeconds()),
+        value.length));
+      connection.writeBlock(value);
+      connection.expectLine("STORED");
+      return null;
+    });
+  }
+
+  @Override
+  public void remove(@NotNull String key) throws IOException {
+    var encodedKey = encodeKey(key);
+    execute(connection -> {
+      connection.writeLine("delete " + encodedKey);
+
+      var line = connection.readLine();
+      if (!line.equals("DELETED") && !line.equals("NOT_FOUND")) {
+        throw new MemcachedException("Unexpected response to delete: " + line);
+      }
+
+      return null;
+    });
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * @param host server host
+   * @param port server port, typically 11211
+   * @param timeout timeout for connecting and reading
+   * @param maxIdleConnections maximum number of connections to keep
+   */
+  public record Options(
+    @NotNull String host,
+    int port,
+    @NotNull Duration timeout,
+    int maxIdleConnections
+  ) {
+    public static final int DEFAULT_PORT = 11211;
+
+    public Options {
+      Preconditions.checkArgument(!host.isBlank(), "host must not be blank");
+      Preconditions.checkArgument(port > 0 && port < 65536, "port must be valid");
+      Preconditions.checkArgument(
+        !timeout.isNegative() && !timeout.isZero(),
+        "timeout must be positive");
+      Preconditions.checkArgument(maxIdleConnections > 0, "maxIdleConnections must be positive");
+    }
+  }
+
+  public static class MemcachedException extends IOException {
+    public MemcachedException(String message) {
+      super(message);
+    }
+  }
+
+  @FunctionalInterface
+  private interface Operation<T> {
+    T execute(@NotNull Connection connection) throws IOException;
+  }
+
+  private static class Connection implements Closeable {
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    private final @NotNull Socket socket;
+    private final @NotNull InputStream input;
+    private final @NotNull OutputStream output;
+
+    Connection(@NotNull Options options) throws IOException {
+      this.socket = new Socket();
+      try {
+        this.socket.setTcpNoDelay(true);
+        this.socket.setSoTimeout((int)options.timeout.toMillis());
+        this.socket.connect(
+          new InetSocketAddress(options.host, options.port),
+          (int)options.timeout.toMillis());
+
+        this.input = new BufferedInputStream(this.socket.getInputStream());
+        this.output = new BufferedOutputStream(this.socket.getOutputStream());
+      }
+      catch (IOException e) {
+        this.socket.close();
+        throw e;
+      }
+    }
+
+    void writeLine(@NotNull String line) throws IOException {
+      this.output.write(line.getBytes(StandardCharsets.US_ASCII));
+      this.output.write(CRLF);
+      this.output.flush();
+    }
+
+    void writeBlock(byte @NotNull [] block) throws IOException {
+      this.output.write(block);
+      this.output.write(CRLF);
+      this.output.flush();
+    }
+
+    @NotNull String readLine() throws IOException {
+      var line = new StringBuilder();
+      while (true) {
+        var c = this.input.read();
+        if (c < 0) {
+          throw new EOFException("The connection was closed by the server");
+        }
+        else if (c == '\r') {
+          if (this.input.read() != '\n') {
+            throw new MemcachedException("Malformed response");
+          }
+
+          var result = line.toString();
+          if (result.equals("ERROR") ||
+            result.startsWith("CLIENT_ERROR") ||
+            result.startsWith("SERVER_ERROR")) {
+            throw new MemcachedException(result);
+          }
+
+          return result;
+        }
+        else {
+          line.append((char)c);
+        }
+      }
+    }
+
+    void expectLine(@NotNull String expected) throws IOException {
+      var line = readLine();
+      if (!line.equals(expected)) {
+        throw new MemcachedException(String.format(
+          "Unexpected response, expected %s but got %s", expected, line));
+      }
+    }
+
+    byte @NotNull [] readBlock(int length) throws IOException {
+      var block = this.input.readNBytes(length);
+      if (block.length != length || this.input.read() != '\r' || this.input.read() != '\n') {
+        throw new MemcachedException("Malformed value");
+      }
+
+      return block;
+    }
+
+    @Override
+    public void close() {
+      try {
+        this.socket.close();
+      }
+      catch (IOException ignored) {
+      }
+    }
+  }
+}
@@ -50,9 +50,11 @@ public class PubSubClient {
   }
 
   private @NotNull Pubsub createClient() throws IOException {
-    return Builders
-      .newBuilder(Pubsub.Builder::new, this.credentials, this.httpOptions)
-      .build();
+    return Builders.getClient(
+      Pubsub.class,
+      Pubsub.Builder::new,
+      this.credentials,
+      this.httpOptions);
   }
 
   public String publish(
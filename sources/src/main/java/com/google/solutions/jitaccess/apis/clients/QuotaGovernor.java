@@ -0,0 +1,477 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.auth.Credentials;
+import com.google.auth.oauth2.ImpersonatedCredentials;
+import com.google.auth.oauth2.ServiceAccountCredentials;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Client-side governor that keeps API usage within quota.
+ * <p>
+ * Google APIs enforce per-minute quotas. Once a burst of background
+ * work (such as a reconciliation) exhausts a quota, interactive requests
+ * start failing too. The governor avoids that by metering requests
+ * using a token bucket per API and credential:
+ * <ul>
+ *   <li>Requests that find the bucket empty are queued briefly instead
+ *       of being sent and failing with a 429.</li>
+ *   <li>Background requests can't use the last tokens of a bucket,
+ *       these are reserved for interactive requests.</li>
+ * </ul>
+ * Requests are interactive by default, background work must
+ * mark itself by using a {@link #backgroundScope()}.
+ */
+public class QuotaGovernor {
+  private static volatile @NotNull QuotaGovernor shared = new QuotaGovernor(Options.DEFAULT);
+
+  private static final @NotNull ThreadLocal<Priority> currentPriority =
+    ThreadLocal.withInitial(() -> Priority.INTERACTIVE);
+
+  private final @NotNull Options options;
+  private final @NotNull LongSupplier nanoClock;
+
+  /**
+   * Buckets, by credential and backend. Credentials are compared by
+   * identity and weakly referenced. Buckets don't reference their
+   * credential, so they're released once the credential is no
+   * longer used.
+   */
+  private final @NotNull Cache<Credentials, Map<String, Bucket>> buckets =
+    CacheBuilder.newBuilder()
+      .weakKeys()
+      .build();
+
+  QuotaGovernor(
+    @NotNull Options options,
+    @NotNull LongSupplier nanoClock
+  ) {
+    Preconditions.checkNotNull(options, "options");
+    Preconditions.checkNotNull(nanoClock, "nanoClock");
+
+    this.options = options;
+    this.nanoClock = nanoClock;
+  }
+
+  public QuotaGovernor(@NotNull Options options) {
+    this(options, System::nanoTime);
+  }
+
+  /**
+   * Get the process-wide governor, which applies to all API clients.
+   */
+  public static @NotNull QuotaGovernor shared() {
+    return shared;
+  }
+
+  /**
+   * Replace the process-wide governor. This resets all buckets.
+   */
+  public static void configureShared(@NotNull Options options) {
+    shared = new QuotaGovernor(options);
+  }
+
+  /**
+   * Get the priority of requests issued by the current thread.
+   */
+  public static @NotNull Priority currentPriority() {
+    return currentPriority.get();
+  }
+
+  /**
+   * Mark requests issued by the current thread as background
+   * requests until the scope is closed.
+   * <p>
+   * The priority applies to requests that are started on the
+   * current thread, it doesn't carry over to other threads.
+   */
+  public static @NotNull Scope backgroundScope() {
+    return scope(Priority.BACKGROUND);
+  }
+
+  /**
+   * Apply a priority to requests issued by the current thread until
+   * the scope is closed.
+   * <p>
+   * Use this method to carry a priority over to work that's deferred
+   * or performed on a different thread.
+   */
+  public static @NotNull Scope scope(@NotNull Priority priority) {
+    Preconditions.checkNotNull(priority, "priority");
+
+    var previous = currentPriority.get();
+    currentPriority.set(priority);
+    return () -> currentPriority.set(previous);
+  }
+
+  /**
+   * Get the bucket for a credential and backend.
+   *
+   * @param backend host (and port, if non-default) of the API
+   */
+  public @NotNull Bucket bucket(
+    @NotNull Credentials credentials,
+    @NotNull String backend
+  ) {
+    Map<String, Bucket> bucketsForCredential;
+    try {
+      bucketsForCredential = this.buckets.get(credentials, ConcurrentHashMap::new);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException(e); // Unreachable, the loader doesn't throw.
+    }
+
+    return bucketsForCredential.computeIfAbsent(
+      backend,
+      b -> new Bucket(principalOf(credentials)));
+  }
+
+  /**
+   * Get statistics, by backend and principal.
+   */
+  public @NotNull Map<String, Statistics> statistics() {
+    var statistics = new TreeMap<String, Statistics>();
+    for (var bucketsForCredential : this.buckets.asMap().values()) {
+      bucketsForCredential.forEach((backend, bucket) -> statistics.put(
+        String.format("%s (%s)", backend, bucket.principal),
+        bucket.statistics()));
+    }
+
+    return statistics;
+  }
+
+  /**
+   * Get a description of the principal behind a credential
+   * that's suitable for diagnostics.
+   */
+  private static @NotNull String principalOf(@NotNull Credentials credentials) {
+    if (credentials instanceof ImpersonatedCredentials impersonatedCredentials) {
+      return impersonatedCredentials.getAccount();
+    }
+    else if (credentials instanceof ServiceAccountCredentials serviceAccountCredentials) {
+      return serviceAccountCredentials.getClientEmail();
+    }
+    else {
+      return credentials.getClass().getSimpleName();
+    }
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Priority of a request.
+   */
+  public enum Priority {
+    /**
+     * Request on behalf of a user who's waiting for the result.
+     */
+    INTERACTIVE,
+
+    /**
+     * Request for maintenance work, such as reconciling groups or
+     * loading policies.
+     */
+    BACKGROUND
+  }
+
+  /**
+   * Scope that applies a priority to the current thread.
+   */
+  @FunctionalInterface
+  public interface Scope extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  /**
+   * Token bucket for a single API and credential.
+   * <p>
+   * Requests reserve tokens ahead of time: If the bucket doesn't hold
+   * enough tokens, the request takes them anyway and waits until the
+   * bucket would have refilled. That way, requests are admitted in
+   * the order they arrived.
+   * <p>
+   * Background requests never take the reserved tokens. Instead, they
+   * queue by going into a separate debt. Refilled tokens first replenish
+   * the reserve, then pay off the background debt, so interactive
+   * requests never have to wait behind queued background requests.
+   */
+  public class Bucket {
+    private final @NotNull String principal;
+
+    /**
+     * Tokens available to interactive requests, negative if interactive
+     * requests are queued. Background requests only take tokens above
+     * the reserve.
+     */
+    private double tokens;
+
+    /**
+     * Tokens owed by queued background requests.
+     */
+    private double backgroundDebt;
+
+    private long lastRefill;
+    private long throttled;
+    private long overdrafts;
+
+    private Bucket(@NotNull String principal) {
+      this.principal = principal;
+      this.tokens = options.burst;
+      this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * Take tokens from the bucket.
+     *
+     * @return how long the caller must wait before sending the request
+     */
+    synchronized @NotNull Duration reserve(int permits, @NotNull Priority priority) {
+      Preconditions.checkArgument(permits > 0, "permits must be positive");
+
+      if (options.isDisabled()) {
+        return Duration.ZERO;
+      }
+
+      var nanosPerToken = TimeUnit.MINUTES.toNanos(1) / (double)options.requestsPerMinute;
+      var reserve = options.burst * options.reservedFraction;
+
+      //
+      // Refill the bucket based on the time that elapsed since
+      // the last reservation. Replenish the reserve first, then pay
+      // off background debt, and only then fill the rest of the bucket.
+      //
+      var now = nanoClock.getAsLong();
+      var refill = (now - this.lastRefill) / nanosPerToken;
+      this.lastRefill = now;
+
+      if (this.tokens < reserve) {
+        var replenished = Math.min(refill, reserve - this.tokens);
+        this.tokens += replenished;
+        refill -= replenished;
+      }
+
+      var repaid = Math.min(refill, this.backgroundDebt);
+      this.backgroundDebt -= repaid;
+      refill -= repaid;
+
+      this.tokens = Math.min(options.burst, this.tokens + refill);
+
+      double deficit;
+      Duration maxWait;
+      if (priority == Priority.BACKGROUND) {
+        //
+        // Take what's available above the reserve, and queue
+        // for the rest.
+        //
+        var taken = Math.min(permits, Math.max(0, this.tokens - reserve));
+        this.tokens -= taken;
+
+        var missing = permits - taken;
+        deficit = missing > 0
+          ? Math.max(0, reserve - this.tokens) + this.backgroundDebt + missing
+          : 0;
+        maxWait = options.backgroundMaxWait;
+
+        //
+        // Cap the debt so that an overloaded bucket recovers
+        // within a reasonable time.
+        //
+        this.backgroundDebt = Math.min(options.burst, this.backgroundDebt + missing);
+      }
+      else {
+        deficit = permits - this.tokens;
+        maxWait = options.maxWait;
+
+        this.tokens = Math.max(-options.burst, this.tokens - permits);
+      }
+
+      var wait = deficit > 0
+        ? Duration.ofNanos((long)Math.ceil(deficit * nanosPerToken))
+        : Duration.ZERO;
+
+      if (!wait.isZero()) {
+        this.throttled++;
+      }
+
+      if (wait.compareTo(maxWait) > 0) {
+        //
+        // The queue is too long. Let the request proceed after the
+        // maximum wait time, and let the API decide whether to
+        // accept it.
+        //
+        this.overdrafts++;
+        wait = maxWait;
+      }
+
+      return wait;
+    }
+
+    /**
+     * Take tokens from the bucket, waiting for the bucket
+     * to refill if necessary.
+     */
+    public void acquire(int permits, @NotNull Priority priority) throws InterruptedIOException {
+      var wait = reserve(permits, priority);
+      if (!wait.isZero()) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(wait.toNanos());
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Waiting for quota was interrupted");
+        }
+      }
+    }
+
+    /**
+     * Take tokens from the bucket without blocking.
+     *
+     * @return future that completes once the caller may
+     * send the request
+     */
+    public @NotNull CompletableFuture<Void> acquireAsync(int permits, @NotNull Priority priority) {
+      var wait = reserve(permits, priority);
+      if (wait.isZero()) {
+        return CompletableFuture.completedFuture(null);
+      }
+      else {
+        return CompletableFuture.runAsync(
+          () -> {},
+          CompletableFuture.delayedExecutor(wait.toNanos(), TimeUnit.NANOSECONDS));
+      }
+    }
+
+    synchronized @NotNull Statistics statistics() {
+      return new Statistics(
+        (long)Math.floor(this.tokens - this.backgroundDebt),
+        options.burst,
+        this.throttled,
+        this.overdrafts);
+    }
+  }
+
+  /**
+   * Options for the governor.
+   *
+   * @param requestsPerMinute sustained number of requests per minute
+   *                          that each credential may send to an API,
+   *                          or zero to disable the governor
+   * @param burst size of the bucket, this is the number of requests
+   *              that can be sent in quick succession
+   * @param reservedFraction fraction of the bucket reserved for
+   *                         interactive requests
+   * @param maxWait maximum time an interactive request is queued
+   * @param backgroundMaxWait maximum time a background request is queued
+   */
+  public record Options(
+    int requestsPerMinute,
+    int burst,
+    double reservedFraction,
+    @NotNull Duration maxWait,
+    @NotNull Duration backgroundMaxWait
+  ) {
+    public static final @NotNull Options DEFAULT = new Options(
+      3000,
+      Duration.ofSeconds(5),
+      Duration.ofSeconds(60));
+
+    public static final @NotNull Options DISABLED = new Options(
+      0,
+      Duration.ZERO,
+      Duration.ZERO);
+
+    /**
+     * Create options with a burst size that covers 10 seconds
+     * worth of requests, a quarter of which are reserved for
+     * interactive requests.
+     */
+    public Options(
+      int requestsPerMinute,
+      @NotNull Duration maxWait,
+      @NotNull Duration backgroundMaxWait
+    ) {
+      this(
+        requestsPerMinute,
+        Math.max(1, requestsPerMinute / 6),
+        0.25,
+        maxWait,
+        backgroundMaxWait);
+    }
+
+    public Options {
+      Preconditions.checkArgument(requestsPerMinute >= 0, "requestsPerMinute must not be negative");
+      Preconditions.checkArgument(burst > 0, "burst must be positive");
+      Preconditions.checkArgument(
+        reservedFraction >= 0 && reservedFraction < 1,
+        "reservedFraction must be between 0 and 1");
+      Preconditions.checkArgument(!maxWait.isNegative(), "maxWait must not be negative");
+      Preconditions.checkArgument(!backgroundMaxWait.isNegative(), "backgroundMaxWait must not be negative");
+    }
+
+    boolean isDisabled() {
+      return this.requestsPerMinute == 0;
+    }
+  }
+
+  /**
+   * Snapshot of a bucket.
+   *
+   * @param level number of tokens left, negative if requests are queued
+   * @param capacity size of the bucket
+   * @param throttled number of requests that had to wait
+   * @param overdrafts number of requests that were sent after the maximum
+   *                   wait time even though the bucket hadn't refilled
+   */
+  public record Statistics(
+    long level,
+    long capacity,
+    long throttled,
+    long overdrafts
+  ) {
+    @Override
+    public String toString() {
+      return String.format(
+        "level: %d/%d, throttled: %d, overdrafts: %d",
+        this.level,
+        this.capacity,
+        this.throttled,
+        this.overdrafts);
+    }
+  }
+}
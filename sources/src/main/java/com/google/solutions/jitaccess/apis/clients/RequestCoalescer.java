@@ -0,0 +1,396 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.api.client.json.GenericJson;
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent, identical read requests so that they
+ * share a single in-flight API call.
+ * <p>
+ * The first caller performs the request, callers that arrive while
+ * the request is in flight wait for it and receive the same result, or
+ * the same exception. Results aren't cached beyond that: once the
+ * request completes, the next caller performs a new request.
+ * <p>
+ * Each caller receives its own copy of the result, so that callers
+ * can't affect each other's results.
+ * <p>
+ * Writes can change the result of requests that are in flight. Clients
+ * therefore call {@link #invalidate()} after each write, so that
+ * subsequent reads don't join requests that started before the write.
+ * <p>
+ * Callers of asynchronous requests can cancel their future. Once all
+ * callers have cancelled, the in-flight request is cancelled too.
+ */
+public class RequestCoalescer {
+  /**
+   * Counters, by API. Clients can have multiple instances, so
+   * we aggregate their counters.
+   */
+  private static final @NotNull Map<String, Counters> countersByApi = new ConcurrentHashMap<>();
+
+  private final @NotNull Map<Key, InFlight<?>> inFlight = new ConcurrentHashMap<>();
+  private final @NotNull AtomicLong generation = new AtomicLong();
+  private final @NotNull Counters counters;
+
+  /**
+   * @param api name of the API, used for statistics.
+   */
+  public RequestCoalescer(@NotNull String api) {
+    Preconditions.checkNotNull(api, "api");
+
+    this.counters = countersByApi.computeIfAbsent(api, a -> new Counters());
+  }
+
+  /**
+   * Perform a request, or join an identical request that's
+   * already in flight.
+   *
+   * @param operation name of the operation
+   * @param argument arguments that, together with the operation,
+   *                 identify the request. Must implement equals
+   *                 and hashCode.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T execute(
+    @NotNull String operation,
+    @NotNull Object argument,
+    @NotNull Request<T> request
+  ) throws AccessException, IOException {
+    var key = new Key(operation, argument, this.generation.get());
+    var entry = new InFlight<T>(key, true);
+
+    var existing = join(key, entry);
+    if (existing != null) {
+      this.counters.coalesced.incrementAndGet();
+      return (T)AsyncRequests.await(existing);
+    }
+
+    this.counters.requests.incrementAndGet();
+    T result = null;
+    Throwable failure = null;
+    try {
+      result = request.execute();
+      return result;
+    }
+    catch (Throwable e) {
+      failure = e;
+      throw e;
+    }
+    finally {
+      //
+      // Clean up even if the request failed with an error, otherwise
+      // followers would wait for the request forever.
+      //
+      this.inFlight.remove(key, entry);
+      entry.complete(result, failure);
+    }
+  }
+
+  /**
+   * Perform a request asynchronously, or join an identical
+   * request that's already in flight.
+   *
+   * @param operation name of the operation
+   * @param argument arguments that, together with the operation,
+   *                 identify the request. Must implement equals
+   *                 and hashCode.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> @NotNull CompletableFuture<T> executeAsync(
+    @NotNull String operation,
+    @NotNull Object argument,
+    @NotNull Supplier<CompletableFuture<T>> request
+  ) {
+    var key = new Key(operation, argument, this.generation.get());
+    var entry = new InFlight<T>(key, false);
+
+    var existing = join(key, entry);
+    if (existing != null) {
+      this.counters.coalesced.incrementAndGet();
+      return (CompletableFuture<T>)existing;
+    }
+
+    var future = entry.join();
+
+    this.counters.requests.incrementAndGet();
+    try {
+      var source = request.get();
+      entry.attach(source);
+      source.whenComplete((result, e) -> {
+        this.inFlight.remove(key, entry);
+        entry.complete(result, e);
+      });
+    }
+    catch (RuntimeException e) {
+      this.inFlight.remove(key, entry);
+      entry.complete(null, e);
+    }
+    catch (Error e) {
+      this.inFlight.remove(key, entry);
+      entry.complete(null, e);
+      throw e;
+    }
+
+    return future;
+  }
+
+  /**
+   * Stop coalescing with requests that are currently in flight.
+   * <p>
+   * Callers that have already joined these requests still receive
+   * their results, but subsequent callers perform new requests.
+   * Clients call this method after a write, so that reads that follow
+   * the write don't receive results that predate it.
+   */
+  public void invalidate() {
+    this.generation.incrementAndGet();
+  }
+
+  /**
+   * Register an entry, or join the entry of an identical
+   * request that's already in flight.
+   *
+   * @return a future for the existing entry's result, or null
+   * if the entry has been registered.
+   */
+  private @Nullable CompletableFuture<?> join(
+    @NotNull Key key,
+    @NotNull InFlight<?> entry
+  ) {
+    while (true) {
+      var existing = this.inFlight.putIfAbsent(key, entry);
+      if (existing == null) {
+        return null;
+      }
+
+      var future = existing.join();
+      if (future != null) {
+        return future;
+      }
+
+      //
+      // The existing request has been abandoned because all its
+      // callers cancelled, or it completed in the meantime.
+      //
+      this.inFlight.remove(key, existing);
+    }
+  }
+
+  /**
+   * Copy a result so that callers don't share mutable objects.
+   */
+  @SuppressWarnings("unchecked")
+  static <T> @Nullable T copyOf(@Nullable T result) {
+    if (result instanceof GenericJson json) {
+      return (T)json.clone();
+    }
+    else if (result instanceof List<?> list) {
+      return (T)list
+        .stream()
+        .map(RequestCoalescer::copyOf)
+        .toList();
+    }
+    else {
+      //
+      // Records and other values are immutable.
+      //
+      return result;
+    }
+  }
+
+  /**
+   * Get statistics, by API.
+   */
+  public static @NotNull Map<String, Statistics> statistics() {
+    var statistics = new TreeMap<String, Statistics>();
+    countersByApi.forEach((api, counters) -> statistics.put(
+      api,
+      new Statistics(counters.requests.get(), counters.coalesced.get())));
+    return statistics;
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * A read request.
+   */
+  @FunctionalInterface
+  public interface Request<T> {
+    T execute() throws AccessException, IOException;
+  }
+
+  /**
+   * Snapshot of coalescing statistics for an API.
+   *
+   * @param requests number of requests that were sent to the API
+   * @param coalesced number of requests that joined an in-flight
+   *                  request instead
+   */
+  public record Statistics(
+    long requests,
+    long coalesced
+  ) {
+    @Override
+    public String toString() {
+      return String.format(
+        "requests: %d, coalesced: %d",
+        this.requests,
+        this.coalesced);
+    }
+  }
+
+  /**
+   * Identifies a request. Requests from different generations
+   * are never coalesced.
+   */
+  private record Key(
+    @NotNull String operation,
+    @NotNull Object argument,
+    long generation
+  ) {}
+
+  /**
+   * A request that's in flight, and the callers waiting for it.
+   */
+  private class InFlight<T> {
+    private final @NotNull Key key;
+
+    /**
+     * Whether the first caller performs the request synchronously,
+     * and receives its result without waiting for a future.
+     */
+    private final boolean synchronous;
+    private final @NotNull List<CompletableFuture<T>> callers = new ArrayList<>();
+    private @Nullable CompletableFuture<T> source;
+    private boolean abandoned;
+    private boolean completed;
+
+    private InFlight(@NotNull Key key, boolean synchronous) {
+      this.key = key;
+      this.synchronous = synchronous;
+    }
+
+    /**
+     * Add a caller.
+     *
+     * @return a future for the caller, or null if the request has
+     * been abandoned or has completed already.
+     */
+    synchronized @Nullable CompletableFuture<T> join() {
+      if (this.abandoned || this.completed) {
+        return null;
+      }
+
+      //
+      // Give each caller its own future so that one caller can't
+      // cancel the request for everybody.
+      //
+      var future = new CompletableFuture<T>();
+      this.callers.add(future);
+      future.whenComplete((result, e) -> {
+        if (future.isCancelled()) {
+          leave(future);
+        }
+      });
+
+      return future;
+    }
+
+    /**
+     * Attach the future of the request that's performed
+     * on behalf of all callers.
+     */
+    synchronized void attach(@NotNull CompletableFuture<T> source) {
+      this.source = source;
+      if (this.abandoned) {
+        source.cancel(true);
+      }
+    }
+
+    /**
+     * Pass the result of the request to all callers.
+     */
+    void complete(@Nullable T result, @Nullable Throwable failure) {
+      List<CompletableFuture<T>> callers;
+      synchronized (this) {
+        this.completed = true;
+        callers = List.copyOf(this.callers);
+      }
+
+      for (int i = 0; i < callers.size(); i++) {
+        if (failure != null) {
+          callers.get(i).completeExceptionally(failure);
+        }
+        else {
+          //
+          // Only copy the result if there's more than one caller,
+          // which is the exception.
+          //
+          callers.get(i).complete(i == 0 && !this.synchronous ? result : copyOf(result));
+        }
+      }
+    }
+
+    /**
+     * Remove a caller that cancelled.
+     */
+    private synchronized void leave(@NotNull CompletableFuture<T> caller) {
+      this.callers.remove(caller);
+      if (this.synchronous || !this.callers.isEmpty() || this.completed) {
+        return;
+      }
+
+      //
+      // Nobody is waiting for the result anymore, so don't
+      // let the request hold on to resources.
+      //
+      this.abandoned = true;
+      RequestCoalescer.this.inFlight.remove(this.key, this);
+      if (this.source != null) {
+        this.source.cancel(true);
+      }
+    }
+  }
+
+  private static class Counters {
+    private final @NotNull AtomicLong requests = new AtomicLong();
+    private final @NotNull AtomicLong coalesced = new AtomicLong();
+  }
+}
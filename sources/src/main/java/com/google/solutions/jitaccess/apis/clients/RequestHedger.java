@@ -0,0 +1,329 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Hedges idempotent reads to reduce tail latency: If a request
+ * hasn't completed within a percentile of recently observed
+ * latencies, an identical second request is sent, and whichever
+ * request succeeds first wins.
+ * <p>
+ * To limit the extra load that hedging causes, hedges are subject
+ * to a per-operation budget: Each request earns a fraction of a
+ * token, and each hedge consumes a token.
+ * <p>
+ * Hedging is opt-in, both per operation (by calling {@link #executeAsync})
+ * and globally (by configuring a percentile).
+ */
+public class RequestHedger {
+  /**
+   * Size of the hedge budget, per operation.
+   */
+  static final int BUDGET_TOKENS = 10;
+
+  /**
+   * Number of recent latencies to track, per operation.
+   */
+  static final int SAMPLES = 128;
+
+  /**
+   * Minimum number of latencies to observe before hedging.
+   */
+  static final int MIN_SAMPLES = 20;
+
+  private static volatile @NotNull RequestHedger shared = new RequestHedger(Options.DISABLED);
+
+  private final @NotNull Options options;
+  private final @NotNull Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+
+  public RequestHedger(@NotNull Options options) {
+    Preconditions.checkNotNull(options, "options");
+
+    this.options = options;
+  }
+
+  /**
+   * Get the process-wide hedger, which applies to all API clients.
+   */
+  public static @NotNull RequestHedger shared() {
+    return shared;
+  }
+
+  /**
+   * Replace the process-wide hedger. This resets all tracked
+   * latencies, budgets, and statistics.
+   */
+  public static void configureShared(@NotNull Options options) {
+    shared = new RequestHedger(options);
+  }
+
+  public @NotNull Options options() {
+    return this.options;
+  }
+
+  /**
+   * Perform an idempotent read, and hedge it if it's slow.
+   * <p>
+   * Only successful responses win. If the initial request fails,
+   * the returned future fails too, regardless of whether a hedge
+   * is still in flight. Hedges that fail are ignored.
+   * <p>
+   * Cancelling the returned future cancels the initial request and
+   * the hedge.
+   *
+   * @param operation name of the operation, requests to the same
+   *                  operation must have comparable latencies.
+   * @param request sends the request, called once for the initial
+   *                request, and once more for the hedge.
+   */
+  public <T> @NotNull CompletableFuture<T> executeAsync(
+    @NotNull String operation,
+    @NotNull Supplier<CompletableFuture<T>> request
+  ) {
+    if (!this.options.isEnabled()) {
+      return request.get();
+    }
+
+    var tracker = this.trackers.computeIfAbsent(operation, o -> new Tracker());
+    var delay = tracker.recordRequest(this.options);
+
+    //
+    // Whichever response claims the result first wins. Claiming it
+    // before completing the future ensures that statistics are
+    // up to date by the time callers see the result.
+    //
+    var result = new CompletableFuture<T>();
+    var claimed = new AtomicBoolean();
+    var start = System.nanoTime();
+    var initial = request.get();
+    AsyncRequests.propagateCancellation(result, initial);
+    initial.whenComplete((response, e) -> {
+      if (e != null) {
+        if (claimed.compareAndSet(false, true)) {
+          result.completeExceptionally(e);
+        }
+      }
+      else {
+        //
+        // Record the latency even if a hedge won, otherwise the
+        // percentile would underestimate slow requests.
+        //
+        tracker.recordLatency(System.nanoTime() - start);
+        if (claimed.compareAndSet(false, true)) {
+          result.complete(response);
+        }
+      }
+    });
+
+    if (delay != null) {
+      CompletableFuture
+        .delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS)
+        .execute(() -> {
+          if (claimed.get() || result.isDone() || !tracker.tryHedge()) {
+            return;
+          }
+
+          var hedge = request.get();
+          AsyncRequests.propagateCancellation(result, hedge);
+          hedge.whenComplete((response, e) -> {
+            if (e == null && claimed.compareAndSet(false, true)) {
+              tracker.recordWin();
+              result.complete(response);
+            }
+          });
+        });
+    }
+
+    return result;
+  }
+
+  /**
+   * Get statistics, by operation.
+   */
+  public @NotNull Map<String, Statistics> statistics() {
+    var statistics = new TreeMap<String, Statistics>();
+    this.trackers.forEach((operation, tracker) -> statistics.put(operation, tracker.statistics()));
+    return statistics;
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Options for hedging requests.
+   *
+   * @param percentile latency percentile after which to hedge,
+   *                   or 0 to disable hedging
+   * @param minDelay minimum time to wait before hedging
+   * @param budgetTokenRatio fraction of a hedge token that each request
+   *                         earns, which caps the fraction of requests
+   *                         that are hedged
+   */
+  public record Options(
+    int percentile,
+    @NotNull Duration minDelay,
+    double budgetTokenRatio
+  ) {
+    public static final @NotNull Options DISABLED = new Options(
+      0,
+      Duration.ofMillis(20),
+      0.05);
+
+    public Options {
+      Preconditions.checkArgument(
+        percentile >= 0 && percentile < 100,
+        "percentile must be between 0 and 99");
+      Preconditions.checkArgument(!minDelay.isNegative(), "minDelay must not be negative");
+      Preconditions.checkArgument(
+        budgetTokenRatio > 0 && budgetTokenRatio <= 1,
+        "budgetTokenRatio must be between 0 and 1");
+    }
+
+    public boolean isEnabled() {
+      return this.percentile > 0;
+    }
+  }
+
+  /**
+   * Snapshot of hedging statistics for an operation.
+   *
+   * @param requests number of requests, excluding hedges
+   * @param hedges number of hedges that were sent
+   * @param wins number of hedges that completed before the
+   *             initial request
+   * @param throttled number of hedges that were suppressed because
+   *                  the hedge budget was exhausted
+   * @param delay current delay after which requests are hedged,
+   *              or null if not enough latencies have been observed
+   */
+  public record Statistics(
+    long requests,
+    long hedges,
+    long wins,
+    long throttled,
+    @Nullable Duration delay
+  ) {
+    /**
+     * Fraction of requests that were hedged.
+     */
+    public double hedgeRate() {
+      return this.requests > 0 ? (double)this.hedges / this.requests : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "requests: %d, hedges: %d (%.1f%%), wins: %d, throttled: %d, delay: %s",
+        this.requests,
+        this.hedges,
+        hedgeRate() * 100,
+        this.wins,
+        this.throttled,
+        this.delay != null ? this.delay.toMillis() + " ms" : "n/a");
+    }
+  }
+
+  /**
+   * Tracks recent latencies and the hedge budget of an operation.
+   */
+  private static class Tracker {
+    private final long @NotNull [] latencies = new long[SAMPLES];
+    private long samples;
+    private long samplesAtLastUpdate;
+    private @Nullable Duration delay;
+    private double tokens;
+    private long requests;
+    private long hedges;
+    private long wins;
+    private long throttled;
+
+    /**
+     * @return delay after which to hedge, or null if the request
+     * shouldn't be hedged
+     */
+    synchronized @Nullable Duration recordRequest(@NotNull Options options) {
+      this.requests++;
+      this.tokens = Math.min(BUDGET_TOKENS, this.tokens + options.budgetTokenRatio);
+
+      if (this.samples >= MIN_SAMPLES &&
+        (this.delay == null || this.samples - this.samplesAtLastUpdate >= SAMPLES / 8)) {
+        //
+        // Recalculate the percentile periodically, not on every request.
+        //
+        this.samplesAtLastUpdate = this.samples;
+
+        var sorted = Arrays.copyOf(this.latencies, (int)Math.min(this.samples, SAMPLES));
+        Arrays.sort(sorted);
+
+        var index = (int)Math.ceil(options.percentile / 100.0 * sorted.length) - 1;
+        var percentile = Duration.ofNanos(sorted[Math.max(0, index)]);
+        this.delay = percentile.compareTo(options.minDelay) > 0 ? percentile : options.minDelay;
+      }
+
+      return this.samples >= MIN_SAMPLES ? this.delay : null;
+    }
+
+    synchronized void recordLatency(long latencyNanos) {
+      this.latencies[(int)(this.samples % SAMPLES)] = latencyNanos;
+      this.samples++;
+    }
+
+    synchronized boolean tryHedge() {
+      if (this.tokens < 1) {
+        this.throttled++;
+        return false;
+      }
+
+      this.tokens--;
+      this.hedges++;
+      return true;
+    }
+
+    synchronized void recordWin() {
+      this.wins++;
+    }
+
+    synchronized @NotNull Statistics statistics() {
+      return new Statistics(
+        this.requests,
+        this.hedges,
+        this.wins,
+        this.throttled,
+        this.samples >= MIN_SAMPLES ? this.delay : null);
+    }
+  }
+}
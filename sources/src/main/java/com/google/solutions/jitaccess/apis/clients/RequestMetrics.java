@@ -0,0 +1,296 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latency, status codes, retries, and response sizes of
+ * API requests, by backend and method.
+ * <p>
+ * Metrics are kept in lock-free counters and histograms with fixed
+ * buckets, so that recording a request is cheap and doesn't allocate.
+ */
+public class RequestMetrics {
+  /**
+   * Upper bounds of latency buckets, in milliseconds. Requests that
+   * take longer fall into an extra overflow bucket.
+   */
+  static final long[] LATENCY_BUCKETS = { 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+  /**
+   * Status code used for requests that failed without a response.
+   */
+  public static final int NO_RESPONSE = 0;
+
+  private static final int MAX_STATUS_CODE = 599;
+
+  private static final @NotNull RequestMetrics shared = new RequestMetrics();
+
+  /**
+   * Metrics, by backend and method. Both are from a small and
+   * well-known set, so the maps don't grow unbounded.
+   */
+  private final @NotNull Map<String, Map<String, Recorder>> recorders = new ConcurrentHashMap<>();
+
+  /**
+   * Get the process-wide metrics, which cover all API clients.
+   */
+  public static @NotNull RequestMetrics shared() {
+    return shared;
+  }
+
+  /**
+   * Get the recorder for a method.
+   *
+   * @param backend host (and port, if non-default) of the API
+   * @param method method, see {@link #methodOf(String, String)}
+   */
+  public @NotNull Recorder recorder(@NotNull String backend, @NotNull String method) {
+    var recorders = this.recorders.get(backend);
+    if (recorders == null) {
+      recorders = this.recorders.computeIfAbsent(backend, b -> new ConcurrentHashMap<>());
+    }
+
+    var recorder = recorders.get(method);
+    if (recorder == null) {
+      recorder = recorders.computeIfAbsent(method, m -> new Recorder());
+    }
+
+    return recorder;
+  }
+
+  /**
+   * Derive a method name from a request's HTTP method and path by
+   * replacing resource IDs with wildcards. For example,
+   * {@code POST /v3/projects/project-1:getIamPolicy} becomes
+   * {@code POST projects/*:getIamPolicy}.
+   * <p>
+   * Resource names alternate between collection and ID segments,
+   * so every second segment after the API version is an ID.
+   */
+  public static @NotNull String methodOf(@NotNull String httpMethod, @NotNull String path) {
+    var segments = path.split("/");
+
+    //
+    // Skip any segments up to and including the API version,
+    // such as "v1" or "v1beta1".
+    //
+    int first = 0;
+    for (int i = 0; i < segments.length; i++) {
+      var segment = segments[i];
+      if (segment.length() > 1 && segment.charAt(0) == 'v' && Character.isDigit(segment.charAt(1))) {
+        first = i + 1;
+        break;
+      }
+    }
+
+    var method = new StringBuilder(httpMethod).append(' ');
+    int position = 0;
+    for (int i = first; i < segments.length; i++) {
+      var segment = segments[i];
+      if (segment.isEmpty()) {
+        continue;
+      }
+
+      if (position > 0) {
+        method.append('/');
+      }
+
+      if (position % 2 == 0) {
+        //
+        // Collection, possibly followed by a custom method.
+        //
+        method.append(segment);
+      }
+      else {
+        //
+        // ID, possibly followed by a custom method.
+        //
+        var verb = segment.indexOf(':');
+        method.append('*');
+        if (verb >= 0) {
+          method.append(segment, verb, segment.length());
+        }
+      }
+
+      position++;
+    }
+
+    return method.toString();
+  }
+
+  /**
+   * Get statistics for all methods, ordered by backend and method.
+   */
+  public @NotNull List<Statistics> statistics() {
+    var statistics = new ArrayList<Statistics>();
+    this.recorders.forEach((backend, recorders) -> recorders.forEach(
+      (method, recorder) -> statistics.add(recorder.statistics(backend, method))));
+
+    statistics.sort(Comparator
+      .comparing(Statistics::backend)
+      .thenComparing(Statistics::method));
+    return statistics;
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Records requests for a single method.
+   */
+  public static class Recorder {
+    private final @NotNull AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+    private final @NotNull AtomicLongArray statusCodes = new AtomicLongArray(MAX_STATUS_CODE + 1);
+    private final @NotNull LongAdder totalLatencyNanos = new LongAdder();
+    private final @NotNull LongAdder retries = new LongAdder();
+    private final @NotNull LongAdder responseBytes = new LongAdder();
+
+    private Recorder() {
+    }
+
+    /**
+     * Record a completed request.
+     *
+     * @param latencyNanos time taken, including retries
+     * @param statusCode status code of the final response, or
+     *                   {@link #NO_RESPONSE}
+     * @param attempts number of attempts, 1 if the request
+     *                 wasn't retried
+     * @param responseBytes size of the final response, or 0
+     *                      if unknown
+     */
+    public void record(
+      long latencyNanos,
+      int statusCode,
+      int attempts,
+      long responseBytes
+    ) {
+      var latencyMillis = latencyNanos / 1_000_000;
+      int bucket = 0;
+      while (bucket < LATENCY_BUCKETS.length && latencyMillis > LATENCY_BUCKETS[bucket]) {
+        bucket++;
+      }
+
+      this.latencyBuckets.incrementAndGet(bucket);
+      this.statusCodes.incrementAndGet(
+        statusCode < 0 || statusCode > MAX_STATUS_CODE ? NO_RESPONSE : statusCode);
+      this.totalLatencyNanos.add(latencyNanos);
+
+      if (attempts > 1) {
+        this.retries.add(attempts - 1);
+      }
+
+      if (responseBytes > 0) {
+        this.responseBytes.add(responseBytes);
+      }
+    }
+
+    private @NotNull Statistics statistics(@NotNull String backend, @NotNull String method) {
+      var latencyHistogram = new long[this.latencyBuckets.length()];
+      long requests = 0;
+      for (int i = 0; i < latencyHistogram.length; i++) {
+        latencyHistogram[i] = this.latencyBuckets.get(i);
+        requests += latencyHistogram[i];
+      }
+
+      var statusCodes = new TreeMap<Integer, Long>();
+      for (int i = 0; i < this.statusCodes.length(); i++) {
+        var count = this.statusCodes.get(i);
+        if (count > 0) {
+          statusCodes.put(i, count);
+        }
+      }
+
+      return new Statistics(
+        backend,
+        method,
+        requests,
+        this.retries.sum(),
+        this.responseBytes.sum(),
+        requests > 0
+          ? Duration.ofNanos(this.totalLatencyNanos.sum() / requests)
+          : Duration.ZERO,
+        Collections.unmodifiableMap(statusCodes),
+        latencyHistogram);
+    }
+  }
+
+  /**
+   * Snapshot of metrics for a method.
+   *
+   * @param backend host (and port, if non-default) of the API
+   * @param method method, see {@link #methodOf(String, String)}
+   * @param requests number of requests
+   * @param retries number of retries
+   * @param responseBytes total size of responses, where known
+   * @param meanLatency mean latency
+   * @param statusCodes number of requests by status code
+   * @param latencyHistogram number of requests by latency bucket,
+   *                         see {@link #LATENCY_BUCKETS}
+   */
+  public record Statistics(
+    @NotNull String backend,
+    @NotNull String method,
+    long requests,
+    long retries,
+    long responseBytes,
+    @NotNull Duration meanLatency,
+    @NotNull Map<Integer, Long> statusCodes,
+    long @NotNull [] latencyHistogram
+  ) {
+    public Statistics {
+      Preconditions.checkArgument(
+        latencyHistogram.length == LATENCY_BUCKETS.length + 1,
+        "The histogram must contain one entry per bucket");
+    }
+
+    /**
+     * Get the latency histogram, keyed by upper bound of each bucket
+     * in milliseconds. The overflow bucket uses the key "+Inf".
+     */
+    public @NotNull Map<String, Long> latencyBuckets() {
+      var buckets = new LinkedHashMap<String, Long>();
+      for (int i = 0; i < this.latencyHistogram.length; i++) {
+        buckets.put(
+          i < LATENCY_BUCKETS.length ? String.valueOf(LATENCY_BUCKETS[i]) : "+Inf",
+          this.latencyHistogram[i]);
+      }
+      return buckets;
+    }
+  }
+}
@@ -27,18 +27,22 @@ import com.google.api.services.cloudresourcemanager.v3.CloudResourceManager;
 import com.google.api.services.cloudresourcemanager.v3.model.Organization;
 import com.google.api.services.cloudresourcemanager.v3.model.Policy;
 import com.google.api.services.cloudresourcemanager.v3.model.Project;
+import com.google.api.services.cloudresourcemanager.v3.model.SearchProjectsResponse;
 import com.google.auth.Credentials;
 import com.google.common.base.Preconditions;
 import com.google.solutions.jitaccess.apis.CustomerId;
 import com.google.solutions.jitaccess.apis.ResourceId;
 import com.google.solutions.jitaccess.common.Coalesce;
+import com.google.solutions.jitaccess.common.Exceptions;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Adapter for Resource Manager API.
@@ -52,12 +56,19 @@ public class ResourceManagerClient extends AbstractIamClient {
   private final @NotNull Credentials credentials;
   private final @NotNull HttpTransport.Options httpOptions;
 
+  /**
+   * Coalesces concurrent reads.
+   */
+  private final @NotNull RequestCoalescer coalescer = new RequestCoalescer(SERVICE);
+
   @Override
   protected @NotNull CloudResourceManager createClient() throws IOException
   {
-    return Builders
-      .newBuilder(CloudResourceManager.Builder::new, this.credentials, this.httpOptions)
-      .build();
+    return Builders.getClient(
+      CloudResourceManager.class,
+      CloudResourceManager.Builder::new,
+      this.credentials,
+      this.httpOptions);
   }
 
   public ResourceManagerClient(
@@ -90,6 +101,25 @@ public class ResourceManagerClient extends AbstractIamClient {
       requestReason);
   }
 
+  /**
+   * Modify a project, folder, or organization's
+   * IAM policy using optimistic concurrency control.
+   */
+  public @NotNull CompletableFuture<Void> modifyIamPolicyAsync(
+    @NotNull ResourceId id,
+    @NotNull Consumer<Policy> modify,
+    @NotNull String requestReason
+  ) {
+    Preconditions.checkNotNull(id, "id");
+    Preconditions.checkArgument(SERVICE.equals(id.service()), "Resource must be a CRM resource");
+    Preconditions.checkNotNull(modify, "modify");
+
+    return modifyIamPolicyAsync(
+      String.format("v3/%s", id.path()),
+      modify,
+      requestReason);
+  }
+
   /**
    * Search for projects.
    */
@@ -138,6 +168,44 @@ public class ResourceManagerClient extends AbstractIamClient {
     }
   }
 
+  /**
+   * Search for projects. Pages are fetched lazily, and the next
+   * page is prefetched while the current page is consumed.
+   */
+  public @NotNull Stream<Project> streamProjects(
+    @NotNull String query
+  ) throws AccessException, IOException {
+    var client = createClient();
+
+    return AsyncRequests.streamPages(
+      pageToken -> {
+        try {
+          return AsyncRequests
+            .executeAsync(client
+              .projects()
+              .search()
+              .setQuery(query)
+              .setPageToken(pageToken)
+              .setPageSize(SEARCH_PROJECTS_PAGE_SIZE))
+            .exceptionallyCompose(e -> {
+              var cause = Exceptions.unwrap(e);
+              return CompletableFuture.failedFuture(
+                cause instanceof GoogleJsonResponseException apiException &&
+                  apiException.getStatusCode() == 401
+                  ? new NotAuthenticatedException("Not authenticated", apiException)
+                  : cause);
+            });
+        }
+        catch (IOException e) {
+          return CompletableFuture.failedFuture(e);
+        }
+      },
+      SearchProjectsResponse::getProjects,
+      page -> page.getProjects() != null && page.getProjects().size() >= SEARCH_PROJECTS_PAGE_SIZE
+        ? page.getNextPageToken()
+        : null);
+  }
+
   /**
    * Look up an organization by its associated Cloud Identity/Workspace account ID.
    */
@@ -147,26 +215,28 @@ public class ResourceManagerClient extends AbstractIamClient {
   ) throws AccessException, IOException {
     Preconditions.checkNotNull(customerId, "customerId");
 
-    try {
-      var client = createClient();
+    return this.coalescer.execute("getOrganization", customerId, () -> {
+      try {
+        var client = createClient();
 
-      var matches = client.organizations()
-        .search()
-        .setQuery(String.format("directorycustomerid:%s", customerId))
-        .execute();
+        var matches = client.organizations()
+          .search()
+          .setQuery(String.format("directorycustomerid:%s", customerId))
+          .execute();
 
-      return Coalesce.emptyIfNull(matches.getOrganizations())
-        .stream()
-        .filter(o -> o.getDirectoryCustomerId().equals(customerId.id()))
-        .findFirst();
-    }
-    catch (GoogleJsonResponseException e) {
-      switch (e.getStatusCode()) {
-        case 401:
-          throw new NotAuthenticatedException("Not authenticated", e);
-        default:
-          throw (GoogleJsonResponseException)e.fillInStackTrace();
+        return Coalesce.emptyIfNull(matches.getOrganizations())
+          .stream()
+          .filter(o -> o.getDirectoryCustomerId().equals(customerId.id()))
+          .findFirst();
       }
-    }
+      catch (GoogleJsonResponseException e) {
+        switch (e.getStatusCode()) {
+          case 401:
+            throw new NotAuthenticatedException("Not authenticated", e);
+          default:
+            throw (GoogleJsonResponseException)e.fillInStackTrace();
+        }
+      }
+    });
   }
 }
\ No newline at end of file
@@ -0,0 +1,352 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Policy for retrying API requests that failed because of a
+ * transient error or rate limiting.
+ * <p>
+ * Retries use exponential backoff with jitter, so that requests
+ * that failed at the same time aren't retried in lockstep. If the
+ * API returns a Retry-After header, the request isn't retried sooner
+ * than that.
+ * <p>
+ * To avoid piling onto a backend that's already struggling, retries
+ * are subject to a per-backend retry budget: Each failed request
+ * consumes a token, each successful request restores a fraction of
+ * a token, and retries are suspended while less than half of the
+ * tokens are left.
+ */
+public class RetryPolicy {
+  /**
+   * Size of the retry budget, per backend.
+   */
+  static final int BUDGET_TOKENS = 10;
+
+  /**
+   * Methods that are safe to retry after a server error.
+   */
+  private static final Set<String> IDEMPOTENT_METHODS = Set.of(
+    "GET",
+    "HEAD",
+    "OPTIONS",
+    "PUT",
+    "DELETE");
+
+  private static volatile @NotNull RetryPolicy shared = new RetryPolicy(Options.DEFAULT);
+
+  private final @NotNull Options options;
+  private final @NotNull DoubleSupplier random;
+  private final @NotNull Map<String, Budget> budgets = new ConcurrentHashMap<>();
+
+  RetryPolicy(
+    @NotNull Options options,
+    @NotNull DoubleSupplier random
+  ) {
+    Preconditions.checkNotNull(options, "options");
+    Preconditions.checkNotNull(random, "random");
+
+    this.options = options;
+    this.random = random;
+  }
+
+  public RetryPolicy(@NotNull Options options) {
+    this(options, () -> ThreadLocalRandom.current().nextDouble());
+  }
+
+  /**
+   * Get the process-wide policy, which applies to all API clients.
+   */
+  public static @NotNull RetryPolicy shared() {
+    return shared;
+  }
+
+  /**
+   * Replace the process-wide policy. This resets all retry
+   * budgets and statistics.
+   */
+  public static void configureShared(@NotNull Options options) {
+    shared = new RetryPolicy(options);
+  }
+
+  public @NotNull Options options() {
+    return this.options;
+  }
+
+  /**
+   * Check if a failed request can be retried, based on its status
+   * code and method.
+   * <p>
+   * Rate-limited (429) and unavailable (503) requests haven't been
+   * processed, so they're safe to retry. Other server errors might
+   * leave the request partially processed, so we only retry them
+   * for idempotent methods.
+   */
+  static boolean isRetryable(int statusCode, @NotNull String method) {
+    return switch (statusCode) {
+      case 429, 503 -> true;
+      case 500, 502, 504 -> IDEMPOTENT_METHODS.contains(method.toUpperCase());
+      default -> false;
+    };
+  }
+
+  /**
+   * Parse the value of a Retry-After header, which can either
+   * be a number of seconds or an HTTP date.
+   *
+   * @return delay, or null if the value is missing or malformed
+   */
+  static @Nullable Duration parseRetryAfter(
+    @Nullable String value,
+    @NotNull Instant now
+  ) {
+    if (value == null || value.isBlank()) {
+      return null;
+    }
+
+    try {
+      return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+    }
+    catch (NumberFormatException ignored) {
+    }
+
+    try {
+      var date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+      return date.isAfter(now) ? Duration.between(now, date) : Duration.ZERO;
+    }
+    catch (DateTimeParseException ignored) {
+      return null;
+    }
+  }
+
+  /**
+   * Calculate the backoff for an attempt, using exponential backoff
+   * with jitter. Half of the backoff is fixed, the other half is random.
+   *
+   * @param attempt number of the attempt that failed, starting at 1
+   */
+  public @NotNull Duration backoff(int attempt) {
+    Preconditions.checkArgument(attempt > 0, "attempt must be positive");
+
+    var ceiling = Math.min(
+      this.options.maxBackoff.toMillis(),
+      this.options.initialBackoff.toMillis() * (1L << Math.min(attempt - 1, 30)));
+
+    return Duration.ofMillis(ceiling / 2 + (long)(this.random.getAsDouble() * (ceiling / 2.0)));
+  }
+
+  /**
+   * Record a successful response from a backend. A response that
+   * indicates a client error (such as a 404) also counts as
+   * successful, because the backend is healthy.
+   */
+  public void recordSuccess(@NotNull String backend) {
+    budget(backend).recordSuccess(this.options.budgetTokenRatio);
+  }
+
+  /**
+   * Record a failed response from a backend and determine whether,
+   * and when, to retry the request.
+   *
+   * @param backend host (and port, if non-default) of the backend
+   * @param method HTTP method of the request
+   * @param statusCode status code of the response
+   * @param retryAfter value of the Retry-After header, if any
+   * @param attempt number of the attempt that failed, starting at 1
+   * @return delay after which to retry, or empty if the request
+   * shouldn't be retried
+   */
+  public @NotNull Optional<Duration> nextRetryDelay(
+    @NotNull String backend,
+    @NotNull String method,
+    int statusCode,
+    @Nullable String retryAfter,
+    int attempt
+  ) {
+    Preconditions.checkArgument(attempt > 0, "attempt must be positive");
+
+    var budget = budget(backend);
+    if (!isRetryable(statusCode, method)) {
+      budget.recordSuccess(this.options.budgetTokenRatio);
+      return Optional.empty();
+    }
+
+    var withinBudget = budget.recordFailure();
+    if (attempt >= this.options.maxAttempts) {
+      return Optional.empty();
+    }
+    else if (!withinBudget) {
+      //
+      // Most requests are failing already, retrying would only
+      // increase the load on the backend.
+      //
+      budget.recordThrottled();
+      return Optional.empty();
+    }
+
+    var delay = backoff(attempt);
+    var requestedDelay = parseRetryAfter(retryAfter, Instant.now());
+    if (requestedDelay != null) {
+      if (requestedDelay.compareTo(this.options.maxBackoff) > 0) {
+        //
+        // The backend wants us to wait longer than we're willing to.
+        //
+        return Optional.empty();
+      }
+      else if (requestedDelay.compareTo(delay) > 0) {
+        delay = requestedDelay;
+      }
+    }
+
+    budget.recordRetry();
+    return Optional.of(delay);
+  }
+
+  /**
+   * Get statistics, by backend.
+   */
+  public @NotNull Map<String, Statistics> statistics() {
+    var statistics = new TreeMap<String, Statistics>();
+    this.budgets.forEach((backend, budget) -> statistics.put(backend, budget.statistics()));
+    return statistics;
+  }
+
+  private @NotNull Budget budget(@NotNull String backend) {
+    return this.budgets.computeIfAbsent(backend, b -> new Budget());
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Options for retrying requests.
+   *
+   * @param maxAttempts maximum number of attempts, including the
+   *                    initial attempt
+   * @param initialBackoff backoff after the first failed attempt
+   * @param maxBackoff maximum backoff between two attempts
+   * @param budgetTokenRatio fraction of a retry token that each
+   *                         successful request restores
+   */
+  public record Options(
+    int maxAttempts,
+    @NotNull Duration initialBackoff,
+    @NotNull Duration maxBackoff,
+    double budgetTokenRatio
+  ) {
+    public static final @NotNull Options DEFAULT = new Options(
+      4,
+      Duration.ofMillis(200),
+      Duration.ofSeconds(10),
+      0.1);
+
+    public Options {
+      Preconditions.checkArgument(maxAttempts > 0, "maxAttempts must be positive");
+      Preconditions.checkArgument(!initialBackoff.isNegative(), "initialBackoff must not be negative");
+      Preconditions.checkArgument(
+        maxBackoff.compareTo(initialBackoff) >= 0,
+        "maxBackoff must not be less than initialBackoff");
+      Preconditions.checkArgument(
+        budgetTokenRatio > 0 && budgetTokenRatio <= BUDGET_TOKENS,
+        "budgetTokenRatio must be positive");
+    }
+  }
+
+  /**
+   * Snapshot of retry statistics for a backend.
+   *
+   * @param successes number of successful responses
+   * @param failures number of responses that failed with a
+   *                 retryable error
+   * @param retries number of retries
+   * @param throttled number of retries that were suppressed because
+   *                  the retry budget was exhausted
+   */
+  public record Statistics(
+    long successes,
+    long failures,
+    long retries,
+    long throttled
+  ) {
+    @Override
+    public String toString() {
+      return String.format(
+        "successes: %d, failures: %d, retries: %d, throttled: %d",
+        this.successes,
+        this.failures,
+        this.retries,
+        this.throttled);
+    }
+  }
+
+  private static class Budget {
+    private double tokens = BUDGET_TOKENS;
+    private long successes;
+    private long failures;
+    private long retries;
+    private long throttled;
+
+    synchronized void recordSuccess(double tokenRatio) {
+      this.successes++;
+      this.tokens = Math.min(BUDGET_TOKENS, this.tokens + tokenRatio);
+    }
+
+    /**
+     * @return true if retries are still within budget
+     */
+    synchronized boolean recordFailure() {
+      this.failures++;
+      this.tokens = Math.max(0, this.tokens - 1);
+      return this.tokens > BUDGET_TOKENS / 2.0;
+    }
+
+    synchronized void recordRetry() {
+      this.retries++;
+    }
+
+    synchronized void recordThrottled() {
+      this.throttled++;
+    }
+
+    synchronized @NotNull Statistics statistics() {
+      return new Statistics(this.successes, this.failures, this.retries, this.throttled);
+    }
+  }
+}
@@ -42,6 +42,11 @@ public class SecretManagerClient {
   private final @NotNull GoogleCredentials credentials;
   private final @NotNull HttpTransport.Options httpOptions;
 
+  /**
+   * Coalesces concurrent reads.
+   */
+  private final @NotNull RequestCoalescer coalescer = new RequestCoalescer("secretmanager.googleapis.com");
+
   public SecretManagerClient(
     @NotNull GoogleCredentials credentials,
     @NotNull HttpTransport.Options httpOptions
@@ -54,9 +59,11 @@ public class SecretManagerClient {
   }
 
   private @NotNull SecretManager createClient() throws IOException {
-    return Builders
-      .newBuilder(SecretManager.Builder::new, this.credentials, this.httpOptions)
-      .build();
+    return Builders.getClient(
+      SecretManager.class,
+      SecretManager.Builder::new,
+      this.credentials,
+      this.httpOptions);
   }
 
   /**
@@ -66,40 +73,42 @@ public class SecretManagerClient {
   public @Nullable String accessSecret(
     String secretPath
   ) throws AccessException, IOException {
-    try {
-      var payload = createClient()
-        .projects()
-        .secrets()
-        .versions()
-        .access(secretPath)
-        .execute()
-        .getPayload();
+    return this.coalescer.execute("accessSecret", secretPath, () -> {
+      try {
+        var payload = createClient()
+          .projects()
+          .secrets()
+          .versions()
+          .access(secretPath)
+          .execute()
+          .getPayload();
 
-      if (payload == null) {
-        return null;
-      }
+        if (payload == null) {
+          return null;
+        }
 
-      var payloadData = payload.decodeData();
-      if (payloadData == null) {
-        return null;
-      }
-      else {
-        return new String(payloadData, SECRET_CHARSET);
+        var payloadData = payload.decodeData();
+        if (payloadData == null) {
+          return null;
+        }
+        else {
+          return new String(payloadData, SECRET_CHARSET);
+        }
       }
-    }
-    catch (GoogleJsonResponseException e) {
-      switch (e.getStatusCode()) {
-        case 401:
-          throw new NotAuthenticatedException("Not authenticated", e);
-        case 403:
-          throw new AccessDeniedException(
-            String.format("Access to secret '%s' was denied", secretPath), e);
-        case 404:
-          throw new ResourceNotFoundException(
-            String.format("The secret '%s' does not exist", secretPath), e);
-        default:
-          throw (GoogleJsonResponseException)e.fillInStackTrace();
+      catch (GoogleJsonResponseException e) {
+        switch (e.getStatusCode()) {
+          case 401:
+            throw new NotAuthenticatedException("Not authenticated", e);
+          case 403:
+            throw new AccessDeniedException(
+              String.format("Access to secret '%s' was denied", secretPath), e);
+          case 404:
+            throw new ResourceNotFoundException(
+              String.format("The secret '%s' does not exist", secretPath), e);
+          default:
+            throw (GoogleJsonResponseException)e.fillInStackTrace();
+        }
       }
-    }
+    });
   }
 }
@@ -21,59 +21,396 @@
 
 package com.google.solutions.jitaccess.auth;
 
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.solutions.jitaccess.apis.Logger;
+import com.google.solutions.jitaccess.apis.clients.AccessDeniedException;
 import com.google.solutions.jitaccess.apis.clients.AccessException;
+import com.google.solutions.jitaccess.apis.clients.BackendUnavailableException;
 import com.google.solutions.jitaccess.apis.clients.CloudIdentityGroupsClient;
+import com.google.solutions.jitaccess.apis.clients.ResourceNotFoundException;
+import com.google.solutions.jitaccess.catalog.EventIds;
+import com.google.solutions.jitaccess.common.CacheStore;
+import com.google.solutions.jitaccess.common.SecondLevelCache;
 import jakarta.inject.Singleton;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 /**
  * Subject resolver that caches results.
+ * <p>
+ * Cached principals are refreshed in the background once they're older
+ * than the refresh interval. While the refresh is in progress, callers
+ * continue to get the previous principals, so that only the first
+ * request of a user (or a request after a long period of inactivity)
+ * has to wait for principals to be resolved. Principals are never
+ * served if they're older than the maximum staleness.
+ * <p>
+ * If Cloud Identity is unavailable, the resolver falls back to the
+ * last known principals of a user, as long as they aren't older
+ * than the configured fallback duration.
+ * <p>
+ * Resolved principals are also written to a shared second-level cache
+ * so that other instances of the application can use them instead of
+ * resolving them again.
+ * <p>
+ * Failures to resolve a user because the user doesn't exist (anymore)
+ * are cached briefly. Repeated failures for the same
+ * user are cached for increasingly long periods, so that clients that
+ * keep retrying don't cause unbounded Cloud Identity traffic.
  */
 @Singleton
 public class CachedSubjectResolver extends SubjectResolver {
   private final @NotNull LoadingCache<EndUserId, Set<Principal>> cache;
+  private final @NotNull Cache<EndUserId, Set<Principal>> lastKnown;
+  private final @NotNull SecondLevelCache<Set<Principal>> sharedCache;
+  private final @NotNull Cache<EndUserId, Failure> failures;
+  private final @NotNull Cache<EndUserId, Map<PrincipalId, Principal>> provisionedMemberships;
+  private final @NotNull LongAdder rejections = new LongAdder();
+  private final @NotNull Options options;
+  private final @NotNull Logger logger;
 
   public CachedSubjectResolver(
     @NotNull CloudIdentityGroupsClient groupsClient,
+    @NotNull MembershipExpiryCache membershipCache,
     @NotNull GroupMapping groupMapping,
     @NotNull Executor executor,
     @NotNull Logger logger,
+    @NotNull CacheStore sharedCacheStore,
     @NotNull Options options
   ) {
-    super(groupsClient, groupMapping, options.internalDirectory, executor, logger);
+    super(groupsClient, membershipCache, groupMapping, options.internalDirectory, executor, logger);
 
-    this.cache =  CacheBuilder.newBuilder()
-      .expireAfterWrite(options.cacheDuration)
-      .build(new CacheLoader<>() {
+    this.logger = logger;
+    this.options = options;
 
-        @Override
-        public @NotNull Set<Principal> load(@NotNull EndUserId userId) throws Exception {
-          return CachedSubjectResolver.super.resolveGroupPrincipals(userId);
+    //
+    // Entries in the shared cache expire after the refresh interval so
+    // that principals aren't more stale than they would be if they were
+    // only cached locally.
+    //
+    this.sharedCache = new SecondLevelCache<>(
+      sharedCacheStore,
+      "subjects.v1",
+      new PrincipalSetCodec(),
+      options.refreshInterval);
+    this.lastKnown = CacheBuilder.newBuilder()
+      .expireAfterWrite(options.fallbackDuration)
+      .maximumSize(options.maximumSize)
+      .build();
+
+    //
+    // Keep failures around for the maximum negative cache duration
+    // so that we can tell if a user failed repeatedly.
+    //
+    this.failures = CacheBuilder.newBuilder()
+      .expireAfterWrite(options.maximumNegativeCacheDuration)
+      .maximumSize(options.maximumSize)
+      .build();
+
+    //
+    // Keep provisioned memberships around until a reload picks them
+    // up, but no longer than we'd serve stale principals anyway.
+    //
+    this.provisionedMemberships = CacheBuilder.newBuilder()
+      .expireAfterWrite(options.maxStaleness)
+      .maximumSize(options.maximumSize)
+      .build();
+
+    var loader = new CacheLoader<EndUserId, Set<Principal>>() {
+      @Override
+      public @NotNull Set<Principal> load(@NotNull EndUserId userId) throws Exception {
+        var sharedCache = CachedSubjectResolver.this.sharedCache;
+
+        var principals = sharedCache
+          .get(userId.email)
+          .map(cached -> cached
+            .stream()
+            .filter(Principal::isValid)
+            .collect(Collectors.toUnmodifiableSet()))
+          .orElse(null);
+        if (principals == null) {
+          principals = CachedSubjectResolver.super.resolveGroupPrincipals(userId);
+          sharedCache.put(userId.email, principals);
         }
-      });
+
+        CachedSubjectResolver.this.lastKnown.put(userId, principals);
+        CachedSubjectResolver.this.failures.invalidate(userId);
+        forgetProvisionedMemberships(userId, principals);
+        return principals;
+      }
+    };
+
+    //
+    // Reload entries asynchronously so that callers don't have to wait for
+    // the refresh. If a refresh fails, the cache keeps the previous entry
+    // until it expires.
+    //
+    this.cache = CacheBuilder.newBuilder()
+      .refreshAfterWrite(options.refreshInterval)
+      .expireAfterWrite(options.maxStaleness)
+      .maximumSize(options.maximumSize)
+      .recordStats()
+      .build(CacheLoader.asyncReloading(loader, executor));
+  }
+
+  /**
+   * Update the cached principals of a user after they joined a group,
+   * so that the membership takes effect without waiting for the
+   * cache to be refreshed.
+   */
+  public void onJitGroupMembershipProvisioned(
+    @NotNull EndUserId user,
+    @NotNull JitGroupId group,
+    @NotNull Instant expiry
+  ) {
+    //
+    // Remember the membership and apply it whenever principals are
+    // read, until a reload picks it up. Modifying the cached entry
+    // instead wouldn't work because a reload that's already in
+    // progress would overwrite the change, and the cache blocks
+    // updates until that reload completes.
+    //
+    this.provisionedMemberships.asMap()
+      .computeIfAbsent(user, u -> new ConcurrentHashMap<>())
+      .put(group, new Principal(group, expiry));
+
+    //
+    // Write the update through so that other instances don't serve
+    // principals that predate the change.
+    //
+    var cached = this.cache.getIfPresent(user);
+    if (cached != null) {
+      this.sharedCache.put(user.email, withProvisionedMemberships(user, cached));
+    }
+  }
+
+  /**
+   * Update the cached principals of a user after they have been
+   * removed from a group.
+   */
+  public void onJitGroupMembershipRemoved(
+    @NotNull EndUserId user,
+    @NotNull JitGroupId group
+  ) {
+    var provisioned = this.provisionedMemberships.getIfPresent(user);
+    if (provisioned != null) {
+      provisioned.remove(group);
+    }
+
+    //
+    // The cached principals might include the membership too. Removals
+    // are rare, so discard the principals instead of patching them,
+    // which also discards the result of any reload that's in progress.
+    //
+    this.cache.invalidate(user);
+    this.lastKnown.asMap().computeIfPresent(
+      user,
+      (u, principals) -> principals
+        .stream()
+        .filter(p -> !p.id().equals(group))
+        .collect(Collectors.toUnmodifiableSet()));
+    this.sharedCache.remove(user.email);
+  }
+
+  /**
+   * Apply memberships that have been provisioned recently, but that
+   * might not be reflected in a user's principals yet.
+   */
+  private @NotNull Set<Principal> withProvisionedMemberships(
+    @NotNull EndUserId user,
+    @NotNull Set<Principal> principals
+  ) {
+    var provisioned = this.provisionedMemberships.getIfPresent(user);
+    if (provisioned != null) {
+      //
+      // Drop memberships as soon as they expire.
+      //
+      provisioned.values().removeIf(membership -> !membership.isValid());
+    }
+
+    if (provisioned == null || provisioned.isEmpty()) {
+      return principals;
+    }
+
+    var updated = new HashSet<Principal>(principals.size() + provisioned.size());
+    for (var principal : principals) {
+      var membership = provisioned.get(principal.id());
+      if (membership == null || includes(principal, membership)) {
+        updated.add(principal);
+      }
+    }
+
+    for (var membership : provisioned.values()) {
+      if (updated.stream().noneMatch(p -> p.id().equals(membership.id()))) {
+        updated.add(membership);
+      }
+    }
+
+    return Set.copyOf(updated);
+  }
+
+  /**
+   * Forget provisioned memberships that are reflected in freshly
+   * loaded principals, or that have expired.
+   */
+  private void forgetProvisionedMemberships(
+    @NotNull EndUserId user,
+    @NotNull Set<Principal> principals
+  ) {
+    var provisioned = this.provisionedMemberships.getIfPresent(user);
+    if (provisioned != null) {
+      provisioned.values().removeIf(membership -> !membership.isValid() || principals
+        .stream()
+        .anyMatch(p -> p.id().equals(membership.id()) && includes(p, membership)));
+    }
+  }
+
+  /**
+   * Check if a principal grants at least as much as a membership.
+   */
+  private static boolean includes(
+    @NotNull Principal principal,
+    @NotNull Principal membership
+  ) {
+    return principal.expiry() == null || (membership.expiry() != null &&
+      !principal.expiry().isBefore(membership.expiry()));
+  }
+
+  /**
+   * Get cache statistics.
+   */
+  public @NotNull Statistics statistics() {
+    var stats = this.cache.stats();
+    return new Statistics(
+      this.cache.size(),
+      stats.hitCount(),
+      stats.missCount(),
+      stats.loadSuccessCount(),
+      stats.loadExceptionCount(),
+      stats.evictionCount(),
+      Duration.ofNanos((long)stats.averageLoadPenalty()),
+      this.failures.size(),
+      this.rejections.sum());
+  }
+
+  /**
+   * Get statistics of the shared second-level cache.
+   */
+  public @NotNull SecondLevelCache.Statistics sharedCacheStatistics() {
+    return this.sharedCache.statistics();
+  }
+
+  /**
+   * Reject a user locally if resolving their principals failed recently.
+   */
+  private void rejectIfFailedRecently(@NotNull EndUserId user) throws AccessException {
+    var failure = this.failures.getIfPresent(user);
+    if (failure != null && failure.rejectUntil().isAfter(Instant.now())) {
+      this.rejections.increment();
+      throw new AccessDeniedException(failure.message());
+    }
+  }
+
+  /**
+   * Record a failure to resolve a user's principals. Each consecutive
+   * failure doubles the time for which the user is rejected, up to the
+   * maximum negative cache duration.
+   */
+  private void recordFailure(@NotNull EndUserId user, @NotNull String message) {
+    this.failures.asMap().compute(user, (u, previous) -> {
+      var count = previous != null ? previous.count() + 1 : 1;
+      return new Failure(
+        message,
+        count,
+        Instant.now().plus(negativeCacheDuration(this.options, count)));
+    });
+  }
+
+  /**
+   * Get the time for which a user is rejected after a number
+   * of consecutive failures.
+   */
+  static @NotNull Duration negativeCacheDuration(@NotNull Options options, int failures) {
+    assert failures > 0;
+
+    var duration = options.negativeCacheDuration;
+    for (int i = 1; i < failures && duration.compareTo(options.maximumNegativeCacheDuration) < 0; i++) {
+      duration = duration.multipliedBy(2);
+    }
+
+    return duration.compareTo(options.maximumNegativeCacheDuration) < 0
+      ? duration
+      : options.maximumNegativeCacheDuration;
   }
 
   @Override
   protected @NotNull Set<Principal> resolveGroupPrincipals(
     @NotNull EndUserId user
   ) throws AccessException, IOException {
+    rejectIfFailedRecently(user);
+
     try {
-      return this.cache.getUnchecked(user);
+      return withProvisionedMemberships(user, this.cache.getUnchecked(user));
     }
     catch (UncheckedExecutionException e) {
       if (e.getCause() instanceof AccessException accessException) {
+        //
+        // Only cache failures caused by the user not existing. Other
+        // failures, such as exceeded quotas or our own credentials
+        // lacking access (403), are unrelated to the user, so caching
+        // them would lock out the user after the problem is resolved.
+        //
+        if (accessException instanceof ResourceNotFoundException ||
+          accessException.getCause() instanceof ResourceNotFoundException) {
+          recordFailure(
+            user,
+            accessException.getMessage() != null
+              ? accessException.getMessage()
+              : "Resolving group membership failed");
+        }
+
         throw (AccessException)accessException.fillInStackTrace();
       }
+      else if (e.getCause() instanceof BackendUnavailableException unavailableException) {
+        //
+        // Cloud Identity is unavailable, fall back to the last known
+        // principals, omitting any that have expired since.
+        //
+        var lastKnown = this.lastKnown.getIfPresent(user);
+        if (lastKnown == null) {
+          throw (IOException)unavailableException.fillInStackTrace();
+        }
+
+        this.logger.warn(
+          EventIds.SUBJECT_RESOLUTION,
+          "Cloud Identity is unavailable, using last known group memberships for user '%s'",
+          user);
+
+        return withProvisionedMemberships(user, lastKnown
+          .stream()
+          .filter(Principal::isValid)
+          .collect(Collectors.toUnmodifiableSet()));
+      }
       else if (e.getCause() instanceof IOException ioException) {
         throw (IOException)ioException.fillInStackTrace();
       }
@@ -83,11 +420,240 @@ public class CachedSubjectResolver extends SubjectResolver {
     }
   }
 
+  /**
+   * Resolve the principals of multiple users, using cached principals
+   * where possible. Principals that had to be resolved are added to
+   * the cache.
+   */
+  @Override
+  protected @NotNull Map<EndUserId, Set<Principal>> resolveGroupPrincipals(
+    @NotNull Collection<EndUserId> users
+  ) throws AccessException, IOException {
+    var principals = new HashMap<EndUserId, Set<Principal>>();
+    var unresolvedUsers = new ArrayList<EndUserId>();
+
+    for (var user : new LinkedHashSet<>(users)) {
+      try {
+        rejectIfFailedRecently(user);
+      }
+      catch (AccessException e) {
+        //
+        // Omit the user, like users that don't exist.
+        //
+        continue;
+      }
+
+      var cached = this.cache.getIfPresent(user);
+      if (cached == null) {
+        cached = this.sharedCache
+          .get(user.email)
+          .map(shared -> shared
+            .stream()
+            .filter(Principal::isValid)
+            .collect(Collectors.toUnmodifiableSet()))
+          .orElse(null);
+
+        if (cached != null) {
+          this.cache.put(user, cached);
+          this.lastKnown.put(user, cached);
+        }
+      }
+
+      if (cached != null) {
+        principals.put(user, withProvisionedMemberships(user, cached));
+      }
+      else {
+        unresolvedUsers.add(user);
+      }
+    }
+
+    if (unresolvedUsers.isEmpty()) {
+      return principals;
+    }
+
+    Map<EndUserId, Set<Principal>> resolved;
+    try {
+      resolved = super.resolveGroupPrincipals(unresolvedUsers);
+    }
+    catch (BackendUnavailableException e) {
+      //
+      // Cloud Identity is unavailable, fall back to the last known
+      // principals, but only if we have them for all users.
+      //
+      for (var user : unresolvedUsers) {
+        var lastKnown = this.lastKnown.getIfPresent(user);
+        if (lastKnown == null) {
+          throw (IOException)e.fillInStackTrace();
+        }
+
+        principals.put(user, withProvisionedMemberships(user, lastKnown
+          .stream()
+          .filter(Principal::isValid)
+          .collect(Collectors.toUnmodifiableSet())));
+      }
+
+      this.logger.warn(
+        EventIds.SUBJECT_RESOLUTION,
+        "Cloud Identity is unavailable, using last known group memberships for %d users",
+        unresolvedUsers.size());
+
+      return principals;
+    }
+
+    resolved.forEach((user, resolvedPrincipals) -> {
+      var unmodifiable = Collections.unmodifiableSet(resolvedPrincipals);
+      this.cache.put(user, unmodifiable);
+      this.lastKnown.put(user, unmodifiable);
+      this.sharedCache.put(user.email, unmodifiable);
+      this.failures.invalidate(user);
+      forgetProvisionedMemberships(user, unmodifiable);
+      principals.put(user, withProvisionedMemberships(user, unmodifiable));
+    });
+
+    for (var user : unresolvedUsers) {
+      if (!resolved.containsKey(user)) {
+        recordFailure(user, "Resolving group membership failed because the user does not exist");
+      }
+    }
+
+    return principals;
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Consecutive failures to resolve a user's principals.
+   *
+   * @param message message of the last failure
+   * @param count number of consecutive failures
+   * @param rejectUntil time until which lookups are rejected locally
+   */
+  private record Failure(
+    @NotNull String message,
+    int count,
+    @NotNull Instant rejectUntil
+  ) {}
+
   /**
    * Constructor options, injectable using CDI.
+   *
+   * @param refreshInterval age after which principals are refreshed in
+   *                        the background
+   * @param maxStaleness maximum age of principals, after which callers
+   *                     have to wait for principals to be resolved again
+   * @param maximumSize maximum number of users to cache principals for,
+   *                    least recently used entries are evicted first
+   * @param internalDirectory directory of internal users
+   * @param fallbackDuration maximum age of principals that are used as
+   *                         fallback if Cloud Identity is unavailable
+   * @param negativeCacheDuration time for which a user is rejected after
+   *                              resolving their principals failed
+   * @param maximumNegativeCacheDuration maximum time for which a user is
+   *                                     rejected after repeated failures
    */
   public record Options(
-    @NotNull Duration cacheDuration,
-    @NotNull Directory internalDirectory
-  ) {}
+    @NotNull Duration refreshInterval,
+    @NotNull Duration maxStaleness,
+    long maximumSize,
+    @NotNull Directory internalDirectory,
+    @NotNull Duration fallbackDuration,
+    @NotNull Duration negativeCacheDuration,
+    @NotNull Duration maximumNegativeCacheDuration
+  ) {
+    public static final @NotNull Duration DEFAULT_NEGATIVE_CACHE_DURATION = Duration.ofSeconds(10);
+    public static final @NotNull Duration DEFAULT_MAXIMUM_NEGATIVE_CACHE_DURATION = Duration.ofMinutes(5);
+
+    public Options {
+      Preconditions.checkArgument(
+        !refreshInterval.isNegative() && !refreshInterval.isZero(),
+        "refreshInterval must be positive");
+      Preconditions.checkArgument(
+        maxStaleness.compareTo(refreshInterval) >= 0,
+        "maxStaleness must not be less than refreshInterval");
+      Preconditions.checkArgument(maximumSize > 0, "maximumSize must be positive");
+      Preconditions.checkArgument(
+        !negativeCacheDuration.isNegative() && !negativeCacheDuration.isZero(),
+        "negativeCacheDuration must be positive");
+      Preconditions.checkArgument(
+        maximumNegativeCacheDuration.compareTo(negativeCacheDuration) >= 0,
+        "maximumNegativeCacheDuration must not be less than negativeCacheDuration");
+    }
+
+    /**
+     * Use the default durations for caching failures.
+     */
+    public Options(
+      @NotNull Duration refreshInterval,
+      @NotNull Duration maxStaleness,
+      long maximumSize,
+      @NotNull Directory internalDirectory,
+      @NotNull Duration fallbackDuration
+    ) {
+      this(
+        refreshInterval,
+        maxStaleness,
+        maximumSize,
+        internalDirectory,
+        fallbackDuration,
+        DEFAULT_NEGATIVE_CACHE_DURATION,
+        DEFAULT_MAXIMUM_NEGATIVE_CACHE_DURATION);
+    }
+
+    /**
+     * Cache principals for a fixed duration, without refreshing
+     * them in the background.
+     */
+    public Options(
+      @NotNull Duration cacheDuration,
+      @NotNull Directory internalDirectory
+    ) {
+      this(cacheDuration, cacheDuration, 10_000, internalDirectory, cacheDuration);
+    }
+  }
+
+  /**
+   * Snapshot of cache statistics.
+   *
+   * @param size number of cached entries
+   * @param hits number of lookups that were served from the cache,
+   *             including ones that triggered a background refresh
+   * @param misses number of lookups that had to wait for a load
+   * @param loads number of successful loads and refreshes
+   * @param loadFailures number of failed loads and refreshes
+   * @param evictions number of entries evicted because of size
+   *                  or staleness
+   * @param averageLoadTime average time taken by a load
+   * @param failedUsers number of users for which failures are cached
+   * @param rejections number of lookups that were rejected because
+   *                   of a cached failure
+   */
+  public record Statistics(
+    long size,
+    long hits,
+    long misses,
+    long loads,
+    long loadFailures,
+    long evictions,
+    @NotNull Duration averageLoadTime,
+    long failedUsers,
+    long rejections
+  ) {
+    @Override
+    public String toString() {
+      return String.format(
+        "size: %d, hits: %d, misses: %d, loads: %d, load failures: %d, evictions: %d, " +
+          "average load time: %d ms, failed users: %d, rejections: %d",
+        this.size,
+        this.hits,
+        this.misses,
+        this.loads,
+        this.loadFailures,
+        this.evictions,
+        this.averageLoadTime.toMillis(),
+        this.failedUsers,
+        this.rejections);
+    }
+  }
 }
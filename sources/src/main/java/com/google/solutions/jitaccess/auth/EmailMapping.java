@@ -22,9 +22,12 @@
 package com.google.solutions.jitaccess.auth;
 
 import com.google.api.client.json.GenericJson;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.solutions.jitaccess.common.cel.Cel;
 import dev.cel.common.CelException;
 import dev.cel.common.types.CelTypes;
+import dev.cel.common.types.SimpleType;
 import dev.cel.compiler.CelCompiler;
 import dev.cel.runtime.CelRuntime;
 import org.jetbrains.annotations.NotNull;
@@ -34,12 +37,21 @@ import java.util.Map;
 
 /**
  * Maps User IDs to email addresses using a CEL expression.
+ * <p>
+ * The expression is compiled once, and results are cached
+ * because the same principals tend to be mapped repeatedly, for
+ * example when notifying the approvers of a group.
  */
 public class EmailMapping {
 
   private static final String PRINCIPAL_VARIABLE_NAME = "principal";
   private static final String USER_VARIABLE_NAME = "user";
 
+  /**
+   * Maximum number of results to cache.
+   */
+  private static final int MAXIMUM_CACHE_SIZE = 1_000;
+
   private static final CelCompiler CEL_COMPILER = Cel.createCompilerBuilder()
       .addVar(USER_VARIABLE_NAME, CelTypes.createMap(CelTypes.STRING, CelTypes.STRING))
       .addVar(PRINCIPAL_VARIABLE_NAME, CelTypes.createMap(CelTypes.STRING, CelTypes.STRING))
@@ -47,7 +59,15 @@ public class EmailMapping {
 
   private static final CelRuntime CEL_RUNTIME = Cel.createRuntime();
 
-  private final @Nullable String celExpression;
+  /**
+   * Compiled expression, or null if the user's ID is used as email address.
+   */
+  private final @Nullable CelRuntime.Program program;
+
+  private final @NotNull Cache<IamPrincipalId, EmailAddress> cache = CacheBuilder
+    .newBuilder()
+    .maximumSize(MAXIMUM_CACHE_SIZE)
+    .build();
 
   /**
    * Create mapping that uses the user's ID as email address.
@@ -59,9 +79,31 @@ public class EmailMapping {
   /**
    * Create mapping that uses a CEL expression to derive an email address
    * from a user ID.
+   *
+   * @throws IllegalArgumentException if the expression is invalid.
    */
   public EmailMapping(@Nullable String celExpression) {
-    this.celExpression = celExpression;
+    if (celExpression == null || celExpression.isBlank()) {
+      this.program = null;
+    }
+    else {
+      try {
+        var ast = CEL_COMPILER.compile(celExpression).getAst();
+        if (ast.getResultType() != SimpleType.STRING && ast.getResultType() != SimpleType.DYN) {
+          throw new IllegalArgumentException(String.format(
+            "The email mapping expression '%s' must return a string, but returns '%s'",
+            celExpression,
+            ast.getResultType().name()));
+        }
+
+        this.program = CEL_RUNTIME.createProgram(ast);
+      }
+      catch (CelException e) {
+        throw new IllegalArgumentException(
+          String.format("The email mapping expression '%s' is invalid", celExpression),
+          e);
+      }
+    }
   }
 
   /**
@@ -70,55 +112,64 @@ public class EmailMapping {
    * @throws MappingException when mapping fails.
    */
   public @NotNull EmailAddress emailFromPrincipalId(IamPrincipalId id) throws MappingException {
-    if (this.celExpression == null || this.celExpression.isBlank()) {
+    if (this.program == null) {
       //
       // Use the user's ID as email address.
       //
       return new EmailAddress(id.value());
     }
-    else
-    {
-      //
-      // Apply a CEL mapping.
-      //
 
-      //
-      // Expose principal email as `user.email`, this is for
-      // backwards compatibility only.
-      //
-      var userVariable = new GenericJson()
-        .set("email", id.value());
+    var cached = this.cache.getIfPresent(id);
+    if (cached != null) {
+      return cached;
+    }
 
-      var principalVariable = new GenericJson()
-        .set("type", id.type())
-        .set("id", id.value());
+    //
+    // Apply a CEL mapping. Failures aren't cached, so that
+    // they're reported for each principal that's affected.
+    //
+    var result = evaluate(this.program, id);
+    this.cache.put(id, result);
+    return result;
+  }
 
-      try {
-        var ast = CEL_COMPILER.compile(this.celExpression).getAst();
-        var resultObject = CEL_RUNTIME
-          .createProgram(ast)
-          .eval(Map.of(
-            USER_VARIABLE_NAME, userVariable,
-            PRINCIPAL_VARIABLE_NAME, principalVariable));
-
-        if (resultObject == null) {
-          throw new MappingException(
-            id,
-            "Result is null");
-        }
-        else if (resultObject instanceof String result) {
-          return new EmailAddress(result);
-        }
-        else {
-          throw new MappingException(
-            id,
-            String.format("Result is of type '%s' instead of a string", resultObject.getClass()));
-        }
+  private static @NotNull EmailAddress evaluate(
+    @NotNull CelRuntime.Program program,
+    @NotNull IamPrincipalId id
+  ) throws MappingException {
+    //
+    // Expose principal email as `user.email`, this is for
+    // backwards compatibility only.
+    //
+    var userVariable = new GenericJson()
+      .set("email", id.value());
+
+    var principalVariable = new GenericJson()
+      .set("type", id.type())
+      .set("id", id.value());
+
+    try {
+      var resultObject = program.eval(Map.of(
+        USER_VARIABLE_NAME, userVariable,
+        PRINCIPAL_VARIABLE_NAME, principalVariable));
+
+      if (resultObject == null) {
+        throw new MappingException(
+          id,
+          "Result is null");
       }
-      catch (CelException e) {
-        throw new MappingException(id, e);
+      else if (resultObject instanceof String result) {
+        return new EmailAddress(result);
+      }
+      else {
+        throw new MappingException(
+          id,
+          String.format("Result is of type '%s' instead of a string", resultObject.getClass()));
       }
     }
+    catch (CelException e) {
+      throw new MappingException(id, e);
+    }
   }
 
   public static class MappingException extends RuntimeException {
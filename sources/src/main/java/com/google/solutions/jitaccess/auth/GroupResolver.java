@@ -22,33 +22,72 @@
 package com.google.solutions.jitaccess.auth;
 
 import com.google.api.services.cloudidentity.v1.model.Membership;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.solutions.jitaccess.apis.clients.AccessException;
 import com.google.solutions.jitaccess.apis.clients.CloudIdentityGroupsClient;
+import com.google.solutions.jitaccess.apis.clients.FieldProjection;
 import com.google.solutions.jitaccess.common.CompletableFutures;
 import com.google.solutions.jitaccess.common.Exceptions;
 import org.jetbrains.annotations.NotNull;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Expands group memberships using the Cloud Identity
  * Groups API.
+ * <p>
+ * The direct members of each group are cached for a limited time,
+ * so that expanding the same groups repeatedly doesn't require
+ * repeated API calls.
  */
 public class GroupResolver {
+  /**
+   * Fields of a membership that we need to create principals.
+   */
+  private static final @NotNull FieldProjection MEMBERSHIP_FIELDS =
+    FieldProjection.of("type", "preferredMemberKey");
+
   private final @NotNull CloudIdentityGroupsClient groupsClient;
   private final @NotNull Executor executor;
+  private final @NotNull Options options;
+  private final @NotNull Cache<GroupId, List<PrincipalId>> directMembers;
+
+  private final @NotNull LongAdder expansions = new LongAdder();
+  private final @NotNull LongAdder expandedGroups = new LongAdder();
+  private final @NotNull LongAdder truncatedExpansions = new LongAdder();
 
   public GroupResolver(
     @NotNull CloudIdentityGroupsClient groupsClient,
-    @NotNull Executor executor
+    @NotNull Executor executor,
+    @NotNull Options options
   ) {
     this.groupsClient = groupsClient;
     this.executor = executor;
+    this.options = options;
+    this.directMembers = CacheBuilder.newBuilder()
+      .expireAfterWrite(options.cacheDuration)
+      .maximumSize(options.maximumCacheSize)
+      .recordStats()
+      .build();
+  }
+
+  public GroupResolver(
+    @NotNull CloudIdentityGroupsClient groupsClient,
+    @NotNull Executor executor
+  ) {
+    this(groupsClient, executor, Options.DEFAULT);
   }
 
   private static @NotNull Optional<PrincipalId> principalFromMembership(
@@ -68,13 +107,50 @@ public class GroupResolver {
     }
   }
 
+  /**
+   * Look up the direct members of a set of groups concurrently,
+   * using cached members where possible.
+   */
+  private @NotNull Collection<List<PrincipalId>> directMembersOf(
+    @NotNull Collection<GroupId> groups
+  ) throws AccessException {
+    //
+    // Expand groups concurrently. For each group, memberships are
+    // streamed so that we can process one page while the next page
+    // is being fetched. Concurrent lookups for the same group
+    // are coalesced by the cache.
+    //
+    var future = CompletableFutures.mapAsync(
+      groups,
+      group -> this.directMembers.get(group, () -> {
+        try (var memberships = this.groupsClient.streamMemberships(group, MEMBERSHIP_FIELDS)) {
+          return memberships
+            .map(m -> principalFromMembership(m))
+            .flatMap(Optional::stream)
+            .toList();
+        }
+      }),
+      this.executor);
+
+    try {
+      return future.get();
+    }
+    catch (InterruptedException | ExecutionException e) {
+      if (Exceptions.unwrap(e) instanceof AccessException accessException) {
+        throw (AccessException) accessException.fillInStackTrace();
+      }
+      else {
+        throw new UncheckedExecutionException(e);
+      }
+    }
+  }
+
   /**
    * Expand all groups in a list of principals.
    * <p>
    * Group resolution is done non-recursively, so the resulting
    * set of principals might again contain a set of groups.
-   * To fully resolve all groups, call this method until the
-   * set contains no more groups.
+   * To fully resolve all groups, use {@link #expandTransitively}.
    * <p>
    * While Cloud Identity API does support looking
    * up nested group memberships, the functionality is only
@@ -94,40 +170,169 @@ public class GroupResolver {
     // Create a new set in which the groups are replaced
     // by its members.
     //
-    var nonGroups = principals
+    var expandedPrincipals = new HashSet<PrincipalId>(principals
       .stream()
       .filter(p -> !(p instanceof GroupId))
-      .toList();
+      .toList());
 
-    var future = CompletableFutures.mapAsync(
-      groups,
-      group -> this.groupsClient
-        .listMemberships(group)
-        .stream()
-        .map(m -> principalFromMembership(m))
-        .flatMap(Optional::stream)
-        .toList(),
-      this.executor);
+    directMembersOf(groups).forEach(expandedPrincipals::addAll);
 
-    try {
-      var expandedPrincipals = new HashSet<>(nonGroups);
+    assert groups
+      .stream()
+      .noneMatch(g -> expandedPrincipals.contains(g));
 
-      future.get()
-        .forEach(expandedPrincipals::addAll);
+    return expandedPrincipals;
+  }
 
-      assert groups
-        .stream()
-        .noneMatch(g -> expandedPrincipals.contains(g));
+  /**
+   * Expand all groups in a list of principals, including
+   * nested groups.
+   * <p>
+   * Groups are expanded breadth-first, one level at a time, and
+   * the groups of each level are expanded concurrently. Groups that
+   * have been expanded before (for example, because groups are
+   * members of each other) aren't expanded again.
+   * <p>
+   * If groups are nested deeper than the maximum depth, the
+   * groups at the maximum depth are included in the result
+   * without being expanded.
+   */
+  public @NotNull Set<PrincipalId> expandTransitively(
+    @NotNull Set<PrincipalId> principals
+  ) throws AccessException {
+    var result = new HashSet<PrincipalId>();
+    var expanded = new HashSet<GroupId>();
 
-      return expandedPrincipals;
-    }
-    catch (InterruptedException | ExecutionException e) {
-      if (Exceptions.unwrap(e) instanceof AccessException accessException) {
-        throw (AccessException) accessException.fillInStackTrace();
+    var level = new ArrayList<GroupId>();
+    for (var principal : principals) {
+      if (principal instanceof GroupId group) {
+        if (expanded.add(group)) {
+          level.add(group);
+        }
       }
       else {
-        throw new UncheckedExecutionException(e);
+        result.add(principal);
       }
     }
+
+    for (int depth = 0; !level.isEmpty(); depth++) {
+      if (depth >= this.options.maxDepth) {
+        //
+        // Stop expanding, but retain the groups so that
+        // they aren't lost.
+        //
+        result.addAll(level);
+        this.truncatedExpansions.increment();
+        break;
+      }
+
+      this.expandedGroups.add(level.size());
+
+      var nextLevel = new ArrayList<GroupId>();
+      for (var members : directMembersOf(level)) {
+        for (var member : members) {
+          if (member instanceof GroupId group) {
+            if (expanded.add(group)) {
+              nextLevel.add(group);
+            }
+          }
+          else {
+            result.add(member);
+          }
+        }
+      }
+
+      level = nextLevel;
+    }
+
+    this.expansions.increment();
+    return result;
+  }
+
+  /**
+   * Get expansion and cache statistics.
+   */
+  public @NotNull Statistics statistics() {
+    var stats = this.directMembers.stats();
+    return new Statistics(
+      this.expansions.sum(),
+      this.expandedGroups.sum(),
+      this.truncatedExpansions.sum(),
+      this.directMembers.size(),
+      stats.hitCount(),
+      stats.missCount());
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * @param maxDepth maximum number of levels to expand
+   * @param cacheDuration time to cache the direct members of a group
+   * @param maximumCacheSize maximum number of groups to cache members for
+   */
+  public record Options(
+    int maxDepth,
+    @NotNull Duration cacheDuration,
+    long maximumCacheSize
+  ) {
+    public static final @NotNull Options DEFAULT = new Options(
+      10,
+      Duration.ofMinutes(5),
+      1_000);
+
+    public Options {
+      Preconditions.checkArgument(maxDepth > 0, "maxDepth must be positive");
+      Preconditions.checkArgument(!cacheDuration.isNegative(), "cacheDuration must not be negative");
+      Preconditions.checkArgument(maximumCacheSize >= 0, "maximumCacheSize must not be negative");
+    }
+  }
+
+  /**
+   * Snapshot of statistics.
+   *
+   * @param expansions number of transitive expansions
+   * @param expandedGroups number of groups expanded by transitive
+   *                       expansions, including nested groups
+   * @param truncatedExpansions number of transitive expansions that
+   *                            reached the maximum depth
+   * @param cacheSize number of groups with cached members
+   * @param cacheHits number of lookups served from the cache
+   * @param cacheMisses number of lookups that required an API call
+   */
+  public record Statistics(
+    long expansions,
+    long expandedGroups,
+    long truncatedExpansions,
+    long cacheSize,
+    long cacheHits,
+    long cacheMisses
+  ) {
+    /**
+     * Average number of groups expanded per transitive expansion.
+     */
+    public double averageFanOut() {
+      return this.expansions > 0 ? (double)this.expandedGroups / this.expansions : 0;
+    }
+
+    /**
+     * Fraction of lookups served from the cache.
+     */
+    public double cacheHitRatio() {
+      var lookups = this.cacheHits + this.cacheMisses;
+      return lookups > 0 ? (double)this.cacheHits / lookups : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "expansions: %d, average fan-out: %.1f, truncated: %d, cache size: %d, cache hit ratio: %.1f%%",
+        this.expansions,
+        this.averageFanOut(),
+        this.truncatedExpansions,
+        this.cacheSize,
+        this.cacheHitRatio() * 100);
+    }
   }
 }
@@ -0,0 +1,159 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+
+package com.google.solutions.jitaccess.auth;
+
+import com.google.common.base.Preconditions;
+import com.google.solutions.jitaccess.apis.clients.CloudIdentityGroupsClient;
+import jakarta.inject.Singleton;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache for the expiry of JIT group memberships.
+ * <p>
+ * The expiry of a membership only changes when the membership is
+ * provisioned again, so there's no need to look it up every time a
+ * subject is resolved. Each entry is kept until the membership
+ * expires, or until it's invalidated because the membership has
+ * been provisioned again.
+ */
+@Singleton
+public class MembershipExpiryCache {
+  /**
+   * Number of insertions after which expired entries are purged.
+   */
+  private static final int PURGE_INTERVAL = 1000;
+
+  private final @NotNull Map<CloudIdentityGroupsClient.MembershipId, Instant> entries = new ConcurrentHashMap<>();
+  private final @NotNull Supplier<Instant> clock;
+  private final @NotNull AtomicLong insertions = new AtomicLong();
+  private final @NotNull AtomicLong hits = new AtomicLong();
+  private final @NotNull AtomicLong misses = new AtomicLong();
+
+  MembershipExpiryCache(@NotNull Supplier<Instant> clock) {
+    this.clock = clock;
+  }
+
+  public MembershipExpiryCache() {
+    this(Instant::now);
+  }
+
+  /**
+   * Get the cached expiry of a membership.
+   *
+   * @return expiry, or null if the membership isn't cached or
+   * has expired.
+   */
+  public @Nullable Instant get(@NotNull CloudIdentityGroupsClient.MembershipId membershipId) {
+    var expiry = this.entries.get(membershipId);
+    if (expiry != null && expiry.isAfter(this.clock.get())) {
+      this.hits.incrementAndGet();
+      return expiry;
+    }
+
+    if (expiry != null) {
+      this.entries.remove(membershipId, expiry);
+    }
+
+    this.misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Cache the expiry of a membership. Memberships that have
+   * already expired are ignored.
+   */
+  public void put(
+    @NotNull CloudIdentityGroupsClient.MembershipId membershipId,
+    @NotNull Instant expiry
+  ) {
+    Preconditions.checkNotNull(membershipId, "membershipId");
+    Preconditions.checkNotNull(expiry, "expiry");
+
+    var now = this.clock.get();
+    if (!expiry.isAfter(now)) {
+      return;
+    }
+
+    this.entries.put(membershipId, expiry);
+
+    if (this.insertions.incrementAndGet() % PURGE_INTERVAL == 0) {
+      //
+      // Entries are only removed on access, so purge entries of
+      // memberships that expired without being accessed again.
+      //
+      this.entries.values().removeIf(e -> !e.isAfter(now));
+    }
+  }
+
+  /**
+   * Invalidate the cached expiry of a membership because the
+   * membership has changed.
+   */
+  public void invalidate(@NotNull CloudIdentityGroupsClient.MembershipId membershipId) {
+    this.entries.remove(membershipId);
+  }
+
+  /**
+   * Get cache statistics.
+   */
+  public @NotNull Statistics statistics() {
+    return new Statistics(
+      this.entries.size(),
+      this.hits.get(),
+      this.misses.get());
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Snapshot of cache statistics.
+   *
+   * @param size number of cached entries, including expired
+   *             entries that haven't been purged yet
+   * @param hits number of lookups that were served from the cache
+   * @param misses number of lookups that weren't
+   */
+  public record Statistics(
+    long size,
+    long hits,
+    long misses
+  ) {
+    @Override
+    public String toString() {
+      return String.format(
+        "size: %d, hits: %d, misses: %d",
+        this.size,
+        this.hits,
+        this.misses);
+    }
+  }
+}
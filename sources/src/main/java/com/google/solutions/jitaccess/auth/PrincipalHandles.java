@@ -0,0 +1,154 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.auth;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Compact, immutable representation of a subject's principals as a
+ * sorted array of handles, see {@link PrincipalRegistry}.
+ * <p>
+ * The set only contains principals that were valid and registered
+ * at the time it was created. It becomes outdated once one of these
+ * principals expires, or once additional principals are registered.
+ */
+public final class PrincipalHandles {
+  private final int @NotNull [] handles;
+  private final long expiryMillis;
+  private final int registryVersion;
+  private final @NotNull PrincipalRegistry registry;
+
+  private PrincipalHandles(
+    int @NotNull [] handles,
+    long expiryMillis,
+    @NotNull PrincipalRegistry registry,
+    int registryVersion
+  ) {
+    this.handles = handles;
+    this.expiryMillis = expiryMillis;
+    this.registry = registry;
+    this.registryVersion = registryVersion;
+  }
+
+  /**
+   * Create a set from the valid principals in a collection.
+   */
+  public static @NotNull PrincipalHandles of(
+    @NotNull Collection<Principal> principals,
+    @NotNull PrincipalRegistry registry
+  ) {
+    //
+    // Read the version first so that the set is considered outdated
+    // if a principal is registered concurrently.
+    //
+    var registryVersion = registry.version();
+    var nowMillis = System.currentTimeMillis();
+
+    var handles = new int[principals.size()];
+    var count = 0;
+    var expiryMillis = Long.MAX_VALUE;
+    for (var principal : principals) {
+      var principalExpiryMillis = principal.expiry() != null
+        ? principal.expiry().toEpochMilli()
+        : Long.MAX_VALUE;
+      if (principalExpiryMillis <= nowMillis) {
+        continue;
+      }
+
+      var handle = registry.lookup(principal.id());
+      if (handle != PrincipalRegistry.UNREGISTERED) {
+        handles[count++] = handle;
+        expiryMillis = Math.min(expiryMillis, principalExpiryMillis);
+      }
+    }
+
+    Arrays.sort(handles, 0, count);
+    return new PrincipalHandles(
+      Arrays.copyOf(handles, count),
+      expiryMillis,
+      registry,
+      registryVersion);
+  }
+
+  /**
+   * Create a set from the valid principals in a collection,
+   * using the shared registry.
+   */
+  public static @NotNull PrincipalHandles of(@NotNull Collection<Principal> principals) {
+    return of(principals, PrincipalRegistry.shared());
+  }
+
+  /**
+   * Get the handles of a subject's valid principals, using the shared
+   * registry. If the subject is a {@link Provider}, reuse its handles.
+   */
+  public static @NotNull PrincipalHandles of(@NotNull Subject subject) {
+    if (subject instanceof Provider provider) {
+      return provider.principalHandles();
+    }
+    else {
+      return of(subject.principals());
+    }
+  }
+
+  /**
+   * Check if the set contains a principal.
+   */
+  public boolean contains(int handle) {
+    return handle >= 0 && Arrays.binarySearch(this.handles, handle) >= 0;
+  }
+
+  /**
+   * Get the number of principals in the set.
+   */
+  public int size() {
+    return this.handles.length;
+  }
+
+  /**
+   * Check whether the set still reflects the principals it was
+   * created from, i.e., none of them has expired and no principals
+   * have been registered since.
+   */
+  public boolean isCurrent() {
+    return System.currentTimeMillis() < this.expiryMillis &&
+      this.registry.version() == this.registryVersion;
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Subject that maintains its own principal handles, for example
+   * to reuse them across access checks.
+   */
+  public interface Provider extends Subject {
+    /**
+     * Get the subject's valid principals as a compact set of handles.
+     */
+    @NotNull PrincipalHandles principalHandles();
+  }
+}
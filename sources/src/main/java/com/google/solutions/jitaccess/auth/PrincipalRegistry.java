@@ -0,0 +1,122 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.auth;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry that assigns dense integer handles to principal IDs so
+ * that access checks can compare integers instead of objects.
+ * <p>
+ * Only principals that are referenced by policies are registered:
+ * Principals that a subject has, but which aren't referenced by
+ * any policy, can't affect access checks and therefore don't need
+ * a handle. This keeps the registry bounded by the size of the
+ * policies rather than by the number of users and groups.
+ * <p>
+ * Handles are never reused, so they remain valid for as long as
+ * the process runs.
+ */
+public class PrincipalRegistry {
+  /**
+   * Handle used for principals that aren't registered.
+   */
+  public static final int UNREGISTERED = -1;
+
+  private static final @NotNull PrincipalRegistry shared = new PrincipalRegistry();
+
+  private final @NotNull Map<PrincipalId, Integer> handles = new ConcurrentHashMap<>();
+  private final @NotNull AtomicInteger nextHandle = new AtomicInteger();
+
+  /**
+   * Number of completed registrations. Incremented only after the
+   * principal has become visible to {@link #lookup(PrincipalId)}.
+   */
+  private final @NotNull AtomicInteger version = new AtomicInteger();
+
+  /**
+   * Get the process-wide registry.
+   */
+  public static @NotNull PrincipalRegistry shared() {
+    return shared;
+  }
+
+  /**
+   * Register a principal, if it hasn't been registered before.
+   *
+   * @return handle of the principal
+   */
+  public int register(@NotNull PrincipalId principal) {
+    var handle = this.handles.get(principal);
+    if (handle == null) {
+      var registered = new boolean[] { false };
+      handle = this.handles.computeIfAbsent(principal, p -> {
+        registered[0] = true;
+        return this.nextHandle.getAndIncrement();
+      });
+
+      if (registered[0]) {
+        //
+        // The mapping function runs before the entry is visible to
+        // other threads, so publish the new version only now.
+        //
+        this.version.incrementAndGet();
+      }
+    }
+
+    return handle;
+  }
+
+  /**
+   * Look up the handle of a principal, without registering it.
+   *
+   * @return handle, or {@link #UNREGISTERED}
+   */
+  public int lookup(@NotNull PrincipalId principal) {
+    var handle = this.handles.get(principal);
+    return handle != null ? handle : UNREGISTERED;
+  }
+
+  /**
+   * Get the number of registered principals.
+   */
+  public int size() {
+    return this.nextHandle.get();
+  }
+
+  /**
+   * Get the current version of the registry. The version changes
+   * whenever a principal has been registered, and only after the
+   * principal has become visible to {@link #lookup(PrincipalId)}.
+   * <p>
+   * Read the version before performing lookups: if the version is
+   * still the same after the lookups, none of them missed a principal
+   * because it was being registered concurrently.
+   */
+  public int version() {
+    return this.version.get();
+  }
+}
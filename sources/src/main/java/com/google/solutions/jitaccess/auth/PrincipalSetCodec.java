@@ -0,0 +1,206 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+
+package com.google.solutions.jitaccess.auth;
+
+import com.google.solutions.jitaccess.common.SecondLevelCache;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compact binary encoding for sets of principals.
+ * <p>
+ * The encoding starts with a version byte and the number of principals.
+ * Each principal is encoded as a tag that identifies its type and
+ * whether it has an expiry, followed by its ID and, optionally, its
+ * expiry. Numbers use a variable-length encoding, and strings are
+ * length-prefixed UTF-8.
+ */
+public class PrincipalSetCodec implements SecondLevelCache.Codec<Set<Principal>> {
+  private static final int VERSION = 1;
+
+  private static final int TAG_GROUP = 1;
+  private static final int TAG_JIT_GROUP = 2;
+  private static final int TAG_USER = 3;
+  private static final int TAG_CLASS = 4;
+  private static final int TAG_DOMAIN = 5;
+  private static final int FLAG_EXPIRY = 0x80;
+
+  @Override
+  public byte @NotNull [] encode(@NotNull Set<Principal> principals) {
+    var output = new Output(16 + principals.size() * 48);
+    output.writeVarLong(VERSION);
+    output.writeVarLong(principals.size());
+
+    for (var principal : principals) {
+      var flags = principal.expiry() != null ? FLAG_EXPIRY : 0;
+
+      if (principal.id() instanceof GroupId groupId) {
+        output.write(TAG_GROUP | flags);
+        output.writeString(groupId.email);
+      }
+      else if (principal.id() instanceof JitGroupId jitGroupId) {
+        output.write(TAG_JIT_GROUP | flags);
+        output.writeString(jitGroupId.environment());
+        output.writeString(jitGroupId.system());
+        output.writeString(jitGroupId.name());
+      }
+      else if (principal.id() instanceof EndUserId userId) {
+        output.write(TAG_USER | flags);
+        output.writeString(userId.email);
+      }
+      else if (principal.id() instanceof ClassPrincipalSet classPrincipalSet) {
+        output.write(TAG_CLASS | flags);
+        output.writeString(classPrincipalSet.toString());
+      }
+      else if (principal.id() instanceof CloudIdentityDirectoryPrincipalSet domainPrincipalSet) {
+        output.write(TAG_DOMAIN | flags);
+        output.writeString(domainPrincipalSet.toString());
+      }
+      else {
+        throw new IllegalArgumentException(
+          String.format("Principals of type %s can't be encoded", principal.id().type()));
+      }
+
+      if (principal.expiry() != null) {
+        output.writeVarLong(principal.expiry().getEpochSecond());
+        output.writeVarLong(principal.expiry().getNano());
+      }
+    }
+
+    return output.toByteArray();
+  }
+
+  @Override
+  public @NotNull Set<Principal> decode(byte @NotNull [] encoded) throws IOException {
+    var input = new Input(encoded);
+    var version = input.readVarLong();
+    if (version != VERSION) {
+      throw new IOException(String.format("Unsupported encoding version: %d", version));
+    }
+
+    var count = (int)input.readVarLong();
+    var principals = new HashSet<Principal>(count);
+    for (int i = 0; i < count; i++) {
+      var tag = input.read();
+
+      PrincipalId id = switch (tag & ~FLAG_EXPIRY) {
+        case TAG_GROUP -> new GroupId(input.readString());
+        case TAG_JIT_GROUP -> new JitGroupId(input.readString(), input.readString(), input.readString());
+        case TAG_USER -> new EndUserId(input.readString());
+        case TAG_CLASS -> parse(ClassPrincipalSet.parse(input.readString()).orElse(null));
+        case TAG_DOMAIN -> parse(CloudIdentityDirectoryPrincipalSet.parse(input.readString()).orElse(null));
+        default -> throw new IOException(String.format("Unknown principal tag: %d", tag));
+      };
+
+      var expiry = (tag & FLAG_EXPIRY) != 0
+        ? Instant.ofEpochSecond(input.readVarLong(), input.readVarLong())
+        : null;
+
+      principals.add(new Principal(id, expiry));
+    }
+
+    return principals;
+  }
+
+  private static @NotNull PrincipalId parse(@Nullable PrincipalId id) throws IOException {
+    if (id == null) {
+      throw new IOException("The encoded principal is malformed");
+    }
+
+    return id;
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  private static class Output extends ByteArrayOutputStream {
+    Output(int size) {
+      super(size);
+    }
+
+    void writeVarLong(long value) {
+      while ((value & ~0x7FL) != 0) {
+        write((int)((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+
+      write((int)value);
+    }
+
+    void writeString(@NotNull String value) {
+      var bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(bytes.length);
+      write(bytes, 0, bytes.length);
+    }
+  }
+
+  private static class Input {
+    private final byte @NotNull [] buffer;
+    private int position;
+
+    Input(byte @NotNull [] buffer) {
+      this.buffer = buffer;
+    }
+
+    int read() throws IOException {
+      if (this.position >= this.buffer.length) {
+        throw new EOFException("The encoded principal set is truncated");
+      }
+
+      return this.buffer[this.position++] & 0xFF;
+    }
+
+    long readVarLong() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        var b = read();
+        value |= (long)(b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+
+      throw new IOException("The encoded number is malformed");
+    }
+
+    @NotNull String readString() throws IOException {
+      var length = (int)readVarLong();
+      if (length < 0 || length > this.buffer.length - this.position) {
+        throw new EOFException("The encoded principal set is truncated");
+      }
+
+      var value = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+      this.position += length;
+      return value;
+    }
+  }
+}
@@ -27,26 +27,51 @@ import com.google.solutions.jitaccess.apis.Logger;
 import com.google.solutions.jitaccess.apis.clients.AccessDeniedException;
 import com.google.solutions.jitaccess.apis.clients.AccessException;
 import com.google.solutions.jitaccess.apis.clients.CloudIdentityGroupsClient;
+import com.google.solutions.jitaccess.apis.clients.FieldProjection;
 import com.google.solutions.jitaccess.apis.clients.ResourceNotFoundException;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.solutions.jitaccess.catalog.EventIds;
-import com.google.solutions.jitaccess.common.CompletableFutures;
+import com.google.solutions.jitaccess.common.Exceptions;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Resolves information necessary to build a subject from a user ID.
  */
 public class SubjectResolver {
+  /**
+   * Fields of a membership relation that we need to
+   * create principals.
+   */
+  private static final @NotNull FieldProjection MEMBERSHIP_RELATION_FIELDS =
+    FieldProjection.of("groupKey", "membership", "roles");
+
+  /**
+   * Maximum number of users whose memberships are listed
+   * concurrently when resolving principals in bulk.
+   */
+  static final int MAX_CONCURRENT_LOOKUPS = 16;
+
   private final @NotNull CloudIdentityGroupsClient groupsClient;
+  private final @NotNull MembershipExpiryCache membershipCache;
   private final @NotNull GroupMapping groupMapping;
   private final @NotNull Directory internalDirectory;
   private final @NotNull Executor executor;
@@ -54,12 +79,14 @@ public class SubjectResolver {
 
   public SubjectResolver(
     @NotNull CloudIdentityGroupsClient groupsClient,
+    @NotNull MembershipExpiryCache membershipCache,
     @NotNull GroupMapping groupMapping,
     @NotNull Directory internalDirectory,
     @NotNull Executor executor,
     @NotNull Logger logger
   ) {
     this.groupsClient = groupsClient;
+    this.membershipCache = membershipCache;
     this.groupMapping = groupMapping;
     this.internalDirectory = internalDirectory;
     this.executor = executor;
@@ -70,38 +97,78 @@ public class SubjectResolver {
     @NotNull EndUserId user,
     @NotNull List<UnresolvedMembership> memberships
   ) {
-    assert memberships
+    return resolveJitGroupMemberships(Map.of(user, memberships)).get(user);
+  }
+
+  /**
+   * Create principals for the JIT group memberships of one or
+   * more users.
+   *
+   * @return principals, by user.
+   */
+  @NotNull Map<EndUserId, Set<Principal>> resolveJitGroupMemberships(
+    @NotNull Map<EndUserId, List<UnresolvedMembership>> membershipsByUser
+  ) {
+    assert membershipsByUser
+      .values()
       .stream()
+      .flatMap(List::stream)
       .allMatch(m -> this.groupMapping.isJitGroup(m.group));
 
     //
-    // Lookup details for each membership.
+    // The expiry of a membership only changes when it's provisioned
+    // again, so we only need to look up memberships that are new
+    // or have changed.
     //
-    var resolvedMembershipsFuture = CompletableFutures.mapAsync(
-      memberships,
-      membership -> {
-        try {
-          return Optional.of(new ResolvedMembership(
-            membership.group,
-            this.groupsClient.getMembership(membership.membershipId)));
+    var principalsByUser = new HashMap<EndUserId, Set<Principal>>();
+    var uncachedMemberships = new LinkedHashMap<UnresolvedMembership, EndUserId>();
+    for (var entry : membershipsByUser.entrySet()) {
+      var principals = new HashSet<Principal>();
+      for (var membership : entry.getValue()) {
+        var expiry = this.membershipCache.get(membership.membershipId);
+        if (expiry != null) {
+          principals.add(new Principal(
+            this.groupMapping.jitGroupFromGroup(membership.group),
+            expiry));
         }
-        catch (ResourceNotFoundException e) {
-          //
-          // Membership has been removed (or has expired) in the meantime,
-          // we can ignore that.
-          //
-          return Optional.<ResolvedMembership>empty();
+        else {
+          uncachedMemberships.put(membership, entry.getKey());
         }
-      },
-      this.executor);
+      }
+
+      principalsByUser.put(entry.getKey(), principals);
+    }
+
+    if (uncachedMemberships.isEmpty()) {
+      return principalsByUser;
+    }
 
-    var principals = new HashSet<Principal>();
+    //
+    // Lookup details for remaining memberships of all users. The lookups
+    // are batched, so that they only take a few round trips, even if the
+    // users are members of many JIT groups.
+    //
+    // NB. Memberships that have been removed (or have expired) in the
+    // meantime are omitted from the result, we can ignore these.
+    //
     try {
-      for (var membership : resolvedMembershipsFuture.get()
+      var details = this.groupsClient.getMemberships(uncachedMemberships
+        .keySet()
+        .stream()
+        .map(m -> m.membershipId)
+        .toList());
+
+      for (var membership : uncachedMemberships
+        .keySet()
         .stream()
-        .flatMap(Optional::stream)
+        .filter(m -> details.containsKey(m.membershipId))
+        .map(m -> new ResolvedMembership(m.group, m.membershipId, details.get(m.membershipId)))
         .toList()) {
 
+        var user = uncachedMemberships.get(new UnresolvedMembership(
+          membership.group,
+          membership.membershipId));
+
         assert membership.details
           .getPreferredMemberKey()
           .getId()
@@ -130,21 +197,27 @@ public class SubjectResolver {
               membership.group()));
         }
         else {
-          principals.add(new Principal(
+          this.membershipCache.put(membership.membershipId(), expiryDate);
+          principalsByUser.get(user).add(new Principal(
             this.groupMapping.jitGroupFromGroup(membership.group()),
             expiryDate));
         }
       }
     }
-    catch (InterruptedException | ExecutionException e) {
+    catch (AccessException | IOException e) {
       this.logger.error(
         EventIds.SUBJECT_RESOLUTION,
-        String.format(
-          "Resolving JIT group memberships for user '%s' failed", user),
+        membershipsByUser.size() == 1
+          ? String.format(
+              "Resolving JIT group memberships for user '%s' failed",
+              membershipsByUser.keySet().iterator().next())
+          : String.format(
+              "Resolving JIT group memberships for %d users failed",
+              membershipsByUser.size()),
         e);
     }
 
-    return principals;
+    return principalsByUser;
   }
 
   /**
@@ -160,7 +233,7 @@ public class SubjectResolver {
     List<MembershipRelation> allMemberships;
     try {
       allMemberships = this.groupsClient
-        .listMembershipsByUser(user)
+        .listMembershipsByUser(user, MEMBERSHIP_RELATION_FIELDS)
         .stream()
         .toList();
     }
@@ -173,7 +246,8 @@ public class SubjectResolver {
       // get an empty response, not a 404.
       //
       throw new AccessDeniedException(
-        "Resolving group membership failed because the user does not exist");
+        "Resolving group membership failed because the user does not exist",
+        e);
     }
 
     //
@@ -181,38 +255,15 @@ public class SubjectResolver {
     // - JIT groups: these need further processing
     // - other groups: can be used as-is
     //
-    var otherGroupPrincipals = allMemberships
-      .stream()
-      .filter(m -> !this.groupMapping.isJitGroup(new GroupId(m.getGroupKey().getId())))
-      .map(m -> new Principal(new GroupId(m.getGroupKey().getId())))
-      .collect(Collectors.toSet());
-
-    var jitGroupMemberships = allMemberships
-      .stream()
-      .filter(m -> this.groupMapping.isJitGroup(new GroupId(m.getGroupKey().getId())))
-      .map(m -> new UnresolvedMembership(
-        new GroupId(m.getGroupKey().getId()),
-        new CloudIdentityGroupsClient.MembershipId(m.getMembership())))
-      .toList();
+    var otherGroupPrincipals = otherGroupPrincipals(allMemberships);
+    var jitGroupMemberships = jitGroupMemberships(allMemberships);
 
     assert otherGroupPrincipals.size() + jitGroupMemberships.size() == allMemberships.size();
-    assert otherGroupPrincipals.stream().allMatch(g -> g.id().value().contains("@"));
 
     //
     // For JIT groups, we need to know the expiry. The API doesn't
     // return that, so we have to perform extra lookups.
     //
-    // NB. Other groups might have an expiry too. That expiry would be
-    //     relevant if we were to cache the data. But we're not doing that,
-    //     so we don't need to worry about it.
-    //
-    assert allMemberships
-      .stream()
-      .filter(m -> this.groupMapping.isJitGroup(new GroupId(m.getGroupKey().getId())))
-      .filter(m -> m.getRoles() != null)
-      .flatMap(m -> m.getRoles().stream())
-      .allMatch(r -> r.getExpiryDetail() == null);
-
     var jitGroupPrincipals = resolveJitGroupMemberships(user, jitGroupMemberships);
 
     this.logger.info(
@@ -228,6 +279,181 @@ public class SubjectResolver {
     return allGroupPrincipals;
   }
 
+  /**
+   * Create principals for all group memberships of multiple users.
+   * <p>
+   * Memberships are listed concurrently, with at most
+   * MAX_CONCURRENT_LOOKUPS users at a time. The expiries of all users'
+   * JIT group memberships are then looked up together, so that they
+   * only take a few batch requests.
+   * <p>
+   * If the lookup for one user fails, no further lookups are started
+   * and outstanding lookups are cancelled. Cancelling a lookup cancels
+   * its API requests, unless other callers are waiting for the
+   * same lookup.
+   *
+   * @return principals, by user. Users that don't exist are omitted.
+   */
+  protected @NotNull Map<EndUserId, Set<Principal>> resolveGroupPrincipals(
+    @NotNull Collection<EndUserId> users
+  ) throws AccessException, IOException {
+    var lookups = new LinkedHashMap<EndUserId, CompletableFuture<List<MembershipRelation>>>();
+    var permits = new Semaphore(MAX_CONCURRENT_LOOKUPS);
+
+    //
+    // Completed as soon as a lookup fails for a reason other than
+    // the user not existing.
+    //
+    var failure = new CompletableFuture<Void>();
+
+    var otherGroupPrincipals = new HashMap<EndUserId, Set<Principal>>();
+    var jitGroupMemberships = new HashMap<EndUserId, List<UnresolvedMembership>>();
+    try {
+      try {
+        for (var user : new LinkedHashSet<>(users)) {
+          permits.acquire();
+          if (failure.isDone()) {
+            //
+            // Don't start any more lookups, we're going to fail anyway.
+            //
+            break;
+          }
+
+          var lookup = this.groupsClient.listMembershipsByUserAsync(user, MEMBERSHIP_RELATION_FIELDS);
+          lookup.whenComplete((result, e) -> {
+            permits.release();
+            if (e != null && !(Exceptions.unwrap(e) instanceof ResourceNotFoundException)) {
+              failure.completeExceptionally(e);
+            }
+          });
+
+          //
+          // Keep the lookup itself, not the future returned by whenComplete,
+          // so that cancelling it cancels the underlying request.
+          //
+          lookups.put(user, lookup);
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Resolving group memberships was interrupted");
+      }
+
+      //
+      // Wait for all lookups to complete, but stop waiting as soon
+      // as one of them fails.
+      //
+      var completed = CompletableFuture.allOf(lookups
+        .values()
+        .stream()
+        .map(lookup -> lookup.handle((result, e) -> null))
+        .toArray(CompletableFuture[]::new));
+      await(CompletableFuture.anyOf(completed, failure));
+
+      for (var lookup : lookups.entrySet()) {
+        List<MembershipRelation> memberships;
+        try {
+          memberships = await(lookup.getValue());
+        }
+        catch (ResourceNotFoundException e) {
+          //
+          // This user doesn't exist, see resolveGroupPrincipals(EndUserId).
+          //
+          continue;
+        }
+
+        otherGroupPrincipals.put(lookup.getKey(), otherGroupPrincipals(memberships));
+        jitGroupMemberships.put(lookup.getKey(), jitGroupMemberships(memberships));
+      }
+    }
+    finally {
+      //
+      // If we're failing, don't leave outstanding lookups behind. For
+      // lookups that completed already, this has no effect.
+      //
+      lookups.values().forEach(lookup -> lookup.cancel(false));
+    }
+
+    var allGroupPrincipals = resolveJitGroupMemberships(jitGroupMemberships);
+    allGroupPrincipals.forEach((user, principals) -> principals.addAll(otherGroupPrincipals.get(user)));
+
+    this.logger.info(
+      EventIds.SUBJECT_RESOLUTION,
+      String.format("Resolved group memberships for %d of %d users",
+        allGroupPrincipals.size(),
+        lookups.size()));
+
+    return allGroupPrincipals;
+  }
+
+  /**
+   * Create principals for memberships of groups other than JIT groups.
+   */
+  private @NotNull Set<Principal> otherGroupPrincipals(
+    @NotNull List<MembershipRelation> memberships
+  ) {
+    var principals = memberships
+      .stream()
+      .filter(m -> !this.groupMapping.isJitGroup(new GroupId(m.getGroupKey().getId())))
+      .map(m -> new Principal(new GroupId(m.getGroupKey().getId())))
+      .collect(Collectors.toSet());
+
+    assert principals.stream().allMatch(g -> g.id().value().contains("@"));
+
+    //
+    // NB. Other groups might have an expiry too. That expiry would be
+    //     relevant if we were to cache the data. But we're not doing that,
+    //     so we don't need to worry about it.
+    //
+    return principals;
+  }
+
+  /**
+   * Extract JIT group memberships, which need further processing.
+   */
+  private @NotNull List<UnresolvedMembership> jitGroupMemberships(
+    @NotNull List<MembershipRelation> memberships
+  ) {
+    assert memberships
+      .stream()
+      .filter(m -> this.groupMapping.isJitGroup(new GroupId(m.getGroupKey().getId())))
+      .filter(m -> m.getRoles() != null)
+      .flatMap(m -> m.getRoles().stream())
+      .allMatch(r -> r.getExpiryDetail() == null);
+
+    return memberships
+      .stream()
+      .filter(m -> this.groupMapping.isJitGroup(new GroupId(m.getGroupKey().getId())))
+      .map(m -> new UnresolvedMembership(
+        new GroupId(m.getGroupKey().getId()),
+        new CloudIdentityGroupsClient.MembershipId(m.getMembership())))
+      .toList();
+  }
+
+  private static <T> T await(
+    @NotNull CompletableFuture<T> future
+  ) throws AccessException, IOException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Resolving group memberships was interrupted");
+    }
+    catch (ExecutionException e) {
+      var cause = Exceptions.unwrap(e);
+      if (cause instanceof AccessException accessException) {
+        throw (AccessException)accessException.fillInStackTrace();
+      }
+      else if (cause instanceof IOException ioException) {
+        throw (IOException)ioException.fillInStackTrace();
+      }
+      else {
+        throw new UncheckedExecutionException(cause);
+      }
+    }
+  }
+
   /**
    * Lookup all of a user's principals. These include:
    *
@@ -241,11 +467,41 @@ public class SubjectResolver {
     @NotNull EndUserId user,
     @NotNull Directory directory
   ) throws AccessException, IOException {
+    return principalsOf(user, directory, resolveGroupPrincipals(user));
+  }
+
+  /**
+   * Lookup the principals of multiple users, for example to check
+   * which of them satisfy a constraint.
+   * <p>
+   * This is more efficient than resolving the principals of each
+   * user individually because lookups are performed concurrently,
+   * and lookups of JIT group memberships are shared across users.
+   *
+   * @param users users to resolve principals for
+   * @param directories function that returns the directory of a user
+   * @return principals, by user. Users that don't exist are omitted.
+   */
+  public @NotNull Map<EndUserId, Set<Principal>> resolvePrincipals(
+    @NotNull Collection<EndUserId> users,
+    @NotNull Function<EndUserId, Directory> directories
+  ) throws AccessException, IOException {
+    var principals = new HashMap<EndUserId, Set<Principal>>();
+    resolveGroupPrincipals(users).forEach((user, groupPrincipals) -> principals.put(
+      user,
+      principalsOf(user, directories.apply(user), groupPrincipals)));
+    return principals;
+  }
 
+  private @NotNull Set<Principal> principalsOf(
+    @NotNull EndUserId user,
+    @NotNull Directory directory,
+    @NotNull Set<Principal> groupPrincipals
+  ) {
     var allPrincipals = new HashSet<Principal>();
     allPrincipals.add(new Principal(ClassPrincipalSet.IAP_USERS));
     allPrincipals.add(new Principal(user));
-    allPrincipals.addAll(resolveGroupPrincipals(user));
+    allPrincipals.addAll(groupPrincipals);
 
     //
     // Add an extra principal based on the directory the user
@@ -284,6 +540,7 @@ public class SubjectResolver {
 
   private record ResolvedMembership(
     @NotNull GroupId group,
+    @NotNull CloudIdentityGroupsClient.MembershipId membershipId,
     @NotNull Membership details
   ) {}
 }
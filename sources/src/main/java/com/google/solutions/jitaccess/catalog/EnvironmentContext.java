@@ -23,6 +23,7 @@ package com.google.solutions.jitaccess.catalog;
 
 import com.google.common.base.Preconditions;
 import com.google.solutions.jitaccess.apis.clients.AccessException;
+import com.google.solutions.jitaccess.apis.clients.QuotaGovernor;
 import com.google.solutions.jitaccess.auth.Subject;
 import com.google.solutions.jitaccess.catalog.legacy.LegacyPolicy;
 import com.google.solutions.jitaccess.catalog.policy.EnvironmentPolicy;
@@ -111,30 +112,36 @@ public class EnvironmentContext {
     var result = new LinkedList<JitGroupCompliance>();
 
     //
-    // Enumerate groups in Cloud Identity and check then one-by-one.
+    // Reconciling is background work, so it yields to
+    // interactive requests when quota is tight.
     //
-    for (var groupId : this.environment.provisioner().provisionedGroups()) {
-      var cloudIdentityGroupId = this.environment.provisioner().cloudIdentityGroupId(groupId);
-
-      var policy =  this.environment.policy()
-        .system(groupId.system())
-        .flatMap(sys -> sys.group(groupId.name()));
-      if (policy.isEmpty()) {
-        //
-        // There's no policy for this group, making this an orphaned group.
-        //
-        result.add(new JitGroupCompliance(groupId, cloudIdentityGroupId, null, null));
-      }
-      else {
-        //
-        // There's a policy for this group, so we can reconcile it.
-        //
-        try {
-          this.environment.provisioner().reconcile(policy.get());
-          result.add(new JitGroupCompliance(groupId, cloudIdentityGroupId, policy.get(), null));
+    try (var background = QuotaGovernor.backgroundScope()) {
+      //
+      // Enumerate groups in Cloud Identity and check then one-by-one.
+      //
+      for (var groupId : this.environment.provisioner().provisionedGroups()) {
+        var cloudIdentityGroupId = this.environment.provisioner().cloudIdentityGroupId(groupId);
+
+        var policy =  this.environment.policy()
+          .system(groupId.system())
+          .flatMap(sys -> sys.group(groupId.name()));
+        if (policy.isEmpty()) {
+          //
+          // There's no policy for this group, making this an orphaned group.
+          //
+          result.add(new JitGroupCompliance(groupId, cloudIdentityGroupId, null, null));
         }
-        catch (AccessException | IOException e) {
-          result.add(new JitGroupCompliance(groupId, cloudIdentityGroupId, policy.get(), e));
+        else {
+          //
+          // There's a policy for this group, so we can reconcile it.
+          //
+          try {
+            this.environment.provisioner().reconcile(policy.get());
+            result.add(new JitGroupCompliance(groupId, cloudIdentityGroupId, policy.get(), null));
+          }
+          catch (AccessException | IOException e) {
+            result.add(new JitGroupCompliance(groupId, cloudIdentityGroupId, policy.get(), e));
+          }
         }
       }
     }
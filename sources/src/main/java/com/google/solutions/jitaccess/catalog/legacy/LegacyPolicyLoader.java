@@ -26,6 +26,7 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.solutions.jitaccess.apis.Logger;
 import com.google.solutions.jitaccess.apis.clients.AccessException;
 import com.google.solutions.jitaccess.apis.clients.AssetInventoryClient;
+import com.google.solutions.jitaccess.apis.clients.QuotaGovernor;
 import com.google.solutions.jitaccess.apis.clients.ResourceManagerClient;
 import com.google.solutions.jitaccess.apis.clients.ResourceNotFoundException;
 import com.google.solutions.jitaccess.catalog.policy.Policy;
@@ -81,14 +82,25 @@ public class LegacyPolicyLoader {
         String.format("IAM policies in %s", scope),
         Instant.now()));
 
-    for (var project : this
+    //
+    // Bindings of projects are loaded lazily, typically on a request
+    // thread. Capture the priority so that these loads count as the
+    // same kind of work as loading the policy itself.
+    //
+    var priority = QuotaGovernor.currentPriority();
+
+    //
+    // Stream projects, so that we can add projects from one page
+    // while the next page is being fetched.
+    //
+    try (var projects = this
       .produceResourceManagerClient.get()
-      .searchProjects(projectQuery)) {
+      .streamProjects(projectQuery)) {
 
-      policy.add(
+      projects.forEach(project -> policy.add(
         project,
         () -> {
-          try {
+          try (var priorityScope = QuotaGovernor.scope(priority)) {
             return getEffectiveIamPolicies(scope, "projects/" + project.getProjectId());
           }
           catch (ResourceNotFoundException e) {
@@ -100,7 +112,18 @@ public class LegacyPolicyLoader {
           catch (Exception e) {
             throw new UncheckedExecutionException(e);
           }
-        });
+        }));
+    }
+    catch (UncheckedExecutionException e) {
+      if (e.getCause() instanceof AccessException accessException) {
+        throw (AccessException)accessException.fillInStackTrace();
+      }
+      else if (e.getCause() instanceof IOException ioException) {
+        throw (IOException)ioException.fillInStackTrace();
+      }
+      else {
+        throw e;
+      }
     }
 
     return policy;
@@ -22,7 +22,9 @@
 package com.google.solutions.jitaccess.catalog.policy;
 
 import com.google.common.base.Preconditions;
+import com.google.solutions.jitaccess.auth.PrincipalHandles;
 import com.google.solutions.jitaccess.auth.PrincipalId;
+import com.google.solutions.jitaccess.auth.PrincipalRegistry;
 import com.google.solutions.jitaccess.auth.Subject;
 import org.jetbrains.annotations.NotNull;
 
@@ -87,6 +89,32 @@ public record AccessControlList(
     return (effectiveAccessMaskForSubject & requiredAccessRights) == requiredAccessRights;
   }
 
+  /**
+   * Check whether access is allowed access for any of the provided
+   * principals, identified by their handles.
+   */
+  private static boolean isAllowed(
+    @NotNull PrincipalHandles principals,
+    @NotNull Iterable<Entry> accessEntries,
+    int requiredAccessRights
+  ) {
+    int effectiveAccessMaskForSubject = 0;
+
+    for (var entry : accessEntries) {
+      if (principals.contains(entry.principalHandle)) {
+        if (entry instanceof AllowedEntry allowedEntry) {
+          effectiveAccessMaskForSubject |= allowedEntry.accessRights;
+        }
+        else if (entry instanceof DeniedEntry deniedEntry &&
+          (deniedEntry.accessRights & requiredAccessRights) != 0) {
+          return false;
+        }
+      }
+    }
+
+    return (effectiveAccessMaskForSubject & requiredAccessRights) == requiredAccessRights;
+  }
+
   /**
    * @return principals that have granted the requested level of access.
    */
@@ -122,13 +150,14 @@ public record AccessControlList(
   public boolean isAllowed(@NotNull Subject subject, int requiredAccessRights) {
     Preconditions.checkArgument(requiredAccessRights != 0, "requiredAccessRights");
 
+    //
+    // Compare handles instead of principal IDs, this avoids
+    // allocations and expensive equality checks.
+    //
     return isAllowed(
-      subject.principals()
-        .stream()
-        .filter(p -> p.isValid())
-        .map(p -> p.id())
-        .collect(Collectors.toList()),
-      this.entries, requiredAccessRights);
+      PrincipalHandles.of(subject),
+      this.entries,
+      requiredAccessRights);
   }
 
   /**
@@ -157,9 +186,15 @@ public record AccessControlList(
      */
     public final @NotNull PrincipalId principal;
 
+    /**
+     * Handle of the principal, see {@link PrincipalRegistry}.
+     */
+    final int principalHandle;
+
     protected Entry(@NotNull PrincipalId principal, int accessRights) {
       this.principal = principal;
       this.accessRights = accessRights;
+      this.principalHandle = PrincipalRegistry.shared().register(principal);
     }
   }
 
@@ -41,13 +41,30 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * Constraint that executes a CEL expression.
+ * <p>
+ * The expression is compiled once, when the constraint is created,
+ * against each standard set of variables. The resulting programs are
+ * immutable and shared by all checks.
  */
 public class CelConstraint implements Constraint {
   static final String NAME_PATTERN = "[a-zA-Z0-9\\-]+";
 
+  /**
+   * Sets of variables that checks use: the input, optionally
+   * combined with the contexts added by {@link PolicyAnalysis}.
+   */
+  static final @NotNull List<Set<String>> STANDARD_VARIABLE_SETS = List.of(
+    Set.of("input"),
+    Set.of("input", "subject"),
+    Set.of("input", "group"),
+    Set.of("input", "subject", "group"));
+
   private static final CelRuntime CEL_RUNTIME = Cel.createRuntime();
 
   private final @NotNull String name;
@@ -55,6 +72,18 @@ public class CelConstraint implements Constraint {
   private final @NotNull Collection<Variable> variableDeclarations;
   private final @NotNull String expression;
 
+  /**
+   * Results of compiling the expression, by set of standard variables.
+   */
+  private final @NotNull Map<Set<String>, CelValidationResult> compilations;
+
+  /**
+   * Programs, by set of variable names. Programs for the standard
+   * variables are created upfront, programs for checks that use
+   * non-standard contexts are created on first use.
+   */
+  private final @NotNull Map<Set<String>, CelRuntime.Program> programs = new ConcurrentHashMap<>();
+
   public CelConstraint(
     @NotNull String name,
     @NotNull String displayName,
@@ -72,6 +101,81 @@ public class CelConstraint implements Constraint {
     this.displayName = displayName;
     this.variableDeclarations = variables;
     this.expression = expression;
+
+    //
+    // Compile against all standard variables now, so that invalid
+    // expressions surface when the policy is loaded.
+    //
+    this.compilations = STANDARD_VARIABLE_SETS
+      .stream()
+      .collect(Collectors.toUnmodifiableMap(v -> v, this::compile));
+    this.compilations.forEach((variableSet, compilation) -> {
+      if (!compilation.hasError()) {
+        var program = createProgram(compilation);
+        if (program != null) {
+          this.programs.put(variableSet, program);
+        }
+      }
+    });
+  }
+
+  private @NotNull CelValidationResult compile(@NotNull Set<String> variables) {
+    //
+    // Allow all the standard macros like has().
+    //
+    var compiler = Cel.createCompilerBuilder();
+
+    for (var variable : variables) {
+      compiler.addVar(variable, CelTypes.createMap(CelTypes.STRING, CelTypes.ANY));
+    }
+
+    return compiler.build().compile(this.expression);
+  }
+
+  private static @Nullable CelRuntime.Program createProgram(@NotNull CelValidationResult compilation) {
+    try {
+      return CEL_RUNTIME.createProgram(compilation.getAst());
+    }
+    catch (CelValidationException | CelEvaluationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Get a program for evaluating the expression with the given set of
+   * variables.
+   */
+  private @NotNull CelRuntime.Program program(
+    @NotNull Set<String> variables
+  ) throws InvalidExpressionException {
+    var key = Set.copyOf(variables);
+    var program = this.programs.get(key);
+    if (program != null) {
+      return program;
+    }
+
+    try {
+      var compilation = this.compilations.get(key);
+      if (compilation != null) {
+        //
+        // Compiling the expression failed, throw the original error.
+        //
+        return CEL_RUNTIME.createProgram(compilation.getAst());
+      }
+
+      //
+      // The check uses contexts other than the standard ones, which
+      // we can't compile for upfront.
+      //
+      program = CEL_RUNTIME.createProgram(compile(key).getAst());
+      this.programs.put(key, program);
+      return program;
+    }
+    catch (CelValidationException | CelEvaluationException e) {
+      throw new InvalidExpressionException(
+        String.format("The CEL expression '%s' is invalid", this.expression),
+        e);
+    }
   }
 
   @Override
@@ -123,10 +227,11 @@ public class CelConstraint implements Constraint {
   }
 
   /**
-   * Lint the expression without evaluating it.
+   * Lint the expression without evaluating it. Only the input
+   * is considered declared.
    */
   Collection<CelIssue> lint() {
-    return new Check().compile().getAllIssues();
+    return this.compilations.get(Set.of("input")).getAllIssues();
   }
 
   private class Check implements Constraint.Check {
@@ -169,19 +274,6 @@ public class CelConstraint implements Constraint {
       };
     }
 
-    private CelValidationResult compile() {
-      //
-      // Allow all the standard macros like has().
-      //
-      var compiler = Cel.createCompilerBuilder();
-
-      for (var variable : this.variables.keySet()) {
-        compiler.addVar(variable, CelTypes.createMap(CelTypes.STRING, CelTypes.ANY));
-      }
-
-      return compiler.build().compile(CelConstraint.this.expression);
-    }
-
     @Override
     public @NotNull Boolean evaluate() throws EvaluationException {
       for (var input : this.input) {
@@ -192,13 +284,9 @@ public class CelConstraint implements Constraint {
       }
 
       try {
-        var ast = compile().getAst();
-
-        return (Boolean)CEL_RUNTIME
-          .createProgram(ast)
-          .eval(this.variables);
-
-      } catch (CelValidationException | CelEvaluationException e) {
+        return (Boolean)program(this.variables.keySet()).eval(this.variables);
+      }
+      catch (CelEvaluationException e) {
         throw new InvalidExpressionException(
           String.format("The CEL expression '%s' is invalid", CelConstraint.this.expression),
           e);
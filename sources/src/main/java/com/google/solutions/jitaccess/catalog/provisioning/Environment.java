@@ -21,10 +21,13 @@
 
 package com.google.solutions.jitaccess.catalog.provisioning;
 
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.solutions.jitaccess.apis.clients.BackendUnavailableException;
 import com.google.solutions.jitaccess.catalog.policy.EnvironmentPolicy;
 import com.google.solutions.jitaccess.catalog.policy.PolicyDocumentSource;
 import com.google.solutions.jitaccess.common.Lazy;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.time.Duration;
 
@@ -36,6 +39,7 @@ public abstract class Environment {
   private final @NotNull String description;
   private final @NotNull Lazy<EnvironmentPolicy> policy;
   private final @NotNull Provisioner provisioner;
+  private volatile @Nullable EnvironmentPolicy lastKnownPolicy;
 
   protected Environment(
     @NotNull String name,
@@ -74,9 +78,30 @@ public abstract class Environment {
 
   /**
    * Policy for this environment, can be delay-loaded.
+   * <p>
+   * If reloading the policy fails because the backend that stores
+   * it is unavailable, the last known policy is used instead.
    */
   public @NotNull EnvironmentPolicy policy() {
-    return this.policy.get();
+    try {
+      var policy = this.policy.get();
+      this.lastKnownPolicy = policy;
+      return policy;
+    }
+    catch (UncheckedExecutionException e) {
+      var lastKnownPolicy = this.lastKnownPolicy;
+      if (lastKnownPolicy == null) {
+        throw e;
+      }
+
+      for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+        if (cause instanceof BackendUnavailableException) {
+          return lastKnownPolicy;
+        }
+      }
+
+      throw e;
+    }
   }
 
   /**
@@ -54,29 +54,35 @@ public class Provisioner {
   private final @NotNull String environmentName;
   private final @NotNull GroupProvisioner groupProvisioner;
   private final @NotNull IamProvisioner iamProvisioner;
+  private final @NotNull MembershipListener listener;
 
   Provisioner(
     @NotNull String environmentName,
     @NotNull GroupProvisioner groupProvisioner,
-    @NotNull IamProvisioner iamProvisioner
+    @NotNull IamProvisioner iamProvisioner,
+    @NotNull MembershipListener listener
   ) {
     this.environmentName = environmentName;
     this.groupProvisioner = groupProvisioner;
     this.iamProvisioner = iamProvisioner;
+    this.listener = listener;
   }
 
   public Provisioner(
     @NotNull String environmentName,
     @NotNull GroupMapping groupMapping,
     @NotNull CloudIdentityGroupsClient groupsClient,
+    @NotNull MembershipExpiryCache membershipCache,
     @NotNull ResourceManagerClient resourceManagerClient,
     @NotNull Executor executor,
+    @NotNull MembershipListener listener,
     @NotNull Logger logger
   ) {
     this(
       environmentName,
-      new GroupProvisioner(groupMapping, groupsClient, logger),
-      new IamProvisioner(groupsClient, resourceManagerClient, executor, logger));
+      new GroupProvisioner(groupMapping, groupsClient, membershipCache, logger),
+      new IamProvisioner(groupsClient, resourceManagerClient, executor, logger),
+      listener);
   }
 
   /**
@@ -92,6 +98,12 @@ public class Provisioner {
     //
     this.groupProvisioner.provision(group, member, expiry);
 
+    //
+    // Let listeners know about the membership right away so that they
+    // don't keep using outdated information until their caches expire.
+    //
+    this.listener.onMembershipProvisioned(group.id(), member, expiry);
+
     //
     // Provision IAM role bindings in case they have changed.
     //
@@ -164,21 +176,57 @@ public class Provisioner {
     return this.groupProvisioner.cloudIdentityGroupKey(ciGroupId);
   }
 
+  /**
+   * Listener for changes to group memberships.
+   */
+  public interface MembershipListener {
+    MembershipListener NONE = new MembershipListener() {};
+
+    /**
+     * Invoked after a membership has been added or extended, for
+     * example because a user joined a group or a proposal
+     * was approved.
+     */
+    default void onMembershipProvisioned(
+      @NotNull JitGroupId group,
+      @NotNull EndUserId member,
+      @NotNull Instant expiry
+    ) {}
+
+    /**
+     * Invoked after a membership has been removed, for example
+     * while cleaning up orphaned groups.
+     */
+    default void onMembershipRemoved(
+      @NotNull JitGroupId group,
+      @NotNull EndUserId member
+    ) {}
+  }
+
   /**
    * Provisioner for Cloud Identity groups and memberships.
    */
   public static class GroupProvisioner {
+    /**
+     * Fields needed to identify provisioned groups.
+     */
+    private static final @NotNull FieldProjection PROVISIONED_GROUP_FIELDS =
+      FieldProjection.of("groupKey");
+
     private final @NotNull GroupMapping mapping;
     private final @NotNull CloudIdentityGroupsClient groupsClient;
+    private final @NotNull MembershipExpiryCache membershipCache;
     private final @NotNull Logger logger;
 
     public GroupProvisioner(
       @NotNull GroupMapping mapping,
       @NotNull CloudIdentityGroupsClient groupsClient,
+      @NotNull MembershipExpiryCache membershipCache,
       @NotNull Logger logger
     ) {
       this.mapping = mapping;
       this.groupsClient = groupsClient;
+      this.membershipCache = membershipCache;
       this.logger = logger;
     }
 
@@ -234,14 +282,30 @@ public class Provisioner {
       // We might still find some groups that just happen to match
       // the prefix, so we additionally consult the mapping.
       //
-      return this.groupsClient.searchGroupsByPrefix(
-          this.mapping.groupPrefix(environmentName),
-          false)
-        .stream()
-        .map(grp -> new GroupId(grp.getGroupKey().getId()))
-        .filter(this.mapping::isJitGroup)
-        .map(this.mapping::jitGroupFromGroup)
-        .toList();
+      // NB. Results are streamed, so that we can process one page
+      // while the next page is being fetched.
+      //
+      try (var groups = this.groupsClient.streamGroupsByPrefix(
+        this.mapping.groupPrefix(environmentName),
+        false,
+        PROVISIONED_GROUP_FIELDS)) {
+        return groups
+          .map(grp -> new GroupId(grp.getGroupKey().getId()))
+          .filter(this.mapping::isJitGroup)
+          .map(this.mapping::jitGroupFromGroup)
+          .toList();
+      }
+      catch (UncheckedExecutionException e) {
+        if (e.getCause() instanceof AccessException accessException) {
+          throw (AccessException)accessException.fillInStackTrace();
+        }
+        else if (e.getCause() instanceof IOException ioException) {
+          throw (IOException)ioException.fillInStackTrace();
+        }
+        else {
+          throw e;
+        }
+      }
     }
 
     /**
@@ -270,12 +334,14 @@ public class Provisioner {
           group.description());
 
         //
-        // Add user to group.
+        // Add user to group. If the membership existed before, its
+        // expiry has changed, so the cached expiry is outdated.
         //
-        this.groupsClient.addMembership(
+        var membershipId = this.groupsClient.addMembership(
           groupKey,
           member,
           expiry);
+        this.membershipCache.invalidate(membershipId);
 
         this.logger.info(
           EventIds.PROVISION_MEMBER,
@@ -405,19 +471,18 @@ public class Provisioner {
         // If there are multiple roles for a single resource, we can
         // provision them at once.
         //
-        var future = CompletableFutures.mapAsync(
-          roleBindings
-            .stream()
-            .collect(Collectors.groupingBy(b -> b.resource()))
-            .entrySet(),
-          bindingsForResource -> {
-            this.resourceManagerClient.modifyIamPolicy(
+        var future = CompletableFutures.allOf(roleBindings
+          .stream()
+          .collect(Collectors.groupingBy(b -> b.resource()))
+          .entrySet()
+          .stream()
+          .map(bindingsForResource -> this.resourceManagerClient
+            .modifyIamPolicyAsync(
               bindingsForResource.getKey(),
               policy -> replaceBindingsForPrincipals(policy, groupId, bindingsForResource.getValue()),
-              "Provisioning JIT group");
-            return bindingsForResource.getKey();
-          },
-          this.executor);
+              "Provisioning JIT group")
+            .thenApply(ignored -> bindingsForResource.getKey()))
+          .toList());
 
         try {
           future.get();
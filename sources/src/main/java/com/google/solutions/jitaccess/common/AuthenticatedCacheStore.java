@@ -0,0 +1,161 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+
+package com.google.solutions.jitaccess.common;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Cache store that protects the integrity of values kept in another,
+ * untrusted store.
+ * <p>
+ * Each value is stored along with an HMAC-SHA256 tag that covers both
+ * the key and the value, so that values can neither be forged nor moved
+ * to a different key by anyone who has access to the underlying store,
+ * but not to the secret. Values that fail verification are rejected.
+ * <p>
+ * The store doesn't encrypt values, so it must not be used for values
+ * that are confidential.
+ */
+public class AuthenticatedCacheStore implements CacheStore {
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final int TAG_LENGTH = 32;
+
+  /**
+   * Context for deriving the key, must be changed if the
+   * format of stored values changes.
+   */
+  private static final byte[] KEY_CONTEXT = "jitaccess-cache-store-v1".getBytes(StandardCharsets.UTF_8);
+
+  private final @NotNull CacheStore store;
+  private final @NotNull SecretKeySpec key;
+
+  /**
+   * @param store underlying, untrusted store
+   * @param secret secret to derive the key from, must be the same
+   *               for all instances of the application that share
+   *               the underlying store
+   */
+  public AuthenticatedCacheStore(
+    @NotNull CacheStore store,
+    byte @NotNull [] secret
+  ) {
+    Preconditions.checkNotNull(store, "store");
+    Preconditions.checkArgument(secret.length >= 16, "secret must be at least 16 bytes long");
+
+    this.store = store;
+
+    //
+    // Derive a key that's specific to this purpose so that the secret
+    // can also be used for other purposes.
+    //
+    this.key = new SecretKeySpec(hmac(new SecretKeySpec(secret, ALGORITHM), KEY_CONTEXT), ALGORITHM);
+  }
+
+  private static byte @NotNull [] hmac(
+    @NotNull SecretKeySpec key,
+    byte @NotNull [] @NotNull ... data
+  ) {
+    try {
+      //
+      // Mac objects aren't thread-safe, so we can't share them.
+      //
+      var mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      for (var d : data) {
+        mac.update(d);
+      }
+      return mac.doFinal();
+    }
+    catch (GeneralSecurityException e) {
+      throw new IllegalStateException("HMAC-SHA256 is not available", e);
+    }
+  }
+
+  /**
+   * Compute the tag for a key/value pair. The key is length-prefixed
+   * so that the boundary between key and value is unambiguous.
+   */
+  private byte @NotNull [] tag(@NotNull String key, byte @NotNull [] value) {
+    var encodedKey = key.getBytes(StandardCharsets.UTF_8);
+    var keyLength = new byte[] {
+      (byte)(encodedKey.length >>> 24),
+      (byte)(encodedKey.length >>> 16),
+      (byte)(encodedKey.length >>> 8),
+      (byte)encodedKey.length
+    };
+
+    return hmac(this.key, keyLength, encodedKey, value);
+  }
+
+  @Override
+  public @NotNull Optional<byte[]> get(@NotNull String key) throws IOException {
+    var stored = this.store.get(key).orElse(null);
+    if (stored == null) {
+      return Optional.empty();
+    }
+
+    if (stored.length < TAG_LENGTH) {
+      throw new IOException(
+        String.format("The cached value for '%s' is not authenticated", key));
+    }
+
+    var value = Arrays.copyOfRange(stored, TAG_LENGTH, stored.length);
+    if (!MessageDigest.isEqual(
+      Arrays.copyOfRange(stored, 0, TAG_LENGTH),
+      tag(key, value))) {
+      throw new IOException(
+        String.format("The cached value for '%s' failed integrity verification", key));
+    }
+
+    return Optional.of(value);
+  }
+
+  @Override
+  public void put(
+    @NotNull String key,
+    byte @NotNull [] value,
+    @NotNull Duration ttl
+  ) throws IOException {
+    var stored = new byte[TAG_LENGTH + value.length];
+    System.arraycopy(tag(key, value), 0, stored, 0, TAG_LENGTH);
+    System.arraycopy(value, 0, stored, TAG_LENGTH, value.length);
+
+    this.store.put(key, stored, ttl);
+  }
+
+  @Override
+  public void remove(@NotNull String key) throws IOException {
+    this.store.remove(key);
+  }
+}
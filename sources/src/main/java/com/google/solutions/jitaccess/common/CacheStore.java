@@ -0,0 +1,88 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.common;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Key/value store for cached data, which might be shared
+ * by multiple instances of the application.
+ * <p>
+ * Stores deal with opaque values, use {@link SecondLevelCache} to
+ * cache typed values.
+ */
+public interface CacheStore {
+  /**
+   * Store that doesn't keep any values. Use this store when there's
+   * no shared store, so that values aren't cached twice in-process.
+   */
+  @NotNull CacheStore NONE = new CacheStore() {
+    @Override
+    public @NotNull Optional<byte[]> get(@NotNull String key) {
+      return Optional.empty();
+    }
+
+    @Override
+    public void put(@NotNull String key, byte @NotNull [] value, @NotNull Duration ttl) {
+    }
+
+    @Override
+    public void remove(@NotNull String key) {
+    }
+
+    @Override
+    public String toString() {
+      return "none";
+    }
+  };
+
+  /**
+   * Get a value.
+   *
+   * @return value, or empty if the key isn't present or has expired.
+   * @throws IOException if the store is unavailable.
+   */
+  @NotNull Optional<byte[]> get(@NotNull String key) throws IOException;
+
+  /**
+   * Store a value, replacing any existing value.
+   *
+   * @param ttl time after which the value expires.
+   * @throws IOException if the store is unavailable.
+   */
+  void put(
+    @NotNull String key,
+    byte @NotNull [] value,
+    @NotNull Duration ttl
+  ) throws IOException;
+
+  /**
+   * Remove a value, if present.
+   *
+   * @throws IOException if the store is unavailable.
+   */
+  void remove(@NotNull String key) throws IOException;
+}
@@ -27,6 +27,7 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 
 /**
@@ -98,6 +99,40 @@ public abstract class CompletableFutures {
       executor);
   }
 
+  /**
+   * Returns a new CompletableFuture that completes when all supplied
+   * futures have completed, similar to CompletableFuture.allOf, but
+   * returns the results of the individual futures.
+   * <p>
+   * If one of the futures fails, the future will throw an
+   * AggregateException.
+   */
+  public static <T> @NotNull CompletableFuture<Collection<T>> allOf(
+    @NotNull Collection<CompletableFuture<T>> futures
+  ) {
+    return CompletableFuture
+      .allOf(futures.toArray(CompletableFuture[]::new))
+      .handle((ignored, e) -> {
+        var results = new LinkedList<T>();
+        var exceptions = new LinkedList<Exception>();
+        for (var future : futures) {
+          try {
+            results.add(future.join());
+          }
+          catch (Exception futureException) {
+            exceptions.add(Exceptions.unwrap(futureException));
+          }
+        }
+
+        if (exceptions.isEmpty()) {
+          return results;
+        }
+        else {
+          throw new CompletionException(new AggregateException(exceptions));
+        }
+      });
+  }
+
   /**
    * Function that can throw a checked exception.
    */
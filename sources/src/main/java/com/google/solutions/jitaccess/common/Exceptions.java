@@ -28,6 +28,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -101,7 +102,9 @@ public class Exceptions {
    * Remove common wrapper exception to reveal the actual exception.
    */
   public static @NotNull Exception unwrap(@NotNull Exception e) {
-    while ((e instanceof UncheckedExecutionException || e instanceof ExecutionException) &&
+    while ((e instanceof UncheckedExecutionException ||
+      e instanceof ExecutionException ||
+      e instanceof CompletionException) &&
       e.getCause() != null &&
       e.getCause() instanceof Exception) {
       e = (Exception)e.getCause();
@@ -110,6 +113,18 @@ public class Exceptions {
     return e;
   }
 
+  /**
+   * Remove common wrapper exception to reveal the actual exception.
+   */
+  public static @NotNull Throwable unwrap(@NotNull Throwable e) {
+    if (e instanceof Exception exception) {
+      return unwrap(exception);
+    }
+    else {
+      return e;
+    }
+  }
+
   /**
    * Get the innermost cause of an exception.
    */
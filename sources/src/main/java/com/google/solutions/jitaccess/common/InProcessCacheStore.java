@@ -0,0 +1,90 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.common;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache store that keeps values in memory. Values aren't shared
+ * with other instances of the application.
+ * <p>
+ * The store holds a bounded number of values, and evicts the least
+ * recently used values first.
+ */
+public class InProcessCacheStore implements CacheStore {
+  private final @NotNull LongSupplier clock;
+  private final @NotNull Map<String, Entry> entries;
+
+  InProcessCacheStore(int maximumSize, @NotNull LongSupplier clock) {
+    Preconditions.checkArgument(maximumSize > 0, "maximumSize must be positive");
+
+    this.clock = clock;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maximumSize;
+      }
+    };
+  }
+
+  public InProcessCacheStore(int maximumSize) {
+    this(maximumSize, System::nanoTime);
+  }
+
+  @Override
+  public synchronized @NotNull Optional<byte[]> get(@NotNull String key) {
+    var entry = this.entries.get(key);
+    if (entry == null) {
+      return Optional.empty();
+    }
+    else if (entry.expiry - this.clock.getAsLong() <= 0) {
+      this.entries.remove(key);
+      return Optional.empty();
+    }
+    else {
+      return Optional.of(entry.value);
+    }
+  }
+
+  @Override
+  public synchronized void put(
+    @NotNull String key,
+    byte @NotNull [] value,
+    @NotNull Duration ttl
+  ) {
+    this.entries.put(key, new Entry(value, this.clock.getAsLong() + ttl.toNanos()));
+  }
+
+  @Override
+  public synchronized void remove(@NotNull String key) {
+    this.entries.remove(key);
+  }
+
+  private record Entry(byte @NotNull [] value, long expiry) {}
+}
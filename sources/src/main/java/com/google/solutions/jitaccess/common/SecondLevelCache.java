@@ -0,0 +1,264 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.common;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache for typed values that sits beneath an in-process cache,
+ * and that can be shared by multiple instances of the application.
+ * <p>
+ * The cache is best-effort: If the underlying store is unavailable
+ * or returns a value that can't be decoded, lookups behave as if
+ * the value wasn't present, and updates are skipped. Such errors are
+ * counted, but never propagated to the caller.
+ * <p>
+ * If the underlying store is {@link CacheStore#NONE}, the cache
+ * is disabled and doesn't encode or decode any values.
+ *
+ * @param <V> type of cached values
+ */
+public class SecondLevelCache<V> {
+  private final @NotNull CacheStore store;
+  private final @NotNull String namespace;
+  private final @NotNull Codec<V> codec;
+  private final @NotNull Duration ttl;
+
+  private final @NotNull LongAdder hits = new LongAdder();
+  private final @NotNull LongAdder misses = new LongAdder();
+  private final @NotNull LongAdder errors = new LongAdder();
+  private final @NotNull LongAdder encodings = new LongAdder();
+  private final @NotNull LongAdder encodingNanos = new LongAdder();
+  private final @NotNull LongAdder decodingNanos = new LongAdder();
+  private final @NotNull LongAdder bytesWritten = new LongAdder();
+  private final @NotNull LongAdder bytesRead = new LongAdder();
+  private volatile @Nullable String lastError;
+
+  /**
+   * @param store underlying store
+   * @param namespace prefix for keys, must be unique per type of value,
+   *                  and should be changed when the encoding changes
+   * @param codec codec for values
+   * @param ttl time after which values expire
+   */
+  public SecondLevelCache(
+    @NotNull CacheStore store,
+    @NotNull String namespace,
+    @NotNull Codec<V> codec,
+    @NotNull Duration ttl
+  ) {
+    Preconditions.checkNotNull(store, "store");
+    Preconditions.checkArgument(!namespace.isBlank(), "namespace must not be blank");
+    Preconditions.checkNotNull(codec, "codec");
+    Preconditions.checkArgument(
+      !ttl.isNegative() && !ttl.isZero(),
+      "ttl must be positive");
+
+    this.store = store;
+    this.namespace = namespace;
+    this.codec = codec;
+    this.ttl = ttl;
+  }
+
+  private @NotNull String qualifiedKey(@NotNull String key) {
+    return this.namespace + ":" + key;
+  }
+
+  /**
+   * Check if the cache has an underlying store.
+   */
+  public boolean isEnabled() {
+    return this.store != CacheStore.NONE;
+  }
+
+  private void recordError(@NotNull Exception e) {
+    this.errors.increment();
+    this.lastError = e.getMessage();
+  }
+
+  /**
+   * Get a value.
+   *
+   * @return value, or empty if the value isn't present or
+   * can't be retrieved.
+   */
+  public @NotNull Optional<V> get(@NotNull String key) {
+    if (!isEnabled()) {
+      return Optional.empty();
+    }
+
+    byte[] encoded;
+    try {
+      encoded = this.store.get(qualifiedKey(key)).orElse(null);
+    }
+    catch (IOException | RuntimeException e) {
+      recordError(e);
+      return Optional.empty();
+    }
+
+    if (encoded == null) {
+      this.misses.increment();
+      return Optional.empty();
+    }
+
+    var start = System.nanoTime();
+    try {
+      var value = this.codec.decode(encoded);
+      this.hits.increment();
+      this.bytesRead.add(encoded.length);
+      return Optional.of(value);
+    }
+    catch (IOException | RuntimeException e) {
+      recordError(e);
+      return Optional.empty();
+    }
+    finally {
+      this.decodingNanos.add(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Store a value, replacing any existing value.
+   */
+  public void put(@NotNull String key, @NotNull V value) {
+    if (!isEnabled()) {
+      return;
+    }
+
+    try {
+      var start = System.nanoTime();
+      var encoded = this.codec.encode(value);
+      this.encodingNanos.add(System.nanoTime() - start);
+      this.encodings.increment();
+
+      this.store.put(qualifiedKey(key), encoded, this.ttl);
+      this.bytesWritten.add(encoded.length);
+    }
+    catch (IOException | RuntimeException e) {
+      recordError(e);
+    }
+  }
+
+  /**
+   * Remove a value, if present.
+   */
+  public void remove(@NotNull String key) {
+    if (!isEnabled()) {
+      return;
+    }
+
+    try {
+      this.store.remove(qualifiedKey(key));
+    }
+    catch (IOException | RuntimeException e) {
+      recordError(e);
+    }
+  }
+
+  /**
+   * Get statistics.
+   */
+  public @NotNull Statistics statistics() {
+    var hits = this.hits.sum();
+    var encodings = this.encodings.sum();
+    return new Statistics(
+      hits,
+      this.misses.sum(),
+      this.errors.sum(),
+      encodings > 0
+        ? Duration.ofNanos(this.encodingNanos.sum() / encodings)
+        : Duration.ZERO,
+      hits > 0
+        ? Duration.ofNanos(this.decodingNanos.sum() / hits)
+        : Duration.ZERO,
+      this.bytesWritten.sum(),
+      this.bytesRead.sum(),
+      this.lastError);
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Converts values to and from their binary representation.
+   */
+  public interface Codec<V> {
+    byte @NotNull [] encode(@NotNull V value) throws IOException;
+
+    @NotNull V decode(byte @NotNull [] encoded) throws IOException;
+  }
+
+  /**
+   * Snapshot of cache statistics.
+   *
+   * @param hits number of lookups that returned a value
+   * @param misses number of lookups that didn't find a value
+   * @param errors number of operations that failed
+   * @param averageEncodingTime average time to encode a value
+   * @param averageDecodingTime average time to decode a value
+   * @param bytesWritten total size of encoded values written
+   * @param bytesRead total size of encoded values read
+   * @param lastError error of the last failed operation, if any
+   */
+  public record Statistics(
+    long hits,
+    long misses,
+    long errors,
+    @NotNull Duration averageEncodingTime,
+    @NotNull Duration averageDecodingTime,
+    long bytesWritten,
+    long bytesRead,
+    @Nullable String lastError
+  ) {
+    /**
+     * Fraction of lookups that returned a value.
+     */
+    public double hitRatio() {
+      var lookups = this.hits + this.misses;
+      return lookups > 0 ? (double)this.hits / lookups : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "hit ratio: %.1f%%, hits: %d, misses: %d, errors: %d, " +
+          "encoding: %d us, decoding: %d us, bytes written: %d, bytes read: %d%s",
+        this.hitRatio() * 100,
+        this.hits,
+        this.misses,
+        this.errors,
+        this.averageEncodingTime.toNanos() / 1000,
+        this.averageDecodingTime.toNanos() / 1000,
+        this.bytesWritten,
+        this.bytesRead,
+        this.lastError != null ? ", last error: " + this.lastError : "");
+    }
+  }
+}
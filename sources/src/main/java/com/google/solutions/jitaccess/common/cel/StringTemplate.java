@@ -22,15 +22,19 @@
 package com.google.solutions.jitaccess.common.cel;
 
 import com.google.api.client.json.GenericJson;
+import com.google.common.base.Preconditions;
 import dev.cel.common.CelValidationException;
 import dev.cel.common.types.CelTypes;
 import dev.cel.runtime.CelEvaluationException;
 import dev.cel.runtime.CelRuntime;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A template that embeds CEL expressions. Embedded expressions
@@ -40,19 +44,34 @@ import java.util.regex.Pattern;
  * {{ 1+1 }}
  * <p>
  * would be evaluated to 2.
+ * <p>
+ * The template text is parsed once, see {@link Parsed}. A parsed
+ * template can be shared by multiple template objects, which avoids
+ * parsing and compiling the same template over and over again.
  */
 public class StringTemplate implements Expression<String> {
-  private static final Pattern TEMPLATE_PATTERN = Pattern.compile(
-    "\\{\\{(.*?)\\}\\}",
-    Pattern.DOTALL);
+  private static final String EXPRESSION_START = "{{";
+  private static final String EXPRESSION_END = "}}";
 
   private static final CelRuntime CEL_RUNTIME = Cel.createRuntime();
 
-  private final @NotNull String template;
+  private final @NotNull Parsed parsed;
   private final @NotNull Map<String, GenericJson> variables = new HashMap<>();
 
+  public StringTemplate(@NotNull Parsed parsed) {
+    Preconditions.checkNotNull(parsed, "parsed");
+    this.parsed = parsed;
+  }
+
   public StringTemplate(@NotNull String template) {
-    this.template = template;
+    this(Parsed.parse(template));
+  }
+
+  /**
+   * Parsed form of the template, which can be shared.
+   */
+  public @NotNull Parsed parsed() {
+    return this.parsed;
   }
 
   @Override
@@ -74,57 +93,187 @@ public class StringTemplate implements Expression<String> {
 
   @Override
   public @NotNull String evaluate() throws EvaluationException {
+    var programs = this.parsed.programs(this.variables.keySet());
+
+    var output = new StringBuilder(this.parsed.sizeHint);
+    for (int i = 0; i < this.parsed.segments.size(); i++) {
+      var segment = this.parsed.segments.get(i);
+      if (segment.isLiteral()) {
+        output.append(segment.text);
+      }
+      else {
+        try {
+          output.append(programs.get(i).eval(this.variables));
+        }
+        catch (CelEvaluationException e) {
+          throw new InvalidExpressionException(
+            String.format("The CEL expression '%s' is invalid", segment.text),
+            e);
+        }
+      }
+    }
+
     //
-    // Prepare a compiler, allowing all the standard macros like has().
+    // Remember the size so that the next rendering of this template
+    // can allocate a sufficiently large buffer upfront.
     //
-    var compilerFactory = Cel.createCompilerBuilder();
+    if (output.length() > this.parsed.sizeHint) {
+      this.parsed.sizeHint = output.length();
+    }
+
+    return output.toString();
+  }
+
+  @Override
+  public String toString() {
+    return this.parsed.template;
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Template that has been split into literal text and embedded
+   * expressions.
+   * <p>
+   * Expressions are compiled on first use, once for each set of
+   * variables that they're evaluated with. The resulting programs are
+   * immutable, so a parsed template is thread-safe and can be
+   * reused for any number of evaluations.
+   */
+  public static final class Parsed {
+    private final @NotNull String template;
+    private final @NotNull List<Segment> segments;
+
+    /**
+     * Programs for each segment (null for literals), by set of
+     * variable names.
+     */
+    private final @NotNull Map<Set<String>, List<CelRuntime.Program>> programs = new ConcurrentHashMap<>();
 
-    for (var variable : this.variables.keySet()) {
-      compilerFactory.addVar(variable, CelTypes.createMap(CelTypes.STRING, CelTypes.ANY));
+    /**
+     * Expected size of the output. Updates are racy, but that's
+     * benign as the value is only a hint.
+     */
+    private volatile int sizeHint;
+
+    private Parsed(@NotNull String template, @NotNull List<Segment> segments) {
+      this.template = template;
+      this.segments = segments;
+      this.sizeHint = segments
+        .stream()
+        .filter(Segment::isLiteral)
+        .mapToInt(s -> s.text.length())
+        .sum();
     }
 
-    var compiler = compilerFactory.build();
+    /**
+     * Split a template into literals and embedded expressions.
+     */
+    public static @NotNull Parsed parse(@NotNull String template) {
+      Preconditions.checkNotNull(template, "template");
 
-    //
-    // Find {{ }} embedded expressions and evaluate them one by one.
-    //
-    var output = new StringBuilder();
-    var matcher = TEMPLATE_PATTERN.matcher(this.template);
+      var segments = new ArrayList<Segment>();
 
-    int lastIndex = 0;
-    while (matcher.find()) {
-      output.append(this.template, lastIndex, matcher.start());
+      int lastIndex = 0;
+      while (true) {
+        var start = template.indexOf(EXPRESSION_START, lastIndex);
+        var end = start < 0
+          ? -1
+          : template.indexOf(EXPRESSION_END, start + EXPRESSION_START.length());
+        if (end < 0) {
+          break;
+        }
 
-      var expression = matcher.group(1).trim();
-      try {
-        var ast = compiler
-          .compile(expression)
-          .getAst();
+        if (start > lastIndex) {
+          segments.add(new Segment(template.substring(lastIndex, start), true));
+        }
 
-        var evaluationResult = CEL_RUNTIME
-          .createProgram(ast)
-          .eval(this.variables);
+        segments.add(new Segment(
+          template.substring(start + EXPRESSION_START.length(), end).trim(),
+          false));
 
-        output.append(evaluationResult);
+        lastIndex = end + EXPRESSION_END.length();
       }
-      catch (CelValidationException | CelEvaluationException e) {
-        throw new InvalidExpressionException(
-          String.format("The CEL expression '%s' is invalid", expression),
-          e);
+
+      if (lastIndex < template.length()) {
+        segments.add(new Segment(template.substring(lastIndex), true));
       }
 
-      lastIndex = matcher.end();
+      return new Parsed(template, List.copyOf(segments));
     }
 
-    if (lastIndex < this.template.length()) {
-      output.append(this.template, lastIndex, this.template.length());
+    /**
+     * Number of embedded expressions.
+     */
+    public int expressions() {
+      return (int)this.segments
+        .stream()
+        .filter(s -> !s.isLiteral())
+        .count();
     }
 
-    return output.toString();
-  }
+    /**
+     * Get programs for evaluating the embedded expressions with the
+     * given set of variables.
+     */
+    private @NotNull List<CelRuntime.Program> programs(
+      @NotNull Set<String> variables
+    ) throws InvalidExpressionException {
+      var programs = this.programs.get(variables);
+      if (programs == null) {
+        var key = Set.copyOf(variables);
+        programs = compile(key);
+        this.programs.put(key, programs);
+      }
 
-  @Override
-  public String toString() {
-    return this.template;
+      return programs;
+    }
+
+    private @NotNull List<CelRuntime.Program> compile(
+      @NotNull Set<String> variables
+    ) throws InvalidExpressionException {
+      //
+      // Prepare a compiler, allowing all the standard macros like has().
+      //
+      var compilerFactory = Cel.createCompilerBuilder();
+
+      for (var variable : variables) {
+        compilerFactory.addVar(variable, CelTypes.createMap(CelTypes.STRING, CelTypes.ANY));
+      }
+
+      var compiler = compilerFactory.build();
+
+      //
+      // Use an ArrayList (as opposed to List.of) because literals
+      // don't have a program.
+      //
+      var programs = new ArrayList<CelRuntime.Program>(this.segments.size());
+      for (var segment : this.segments) {
+        if (segment.isLiteral()) {
+          programs.add(null);
+          continue;
+        }
+
+        try {
+          programs.add(CEL_RUNTIME.createProgram(compiler
+            .compile(segment.text)
+            .getAst()));
+        }
+        catch (CelValidationException | CelEvaluationException e) {
+          throw new InvalidExpressionException(
+            String.format("The CEL expression '%s' is invalid", segment.text),
+            e);
+        }
+      }
+
+      return programs;
+    }
   }
+
+  /**
+   * Literal text, or the source of an embedded expression.
+   */
+  private record Segment(@NotNull String text, boolean isLiteral) {}
 }
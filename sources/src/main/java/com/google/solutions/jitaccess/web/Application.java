@@ -34,6 +34,9 @@ import com.google.solutions.jitaccess.catalog.Proposal;
 import com.google.solutions.jitaccess.catalog.legacy.LegacyPolicy;
 import com.google.solutions.jitaccess.catalog.legacy.LegacyPolicyLoader;
 import com.google.solutions.jitaccess.catalog.policy.PolicyDocumentSource;
+import com.google.solutions.jitaccess.catalog.provisioning.Provisioner;
+import com.google.solutions.jitaccess.common.AuthenticatedCacheStore;
+import com.google.solutions.jitaccess.common.CacheStore;
 import com.google.solutions.jitaccess.web.proposal.*;
 import com.google.solutions.jitaccess.web.rest.UserResource;
 import jakarta.enterprise.context.RequestScoped;
@@ -43,12 +46,16 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Produces CDI beans to initialize application components.
@@ -70,6 +77,11 @@ public class Application {
    */
   private static @NotNull ApplicationRuntime runtime;
 
+  /**
+   * Mapping for email addresses of notification recipients.
+   */
+  private static @NotNull EmailMapping emailMapping;
+
   // -------------------------------------------------------------------------
   // Application startup.
   // -------------------------------------------------------------------------
@@ -92,6 +104,58 @@ public class Application {
     Application.logger = logger;
     Application.configuration = configuration;
     Application.runtime = runtime;
+
+    //
+    // Compile the email mapping expression now so that an invalid
+    // expression causes startup to fail.
+    //
+    Application.emailMapping = new EmailMapping(configuration.smtpAddressMapping.orElse(null));
+
+    //
+    // Configure the connection pool that's shared by all API clients.
+    //
+    HttpTransport.configureSharedTransport(new HttpTransport.PoolOptions(
+      configuration.backendMaxConnections,
+      configuration.backendMaxConnectionsPerHost,
+      configuration.backendIdleConnectionTimeout,
+      Duration.ZERO));
+    RetryPolicy.configureShared(new RetryPolicy.Options(
+      configuration.backendRetryMaxAttempts,
+      configuration.backendRetryInitialBackoff,
+      configuration.backendRetryMaxBackoff,
+      configuration.backendRetryBudgetRatio));
+    QuotaGovernor.configureShared(new QuotaGovernor.Options(
+      configuration.backendQuotaRequestsPerMinute,
+      configuration.backendQuotaMaxWait,
+      configuration.backendQuotaBackgroundMaxWait));
+    CircuitBreaker.configureShared(
+      new CircuitBreaker.Options(
+        configuration.backendCircuitFailureRate,
+        configuration.backendCircuitSlowCallThreshold,
+        CircuitBreaker.Options.DEFAULT.windowSize(),
+        configuration.backendCircuitOpenDuration),
+      (backend, previous, current, statistics) -> {
+        switch (current) {
+          case OPEN -> logger.warn(
+            EventIds.BACKEND_CIRCUIT_OPENED,
+            "Requests to %s are failing or slow, failing fast for %d seconds (%s)",
+            backend,
+            configuration.backendCircuitOpenDuration.toSeconds(),
+            statistics);
+          case HALF_OPEN -> logger.info(
+            EventIds.BACKEND_CIRCUIT_HALF_OPENED,
+            "Probing whether %s has recovered",
+            backend);
+          case CLOSED -> logger.info(
+            EventIds.BACKEND_CIRCUIT_CLOSED,
+            "Requests to %s are succeeding again",
+            backend);
+        }
+      });
+    RequestHedger.configureShared(new RequestHedger.Options(
+      configuration.backendHedgePercentile,
+      configuration.backendHedgeMinDelay,
+      configuration.backendHedgeBudgetRatio));
   }
 
   //---------------------------------------------------------------------------
@@ -150,6 +214,42 @@ public class Application {
     }
   }
 
+  @Produces
+  @Singleton
+  public @NotNull IapAssertionVerifier produceIapAssertionVerifier(
+    @NotNull RequireIapPrincipalFilter.Options options
+  ) {
+    //
+    // Keys are loaded lazily, so in debug mode (where assertions
+    // aren't verified), the verifier never accesses the network.
+    //
+    return new IapAssertionVerifier(
+      new IapAssertionVerifier.Options(options.expectedAudience()));
+  }
+
+  @Produces
+  @Singleton
+  public @NotNull Diagnosable produceIapAssertionVerifierDiagnosable(
+    @NotNull IapAssertionVerifier verifier
+  ) {
+    final String name = "IapAssertionVerifier";
+    return new Diagnosable() {
+      @Override
+      public Collection<DiagnosticsResult> diagnose() {
+        var statistics = verifier.statistics();
+
+        //
+        // Failing to refresh keys is only a problem if we don't
+        // have any keys to fall back to.
+        //
+        return List.of(new DiagnosticsResult(
+          name,
+          statistics.lastKeyRefreshError() == null || statistics.keys() > 0,
+          statistics.toString()));
+      }
+    };
+  }
+
   @Produces
   @Singleton
   public @NotNull Diagnosable produceDevModeDiagnosable() {
@@ -171,6 +271,249 @@ public class Application {
     };
   }
 
+  @Produces
+  @Singleton
+  public @NotNull Diagnosable produceHttpTransportDiagnosable() {
+    final String name = "HttpConnectionPool";
+    return new Diagnosable() {
+      @Override
+      public Collection<DiagnosticsResult> diagnose() {
+        try {
+          return List.of(new DiagnosticsResult(
+            name,
+            true,
+            HttpTransport.sharedTransportStatistics().toString()));
+        }
+        catch (IOException e) {
+          return List.of(new DiagnosticsResult(name, false, e.getMessage()));
+        }
+      }
+    };
+  }
+
+  /**
+   * Create a diagnostics result that lists statistics, by key.
+   */
+  private static @NotNull DiagnosticsResult statisticsResult(
+    @NotNull String name,
+    @NotNull Map<String, ?> statistics,
+    boolean successful,
+    boolean degraded
+  ) {
+    var details = statistics
+      .entrySet()
+      .stream()
+      .map(e -> String.format("%s (%s)", e.getKey(), e.getValue()))
+      .collect(Collectors.joining(", "));
+    return new DiagnosticsResult(name, successful, details, degraded);
+  }
+
+  /**
+   * Create a successful diagnostics result that lists statistics, by key.
+   */
+  private static @NotNull DiagnosticsResult statisticsResult(
+    @NotNull String name,
+    @NotNull Map<String, ?> statistics
+  ) {
+    return statisticsResult(name, statistics, true, false);
+  }
+
+  @Produces
+  @Singleton
+  public @NotNull Diagnosable produceRetryPolicyDiagnosable() {
+    final String name = "ApiRetries";
+    return new Diagnosable() {
+      @Override
+      public Collection<DiagnosticsResult> diagnose() {
+        //
+        // Retries are expected occasionally, so they don't
+        // affect readiness. Report the statistics for each backend.
+        //
+        return List.of(statisticsResult(name, RetryPolicy.shared().statistics()));
+      }
+    };
+  }
+
+  @Produces
+  @Singleton
+  public @NotNull Diagnosable produceQuotaGovernorDiagnosable() {
+    final String name = "ApiQuotas";
+    return new Diagnosable() {
+      @Override
+      public Collection<DiagnosticsResult> diagnose() {
+        //
+        // Report the level of each bucket. Queuing requests is
+        // expected under load, so it doesn't affect readiness.
+        //
+        return List.of(statisticsResult(name, QuotaGovernor.shared().statistics()));
+      }
+    };
+  }
+
+  @Produces
+  @Singleton
+  public @NotNull Diagnosable produceRequestCoalescerDiagnosable() {
+    final String name = "CoalescedRequests";
+    return new Diagnosable() {
+      @Override
+      public Collection<DiagnosticsResult> diagnose() {
+        //
+        // Report how many duplicate reads were avoided, by API.
+        //
+        return List.of(statisticsResult(name, RequestCoalescer.statistics()));
+      }
+    };
+  }
+
+  @Produces
+  @Singleton
+  public @NotNull Diagnosable produceCircuitBreakerDiagnosable() {
+    final String name = "CircuitBreakers";
+    return new Diagnosable() {
+      @Override
+      public Collection<DiagnosticsResult> diagnose() {
+        //
+        // An open breaker means that some functionality is impaired, but
+        // taking the application out of rotation wouldn't help because
+        // the backend is shared by all instances.
+        //
+        var statistics = CircuitBreaker.shared().statistics();
+        var degraded = statistics
+          .values()
+          .stream()
+          .anyMatch(s -> s.state() != CircuitBreaker.State.CLOSED);
+        return List.of(statisticsResult(name, statistics, true, degraded));
+      }
+    };
+  }
+
+  @Produces
+  @Singleton
+  public @NotNull Diagnosable produceRequestHedgerDiagnosable() {
+    final String name = "HedgedRequests";
+    return new Diagnosable() {
+      @Override
+      public Collection<DiagnosticsResult> diagnose() {
+        //
+        // Report hedge rate and wins, by operation. Hedging
+        // never makes the application unhealthy.
+        //
+        return List.of(statisticsResult(name, RequestHedger.shared().statistics()));
+      }
+    };
+  }
+
+  @Produces
+  @Singleton
+  public @NotNull Diagnosable produceSubjectCacheDiagnosable(
+    @NotNull CachedSubjectResolver subjectResolver,
+    @NotNull MembershipExpiryCache membershipCache
+  ) {
+    final String name = "SubjectCache";
+    return new Diagnosable() {
+      @Override
+      public Collection<DiagnosticsResult> diagnose() {
+        //
+        // Report hit rate and load times. A low hit rate means that
+        // users have to wait for their principals to be resolved.
+        //
+        // The shared cache is best-effort, so errors don't make
+        // the application unhealthy.
+        //
+        return List.of(new DiagnosticsResult(
+          name,
+          true,
+          String.format(
+            "principals (%s), shared principals (%s), membership expiries (%s)",
+            subjectResolver.statistics(),
+            subjectResolver.sharedCacheStatistics(),
+            membershipCache.statistics())));
+      }
+    };
+  }
+
+  @Produces
+  @Singleton
+  public @NotNull Diagnosable produceCredentialManagerDiagnosable(
+    @NotNull CredentialManager credentialManager
+  ) {
+    final String name = "EnvironmentCredentials";
+    return new Diagnosable() {
+      @Override
+      public Collection<DiagnosticsResult> diagnose() {
+        //
+        // A failed refresh is retried in the background, so it only
+        // affects readiness once the credential's token has expired.
+        //
+        var statistics = credentialManager.statistics();
+        var successful = statistics
+          .values()
+          .stream()
+          .allMatch(s -> s.isValid() || s.lastError() == null);
+        return List.of(statisticsResult(name, statistics, successful, false));
+      }
+    };
+  }
+
+  @Produces
+  @Singleton
+  public @NotNull CacheStore produceCacheStore(
+    @NotNull SecretManagerClient secretManagerClient
+  ) {
+    if (configuration.cacheMemcachedHost.isPresent()) {
+      //
+      // Memcached doesn't authenticate clients, so anybody who can
+      // reach the server can modify cached data. Authenticate values so
+      // that we don't trust group memberships that we haven't
+      // cached ourselves.
+      //
+      if (configuration.cacheSecret.isEmpty()) {
+        throw new RuntimeException(
+          "Initializing application failed because CACHE_MEMCACHED_HOST is set, but CACHE_SECRET is not");
+      }
+
+      String secret;
+      try {
+        secret = secretManagerClient.accessSecret(configuration.cacheSecret.get());
+      }
+      catch (AccessException | IOException e) {
+        throw new RuntimeException(
+          "Initializing application failed because the cache secret could not be accessed", e);
+      }
+
+      if (secret == null || secret.isBlank()) {
+        throw new RuntimeException(
+          "Initializing application failed because the cache secret is empty");
+      }
+
+      //
+      // Share cached data with other instances. Keep the timeout short
+      // because the cache is only useful if it's faster than the
+      // backends it's caching.
+      //
+      return new AuthenticatedCacheStore(
+        new MemcachedClient(new MemcachedClient.Options(
+          configuration.cacheMemcachedHost.get(),
+          configuration.cacheMemcachedPort,
+          Duration.ofMillis(500),
+          configuration.cacheMemcachedMaxConnections)),
+        secret.getBytes(StandardCharsets.UTF_8));
+    }
+    else {
+      //
+      // Principals are already cached in-process, so there's no
+      // point in caching them a second time.
+      //
+      return CacheStore.NONE;
+    }
+  }
+
+  @Produces
+  @Singleton
+  public @NotNull CredentialManager produceCredentialManager() {
+    return new CredentialManager(CredentialManager.Options.DEFAULT);
+  }
+
   @Produces
   public @NotNull CloudIdentityGroupsClient.Options produceCloudIdentityGroupsClientOptions() {
     return new CloudIdentityGroupsClient.Options(configuration.customerId);
@@ -179,13 +522,29 @@ public class Application {
   @Produces
   public @NotNull CachedSubjectResolver.Options produceCachedSubjectResolverOptions() {
     //
-    // Use a cache duration that's long enough so that a subsequent page
-    // load can benefit from it, but short enough so that new group
-    // memberships are applied without substantial extra delay.
+    // Refresh principals after a short interval so that new group
+    // memberships are applied without substantial extra delay. Because
+    // refreshes happen in the background, the interval doesn't affect
+    // page load times for active users.
+    //
+    // Evict principals of users that have been inactive for a while,
+    // so that their next page load doesn't show outdated memberships.
+    //
+    // If Cloud Identity is unavailable, keep users working with their
+    // last known memberships for a limited time.
+    //
+    // If a user can't be resolved (typically because the user has been
+    // deleted), reject further requests locally for a short time, and
+    // back off if the user keeps retrying.
     //
     return new CachedSubjectResolver.Options(
       Duration.ofSeconds(30),
-      new Directory(configuration.primaryDomain));
+      Duration.ofMinutes(5),
+      10_000,
+      new Directory(configuration.primaryDomain),
+      Duration.ofMinutes(15),
+      Duration.ofSeconds(10),
+      Duration.ofMinutes(5));
   }
 
   @Produces
@@ -297,7 +656,7 @@ public class Application {
 
       return new MailProposalHandler(
         tokenSigner,
-        new EmailMapping(configuration.smtpAddressMapping.orElse(null)),
+        emailMapping,
         new SmtpClient(
           secretManagerClient,
           smtpOptions),
@@ -335,6 +694,9 @@ public class Application {
   public @NotNull EnvironmentRegistry produceEnvironmentRegistry(
     @NotNull GroupMapping groupMapping,
     @NotNull CloudIdentityGroupsClient groupsClient,
+    @NotNull MembershipExpiryCache membershipCache,
+    @NotNull CachedSubjectResolver subjectResolver,
+    @NotNull CredentialManager credentialManager,
     @NotNull Executor executor
   ) {
     //
@@ -374,6 +736,7 @@ public class Application {
             ServiceAccountId.parse(environment).get(),
             runtime.applicationPrincipal(),
             runtime.applicationCredentials(),
+            credentialManager,
             produceHttpTransportOptions()));
         }
         catch (Exception e) {
@@ -412,7 +775,11 @@ public class Application {
         ) {
           @Override
           PolicyDocumentSource loadPolicy() {
-            try {
+            //
+            // Loading the legacy policy involves a lot of API calls, so
+            // treat it as background work that yields to interactive requests.
+            //
+            try (var background = QuotaGovernor.backgroundScope()) {
               return PolicyDocumentSource.fromPolicy(legacyLoader.load(
                 configuration.legacyProjectsQuery,
                 configuration.legacyScope.get(),
@@ -449,7 +816,30 @@ public class Application {
       configurations,
       groupMapping,
       groupsClient,
+      membershipCache,
       executor,
+      new Provisioner.MembershipListener() {
+        //
+        // Update cached principals so that users see the
+        // effect of a join or removal right away.
+        //
+        @Override
+        public void onMembershipProvisioned(
+          @NotNull JitGroupId group,
+          @NotNull EndUserId member,
+          @NotNull Instant expiry
+        ) {
+          subjectResolver.onJitGroupMembershipProvisioned(member, group, expiry);
+        }
+
+        @Override
+        public void onMembershipRemoved(
+          @NotNull JitGroupId group,
+          @NotNull EndUserId member
+        ) {
+          subjectResolver.onJitGroupMembershipRemoved(member, group);
+        }
+      },
       options,
       logger);
   }
@@ -160,6 +160,121 @@ public class ApplicationConfiguration extends AbstractConfiguration {
    */
   final @NotNull Duration backendWriteTimeout;
 
+  /**
+   * Maximum number of pooled connections to backends.
+   */
+  final int backendMaxConnections;
+
+  /**
+   * Maximum number of pooled connections to a single backend.
+   */
+  final int backendMaxConnectionsPerHost;
+
+  /**
+   * Duration after which idle connections to backends are closed.
+   */
+  final @NotNull Duration backendIdleConnectionTimeout;
+
+  /**
+   * Maximum number of attempts for backend requests that fail
+   * with a transient error, including the initial attempt.
+   */
+  final int backendRetryMaxAttempts;
+
+  /**
+   * Backoff after the first failed attempt. The backoff doubles
+   * with each subsequent attempt.
+   */
+  final @NotNull Duration backendRetryInitialBackoff;
+
+  /**
+   * Maximum backoff between two attempts.
+   */
+  final @NotNull Duration backendRetryMaxBackoff;
+
+  /**
+   * Fraction of a retry that each successful request earns. Lower
+   * values stop retries sooner when a backend is failing.
+   */
+  final double backendRetryBudgetRatio;
+
+  /**
+   * Number of requests per minute that each service account may send
+   * to a Google API, or zero to not limit requests.
+   */
+  final int backendQuotaRequestsPerMinute;
+
+  /**
+   * Maximum time that interactive requests wait for quota.
+   */
+  final @NotNull Duration backendQuotaMaxWait;
+
+  /**
+   * Maximum time that background requests wait for quota.
+   */
+  final @NotNull Duration backendQuotaBackgroundMaxWait;
+
+  /**
+   * Fraction of failed backend requests at which the backend's
+   * circuit breaker opens.
+   */
+  final double backendCircuitFailureRate;
+
+  /**
+   * Latency above which a backend request counts as failed
+   * for the purpose of circuit breaking.
+   */
+  final @NotNull Duration backendCircuitSlowCallThreshold;
+
+  /**
+   * Time during which requests to a backend fail fast after its
+   * circuit breaker opened.
+   */
+  final @NotNull Duration backendCircuitOpenDuration;
+
+  /**
+   * Latency percentile after which latency-critical reads are
+   * hedged, or zero to not hedge reads.
+   */
+  final int backendHedgePercentile;
+
+  /**
+   * Minimum time to wait before hedging a read.
+   */
+  final @NotNull Duration backendHedgeMinDelay;
+
+  /**
+   * Fraction of a hedge that each read earns, this caps
+   * the extra load that hedging causes.
+   */
+  final double backendHedgeBudgetRatio;
+
+  /**
+   * Host of a memcached server (such as a Memorystore instance) to
+   * share cached data across instances of the application. If
+   * empty, data is only cached in-process.
+   */
+  final @NotNull Optional<String> cacheMemcachedHost;
+
+  /**
+   * Port of the memcached server.
+   */
+  final int cacheMemcachedPort;
+
+  /**
+   * Maximum number of connections to keep open to the memcached server.
+   */
+  final int cacheMemcachedMaxConnections;
+
+  /**
+   * Path to a SecretManager secret that contains the secret used to
+   * authenticate values stored in memcached. Required if a memcached
+   * server is configured.
+   * <p>
+   * The path must be in the format projects/x/secrets/y/versions/z.
+   */
+  final @NotNull Optional<String> cacheSecret;
+
   final @NotNull String legacyCatalog;
   final @NotNull Optional<String> legacyScope;
   final @NotNull Duration legacyActivationTimeout;
@@ -267,6 +382,44 @@ public class ApplicationConfiguration extends AbstractConfiguration {
       .orElse(Duration.ofSeconds(20));
     this.backendWriteTimeout = readDurationSetting(ChronoUnit.SECONDS, "BACKEND_WRITE_TIMEOUT")
       .orElse(Duration.ofSeconds(5));
+    this.backendMaxConnections = readSetting(Integer::parseInt, "BACKEND_MAX_CONNECTIONS")
+      .orElse(200);
+    this.backendMaxConnectionsPerHost = readSetting(Integer::parseInt, "BACKEND_MAX_CONNECTIONS_PER_HOST")
+      .orElse(50);
+    this.backendIdleConnectionTimeout = readDurationSetting(ChronoUnit.SECONDS, "BACKEND_IDLE_CONNECTION_TIMEOUT")
+      .orElse(Duration.ofSeconds(60));
+    this.backendRetryMaxAttempts = readSetting(Integer::parseInt, "BACKEND_RETRY_MAX_ATTEMPTS")
+      .orElse(4);
+    this.backendRetryInitialBackoff = readDurationSetting(ChronoUnit.MILLIS, "BACKEND_RETRY_INITIAL_BACKOFF")
+      .orElse(Duration.ofMillis(200));
+    this.backendRetryMaxBackoff = readDurationSetting(ChronoUnit.MILLIS, "BACKEND_RETRY_MAX_BACKOFF")
+      .orElse(Duration.ofSeconds(10));
+    this.backendRetryBudgetRatio = readSetting(Double::parseDouble, "BACKEND_RETRY_BUDGET_RATIO")
+      .orElse(0.1);
+    this.backendQuotaRequestsPerMinute = readSetting(Integer::parseInt, "BACKEND_QUOTA_REQUESTS_PER_MINUTE")
+      .orElse(3000);
+    this.backendQuotaMaxWait = readDurationSetting(ChronoUnit.SECONDS, "BACKEND_QUOTA_MAX_WAIT")
+      .orElse(Duration.ofSeconds(5));
+    this.backendQuotaBackgroundMaxWait = readDurationSetting(ChronoUnit.SECONDS, "BACKEND_QUOTA_BACKGROUND_MAX_WAIT")
+      .orElse(Duration.ofSeconds(60));
+    this.backendCircuitFailureRate = readSetting(Double::parseDouble, "BACKEND_CIRCUIT_FAILURE_RATE")
+      .orElse(0.5);
+    this.backendCircuitSlowCallThreshold = readDurationSetting(ChronoUnit.SECONDS, "BACKEND_CIRCUIT_SLOW_CALL_THRESHOLD")
+      .orElse(Duration.ofSeconds(10));
+    this.backendCircuitOpenDuration = readDurationSetting(ChronoUnit.SECONDS, "BACKEND_CIRCUIT_OPEN_DURATION")
+      .orElse(Duration.ofSeconds(30));
+    this.backendHedgePercentile = readSetting(Integer::parseInt, "BACKEND_HEDGE_PERCENTILE")
+      .orElse(0);
+    this.backendHedgeMinDelay = readDurationSetting(ChronoUnit.MILLIS, "BACKEND_HEDGE_MIN_DELAY")
+      .orElse(Duration.ofMillis(20));
+    this.backendHedgeBudgetRatio = readSetting(Double::parseDouble, "BACKEND_HEDGE_BUDGET_RATIO")
+      .orElse(0.05);
+    this.cacheMemcachedHost = readStringSetting("CACHE_MEMCACHED_HOST");
+    this.cacheMemcachedPort = readSetting(Integer::parseInt, "CACHE_MEMCACHED_PORT")
+      .orElse(11211);
+    this.cacheMemcachedMaxConnections = readSetting(Integer::parseInt, "CACHE_MEMCACHED_MAX_CONNECTIONS")
+      .orElse(8);
+    this.cacheSecret = readStringSetting("CACHE_SECRET");
 
     //
     // Legacy settings.
@@ -25,6 +25,7 @@ import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.auth.oauth2.ImpersonatedCredentials;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.solutions.jitaccess.apis.clients.CredentialManager;
 import com.google.solutions.jitaccess.apis.clients.HttpTransport;
 import com.google.solutions.jitaccess.apis.clients.ResourceManagerClient;
 import com.google.solutions.jitaccess.apis.clients.SecretManagerClient;
@@ -191,6 +192,7 @@ abstract class EnvironmentConfiguration implements PolicyHeader {
     @NotNull ServiceAccountId serviceAccountId,
     @NotNull ServiceAccountId applicationPrincipal,
     @NotNull GoogleCredentials applicationCredentials,
+    @NotNull CredentialManager credentialManager,
     @NotNull HttpTransport.Options httpOptions
   ) {
     //
@@ -222,12 +224,21 @@ abstract class EnvironmentConfiguration implements PolicyHeader {
     //  - Loading the policy from Secret Manager
     //  - Provisioning access
     //
-    var environmentCredentials = ImpersonatedCredentials.create(
-      applicationCredentials,
-      serviceAccountId.value(),
-      null,
-      List.of(ResourceManagerClient.OAUTH_SCOPE), // No other scopes needed.
-      0);
+    // Let the credential manager refresh the token in the background
+    // so that neither of these has to wait for an IAM Credentials
+    // API call.
+    //
+    var environmentCredentials = credentialManager.manage(
+      serviceAccountId.email(),
+      ImpersonatedCredentials.create(
+        applicationCredentials,
+        serviceAccountId.value(),
+        null,
+        List.of(ResourceManagerClient.OAUTH_SCOPE), // No other scopes needed.
+        0));
+    var secretClient = new SecretManagerClient(
+      environmentCredentials,
+      httpOptions);
 
     //
     // Load policy from secret manager using the environment-specific
@@ -252,10 +263,12 @@ abstract class EnvironmentConfiguration implements PolicyHeader {
         // will keep retrying until the call timeout expires. The effect
         // is that the application seems hung.
         //
-        // To prevent this from happening, force a refresh here.
+        // To prevent this from happening, check the outcome of the
+        // last background refresh, which doesn't block unless the
+        // first refresh is still pending.
         //
         try {
-          environmentCredentials.refresh();
+          environmentCredentials.verify();
         }
         catch (Exception e) {
           throw new RuntimeException(
@@ -266,14 +279,11 @@ abstract class EnvironmentConfiguration implements PolicyHeader {
               serviceAccountId.email(),
               environmentName,
               applicationPrincipal,
-              serviceAccountId.email()));
+              serviceAccountId.email()),
+            e);
         }
 
         try {
-          var secretClient = new SecretManagerClient(
-            environmentCredentials,
-            httpOptions);
-
           //
           // Set default environment name in metadata so that
           // the YAML itself doesn't need to specify a name.
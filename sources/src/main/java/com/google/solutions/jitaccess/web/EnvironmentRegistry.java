@@ -26,6 +26,7 @@ import com.google.solutions.jitaccess.apis.clients.CloudIdentityGroupsClient;
 import com.google.solutions.jitaccess.apis.clients.HttpTransport;
 import com.google.solutions.jitaccess.apis.clients.ResourceManagerClient;
 import com.google.solutions.jitaccess.auth.GroupMapping;
+import com.google.solutions.jitaccess.auth.MembershipExpiryCache;
 import com.google.solutions.jitaccess.catalog.policy.PolicyDocumentSource;
 import com.google.solutions.jitaccess.catalog.provisioning.Environment;
 import com.google.solutions.jitaccess.catalog.provisioning.Provisioner;
@@ -45,7 +46,9 @@ public class EnvironmentRegistry {
     @NotNull Collection<EnvironmentConfiguration> environments,
     @NotNull GroupMapping groupMapping,
     @NotNull CloudIdentityGroupsClient groupsClient,
+    @NotNull MembershipExpiryCache membershipCache,
     @NotNull Executor executor,
+    @NotNull Provisioner.MembershipListener membershipListener,
     @NotNull Options options,
     @NotNull Logger logger
   ) {
@@ -66,8 +69,10 @@ public class EnvironmentRegistry {
           cfg.name(),
           groupMapping,
           groupsClient,
+          membershipCache,
           crmClient,
           executor,
+          membershipListener,
           logger);
 
         return (Environment) new Environment(
@@ -36,4 +36,7 @@ public class EventIds {
   public static final String API_APPROVE_JOIN = "api.groups.approve";
   public static final String STARTUP = "application.startup";
   public static final String LOAD_ENVIRONMENT = "application.environments.load";
+  public static final String BACKEND_CIRCUIT_OPENED = "application.backends.circuitOpened";
+  public static final String BACKEND_CIRCUIT_HALF_OPENED = "application.backends.circuitHalfOpened";
+  public static final String BACKEND_CIRCUIT_CLOSED = "application.backends.circuitClosed";
 }
@@ -0,0 +1,453 @@
+//
+// Copyright 2021 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.web;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import com.google.auth.oauth2.TokenVerifier;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Verifies IAP assertions.
+ * <p>
+ * The verifier is long-lived and keeps IAP's public keys in memory,
+ * refreshing them in the background. Verified assertions are cached
+ * (keyed by a hash of the token) until they expire, so that repeat
+ * requests with the same assertion skip signature verification and
+ * parsing.
+ */
+public class IapAssertionVerifier {
+  static final String IAP_ISSUER_URL = "https://cloud.google.com/iap";
+  static final String IAP_PUBLIC_KEYS_URL = "https://www.gstatic.com/iap/verify/public_key-jwk";
+
+  private final @NotNull Options options;
+  private final @NotNull KeySource keySource;
+  private final @NotNull ScheduledExecutorService scheduler;
+  private final @NotNull Cache<String, VerifiedAssertion> assertions;
+  private final @NotNull AtomicBoolean backgroundRefreshStarted = new AtomicBoolean();
+
+  /**
+   * Verifiers for each public key, by key ID. The library's verifier
+   * performs the claim checks, but only caches keys per instance, so
+   * we keep one instance per key.
+   */
+  private volatile @NotNull Map<String, TokenVerifier> verifiers = Map.of();
+  private volatile @Nullable Instant lastKeyRefresh;
+  private volatile @Nullable Exception lastKeyRefreshError;
+
+  private final @NotNull LongAdder verifications = new LongAdder();
+  private final @NotNull LongAdder cacheHits = new LongAdder();
+  private final @NotNull LongAdder failures = new LongAdder();
+  private final @NotNull LongAdder verificationNanos = new LongAdder();
+
+  public IapAssertionVerifier(
+    @NotNull Options options,
+    @NotNull KeySource keySource,
+    @NotNull ScheduledExecutorService scheduler
+  ) {
+    Preconditions.checkNotNull(options, "options");
+    Preconditions.checkNotNull(keySource, "keySource");
+    Preconditions.checkNotNull(scheduler, "scheduler");
+
+    this.options = options;
+    this.keySource = keySource;
+    this.scheduler = scheduler;
+    this.assertions = CacheBuilder.newBuilder()
+      .maximumSize(options.maximumCachedAssertions())
+      .build();
+  }
+
+  public IapAssertionVerifier(@NotNull Options options) {
+    this(
+      options,
+      KeySource.fromUrl(IAP_PUBLIC_KEYS_URL),
+      Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "iap-key-refresh");
+        thread.setDaemon(true);
+        return thread;
+      }));
+  }
+
+  /**
+   * Verify an assertion.
+   *
+   * @throws TokenVerifier.VerificationException if the assertion is malformed,
+   * expired, has an invalid signature, or has unexpected claims.
+   */
+  @NotNull IapAssertion verify(@NotNull String token) throws TokenVerifier.VerificationException {
+    Preconditions.checkNotNull(token, "token");
+
+    var cacheKey = Hashing.sha256()
+      .hashString(token, StandardCharsets.UTF_8)
+      .toString();
+
+    var cached = this.assertions.getIfPresent(cacheKey);
+    if (cached != null) {
+      if (cached.expiry().isAfter(Instant.now())) {
+        this.cacheHits.increment();
+        return cached.assertion();
+      }
+      else {
+        this.assertions.invalidate(cacheKey);
+      }
+    }
+
+    var start = System.nanoTime();
+    try {
+      var verified = verifyUncached(token);
+      if (verified.expiry() != null) {
+        this.assertions.put(
+          cacheKey,
+          new VerifiedAssertion(verified.assertion(), verified.expiry()));
+      }
+
+      return verified.assertion();
+    }
+    catch (TokenVerifier.VerificationException | RuntimeException e) {
+      this.failures.increment();
+      throw e;
+    }
+    finally {
+      this.verifications.increment();
+      this.verificationNanos.add(System.nanoTime() - start);
+    }
+  }
+
+  private @NotNull UncachedAssertion verifyUncached(
+    @NotNull String token
+  ) throws TokenVerifier.VerificationException {
+    JsonWebSignature signature;
+    try {
+      signature = JsonWebSignature.parse(GsonFactory.getDefaultInstance(), token);
+    }
+    catch (IOException | IllegalArgumentException e) {
+      throw new TokenVerifier.VerificationException("The assertion is malformed", e);
+    }
+
+    var keyId = signature.getHeader().getKeyId();
+    if (keyId == null) {
+      throw new TokenVerifier.VerificationException("The assertion does not specify a key ID");
+    }
+
+    var verifier = this.verifiers.get(keyId);
+    if (verifier == null) {
+      //
+      // We either haven't loaded any keys yet, or IAP has rotated
+      // its keys since the last refresh.
+      //
+      refreshKeysIfStale();
+      verifier = this.verifiers.get(keyId);
+    }
+
+    if (verifier == null) {
+      throw new TokenVerifier.VerificationException(
+        String.format("The assertion uses an unknown key ID '%s'", keyId));
+    }
+
+    var verifiedSignature = verifier.verify(token);
+    var expiry = verifiedSignature.getPayload().getExpirationTimeSeconds();
+
+    return new UncachedAssertion(
+      new IapAssertion(verifiedSignature),
+      expiry != null ? Instant.ofEpochSecond(expiry) : null);
+  }
+
+  /**
+   * Refresh keys, unless they've been refreshed very recently. This
+   * prevents assertions with bogus key IDs from causing a refresh
+   * for every request.
+   */
+  private synchronized void refreshKeysIfStale() {
+    var lastRefresh = this.lastKeyRefresh;
+    if (lastRefresh != null &&
+      lastRefresh.plus(this.options.minimumKeyRefreshInterval()).isAfter(Instant.now())) {
+      return;
+    }
+
+    try {
+      refreshKeys();
+    }
+    catch (IOException | GeneralSecurityException e) {
+      //
+      // Keep the current keys (if any). The failure is reflected
+      // in the statistics.
+      //
+    }
+
+    if (this.backgroundRefreshStarted.compareAndSet(false, true)) {
+      scheduleBackgroundRefresh(this.options.keyRefreshInterval());
+    }
+  }
+
+  private synchronized void refreshKeys() throws IOException, GeneralSecurityException {
+    try {
+      var verifiers = new HashMap<String, TokenVerifier>();
+      for (var key : this.keySource.fetchKeys().entrySet()) {
+        verifiers.put(
+          key.getKey(),
+          TokenVerifier.newBuilder()
+            .setAudience(this.options.expectedAudience())
+            .setIssuer(IAP_ISSUER_URL)
+            .setPublicKey(key.getValue())
+            .build());
+      }
+
+      this.verifiers = Map.copyOf(verifiers);
+      this.lastKeyRefreshError = null;
+    }
+    catch (IOException | GeneralSecurityException | RuntimeException e) {
+      this.lastKeyRefreshError = e;
+      throw e;
+    }
+    finally {
+      this.lastKeyRefresh = Instant.now();
+    }
+  }
+
+  private void scheduleBackgroundRefresh(@NotNull Duration delay) {
+    this.scheduler.schedule(
+      () -> {
+        Duration nextDelay;
+        try {
+          refreshKeys();
+          nextDelay = this.options.keyRefreshInterval();
+        }
+        catch (Exception e) {
+          nextDelay = this.options.minimumKeyRefreshInterval();
+        }
+
+        scheduleBackgroundRefresh(nextDelay);
+      },
+      delay.toMillis(),
+      TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Get verification statistics.
+   */
+  public @NotNull Statistics statistics() {
+    var lastError = this.lastKeyRefreshError;
+    var verifications = this.verifications.sum();
+
+    return new Statistics(
+      verifications,
+      this.cacheHits.sum(),
+      this.failures.sum(),
+      verifications > 0
+        ? Duration.ofNanos(this.verificationNanos.sum() / verifications)
+        : Duration.ZERO,
+      this.verifiers.size(),
+      this.lastKeyRefresh,
+      lastError != null ? lastError.getMessage() : null);
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  private record VerifiedAssertion(
+    @NotNull IapAssertion assertion,
+    @NotNull Instant expiry
+  ) {}
+
+  private record UncachedAssertion(
+    @NotNull IapAssertion assertion,
+    @Nullable Instant expiry
+  ) {}
+
+  /**
+   * Source of public keys used to sign IAP assertions.
+   */
+  public interface KeySource {
+    /**
+     * Fetch the current set of keys.
+     *
+     * @return public keys, by key ID.
+     */
+    @NotNull Map<String, PublicKey> fetchKeys() throws IOException, GeneralSecurityException;
+
+    /**
+     * Fetch keys from a JWK set. IAP only uses ES256, so the
+     * set is expected to only contain P-256 keys, other keys are
+     * ignored.
+     */
+    static @NotNull KeySource fromUrl(@NotNull String url) {
+      var requestFactory = new NetHttpTransport().createRequestFactory(
+        request -> request.setParser(new JsonObjectParser(GsonFactory.getDefaultInstance())));
+
+      return () -> {
+        var jwks = requestFactory
+          .buildGetRequest(new GenericUrl(url))
+          .execute()
+          .parseAs(GenericJson.class);
+
+        if (!(jwks.get("keys") instanceof List<?> keys)) {
+          throw new IOException("The JWK set does not contain any keys");
+        }
+
+        var parameters = AlgorithmParameters.getInstance("EC");
+        parameters.init(new ECGenParameterSpec("secp256r1"));
+        var curve = parameters.getParameterSpec(ECParameterSpec.class);
+        var keyFactory = KeyFactory.getInstance("EC");
+        var decoder = Base64.getUrlDecoder();
+
+        var publicKeys = new HashMap<String, PublicKey>();
+        for (var key : keys) {
+          if (key instanceof Map<?, ?> jwk &&
+            "EC".equals(jwk.get("kty")) &&
+            "P-256".equals(jwk.get("crv")) &&
+            jwk.get("kid") instanceof String keyId &&
+            jwk.get("x") instanceof String x &&
+            jwk.get("y") instanceof String y) {
+            var point = new ECPoint(
+              new BigInteger(1, decoder.decode(x)),
+              new BigInteger(1, decoder.decode(y)));
+            publicKeys.put(
+              keyId,
+              keyFactory.generatePublic(new ECPublicKeySpec(point, curve)));
+          }
+        }
+
+        return publicKeys;
+      };
+    }
+  }
+
+  /**
+   * Options for the verifier.
+   *
+   * @param expectedAudience expected audience in assertions. If null, the
+   *                         audience check is skipped.
+   * @param keyRefreshInterval interval at which keys are refreshed in the
+   *                           background.
+   * @param minimumKeyRefreshInterval minimum time between two refreshes,
+   *                                  applies to refreshes triggered by
+   *                                  unknown key IDs and failed refreshes.
+   * @param maximumCachedAssertions maximum number of verified assertions
+   *                                to cache, 0 disables caching.
+   */
+  public record Options(
+    @Nullable String expectedAudience,
+    @NotNull Duration keyRefreshInterval,
+    @NotNull Duration minimumKeyRefreshInterval,
+    int maximumCachedAssertions
+  ) {
+    public static final Duration DEFAULT_KEY_REFRESH_INTERVAL = Duration.ofHours(1);
+    public static final Duration DEFAULT_MINIMUM_KEY_REFRESH_INTERVAL = Duration.ofSeconds(30);
+    public static final int DEFAULT_MAXIMUM_CACHED_ASSERTIONS = 1000;
+
+    public Options(@Nullable String expectedAudience) {
+      this(
+        expectedAudience,
+        DEFAULT_KEY_REFRESH_INTERVAL,
+        DEFAULT_MINIMUM_KEY_REFRESH_INTERVAL,
+        DEFAULT_MAXIMUM_CACHED_ASSERTIONS);
+    }
+
+    public Options {
+      Preconditions.checkArgument(
+        !keyRefreshInterval.isNegative() && !keyRefreshInterval.isZero(),
+        "keyRefreshInterval must be positive");
+      Preconditions.checkArgument(
+        !minimumKeyRefreshInterval.isNegative(),
+        "minimumKeyRefreshInterval must not be negative");
+      Preconditions.checkArgument(
+        maximumCachedAssertions >= 0,
+        "maximumCachedAssertions must not be negative");
+    }
+  }
+
+  /**
+   * Snapshot of verification statistics.
+   *
+   * @param verifications number of assertions that required verification.
+   * @param cacheHits number of assertions served from the cache.
+   * @param failures number of assertions that failed verification.
+   * @param meanLatency mean latency of verifications.
+   * @param keys number of public keys.
+   * @param lastKeyRefresh time of the last key refresh, if any.
+   * @param lastKeyRefreshError error of the last key refresh, if it failed.
+   */
+  public record Statistics(
+    long verifications,
+    long cacheHits,
+    long failures,
+    @NotNull Duration meanLatency,
+    int keys,
+    @Nullable Instant lastKeyRefresh,
+    @Nullable String lastKeyRefreshError
+  ) {
+    /**
+     * Fraction of assertions served from the cache.
+     */
+    public double cacheHitRatio() {
+      var total = this.verifications + this.cacheHits;
+      return total > 0 ? (double)this.cacheHits / total : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "verifications: %d, failures: %d, mean latency: %d us, cache hit ratio: %.1f%%, " +
+          "keys: %d, last key refresh: %s%s",
+        this.verifications,
+        this.failures,
+        this.meanLatency.toNanos() / 1000,
+        this.cacheHitRatio() * 100,
+        this.keys,
+        this.lastKeyRefresh,
+        this.lastKeyRefreshError != null ? ", last error: " + this.lastKeyRefreshError : "");
+    }
+  }
+}
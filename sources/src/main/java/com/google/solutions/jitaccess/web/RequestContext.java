@@ -70,8 +70,9 @@ public class RequestContext {
         "Request context has been authenticated before");
     }
 
-    this.authenticationContext.subject = new Subject() {
+    this.authenticationContext.subject = new PrincipalHandles.Provider() {
       private @Nullable Set<Principal> cachedPrincipals;
+      private @Nullable PrincipalHandles cachedPrincipalHandles;
       private final @NotNull Object cachedPrincipalsLock = new Object();
 
       @Override
@@ -105,6 +106,23 @@ public class RequestContext {
           return this.cachedPrincipals;
         }
       }
+
+      @Override
+      public @NotNull PrincipalHandles principalHandles() {
+        //
+        // Reuse the handles across access checks until they're
+        // outdated.
+        //
+        var principals = principals();
+        synchronized (this.cachedPrincipalsLock)
+        {
+          if (this.cachedPrincipalHandles == null || !this.cachedPrincipalHandles.isCurrent()) {
+            this.cachedPrincipalHandles = PrincipalHandles.of(principals);
+          }
+
+          return this.cachedPrincipalHandles;
+        }
+      }
     };
     this.authenticationContext.device = device;
   }
@@ -137,7 +155,7 @@ public class RequestContext {
     return this.requestTraceId;
   }
 
-  private static class AuthenticationContext implements Subject {
+  private static class AuthenticationContext implements PrincipalHandles.Provider {
     private Subject subject = ANONYMOUS_SUBJECT;
     private @NotNull Device device = IapDevice.UNKNOWN;
 
@@ -156,5 +174,10 @@ public class RequestContext {
     public @NotNull Set<Principal> principals() {
       return this.subject.principals();
     }
+
+    @Override
+    public @NotNull PrincipalHandles principalHandles() {
+      return PrincipalHandles.of(this.subject);
+    }
   }
 }
@@ -47,7 +47,6 @@ import org.jetbrains.annotations.Nullable;
 @RequireIapPrincipal
 public class RequireIapPrincipalFilter implements ContainerRequestFilter {
 
-  private static final String IAP_ISSUER_URL = "https://cloud.google.com/iap";
   private static final String IAP_ASSERTION_HEADER = "x-goog-iap-jwt-assertion";
   private static final String DEBUG_PRINCIPAL_HEADER = "x-debug-principal";
 
@@ -60,6 +59,9 @@ public class RequireIapPrincipalFilter implements ContainerRequestFilter {
   @Inject
   RequestContext requestContext;
 
+  @Inject
+  IapAssertionVerifier verifier;
+
   /**
    * Authenticate request using IAP assertion.
    */
@@ -77,12 +79,7 @@ public class RequireIapPrincipalFilter implements ContainerRequestFilter {
     }
 
     try {
-      final var verifiedAssertion = new IapAssertion(
-        TokenVerifier.newBuilder()
-          .setAudience(this.options.expectedAudience)
-          .setIssuer(IAP_ISSUER_URL)
-          .build()
-          .verify(assertion));
+      final var verifiedAssertion = this.verifier.verify(assertion);
 
       if (verifiedAssertion.user() instanceof EndUserId endUserId) {
         this.requestContext.authenticate(
@@ -142,6 +139,7 @@ public class RequireIapPrincipalFilter implements ContainerRequestFilter {
       authenticateDebugRequest(requestContext);
     }
     else {
+      Preconditions.checkNotNull(this.verifier, "verifier");
       authenticateIapRequest(requestContext);
     }
 
@@ -49,6 +49,8 @@ import java.time.temporal.ChronoUnit;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -199,11 +201,35 @@ public class MailProposalHandler extends AbstractProposalHandler {
    * Template for an email message.
    */
   static class MailTemplate extends StringTemplate {
+    /**
+     * Parsed templates, by resource name. Resources don't change at
+     * runtime, so there's no need to ever expire entries.
+     */
+    private static final @NotNull Map<String, Parsed> PARSED_RESOURCES = new ConcurrentHashMap<>();
+
+    MailTemplate(@NotNull Parsed parsed) {
+      super(parsed);
+    }
+
     MailTemplate(@NotNull String template) {
       super(template);
     }
 
+    /**
+     * Load a template from a resource. The resource is read and parsed
+     * on first use only, subsequent calls reuse the parsed template.
+     */
     static @NotNull MailTemplate fromResource(@NotNull String resourceName) throws IOException {
+      var parsed = PARSED_RESOURCES.get(resourceName);
+      if (parsed == null) {
+        parsed = Parsed.parse(readResource(resourceName));
+        PARSED_RESOURCES.put(resourceName, parsed);
+      }
+
+      return new MailTemplate(parsed);
+    }
+
+    private static @NotNull String readResource(@NotNull String resourceName) throws IOException {
       try (var stream = MailTemplate.class
         .getClassLoader()
         .getResourceAsStream(resourceName)) {
@@ -221,10 +247,10 @@ public class MailProposalHandler extends AbstractProposalHandler {
           //
           // Strip UTF-8 BOM.
           //
-          return new MailTemplate(new String(content, 3, content.length - 3));
+          return new String(content, 3, content.length - 3);
         }
         else {
-          return new MailTemplate(new String(content));
+          return new String(content);
         }
       }
     }
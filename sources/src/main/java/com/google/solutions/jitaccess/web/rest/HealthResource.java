@@ -71,7 +71,7 @@ public class HealthResource {
     // Restarting the application would serve no purpose at this
     // point.
     //
-    return new HealthInfo(true, Map.of());
+    return new HealthInfo(true, false, Map.of());
   }
 
   /**
@@ -106,15 +106,23 @@ public class HealthResource {
       .toList();
 
     for (var result : results) {
-      if (!result.successful()) {
+      if (!result.successful() || result.degraded()) {
         this.logger.warn(EventIds.API_CHECK_HEALTH, result.toString());
       }
     }
 
+    //
+    // A degraded application can still serve most requests, and
+    // restarting it or taking it out of rotation wouldn't help,
+    // so it's reported as healthy.
+    //
     var response =  new HealthInfo(
       results
         .stream()
         .allMatch(r -> r.successful()), // AND-combine results.
+      results
+        .stream()
+        .anyMatch(r -> r.degraded()),
       results
         .stream()
         .collect(Collectors.toMap(r -> r.name(), r -> r.successful())));
@@ -142,10 +150,12 @@ public class HealthResource {
 
   /**
    * @param healthy overall status
+   * @param degraded indicates that some functionality is impaired
    * @param details status of individual services
    */
   public record HealthInfo(
     boolean healthy,
+    boolean degraded,
     Map<String, Boolean> details
   ) {}
 }
@@ -0,0 +1,101 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.web.rest;
+
+import com.google.solutions.jitaccess.apis.clients.RequestMetrics;
+import jakarta.enterprise.context.Dependent;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * REST API controller for metrics about backend API requests.
+ * <p>
+ * This controller allows anonymous requests.
+ */
+@Dependent
+@Path("/metrics")
+public class MetricsResource {
+  RequestMetrics metrics = RequestMetrics.shared();
+
+  /**
+   * Get latency, status codes, and retries of backend API
+   * requests, by backend and method.
+   */
+  @GET
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("backends")
+  public @NotNull MetricsResource.MetricsInfo getBackendMetrics() {
+    return new MetricsInfo(this.metrics
+      .statistics()
+      .stream()
+      .map(s -> new MethodInfo(
+        s.backend(),
+        s.method(),
+        s.requests(),
+        s.retries(),
+        s.responseBytes(),
+        s.meanLatency().toMillis(),
+        s.statusCodes(),
+        s.latencyBuckets()))
+      .toList());
+  }
+
+  //---------------------------------------------------------------------------
+  // Payload records.
+  //---------------------------------------------------------------------------
+
+  /**
+   * @param methods metrics for each method that has been called
+   */
+  public record MetricsInfo(
+    @NotNull List<MethodInfo> methods
+  ) {}
+
+  /**
+   * @param backend host of the API
+   * @param method HTTP method and path, with IDs replaced by wildcards
+   * @param requests number of requests
+   * @param retries number of retries
+   * @param responseBytes total size of responses, where known
+   * @param meanLatencyMillis mean latency, including retries
+   * @param statusCodes number of requests by status code, 0 indicates
+   *                    requests that failed without a response
+   * @param latencyBuckets number of requests by latency, keyed by the
+   *                       bucket's upper bound in milliseconds
+   */
+  public record MethodInfo(
+    @NotNull String backend,
+    @NotNull String method,
+    long requests,
+    long retries,
+    long responseBytes,
+    long meanLatencyMillis,
+    @NotNull Map<Integer, Long> statusCodes,
+    @NotNull Map<String, Long> latencyBuckets
+  ) {}
+}
@@ -0,0 +1,212 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.cloudidentity.v1.model.ListMembershipsResponse;
+import com.google.api.services.cloudidentity.v1.model.SearchDirectGroupsResponse;
+import com.google.api.services.cloudidentity.v1.model.SearchGroupsResponse;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.solutions.jitaccess.apis.CustomerId;
+import com.google.solutions.jitaccess.auth.EndUserId;
+import com.google.solutions.jitaccess.auth.GroupId;
+import com.google.solutions.jitaccess.common.MicroBenchmark;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares full responses against partial responses, using a local
+ * fake that returns realistic payloads.
+ * <p>
+ * For each method, the benchmark reports the bytes transferred per
+ * request, the time it takes to parse a response, and the end-to-end
+ * latency of the client method.
+ *
+ * @see MicroBenchmark
+ */
+public class BenchmarkFieldProjections {
+  private static final int GROUPS = 200;
+  private static final int MEMBERS = 200;
+  private static final int OPERATIONS = 200;
+  private static final int PARSE_ITERATIONS = 500;
+  private static final EndUserId USER = new EndUserId("user@example.com");
+  private static final GroupId LARGE_GROUP = new GroupId("large@example.com");
+  private static final String PREFIX = "jit.";
+
+  private interface Call {
+    int run(CloudIdentityGroupsClient client, FieldProjection projection) throws Exception;
+  }
+
+  private static void measure(
+    FakeGoogleApis server,
+    CloudIdentityGroupsClient client,
+    String method,
+    String path,
+    Class<? extends GenericJson> responseType,
+    FieldProjection projection,
+    int expectedItems,
+    Call call
+  ) throws Exception {
+    //
+    // Measure bytes and end-to-end latency of the client method.
+    //
+    assertEquals(expectedItems, call.run(client, projection));
+
+    var bytesBefore = server.responseBytes();
+    var requestsBefore = server.requestCount();
+    var results = LoadGenerator.run(
+      OPERATIONS,
+      4,
+      i -> assertEquals(expectedItems, call.run(client, projection)));
+
+    //
+    // Concurrent calls might be coalesced, so count bytes per request.
+    //
+    var bytesPerRequest = (server.responseBytes() - bytesBefore) /
+      Math.max(1, server.requestCount() - requestsBefore);
+
+    //
+    // Measure parse time separately, using the raw response.
+    //
+    var url = server.httpOptions().rootUrl() + path;
+    var fields = projection.forPage(
+      responseType == ListMembershipsResponse.class || responseType == SearchDirectGroupsResponse.class
+        ? "memberships"
+        : "groups");
+    if (fields != null) {
+      url += "&fields=" + URLEncoder.encode(fields, StandardCharsets.UTF_8);
+    }
+
+    var body = HttpClient.newHttpClient()
+      .send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString())
+      .body();
+
+    var factory = GsonFactory.getDefaultInstance();
+    var parseMicros = MicroBenchmark
+      .run(PARSE_ITERATIONS / 10, PARSE_ITERATIONS, i -> factory.fromString(body, responseType))
+      .nanosPerOperation() / 1000;
+
+    assertEquals(0, results.errors());
+    System.out.printf("%-24s %-10s %-12d %-12d %s%n",
+      method,
+      projection.fields() == null ? "full" : "projected",
+      bytesPerRequest,
+      parseMicros,
+      results);
+  }
+
+  @Test
+  public void projections() throws Exception {
+    //
+    // Measure the requests, not the client-side quota.
+    //
+    QuotaGovernor.configureShared(QuotaGovernor.Options.DISABLED);
+
+    try (var server = FakeGoogleApis.start()) {
+      var largeGroup = server.addGroup(LARGE_GROUP.email);
+      for (int i = 0; i < GROUPS; i++) {
+        var group = String.format("%sgroup-%d@example.com", PREFIX, i);
+        server.addGroup(group);
+        server.addMembership(group, USER.email, null);
+      }
+
+      for (int i = 0; i < MEMBERS; i++) {
+        server.addMembership(LARGE_GROUP.email, String.format("member-%d@example.com", i), null);
+      }
+
+      var client = new CloudIdentityGroupsClient(
+        GoogleCredentials.create(new AccessToken("token", null)),
+        new CloudIdentityGroupsClient.Options(new CustomerId("C123")),
+        server.httpOptions());
+
+        System.out.printf("%-24s %-10s %-12s %-12s %s%n",
+        "Method", "Response", "Bytes/req", "Parse (us)", LoadGenerator.Results.header());
+
+      var searchDirectGroups = "v1/groups/-/memberships:searchDirectGroups?pageSize=" + GROUPS
+        + "&query=" + URLEncoder.encode("member_key_id=='" + USER.email + "'", StandardCharsets.UTF_8);
+      for (var projection : new FieldProjection[] {
+        FieldProjection.ALL,
+        FieldProjection.of("groupKey", "membership", "roles")
+      }) {
+        measure(
+          server,
+          client,
+          "listMembershipsByUser",
+          searchDirectGroups,
+          SearchDirectGroupsResponse.class,
+          projection,
+          GROUPS,
+          (c, p) -> c.listMembershipsByUser(USER, p).size());
+      }
+
+      var listMemberships = String.format(
+        "v1/%s/memberships?view=FULL&pageSize=%d",
+        largeGroup,
+        MEMBERS);
+      for (var projection : new FieldProjection[] {
+        FieldProjection.ALL,
+        FieldProjection.of("type", "preferredMemberKey")
+      }) {
+        measure(
+          server,
+          client,
+          "listMemberships",
+          listMemberships,
+          ListMembershipsResponse.class,
+          projection,
+          MEMBERS,
+          (c, p) -> c.listMemberships(LARGE_GROUP, p).size());
+      }
+
+      var searchGroups = "v1/groups:search?view=FULL&pageSize=" + GROUPS
+        + "&query=" + URLEncoder.encode("group_key.startsWith('" + PREFIX + "')", StandardCharsets.UTF_8);
+      for (var projection : new FieldProjection[] {
+        FieldProjection.ALL,
+        FieldProjection.of("groupKey")
+      }) {
+        measure(
+          server,
+          client,
+          "searchGroupsByPrefix",
+          searchGroups,
+          SearchGroupsResponse.class,
+          projection,
+          GROUPS,
+          (c, p) -> c.searchGroupsByPrefix(PREFIX, false, p).size());
+      }
+    }
+    finally {
+      QuotaGovernor.configureShared(QuotaGovernor.Options.DEFAULT);
+    }
+  }
+}
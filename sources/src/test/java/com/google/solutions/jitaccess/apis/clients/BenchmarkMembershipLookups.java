@@ -0,0 +1,130 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.api.services.cloudidentity.v1.model.EntityKey;
+import com.google.api.services.cloudidentity.v1.model.ExpiryDetail;
+import com.google.api.services.cloudidentity.v1.model.Membership;
+import com.google.api.services.cloudidentity.v1.model.MembershipRole;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.solutions.jitaccess.apis.CustomerId;
+import com.google.solutions.jitaccess.common.CompletableFutures;
+import com.google.solutions.jitaccess.common.MicroBenchmark;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares looking up memberships one by one against batched
+ * lookups, using a local fake with a fixed latency per HTTP request.
+ *
+ * @see MicroBenchmark
+ */
+public class BenchmarkMembershipLookups {
+  private static final Duration LATENCY = Duration.ofMillis(50);
+  private static final int ITERATIONS = 5;
+
+  private interface Lookup {
+    int run(
+      CloudIdentityGroupsClient client,
+      List<CloudIdentityGroupsClient.MembershipId> ids
+    ) throws Exception;
+  }
+
+  private static long millisPerLookup(
+    CloudIdentityGroupsClient client,
+    List<CloudIdentityGroupsClient.MembershipId> ids,
+    Lookup lookup
+  ) throws Exception {
+    //
+    // Warm up connections, then measure.
+    //
+    return MicroBenchmark
+      .run(1, ITERATIONS, i -> assertEquals(ids.size(), lookup.run(client, ids)))
+      .elapsed()
+      .toMillis() / ITERATIONS;
+  }
+
+  @Test
+  public void getMemberships() throws Exception {
+    //
+    // Measure the requests, not the client-side quota.
+    //
+    QuotaGovernor.configureShared(QuotaGovernor.Options.DISABLED);
+
+    try (var server = FakeGoogleApis.start()) {
+      var client = new CloudIdentityGroupsClient(
+        GoogleCredentials.create(new AccessToken("token", null)),
+        new CloudIdentityGroupsClient.Options(new CustomerId("C123")),
+        server.httpOptions());
+
+      var ids = IntStream.range(0, 200)
+        .mapToObj(i -> {
+          var name = String.format("groups/group-%d/memberships/member-1", i);
+          server.addMembership(name, new Membership()
+            .setPreferredMemberKey(new EntityKey().setId("user@example.com"))
+            .setRoles(List.of(new MembershipRole()
+              .setName("MEMBER")
+              .setExpiryDetail(new ExpiryDetail().setExpireTime("2030-01-01T00:00:00Z")))));
+          return new CloudIdentityGroupsClient.MembershipId(name);
+        })
+        .toList();
+
+      server.setLatency(LATENCY);
+
+      System.out.printf("%-12s %-16s %-16s %-16s %-16s%n",
+        "Memberships", "Per-call (ms)", "Requests", "Batched (ms)", "Requests");
+
+      for (var count : List.of(1, 10, 50, 200)) {
+        var subset = ids.subList(0, count);
+
+        var requestsBefore = server.requestCount();
+        var perCall = millisPerLookup(
+          client,
+          subset,
+          (c, i) -> CompletableFutures
+            .allOf(i.stream().map(c::getMembershipAsync).toList())
+            .get()
+            .size());
+        var perCallRequests = (server.requestCount() - requestsBefore) / (ITERATIONS + 1);
+
+        requestsBefore = server.requestCount();
+        var batched = millisPerLookup(
+          client,
+          subset,
+          (c, i) -> c.getMemberships(i).size());
+        var batchedRequests = (server.requestCount() - requestsBefore) / (ITERATIONS + 1);
+
+        System.out.printf("%-12d %-16d %-16d %-16d %-16d%n",
+          count, perCall, perCallRequests, batched, batchedRequests);
+
+        assertTrue(batchedRequests <= perCallRequests);
+      }
+    }
+  }
+}
@@ -0,0 +1,1221 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.cloudidentity.v1.model.EntityKey;
+import com.google.api.services.cloudidentity.v1.model.ExpiryDetail;
+import com.google.api.services.cloudidentity.v1.model.Group;
+import com.google.api.services.cloudidentity.v1.model.Membership;
+import com.google.api.services.cloudidentity.v1.model.MembershipRelation;
+import com.google.api.services.cloudidentity.v1.model.MembershipRole;
+import com.google.api.services.cloudidentity.v1.model.ModifyMembershipRolesRequest;
+import com.google.api.services.cloudresourcemanager.v3.model.Organization;
+import com.google.api.services.cloudresourcemanager.v3.model.Policy;
+import com.google.api.services.cloudresourcemanager.v3.model.Project;
+import com.google.api.services.cloudresourcemanager.v3.model.SetIamPolicyRequest;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process fake for the Google APIs used by the application,
+ * served over local HTTP so that requests pass through the
+ * regular client stack, including retries and quota metering.
+ * <p>
+ * The fake keeps groups, memberships, IAM policies, and secrets
+ * in memory and covers the subset of Cloud Identity, Groups Settings,
+ * Resource Manager, IAM, IAM Credentials, Secret Manager, and Asset
+ * Inventory operations that the clients use. Latency, errors, and
+ * quota limits can be injected to simulate a backend under load.
+ * <p>
+ * To use the fake, configure clients with the {@link #httpOptions()}.
+ */
+public class FakeGoogleApis implements AutoCloseable {
+  private static final Pattern BOUNDARY_PATTERN = Pattern.compile("boundary=\"?([^\";]+)\"?");
+  private static final String CRLF = "\r\n";
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  private static final String CUSTOMER = "customers/C0fake";
+  private static final String CREATE_TIME = "2024-01-01T00:00:00Z";
+
+  private final @NotNull HttpServer server;
+  private final @NotNull List<Route> routes = new ArrayList<>();
+
+  //
+  // Resources.
+  //
+  private final @NotNull Map<String, Group> groups = new ConcurrentHashMap<>();
+  private final @NotNull Map<String, Membership> memberships = new ConcurrentHashMap<>();
+  private final @NotNull Map<String, Policy> policies = new ConcurrentHashMap<>();
+  private final @NotNull Map<String, String> secrets = new ConcurrentHashMap<>();
+  private final @NotNull Map<String, Organization> organizations = new ConcurrentHashMap<>();
+  private final @NotNull Map<String, Project> projects = new ConcurrentHashMap<>();
+  private final @NotNull List<String> roles = new ArrayList<>();
+  private final @NotNull AtomicLong nextId = new AtomicLong(1);
+
+  //
+  // Faults.
+  //
+  private final @NotNull Map<String, Integer> errors = new ConcurrentHashMap<>();
+  private final @NotNull Set<String> invalidUsers = ConcurrentHashMap.newKeySet();
+  private final @NotNull Set<String> expiredAccessTokens = ConcurrentHashMap.newKeySet();
+  private final @NotNull Map<Integer, Double> errorRates = new ConcurrentHashMap<>();
+  private final @NotNull Map<Api, Quota> quotas = new ConcurrentHashMap<>();
+  private volatile @NotNull Latency latency = Latency.NONE;
+
+  //
+  // Statistics.
+  //
+  private final @NotNull AtomicInteger requestCount = new AtomicInteger();
+  private final @NotNull Map<Api, AtomicInteger> requestCountByApi = new ConcurrentHashMap<>();
+  private final @NotNull AtomicLong responseBytes = new AtomicLong();
+
+  private FakeGoogleApis(@NotNull HttpServer server) {
+    this.server = server;
+    this.server.createContext("/", this::handle);
+
+    //
+    // Cloud Identity.
+    //
+    route(Api.CLOUD_IDENTITY, "GET", "/v1/groups:lookup", this::lookupGroup);
+    route(Api.CLOUD_IDENTITY, "GET", "/v1/groups:search", this::searchGroups);
+    route(Api.CLOUD_IDENTITY, "POST", "/v1/groups", this::createGroup);
+    route(Api.CLOUD_IDENTITY, "GET", "/v1/(groups/[^/:]+)", this::getGroup);
+    route(Api.CLOUD_IDENTITY, "PATCH", "/v1/(groups/[^/:]+)", this::patchGroup);
+    route(Api.CLOUD_IDENTITY, "DELETE", "/v1/(groups/[^/:]+)", this::deleteGroup);
+    route(Api.CLOUD_IDENTITY, "PATCH", "/v1/(groups/[^/:]+)/securitySettings", (m, r) -> operation(Map.of()));
+    route(Api.CLOUD_IDENTITY, "GET", "/v1/groups/-/memberships:searchDirectGroups", this::searchDirectGroups);
+    route(Api.CLOUD_IDENTITY, "GET", "/v1/(groups/[^/:]+)/memberships:lookup", this::lookupMembership);
+    route(Api.CLOUD_IDENTITY, "GET", "/v1/(groups/[^/:]+)/memberships", this::listMemberships);
+    route(Api.CLOUD_IDENTITY, "POST", "/v1/(groups/[^/:]+)/memberships", this::createMembership);
+    route(Api.CLOUD_IDENTITY, "GET", "/v1/(groups/[^/:]+/memberships/[^/:]+)", this::getMembership);
+    route(Api.CLOUD_IDENTITY, "DELETE", "/v1/(groups/[^/:]+/memberships/[^/:]+)", this::deleteMembership);
+    route(Api.CLOUD_IDENTITY, "POST", "/v1/(groups/[^/:]+/memberships/[^/:]+):modifyMembershipRoles", this::modifyMembershipRoles);
+
+    //
+    // Groups Settings.
+    //
+    route(Api.GROUPS_SETTINGS, "PUT", "/groups/v1/groups/([^/]+)", (m, r) -> new Response(200, r.body));
+
+    //
+    // Resource Manager.
+    //
+    route(Api.RESOURCE_MANAGER, "GET", "/v3/projects:search", this::searchProjects);
+    route(Api.RESOURCE_MANAGER, "GET", "/v3/organizations:search", this::searchOrganizations);
+    route(Api.RESOURCE_MANAGER, "POST", "/v3/((?:projects|folders|organizations)/[^/:]+):getIamPolicy", this::getIamPolicy);
+    route(Api.RESOURCE_MANAGER, "POST", "/v3/((?:projects|folders|organizations)/[^/:]+):setIamPolicy", this::setIamPolicy);
+
+    //
+    // IAM.
+    //
+    route(Api.IAM, "GET", "/v1/roles", this::listRoles);
+    route(Api.IAM, "POST", "/v1/roles:queryGrantableRoles", this::listRoles);
+    route(Api.IAM, "POST", "/v1/iamPolicies:lintPolicy", (m, r) -> json(200, Map.of("lintResults", List.of())));
+    route(Api.IAM, "POST", "/v1/(projects/[^/]+/serviceAccounts/[^/:]+):getIamPolicy", this::getIamPolicy);
+    route(Api.IAM, "POST", "/v1/(projects/[^/]+/serviceAccounts/[^/:]+):setIamPolicy", this::setIamPolicy);
+
+    //
+    // IAM Credentials.
+    //
+    route(Api.IAM_CREDENTIALS, "POST", "/v1/projects/[^/]+/serviceAccounts/([^/:]+):signJwt", this::signJwt);
+    route(Api.IAM_CREDENTIALS, "POST", "/v1/projects/[^/]+/serviceAccounts/([^/:]+):generateAccessToken", this::generateAccessToken);
+
+    //
+    // Secret Manager.
+    //
+    route(Api.SECRET_MANAGER, "GET", "/v1/(projects/[^/]+/secrets/[^/]+/versions/[^/:]+):access", this::accessSecret);
+
+    //
+    // Asset Inventory.
+    //
+    route(Api.ASSET_INVENTORY, "GET", "/v1/(.+)/effectiveIamPolicies:batchGet", this::batchGetEffectiveIamPolicies);
+  }
+
+  /**
+   * Start a server on an ephemeral port.
+   */
+  public static @NotNull FakeGoogleApis start() throws IOException {
+    var server = new FakeGoogleApis(
+      HttpServer.create(new InetSocketAddress("localhost", 0), 0));
+    server.server.setExecutor(Executors.newCachedThreadPool());
+    server.server.start();
+    return server;
+  }
+
+  /**
+   * Options for clients that use this server.
+   */
+  public @NotNull HttpTransport.Options httpOptions() {
+    return new HttpTransport.Options(
+      Duration.ZERO,
+      Duration.ZERO,
+      Duration.ZERO,
+      String.format("http://localhost:%d/", this.server.getAddress().getPort()));
+  }
+
+  @Override
+  public void close() {
+    this.server.stop(0);
+  }
+
+  //---------------------------------------------------------------------------
+  // Resources.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Add a group.
+   *
+   * @return name of the group, in the format groups/ID.
+   */
+  public @NotNull String addGroup(@NotNull String email) {
+    var name = "groups/" + Long.toHexString(this.nextId.getAndIncrement());
+    this.groups.put(name, new Group()
+      .setName(name)
+      .setGroupKey(new EntityKey().setId(email))
+      .setParent(CUSTOMER)
+      .setDisplayName(email)
+      .setDescription("Group " + email)
+      .setLabels(Map.of("cloudidentity.googleapis.com/groups.discussion_forum", ""))
+      .setCreateTime(CREATE_TIME)
+      .setUpdateTime(CREATE_TIME));
+    return name;
+  }
+
+  /**
+   * Add a membership.
+   *
+   * @param name name of the membership, in the format
+   *             groups/ID/memberships/ID.
+   */
+  public void addMembership(@NotNull String name, @NotNull Membership membership) {
+    if (membership.getType() == null && membership.getPreferredMemberKey() != null) {
+      membership.setType(findGroup(membership.getPreferredMemberKey().getId()).isPresent()
+        ? "GROUP"
+        : "USER");
+    }
+
+    if (membership.getCreateTime() == null) {
+      membership
+        .setCreateTime(CREATE_TIME)
+        .setUpdateTime(CREATE_TIME)
+        .setDeliverySetting("ALL_MAIL");
+    }
+
+    this.memberships.put(name, membership.setName(name));
+  }
+
+  /**
+   * Add a membership to a group that was added before.
+   *
+   * @return name of the membership, in the format groups/ID/memberships/ID.
+   */
+  public @NotNull String addMembership(
+    @NotNull String groupEmail,
+    @NotNull String memberEmail,
+    @Nullable Instant expiry
+  ) {
+    var group = findGroup(groupEmail).orElseThrow(
+      () -> new IllegalArgumentException("Unknown group: " + groupEmail));
+
+    var role = new MembershipRole().setName("MEMBER");
+    if (expiry != null) {
+      role.setExpiryDetail(new ExpiryDetail()
+        .setExpireTime(expiry.toString()));
+    }
+
+    var name = String.format("%s/memberships/%x", group.getName(), this.nextId.getAndIncrement());
+    addMembership(name, new Membership()
+      .setPreferredMemberKey(new EntityKey().setId(memberEmail))
+      .setRoles(List.of(role)));
+    return name;
+  }
+
+  /**
+   * Get all memberships, including expired memberships.
+   */
+  public @NotNull Map<String, Membership> memberships() {
+    return Map.copyOf(this.memberships);
+  }
+
+  /**
+   * Set the IAM policy of a resource.
+   *
+   * @param resource resource name, for example projects/ID.
+   */
+  public void setIamPolicy(@NotNull String resource, @NotNull Policy policy) {
+    this.policies.put(resource, copy(policy).setEtag(newEtag()));
+  }
+
+  /**
+   * Get the IAM policy of a resource.
+   *
+   * @param resource resource name, for example projects/ID.
+   */
+  public @NotNull Policy getIamPolicy(@NotNull String resource) {
+    return copy(this.policies.getOrDefault(resource, new Policy().setVersion(1)));
+  }
+
+  /**
+   * Add a secret version.
+   *
+   * @param name name of the secret version, in the format
+   *             projects/ID/secrets/ID/versions/ID.
+   */
+  public void addSecret(@NotNull String name, @NotNull String value) {
+    this.secrets.put(name, value);
+  }
+
+  public void addOrganization(@NotNull Organization organization) {
+    this.organizations.put(organization.getName(), organization);
+  }
+
+  public void addProject(@NotNull Project project) {
+    this.projects.put(project.getName(), project);
+  }
+
+  /**
+   * Add a role that's returned when listing roles.
+   */
+  public void addRole(@NotNull String name) {
+    synchronized (this.roles) {
+      this.roles.add(name);
+    }
+  }
+
+  //---------------------------------------------------------------------------
+  // Faults.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Delay each HTTP request (not each request in a batch).
+   */
+  public void setLatency(@NotNull Duration latency) {
+    this.latency = Latency.fixed(latency);
+  }
+
+  /**
+   * Delay each HTTP request (not each request in a batch)
+   * by a random latency.
+   */
+  public void setLatency(@NotNull Latency latency) {
+    this.latency = latency;
+  }
+
+  /**
+   * Let requests for a resource fail with a given status code.
+   *
+   * @param name name of the resource, for example groups/ID.
+   */
+  public void injectError(@NotNull String name, int statusCode) {
+    this.errors.put(name, statusCode);
+  }
+
+  /**
+   * Let searchDirectGroups fail with a 500 for a user, like the
+   * real API does for users that are invalid or have been deleted.
+   */
+  public void addInvalidUser(@NotNull String email) {
+    this.invalidUsers.add(email.toLowerCase());
+  }
+
+  /**
+   * Let requests that use a given access token fail with a 401,
+   * like the real APIs do for tokens that have expired.
+   */
+  public void expireAccessToken(@NotNull String token) {
+    this.expiredAccessTokens.add(token);
+  }
+
+  /**
+   * Let a random fraction of requests fail with a given status code.
+   * <p>
+   * A 412 only affects setIamPolicy requests, where it indicates
+   * a concurrent modification.
+   *
+   * @param rate fraction between 0 and 1, or 0 to stop failing requests.
+   */
+  public void injectErrors(int statusCode, double rate) {
+    if (rate <= 0) {
+      this.errorRates.remove(statusCode);
+    }
+    else {
+      this.errorRates.put(statusCode, rate);
+    }
+  }
+
+  /**
+   * Limit the number of requests per minute that an API accepts,
+   * additional requests fail with a 429.
+   * <p>
+   * Requests in a batch count individually.
+   */
+  public void setQuota(@NotNull Api api, int requestsPerMinute) {
+    this.quotas.put(api, new Quota(requestsPerMinute));
+  }
+
+  //---------------------------------------------------------------------------
+  // Statistics.
+  //---------------------------------------------------------------------------
+
+  /**
+   * Number of HTTP requests served so far.
+   */
+  public int requestCount() {
+    return this.requestCount.get();
+  }
+
+  /**
+   * Number of requests served by an API so far. Requests
+   * in a batch count individually.
+   */
+  public int requestCount(@NotNull Api api) {
+    var count = this.requestCountByApi.get(api);
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * Total size of response bodies served so far.
+   */
+  public long responseBytes() {
+    return this.responseBytes.get();
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  public enum Api {
+    CLOUD_IDENTITY,
+    GROUPS_SETTINGS,
+    RESOURCE_MANAGER,
+    IAM,
+    IAM_CREDENTIALS,
+    SECRET_MANAGER,
+    ASSET_INVENTORY
+  }
+
+  /**
+   * Distribution of request latencies.
+   */
+  @FunctionalInterface
+  public interface Latency {
+    Latency NONE = fixed(Duration.ZERO);
+
+    @NotNull Duration next();
+
+    static @NotNull Latency fixed(@NotNull Duration latency) {
+      return () -> latency;
+    }
+
+    /**
+     * Latencies that are uniformly distributed between
+     * a minimum and a maximum.
+     */
+    static @NotNull Latency uniform(@NotNull Duration min, @NotNull Duration max) {
+      return () -> Duration.ofNanos(ThreadLocalRandom.current().nextLong(
+        min.toNanos(),
+        max.toNanos() + 1));
+    }
+
+    /**
+     * Latencies that follow a log-normal distribution, which is
+     * typical for API latencies: most requests are close to the
+     * median, but there's a long tail.
+     */
+    static @NotNull Latency logNormal(@NotNull Duration median, @NotNull Duration p99) {
+      //
+      // 2.326 is the z-score of the 99th percentile.
+      //
+      var sigma = Math.log((double)p99.toNanos() / median.toNanos()) / 2.326;
+      return () -> Duration.ofNanos((long)(median.toNanos() *
+        Math.exp(sigma * ThreadLocalRandom.current().nextGaussian())));
+    }
+  }
+
+  @FunctionalInterface
+  private interface Handler {
+    @NotNull Response handle(@NotNull Matcher matcher, @NotNull Request request) throws IOException;
+  }
+
+  private record Route(
+    @NotNull Api api,
+    @NotNull String method,
+    @NotNull Pattern pattern,
+    @NotNull Handler handler
+  ) {}
+
+  private record Request(
+    @NotNull String method,
+    @NotNull String path,
+    @NotNull Map<String, String> query,
+    @NotNull String body
+  ) {}
+
+  private record Response(int statusCode, @NotNull String body) {}
+
+  /**
+   * Field mask of a partial response, for example
+   * "nextPageToken,items(id,key/name)".
+   */
+  private static class FieldMask {
+    /**
+     * Selected fields, each with a mask for its sub-fields. An empty
+     * mask selects the entire value.
+     */
+    private final @NotNull Map<String, FieldMask> fields = new HashMap<>();
+
+    static @NotNull FieldMask parse(@NotNull String mask) {
+      var position = new int[] { 0 };
+      var result = new FieldMask();
+      result.parseList(mask, position);
+      return result;
+    }
+
+    private void parseList(@NotNull String mask, int @NotNull [] position) {
+      while (position[0] < mask.length() && mask.charAt(position[0]) != ')') {
+        parseField(mask, position);
+        if (position[0] < mask.length() && mask.charAt(position[0]) == ',') {
+          position[0]++;
+        }
+      }
+    }
+
+    private void parseField(@NotNull String mask, int @NotNull [] position) {
+      var start = position[0];
+      while (position[0] < mask.length() && ",()/".indexOf(mask.charAt(position[0])) < 0) {
+        position[0]++;
+      }
+
+      var field = this.fields.computeIfAbsent(
+        mask.substring(start, position[0]).trim(),
+        f -> new FieldMask());
+
+      if (position[0] < mask.length() && mask.charAt(position[0]) == '(') {
+        position[0]++;
+        field.parseList(mask, position);
+        position[0]++; // Closing parenthesis.
+      }
+      else if (position[0] < mask.length() && mask.charAt(position[0]) == '/') {
+        position[0]++;
+        field.parseField(mask, position);
+      }
+    }
+
+    @NotNull JsonElement apply(@NotNull JsonElement element) {
+      if (this.fields.isEmpty()) {
+        return element;
+      }
+      else if (element.isJsonArray()) {
+        var result = new JsonArray();
+        element.getAsJsonArray().forEach(e -> result.add(apply(e)));
+        return result;
+      }
+      else if (element.isJsonObject()) {
+        var object = element.getAsJsonObject();
+        var result = new JsonObject();
+        this.fields.forEach((name, mask) -> {
+          if (object.has(name)) {
+            result.add(name, mask.apply(object.get(name)));
+          }
+        });
+        return result;
+      }
+      else {
+        return element;
+      }
+    }
+  }
+
+  /**
+   * Fixed-window quota.
+   */
+  private static class Quota {
+    private final int requestsPerMinute;
+    private long window;
+    private int count;
+
+    Quota(int requestsPerMinute) {
+      this.requestsPerMinute = requestsPerMinute;
+    }
+
+    synchronized boolean tryAcquire() {
+      var window = System.nanoTime() / Duration.ofMinutes(1).toNanos();
+      if (window != this.window) {
+        this.window = window;
+        this.count = 0;
+      }
+
+      return ++this.count <= this.requestsPerMinute;
+    }
+  }
+
+  //---------------------------------------------------------------------------
+  // Cloud Identity.
+  //---------------------------------------------------------------------------
+
+  private @NotNull Optional<Group> findGroup(@NotNull String email) {
+    return this.groups.values()
+      .stream()
+      .filter(g -> g.getGroupKey().getId().equalsIgnoreCase(email))
+      .findFirst();
+  }
+
+  private @NotNull Optional<Membership> findMembership(
+    @NotNull String groupName,
+    @NotNull String memberEmail
+  ) {
+    return this.memberships.values()
+      .stream()
+      .filter(m -> m.getName().startsWith(groupName + "/memberships/"))
+      .filter(m -> m.getPreferredMemberKey().getId().equalsIgnoreCase(memberEmail))
+      .filter(m -> !isExpired(m))
+      .findFirst();
+  }
+
+  /**
+   * The API omits expired memberships, even if they haven't
+   * been purged yet.
+   */
+  private static boolean isExpired(@NotNull Membership membership) {
+    var now = Instant.now();
+    return membership.getRoles() != null && membership
+      .getRoles()
+      .stream()
+      .anyMatch(r -> r.getExpiryDetail() != null &&
+        r.getExpiryDetail().getExpireTime() != null &&
+        Instant.parse(r.getExpiryDetail().getExpireTime()).isBefore(now));
+  }
+
+  private @NotNull Response lookupGroup(@NotNull Matcher matcher, @NotNull Request request) {
+    return findGroup(request.query.getOrDefault("groupKey.id", ""))
+      .map(g -> json(200, Map.of("name", g.getName())))
+      .orElseGet(FakeGoogleApis::notFound);
+  }
+
+  private @NotNull Response getGroup(@NotNull Matcher matcher, @NotNull Request request) {
+    var group = this.groups.get(matcher.group(1));
+    return group != null ? json(200, group) : notFound();
+  }
+
+  private @NotNull Response createGroup(@NotNull Matcher matcher, @NotNull Request request) throws IOException {
+    var group = parse(request.body, Group.class);
+    synchronized (this.groups) {
+      if (findGroup(group.getGroupKey().getId()).isPresent()) {
+        return error(409, "ALREADY_EXISTS");
+      }
+
+      var name = addGroup(group.getGroupKey().getId());
+      this.groups.put(name, group.setName(name));
+      return operation(Map.of("name", name));
+    }
+  }
+
+  private @NotNull Response patchGroup(@NotNull Matcher matcher, @NotNull Request request) throws IOException {
+    var group = this.groups.get(matcher.group(1));
+    if (group == null) {
+      return notFound();
+    }
+
+    var patch = parse(request.body, Group.class);
+    if (patch.getDescription() != null) {
+      group.setDescription(patch.getDescription());
+    }
+
+    return operation(Map.of("name", group.getName()));
+  }
+
+  private @NotNull Response deleteGroup(@NotNull Matcher matcher, @NotNull Request request) {
+    var name = matcher.group(1);
+    if (this.groups.remove(name) == null) {
+      return notFound();
+    }
+
+    this.memberships.keySet().removeIf(m -> m.startsWith(name + "/memberships/"));
+    return operation(Map.of());
+  }
+
+  private @NotNull Response searchGroups(@NotNull Matcher matcher, @NotNull Request request) {
+    //
+    // Only support the queries that the client uses, i.e.,
+    // group_key=='EMAIL' and group_key.startsWith('PREFIX').
+    //
+    var query = request.query.getOrDefault("query", "");
+    var emails = Pattern.compile("group_key=='([^']+)'")
+      .matcher(query)
+      .results()
+      .map(r -> r.group(1).toLowerCase())
+      .toList();
+    var prefix = Pattern.compile("group_key\\.startsWith\\('([^']+)'\\)")
+      .matcher(query)
+      .results()
+      .map(r -> r.group(1).toLowerCase())
+      .findFirst();
+
+    var matches = this.groups.values()
+      .stream()
+      .filter(g -> {
+        var email = g.getGroupKey().getId().toLowerCase();
+        return emails.contains(email) || prefix.map(email::startsWith).orElse(false);
+      })
+      .sorted(Comparator.comparing(Group::getName))
+      .toList();
+
+    return page(request, "groups", matches);
+  }
+
+  private @NotNull Response lookupMembership(@NotNull Matcher matcher, @NotNull Request request) {
+    return findMembership(matcher.group(1), request.query.getOrDefault("memberKey.id", ""))
+      .map(m -> json(200, Map.of("name", m.getName())))
+      .orElseGet(FakeGoogleApis::notFound);
+  }
+
+  private @NotNull Response getMembership(@NotNull Matcher matcher, @NotNull Request request) {
+    var membership = this.memberships.get(matcher.group(1));
+    return membership != null && !isExpired(membership) ? json(200, membership) : notFound();
+  }
+
+  private @NotNull Response listMemberships(@NotNull Matcher matcher, @NotNull Request request) {
+    var prefix = matcher.group(1) + "/memberships/";
+    return page(
+      request,
+      "memberships",
+      this.memberships.values()
+        .stream()
+        .filter(m -> m.getName().startsWith(prefix))
+        .filter(m -> !isExpired(m))
+        .sorted(Comparator.comparing(Membership::getName))
+        .toList());
+  }
+
+  private @NotNull Response searchDirectGroups(@NotNull Matcher matcher, @NotNull Request request) {
+    var queryMatcher = Pattern.compile("member_key_id=='([^']+)'")
+      .matcher(request.query.getOrDefault("query", ""));
+    if (!queryMatcher.find()) {
+      return error(400, "INVALID_ARGUMENT");
+    }
+
+    var member = queryMatcher.group(1);
+    if (this.invalidUsers.contains(member.toLowerCase())) {
+      return error(500, "INTERNAL");
+    }
+
+    //
+    // NB. The API doesn't include expiry details in the result.
+    //
+    var relations = this.memberships.values()
+      .stream()
+      .filter(m -> m.getPreferredMemberKey().getId().equalsIgnoreCase(member))
+      .filter(m -> !isExpired(m))
+      .sorted(Comparator.comparing(Membership::getName))
+      .map(m -> {
+        var groupName = m.getName().substring(0, m.getName().indexOf("/memberships/"));
+        var group = this.groups.get(groupName);
+        var groupEmail = group != null ? group.getGroupKey().getId() : groupName;
+        return new MembershipRelation()
+          .setGroup(groupName)
+          .setGroupKey(new EntityKey().setId(groupEmail))
+          .setDisplayName(group != null ? group.getDisplayName() : null)
+          .setDescription(group != null ? group.getDescription() : null)
+          .setLabels(group != null ? group.getLabels() : null)
+          .setMembership(m.getName())
+          .setRoles(m.getRoles()
+            .stream()
+            .map(r -> new MembershipRole().setName(r.getName()))
+            .toList());
+      })
+      .toList();
+
+    return page(request, "memberships", relations);
+  }
+
+  private @NotNull Response createMembership(@NotNull Matcher matcher, @NotNull Request request) throws IOException {
+    var groupName = matcher.group(1);
+    if (!this.groups.containsKey(groupName)) {
+      return notFound();
+    }
+
+    var membership = parse(request.body, Membership.class);
+    synchronized (this.memberships) {
+      if (findMembership(groupName, membership.getPreferredMemberKey().getId()).isPresent()) {
+        return error(409, "ALREADY_EXISTS");
+      }
+
+      var name = String.format("%s/memberships/%x", groupName, this.nextId.getAndIncrement());
+      addMembership(name, membership);
+      return operation(Map.of("name", name));
+    }
+  }
+
+  private @NotNull Response deleteMembership(@NotNull Matcher matcher, @NotNull Request request) {
+    return this.memberships.remove(matcher.group(1)) != null
+      ? operation(Map.of())
+      : notFound();
+  }
+
+  private @NotNull Response modifyMembershipRoles(
+    @NotNull Matcher matcher,
+    @NotNull Request request
+  ) throws IOException {
+    var membership = this.memberships.get(matcher.group(1));
+    if (membership == null || isExpired(membership)) {
+      return notFound();
+    }
+
+    var modify = parse(request.body, ModifyMembershipRolesRequest.class);
+    var roles = new HashMap<String, MembershipRole>();
+    membership.getRoles().forEach(r -> roles.put(r.getName(), r));
+
+    if (modify.getUpdateRolesParams() != null) {
+      modify.getUpdateRolesParams().forEach(p -> roles.put(
+        p.getMembershipRole().getName(),
+        p.getMembershipRole()));
+    }
+
+    membership.setRoles(List.copyOf(roles.values()));
+    return json(200, Map.of("membership", membership));
+  }
+
+  //---------------------------------------------------------------------------
+  // Resource Manager and IAM.
+  //---------------------------------------------------------------------------
+
+  private static @NotNull String newEtag() {
+    return Base64.getEncoder().encodeToString(
+      UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private @NotNull Response getIamPolicy(@NotNull Matcher matcher, @NotNull Request request) {
+    var resource = matcher.group(1);
+    return json(200, this.policies.computeIfAbsent(
+      resource,
+      r -> new Policy().setVersion(1).setEtag(newEtag())));
+  }
+
+  private @NotNull Response setIamPolicy(@NotNull Matcher matcher, @NotNull Request request) throws IOException {
+    var resource = matcher.group(1);
+    var policy = parse(request.body, SetIamPolicyRequest.class).getPolicy();
+
+    //
+    // Use optimistic concurrency control, like the real APIs do.
+    //
+    var conflict = new boolean[1];
+    var updated = this.policies.compute(resource, (r, current) -> {
+      if (current != null &&
+        policy.getEtag() != null &&
+        !policy.getEtag().equals(current.getEtag())) {
+        conflict[0] = true;
+        return current;
+      }
+
+      return copy(policy).setEtag(newEtag());
+    });
+
+    return conflict[0]
+      ? error(412, "FAILED_PRECONDITION")
+      : json(200, updated);
+  }
+
+  private @NotNull Response searchProjects(@NotNull Matcher matcher, @NotNull Request request) {
+    return page(
+      request,
+      "projects",
+      this.projects.values()
+        .stream()
+        .sorted(Comparator.comparing(Project::getName))
+        .toList());
+  }
+
+  private @NotNull Response searchOrganizations(@NotNull Matcher matcher, @NotNull Request request) {
+    var customerId = request.query
+      .getOrDefault("query", "")
+      .replaceFirst("^directorycustomerid:", "");
+
+    return json(200, Map.of("organizations", this.organizations.values()
+      .stream()
+      .filter(o -> customerId.equals(o.getDirectoryCustomerId()))
+      .toList()));
+  }
+
+  private @NotNull Response listRoles(@NotNull Matcher matcher, @NotNull Request request) {
+    synchronized (this.roles) {
+      return json(200, Map.of("roles", this.roles
+        .stream()
+        .map(r -> Map.of("name", r))
+        .toList()));
+    }
+  }
+
+  //---------------------------------------------------------------------------
+  // IAM Credentials.
+  //---------------------------------------------------------------------------
+
+  private @NotNull Response signJwt(@NotNull Matcher matcher, @NotNull Request request) throws IOException {
+    var payload = (String)parse(request.body, GenericJson.class).get("payload");
+    var encoder = Base64.getUrlEncoder().withoutPadding();
+
+    var header = "{\"alg\":\"RS256\",\"typ\":\"JWT\",\"kid\":\"fake\"}";
+    var jwt = String.join(".",
+      encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8)),
+      encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8)),
+      encoder.encodeToString(matcher.group(1).getBytes(StandardCharsets.UTF_8)));
+
+    return json(200, Map.of("keyId", "fake", "signedJwt", jwt));
+  }
+
+  private @NotNull Response generateAccessToken(@NotNull Matcher matcher, @NotNull Request request) {
+    return json(200, Map.of(
+      "accessToken", String.format("fake-token-%x", this.nextId.getAndIncrement()),
+      "expireTime", Instant.now().plus(Duration.ofHours(1)).toString()));
+  }
+
+  //---------------------------------------------------------------------------
+  // Secret Manager.
+  //---------------------------------------------------------------------------
+
+  private @NotNull Response accessSecret(@NotNull Matcher matcher, @NotNull Request request) {
+    var name = matcher.group(1);
+    var value = this.secrets.get(name);
+    if (value == null) {
+      return notFound();
+    }
+
+    return json(200, Map.of(
+      "name", name,
+      "payload", Map.of("data", Base64.getEncoder().encodeToString(
+        value.getBytes(StandardCharsets.UTF_8)))));
+  }
+
+  //---------------------------------------------------------------------------
+  // Asset Inventory.
+  //---------------------------------------------------------------------------
+
+  private @NotNull Response batchGetEffectiveIamPolicies(
+    @NotNull Matcher matcher,
+    @NotNull Request request
+  ) throws IOException {
+    //
+    // NB. The fake doesn't model the resource hierarchy, so the effective
+    // policy only includes the policy that's attached to the resource itself.
+    //
+    var fullResourceName = request.query.getOrDefault("names", "");
+    var resource = fullResourceName.replaceFirst("^//cloudresourcemanager\\.googleapis\\.com/", "");
+
+    var policies = new ArrayList<Map<String, Object>>();
+    var policy = this.policies.get(resource);
+    if (policy != null) {
+      policies.add(Map.of(
+        "attachedResource", fullResourceName,
+        "policy", policy));
+    }
+
+    return json(200, Map.of("policyResults", List.of(Map.of(
+      "fullResourceName", fullResourceName,
+      "policies", policies))));
+  }
+
+  //---------------------------------------------------------------------------
+  // Request handling.
+  //---------------------------------------------------------------------------
+
+  private void route(
+    @NotNull Api api,
+    @NotNull String method,
+    @NotNull String pathPattern,
+    @NotNull Handler handler
+  ) {
+    this.routes.add(new Route(api, method, Pattern.compile(pathPattern), handler));
+  }
+
+  /**
+   * Create a deep copy of a resource.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> @NotNull T copy(@NotNull T resource) {
+    try {
+      return (T)parse(GsonFactory.getDefaultInstance().toString(resource), resource.getClass());
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static <T> @NotNull T parse(@NotNull String json, @NotNull Class<T> type) throws IOException {
+    return GsonFactory.getDefaultInstance().fromString(json, type);
+  }
+
+  private static @NotNull Response json(int statusCode, @NotNull Object body) {
+    try {
+      return new Response(statusCode, GsonFactory.getDefaultInstance().toString(body));
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static @NotNull Response error(int statusCode, @NotNull String status) {
+    return new Response(
+      statusCode,
+      String.format(
+        "{\"error\": {\"code\": %d, \"message\": \"%s\", \"status\": \"%s\"}}",
+        statusCode,
+        status.toLowerCase().replace('_', ' '),
+        status));
+  }
+
+  private static @NotNull Response notFound() {
+    return error(404, "NOT_FOUND");
+  }
+
+  /**
+   * Create a completed long-running operation.
+   */
+  private static @NotNull Response operation(@NotNull Map<String, Object> response) {
+    return json(200, Map.of("done", true, "response", response));
+  }
+
+  /**
+   * Return a page of items, using the offset as page token.
+   */
+  private static @NotNull Response page(
+    @NotNull Request request,
+    @NotNull String field,
+    @NotNull List<?> items
+  ) {
+    var pageSize = Integer.parseInt(request.query.getOrDefault("pageSize", String.valueOf(DEFAULT_PAGE_SIZE)));
+    var offset = Integer.parseInt(request.query.getOrDefault("pageToken", "0"));
+    var end = Math.min(items.size(), offset + pageSize);
+
+    var body = new HashMap<String, Object>();
+    body.put(field, items.subList(Math.min(offset, end), end));
+    if (end < items.size()) {
+      body.put("nextPageToken", String.valueOf(end));
+    }
+
+    return json(200, body);
+  }
+
+  private static @NotNull Map<String, String> parseQuery(@Nullable String query) {
+    var parameters = new HashMap<String, String>();
+    if (query != null) {
+      for (var parameter : query.split("&")) {
+        var keyAndValue = parameter.split("=", 2);
+        parameters.put(
+          URLDecoder.decode(keyAndValue[0], StandardCharsets.UTF_8),
+          keyAndValue.length > 1 ? URLDecoder.decode(keyAndValue[1], StandardCharsets.UTF_8) : "");
+      }
+    }
+
+    return parameters;
+  }
+
+  /**
+   * Dispatch a request, applying injected faults.
+   */
+  private @NotNull Response dispatch(@NotNull Request request) throws IOException {
+    for (var route : this.routes) {
+      var matcher = route.pattern.matcher(request.path);
+      if (!route.method.equals(request.method) || !matcher.matches()) {
+        continue;
+      }
+
+      this.requestCountByApi
+        .computeIfAbsent(route.api, a -> new AtomicInteger())
+        .incrementAndGet();
+
+      var quota = this.quotas.get(route.api);
+      if (quota != null && !quota.tryAcquire()) {
+        return error(429, "RESOURCE_EXHAUSTED");
+      }
+
+      var resource = matcher.groupCount() > 0 ? matcher.group(1) : null;
+      var injected = resource != null ? this.errors.get(resource) : null;
+      if (injected != null) {
+        return error(injected, "INJECTED");
+      }
+
+      for (var errorRate : this.errorRates.entrySet()) {
+        var applies = errorRate.getKey() != 412 || request.path.endsWith(":setIamPolicy");
+        if (applies && ThreadLocalRandom.current().nextDouble() < errorRate.getValue()) {
+          return error(errorRate.getKey(), "INJECTED");
+        }
+      }
+
+      try {
+        var response = route.handler.handle(matcher, request);
+
+        //
+        // Return a partial response if the client requested one.
+        //
+        var fields = request.query.get("fields");
+        return fields != null && response.statusCode / 100 == 2
+          ? new Response(
+            response.statusCode,
+            FieldMask.parse(fields).apply(JsonParser.parseString(response.body)).toString())
+          : response;
+      }
+      catch (RuntimeException e) {
+        return error(500, "INTERNAL");
+      }
+    }
+
+    return notFound();
+  }
+
+  private @NotNull String batch(
+    @NotNull String requestBoundary,
+    @NotNull String requestBody,
+    @NotNull String responseBoundary
+  ) throws IOException {
+    var responseBody = new StringBuilder();
+    var index = 0;
+    for (var part : requestBody.split(Pattern.quote("--" + requestBoundary))) {
+      if (part.isBlank() || part.startsWith("--")) {
+        continue;
+      }
+
+      //
+      // Skip the part headers, then read the request line and
+      // body of the embedded request.
+      //
+      var embeddedRequest = part.replaceFirst("^\\r?\\n", "").split("\\r?\\n\\r?\\n", 2)[1];
+      var headersAndBody = embeddedRequest.split("\\r?\\n\\r?\\n", 2);
+      var requestLine = headersAndBody[0].split("\\r?\\n", 2)[0].split(" ");
+      var uri = URI.create(requestLine[1]);
+      var response = dispatch(new Request(
+        requestLine[0],
+        uri.getPath(),
+        parseQuery(uri.getRawQuery()),
+        headersAndBody.length > 1 ? headersAndBody[1].trim() : ""));
+
+      index++;
+      responseBody
+        .append("--").append(responseBoundary).append(CRLF)
+        .append("Content-Type: application/http").append(CRLF)
+        .append("Content-ID: <response-").append(index).append(">").append(CRLF)
+        .append(CRLF)
+        .append("HTTP/1.1 ").append(response.statusCode).append(" Status").append(CRLF)
+        .append("Content-Type: application/json; charset=UTF-8").append(CRLF)
+        .append(CRLF)
+        .append(response.body).append(CRLF);
+    }
+
+    return responseBody
+      .append("--").append(responseBoundary).append("--").append(CRLF)
+      .toString();
+  }
+
+  private void handle(@NotNull HttpExchange exchange) throws IOException {
+    try (exchange) {
+      this.requestCount.incrementAndGet();
+
+      var delay = this.latency.next();
+      if (!delay.isZero() && !delay.isNegative()) {
+        Thread.sleep(delay.toMillis(), delay.toNanosPart() % 1_000_000);
+      }
+
+      var method = Optional
+        .ofNullable(exchange.getRequestHeaders().getFirst("X-HTTP-Method-Override"))
+        .orElse(exchange.getRequestMethod());
+      var path = exchange.getRequestURI().getPath();
+
+      //
+      // Clients compress request bodies.
+      //
+      var requestBody = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+        ? new GZIPInputStream(exchange.getRequestBody())
+        : exchange.getRequestBody();
+      var body = new String(requestBody.readAllBytes(), StandardCharsets.UTF_8);
+
+      var authorization = exchange.getRequestHeaders().getFirst("Authorization");
+      if (authorization != null &&
+        this.expiredAccessTokens.contains(authorization.replaceFirst("^Bearer ", ""))) {
+        respond(exchange, error(401, "UNAUTHENTICATED"), "application/json");
+      }
+      else if ("POST".equals(method) && "/batch".equals(path)) {
+        var matcher = BOUNDARY_PATTERN.matcher(
+          exchange.getRequestHeaders().getFirst("Content-Type"));
+        if (!matcher.find()) {
+          respond(exchange, error(400, "INVALID_ARGUMENT"), "application/json");
+          return;
+        }
+
+        var responseBoundary = "batch_" + UUID.randomUUID();
+        respond(
+          exchange,
+          new Response(200, batch(matcher.group(1), body, responseBoundary)),
+          "multipart/mixed; boundary=" + responseBoundary);
+      }
+      else {
+        respond(
+          exchange,
+          dispatch(new Request(method, path, parseQuery(exchange.getRequestURI().getRawQuery()), body)),
+          "application/json");
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void respond(
+    @NotNull HttpExchange exchange,
+    @NotNull Response response,
+    @NotNull String contentType
+  ) throws IOException {
+    var bytes = response.body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(response.statusCode, bytes.length);
+    this.responseBytes.addAndGet(bytes.length);
+    exchange.getResponseBody().write(bytes);
+  }
+}
@@ -0,0 +1,186 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for a memcached server that covers the
+ * get, set, and delete commands of the text protocol. Values
+ * are kept in memory and never expire.
+ */
+public class FakeMemcached implements Closeable {
+  private final @NotNull ServerSocket serverSocket;
+  private final @NotNull ExecutorService executor = Executors.newCachedThreadPool();
+  private final @NotNull Map<String, byte[]> values = new ConcurrentHashMap<>();
+  private final @NotNull Map<String, Long> ttls = new ConcurrentHashMap<>();
+  private final @NotNull AtomicInteger connections = new AtomicInteger();
+  private volatile boolean failing;
+
+  private FakeMemcached(@NotNull ServerSocket serverSocket) {
+    this.serverSocket = serverSocket;
+  }
+
+  /**
+   * Start a server on an ephemeral port.
+   */
+  public static @NotNull FakeMemcached start() throws IOException {
+    var server = new FakeMemcached(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()));
+    server.executor.execute(server::accept);
+    return server;
+  }
+
+  /**
+   * Options for clients that use this server.
+   */
+  public @NotNull MemcachedClient.Options options() {
+    return new MemcachedClient.Options(
+      "localhost",
+      this.serverSocket.getLocalPort(),
+      Duration.ofSeconds(5),
+      2);
+  }
+
+  /**
+   * Number of connections accepted so far.
+   */
+  public int connectionCount() {
+    return this.connections.get();
+  }
+
+  /**
+   * TTL, in seconds, of the last set command for a key.
+   */
+  public long ttl(@NotNull String key) {
+    return this.ttls.getOrDefault(key, 0L);
+  }
+
+  /**
+   * Respond to all commands with a server error.
+   */
+  public void setFailing(boolean failing) {
+    this.failing = failing;
+  }
+
+  @Override
+  public void close() {
+    try {
+      this.serverSocket.close();
+    }
+    catch (IOException ignored) {
+    }
+
+    this.executor.shutdownNow();
+  }
+
+  private void accept() {
+    while (!this.serverSocket.isClosed()) {
+      try {
+        var socket = this.serverSocket.accept();
+        this.connections.incrementAndGet();
+        this.executor.execute(() -> serve(socket));
+      }
+      catch (IOException ignored) {
+      }
+    }
+  }
+
+  private void serve(@NotNull Socket socket) {
+    try (socket) {
+      var input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      var output = new BufferedOutputStream(socket.getOutputStream());
+
+      String line;
+      while ((line = readLine(input)) != null) {
+        var command = line.split(" ");
+        if (this.failing) {
+          if (command[0].equals("set")) {
+            input.readNBytes(Integer.parseInt(command[4]) + 2);
+          }
+
+          writeLine(output, "SERVER_ERROR out of memory");
+        }
+        else if (command[0].equals("get") && command.length == 2) {
+          var value = this.values.get(command[1]);
+          if (value != null) {
+            writeLine(output, String.format("VALUE %s 0 %d", command[1], value.length));
+            output.write(value);
+            writeLine(output, "");
+          }
+
+          writeLine(output, "END");
+        }
+        else if (command[0].equals("set") && command.length == 5) {
+          var value = input.readNBytes(Integer.parseInt(command[4]));
+          input.readNBytes(2);
+
+          this.values.put(command[1], value);
+          this.ttls.put(command[1], Long.parseLong(command[3]));
+          writeLine(output, "STORED");
+        }
+        else if (command[0].equals("delete") && command.length == 2) {
+          writeLine(output, this.values.remove(command[1]) != null ? "DELETED" : "NOT_FOUND");
+        }
+        else {
+          writeLine(output, "ERROR");
+        }
+
+        output.flush();
+      }
+    }
+    catch (IOException ignored) {
+    }
+  }
+
+  private static String readLine(@NotNull InputStream input) throws IOException {
+    var line = new StringBuilder();
+    int c;
+    while ((c = input.read()) >= 0) {
+      if (c == '\r') {
+        input.read();
+        return line.toString();
+      }
+
+      line.append((char)c);
+    }
+
+    return null;
+  }
+
+  private static void writeLine(@NotNull OutputStream output, @NotNull String line) throws IOException {
+    output.write(line.getBytes(StandardCharsets.US_ASCII));
+    output.write('\r');
+    output.write('\n');
+  }
+}
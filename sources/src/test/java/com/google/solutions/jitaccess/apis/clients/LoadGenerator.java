@@ -0,0 +1,160 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs an operation repeatedly from multiple threads and
+ * measures throughput and latency. Intended for benchmarks that
+ * run against {@link FakeGoogleApis}.
+ *
+ * @see com.google.solutions.jitaccess.common.MicroBenchmark
+ */
+public class LoadGenerator {
+  private LoadGenerator() {
+  }
+
+  /**
+   * Run an operation.
+   *
+   * @param operations total number of times to run the operation
+   * @param concurrency number of threads to use
+   * @param operation operation, receives the iteration number
+   */
+  public static @NotNull Results run(
+    int operations,
+    int concurrency,
+    @NotNull Operation operation
+  ) throws InterruptedException {
+    Preconditions.checkArgument(operations > 0, "operations must be positive");
+    Preconditions.checkArgument(concurrency > 0, "concurrency must be positive");
+
+    var next = new AtomicInteger();
+    var errors = new AtomicInteger();
+    var latencies = new ConcurrentLinkedQueue<Long>();
+    var executor = Executors.newFixedThreadPool(concurrency);
+
+    var start = System.nanoTime();
+    for (int thread = 0; thread < concurrency; thread++) {
+      executor.submit(() -> {
+        int iteration;
+        while ((iteration = next.getAndIncrement()) < operations) {
+          var operationStart = System.nanoTime();
+          try {
+            operation.run(iteration);
+          }
+          catch (Exception e) {
+            errors.incrementAndGet();
+          }
+          latencies.add(System.nanoTime() - operationStart);
+        }
+      });
+    }
+
+    executor.shutdown();
+    if (!executor.awaitTermination(10, TimeUnit.MINUTES)) {
+      throw new IllegalStateException("Operations didn't complete in time");
+    }
+
+    var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    var sorted = new ArrayList<>(latencies);
+    Collections.sort(sorted);
+
+    return new Results(
+      operations,
+      errors.get(),
+      elapsed,
+      percentile(sorted, 50),
+      percentile(sorted, 95),
+      percentile(sorted, 99));
+  }
+
+  private static @NotNull Duration percentile(@NotNull List<Long> sorted, int percentile) {
+    var index = (int)Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+    return Duration.ofNanos(sorted.get(Math.max(0, index)));
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  @FunctionalInterface
+  public interface Operation {
+    void run(int iteration) throws Exception;
+  }
+
+  /**
+   * Results of a run.
+   *
+   * @param operations number of operations
+   * @param errors number of operations that failed
+   * @param elapsed total time
+   */
+  public record Results(
+    int operations,
+    int errors,
+    @NotNull Duration elapsed,
+    @NotNull Duration p50,
+    @NotNull Duration p95,
+    @NotNull Duration p99
+  ) {
+    /**
+     * Operations per second.
+     */
+    public double throughput() {
+      return this.operations / (this.elapsed.toNanos() / 1e9);
+    }
+
+    /**
+     * Header for a table of results, see {@link #toString()}.
+     */
+    public static @NotNull String header() {
+      return String.format(
+        "%-10s %-8s %-10s %-10s %-10s %-10s",
+        "Ops", "Errors", "Ops/s", "p50 (ms)", "p95 (ms)", "p99 (ms)");
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "%-10d %-8d %-10.1f %-10d %-10d %-10d",
+        this.operations,
+        this.errors,
+        throughput(),
+        this.p50.toMillis(),
+        this.p95.toMillis(),
+        this.p99.toMillis());
+    }
+  }
+}
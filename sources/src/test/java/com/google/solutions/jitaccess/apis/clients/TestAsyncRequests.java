@@ -0,0 +1,524 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.services.iam.v1.Iam;
+import com.google.api.services.iam.v1.model.ListServiceAccountsResponse;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestAsyncRequests {
+  private HttpServer server;
+  private final AtomicReference<Consumer<HttpExchange>> handler = new AtomicReference<>();
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.server.createContext("/", exchange -> this.handler.get().accept(exchange));
+    this.server.start();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    this.server.stop(0);
+    RetryPolicy.configureShared(RetryPolicy.Options.DEFAULT);
+  }
+
+  private static void respond(
+    HttpExchange exchange,
+    int statusCode,
+    String body
+  ) {
+    try {
+      var bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(statusCode, bytes.length);
+      exchange.getResponseBody().write(bytes);
+      exchange.close();
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Iam createClient() throws IOException {
+    return Builders
+      .newBuilder(
+        Iam.Builder::new,
+        GoogleCredentials.create(new AccessToken("token", null)),
+        HttpTransport.Options.DEFAULT)
+      .setRootUrl(String.format("http://localhost:%d/", this.server.getAddress().getPort()))
+      .build();
+  }
+
+  //---------------------------------------------------------------------------
+  // executeAsync.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void executeAsync_whenRequestSucceeds_thenReturnsResult() throws Exception {
+    var authorization = new AtomicReference<String>();
+    this.handler.set(exchange -> {
+      authorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+      respond(exchange, 200, "{\"email\": \"sa@example.iam.gserviceaccount.com\"}");
+    });
+
+    var serviceAccount = AsyncRequests
+      .executeAsync(createClient()
+        .projects()
+        .serviceAccounts()
+        .get("projects/-/serviceAccounts/sa@example.iam.gserviceaccount.com"))
+      .get();
+
+    assertEquals("sa@example.iam.gserviceaccount.com", serviceAccount.getEmail());
+    assertEquals("Bearer token", authorization.get());
+  }
+
+  @Test
+  public void executeAsync_whenRequestFails_thenThrowsGoogleJsonResponseException() throws Exception {
+    this.handler.set(exchange -> respond(
+      exchange,
+      403,
+      "{\"error\": {\"code\": 403, \"message\": \"denied\", \"status\": \"PERMISSION_DENIED\"}}"));
+
+    var future = AsyncRequests.executeAsync(createClient()
+      .projects()
+      .serviceAccounts()
+      .get("projects/-/serviceAccounts/sa@example.iam.gserviceaccount.com"));
+
+    var exception = assertThrows(ExecutionException.class, future::get);
+    var apiException = assertInstanceOf(GoogleJsonResponseException.class, exception.getCause());
+    assertEquals(403, apiException.getStatusCode());
+    assertEquals("denied", apiException.getDetails().getMessage());
+  }
+
+  @Test
+  public void executeAsync_whenRequestFailsTransiently_thenRetries() throws Exception {
+    RetryPolicy.configureShared(new RetryPolicy.Options(
+      3,
+      Duration.ofMillis(1),
+      Duration.ofSeconds(1),
+      0.1));
+
+    var requests = new AtomicInteger();
+    this.handler.set(exchange -> {
+      if (requests.incrementAndGet() == 1) {
+        exchange.getResponseHeaders().set("Retry-After", "0");
+        respond(exchange, 503, "{\"error\": {\"code\": 503, \"message\": \"unavailable\"}}");
+      }
+      else {
+        respond(exchange, 200, "{\"email\": \"sa@example.iam.gserviceaccount.com\"}");
+      }
+    });
+
+    var serviceAccount = AsyncRequests
+      .executeAsync(createClient()
+        .projects()
+        .serviceAccounts()
+        .get("projects/-/serviceAccounts/sa@example.iam.gserviceaccount.com"))
+      .get();
+
+    assertEquals("sa@example.iam.gserviceaccount.com", serviceAccount.getEmail());
+    assertEquals(2, requests.get());
+
+    var statistics = RetryPolicy.shared()
+      .statistics()
+      .get(String.format("localhost:%d", this.server.getAddress().getPort()));
+    assertEquals(1, statistics.retries());
+    assertEquals(1, statistics.successes());
+  }
+
+  @Test
+  public void executeAsync_whenRequestRetried_thenRecordsMetrics() throws Exception {
+    RetryPolicy.configureShared(new RetryPolicy.Options(
+      3,
+      Duration.ofMillis(1),
+      Duration.ofSeconds(1),
+      0.1));
+
+    var requests = new AtomicInteger();
+    this.handler.set(exchange -> {
+      if (requests.incrementAndGet() == 1) {
+        respond(exchange, 503, "{\"error\": {\"code\": 503, \"message\": \"unavailable\"}}");
+      }
+      else {
+        respond(exchange, 200, "{\"email\": \"sa@example.iam.gserviceaccount.com\"}");
+      }
+    });
+
+    AsyncRequests
+      .executeAsync(createClient()
+        .projects()
+        .serviceAccounts()
+        .get("projects/-/serviceAccounts/sa@example.iam.gserviceaccount.com"))
+      .get();
+
+    var backend = String.format("localhost:%d", this.server.getAddress().getPort());
+    var statistics = RequestMetrics.shared()
+      .statistics()
+      .stream()
+      .filter(s -> s.backend().equals(backend))
+      .toList();
+
+    assertEquals(1, statistics.size());
+    assertEquals("GET projects/*/serviceAccounts/*", statistics.get(0).method());
+    assertEquals(1, statistics.get(0).requests());
+    assertEquals(1, statistics.get(0).retries());
+    assertEquals(Map.of(200, 1L), statistics.get(0).statusCodes());
+    assertNotEquals(0, statistics.get(0).responseBytes());
+  }
+
+  @Test
+  public void executeAsync_whenRequestFailsPermanently_thenDoesNotRetry() throws Exception {
+    var requests = new AtomicInteger();
+    this.handler.set(exchange -> {
+      requests.incrementAndGet();
+      respond(exchange, 404, "{\"error\": {\"code\": 404, \"message\": \"not found\"}}");
+    });
+
+    var future = AsyncRequests.executeAsync(createClient()
+      .projects()
+      .serviceAccounts()
+      .get("projects/-/serviceAccounts/sa@example.iam.gserviceaccount.com"));
+
+    assertThrows(ExecutionException.class, future::get);
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  public void executeAsync_whenCancelledWhileRetrying_thenStopsRetrying() throws Exception {
+    RetryPolicy.configureShared(new RetryPolicy.Options(
+      5,
+      Duration.ofMillis(200),
+      Duration.ofSeconds(1),
+      0.1));
+
+    var requests = new AtomicInteger();
+    var firstRequest = new CountDownLatch(1);
+    this.handler.set(exchange -> {
+      requests.incrementAndGet();
+      respond(exchange, 503, "{\"error\": {\"code\": 503, \"message\": \"unavailable\"}}");
+      firstRequest.countDown();
+    });
+
+    var future = AsyncRequests.executeAsync(createClient()
+      .projects()
+      .serviceAccounts()
+      .get("projects/-/serviceAccounts/sa@example.iam.gserviceaccount.com"));
+
+    assertTrue(firstRequest.await(10, TimeUnit.SECONDS));
+    future.cancel(true);
+
+    Thread.sleep(1000);
+    assertEquals(1, requests.get());
+
+    //
+    // The cancelled request doesn't count as a failure.
+    //
+    var breaker = CircuitBreaker.shared()
+      .statistics()
+      .get(String.format("localhost:%d", this.server.getAddress().getPort()));
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    assertEquals(0, breaker.failureRate());
+  }
+
+  //---------------------------------------------------------------------------
+  // executePagesAsync.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void executePagesAsync_whenCancelled_thenDoesNotRequestFurtherPages() throws Exception {
+    var requests = new AtomicInteger();
+    var firstRequest = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    this.handler.set(exchange -> {
+      requests.incrementAndGet();
+      firstRequest.countDown();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+        respond(exchange, 200, "{\"accounts\": [{\"email\": \"sa-1@example.com\"}], \"nextPageToken\": \"2\"}");
+      }
+      catch (InterruptedException | RuntimeException ignored) {
+        //
+        // Client has gone away.
+        //
+      }
+    });
+
+    var client = createClient();
+    var accounts = AsyncRequests.executePagesAsync(
+      pageToken -> client
+        .projects()
+        .serviceAccounts()
+        .list("projects/project-1")
+        .setPageToken(pageToken),
+      page -> page.getAccounts(),
+      page -> page.getNextPageToken());
+
+    assertTrue(firstRequest.await(10, TimeUnit.SECONDS));
+    accounts.cancel(true);
+    release.countDown();
+
+    Thread.sleep(500);
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  public void executePagesAsync_whenResultHasMultiplePages_thenReturnsAllItems() throws Exception {
+    this.handler.set(exchange -> {
+      var query = exchange.getRequestURI().getQuery();
+      if (query == null || !query.contains("pageToken")) {
+        respond(exchange, 200, "{\"accounts\": [{\"email\": \"sa-1@example.com\"}], \"nextPageToken\": \"2\"}");
+      }
+      else {
+        respond(exchange, 200, "{\"accounts\": [{\"email\": \"sa-2@example.com\"}]}");
+      }
+    });
+
+    var client = createClient();
+    var accounts = AsyncRequests
+      .executePagesAsync(
+        pageToken -> client
+          .projects()
+          .serviceAccounts()
+          .list("projects/project-1")
+          .setPageToken(pageToken),
+        page -> page.getAccounts(),
+        page -> page.getNextPageToken())
+      .get();
+
+    assertEquals(2, accounts.size());
+    assertEquals("sa-1@example.com", accounts.get(0).getEmail());
+    assertEquals("sa-2@example.com", accounts.get(1).getEmail());
+  }
+
+  //---------------------------------------------------------------------------
+  // streamPages.
+  //---------------------------------------------------------------------------
+
+  private static AsyncRequests.PageRequestFactory<ListServiceAccountsResponse> listServiceAccounts(
+    Iam client
+  ) {
+    return pageToken -> client
+      .projects()
+      .serviceAccounts()
+      .list("projects/project-1")
+      .setPageToken(pageToken);
+  }
+
+  private static <T> Function<String, CompletableFuture<T>> fetchPages(
+    AsyncRequests.PageRequestFactory<T> requestForPage
+  ) {
+    return pageToken -> {
+      try {
+        return AsyncRequests.executeAsync(requestForPage.create(pageToken));
+      }
+      catch (IOException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    };
+  }
+
+  @Test
+  public void streamPages_whenFirstPageFails_thenThrowsException() throws Exception {
+    this.handler.set(exchange -> respond(
+      exchange,
+      403,
+      "{\"error\": {\"code\": 403, \"message\": \"denied\"}}"));
+
+    var client = createClient();
+    var exception = assertThrows(
+      GoogleJsonResponseException.class,
+      () -> AsyncRequests.streamPages(
+        fetchPages(listServiceAccounts(client)),
+        ListServiceAccountsResponse::getAccounts,
+        ListServiceAccountsResponse::getNextPageToken));
+    assertEquals(403, exception.getStatusCode());
+  }
+
+  @Test
+  public void streamPages_whenConsumingPage_thenPrefetchesNextPage() throws Exception {
+    var secondPageRequested = new CountDownLatch(1);
+    this.handler.set(exchange -> {
+      var query = exchange.getRequestURI().getQuery();
+      if (query == null || !query.contains("pageToken")) {
+        respond(exchange, 200, "{\"accounts\": [{\"email\": \"sa-1@example.com\"}], \"nextPageToken\": \"2\"}");
+      }
+      else {
+        secondPageRequested.countDown();
+        respond(exchange, 200, "{\"accounts\": [{\"email\": \"sa-2@example.com\"}]}");
+      }
+    });
+
+    var client = createClient();
+    try (var accounts = AsyncRequests.streamPages(
+      fetchPages(listServiceAccounts(client)),
+      ListServiceAccountsResponse::getAccounts,
+      ListServiceAccountsResponse::getNextPageToken)) {
+
+      var iterator = accounts.iterator();
+      assertEquals("sa-1@example.com", iterator.next().getEmail());
+
+      //
+      // Second page has been requested before we consumed the first page.
+      //
+      assertTrue(secondPageRequested.await(10, TimeUnit.SECONDS));
+      assertEquals("sa-2@example.com", iterator.next().getEmail());
+      assertFalse(iterator.hasNext());
+    }
+  }
+
+  @Test
+  public void streamPages_whenSubsequentPageFails_thenThrowsUncheckedException() throws Exception {
+    this.handler.set(exchange -> {
+      var query = exchange.getRequestURI().getQuery();
+      if (query == null || !query.contains("pageToken")) {
+        respond(exchange, 200, "{\"accounts\": [{\"email\": \"sa-1@example.com\"}], \"nextPageToken\": \"2\"}");
+      }
+      else {
+        respond(exchange, 403, "{\"error\": {\"code\": 403, \"message\": \"denied\"}}");
+      }
+    });
+
+    var client = createClient();
+    try (var accounts = AsyncRequests.streamPages(
+      fetchPages(listServiceAccounts(client)),
+      ListServiceAccountsResponse::getAccounts,
+      ListServiceAccountsResponse::getNextPageToken)) {
+
+      var exception = assertThrows(UncheckedExecutionException.class, accounts::toList);
+      assertInstanceOf(GoogleJsonResponseException.class, exception.getCause());
+    }
+  }
+
+  //---------------------------------------------------------------------------
+  // executeBatchAsync.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void executeBatchAsync_whenSomeRequestsFail_thenFailsIndividualFutures() throws Exception {
+    var path = new AtomicReference<String>();
+    this.handler.set(exchange -> {
+      path.set(exchange.getRequestURI().getPath());
+      try {
+        var body = "--b\r\n" +
+          "Content-Type: application/http\r\n" +
+          "Content-ID: <response-2>\r\n" +
+          "\r\n" +
+          "HTTP/1.1 404 Not Found\r\n" +
+          "Content-Type: application/json\r\n" +
+          "\r\n" +
+          "{\"error\": {\"code\": 404, \"message\": \"not found\"}}\r\n" +
+          "--b\r\n" +
+          "Content-Type: application/http\r\n" +
+          "Content-ID: <response-1>\r\n" +
+          "\r\n" +
+          "HTTP/1.1 200 OK\r\n" +
+          "Content-Type: application/json\r\n" +
+          "\r\n" +
+          "{\"email\": \"sa-1@example.com\"}\r\n" +
+          "--b--\r\n";
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "multipart/mixed; boundary=b");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    var client = createClient();
+    var futures = AsyncRequests.executeBatchAsync(List.of(
+      client.projects().serviceAccounts().get("projects/-/serviceAccounts/sa-1@example.com"),
+      client.projects().serviceAccounts().get("projects/-/serviceAccounts/sa-2@example.com")));
+
+    assertEquals("sa-1@example.com", futures.get(0).get().getEmail());
+    assertEquals("/batch", path.get());
+
+    var exception = assertThrows(ExecutionException.class, () -> futures.get(1).get());
+    var apiException = assertInstanceOf(GoogleJsonResponseException.class, exception.getCause());
+    assertEquals(404, apiException.getStatusCode());
+  }
+
+  @Test
+  public void executeBatchAsync_whenBatchRequestFails_thenFailsAllFutures() throws Exception {
+    this.handler.set(exchange -> respond(
+      exchange,
+      401,
+      "{\"error\": {\"code\": 401, \"message\": \"unauthenticated\"}}"));
+
+    var client = createClient();
+    var futures = AsyncRequests.executeBatchAsync(List.of(
+      client.projects().serviceAccounts().get("projects/-/serviceAccounts/sa-1@example.com"),
+      client.projects().serviceAccounts().get("projects/-/serviceAccounts/sa-2@example.com")));
+
+    for (var future : futures) {
+      var exception = assertThrows(ExecutionException.class, future::get);
+      var apiException = assertInstanceOf(GoogleJsonResponseException.class, exception.getCause());
+      assertEquals(401, apiException.getStatusCode());
+    }
+  }
+
+  //---------------------------------------------------------------------------
+  // await.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void await_whenFutureFailsWithAccessException_thenThrowsAccessException() {
+    assertThrows(
+      AccessDeniedException.class,
+      () -> AsyncRequests.await(CompletableFuture.failedFuture(new AccessDeniedException("mock"))));
+  }
+
+  @Test
+  public void await_whenFutureFailsWithIOException_thenThrowsIOException() {
+    assertThrows(
+      IOException.class,
+      () -> AsyncRequests.await(CompletableFuture.failedFuture(new IOException("mock"))));
+  }
+}
@@ -0,0 +1,117 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.api.services.iam.v1.Iam;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBuilders {
+  private static GoogleCredentials createCredentials() {
+    return GoogleCredentials.create(new AccessToken("token", null));
+  }
+
+  //---------------------------------------------------------------------------
+  // getClient.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void getClient_whenCredentialsSame_thenReturnsCachedClient() throws Exception {
+    var credentials = createCredentials();
+
+    var client1 = Builders.getClient(
+      Iam.class,
+      Iam.Builder::new,
+      credentials,
+      HttpTransport.Options.DEFAULT);
+    var client2 = Builders.getClient(
+      Iam.class,
+      Iam.Builder::new,
+      credentials,
+      HttpTransport.Options.DEFAULT);
+
+    assertSame(client1, client2);
+  }
+
+  @Test
+  public void getClient_whenCredentialsDifferent_thenReturnsNewClient() throws Exception {
+    var client1 = Builders.getClient(
+      Iam.class,
+      Iam.Builder::new,
+      createCredentials(),
+      HttpTransport.Options.DEFAULT);
+    var client2 = Builders.getClient(
+      Iam.class,
+      Iam.Builder::new,
+      createCredentials(),
+      HttpTransport.Options.DEFAULT);
+
+    assertNotSame(client1, client2);
+  }
+
+  @Test
+  public void getClient_whenOptionsDifferent_thenReturnsNewClient() throws Exception {
+    var credentials = createCredentials();
+
+    var client1 = Builders.getClient(
+      Iam.class,
+      Iam.Builder::new,
+      credentials,
+      HttpTransport.Options.DEFAULT);
+    var client2 = Builders.getClient(
+      Iam.class,
+      Iam.Builder::new,
+      credentials,
+      new HttpTransport.Options(Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1)));
+
+    assertNotSame(client1, client2);
+  }
+
+  @Test
+  public void getClient_whenManyCredentialsUsed_thenCacheIsBounded() throws Exception {
+    for (int i = 0; i < Builders.MAXIMUM_CACHED_CLIENTS * 2; i++) {
+      Builders.getClient(
+        Iam.class,
+        Iam.Builder::new,
+        createCredentials(),
+        HttpTransport.Options.DEFAULT);
+    }
+
+    assertTrue(Builders.cachedClients() <= Builders.MAXIMUM_CACHED_CLIENTS);
+  }
+
+  @Test
+  public void getClient_usesSharedTransport() throws Exception {
+    var client = Builders.getClient(
+      Iam.class,
+      Iam.Builder::new,
+      createCredentials(),
+      HttpTransport.Options.DEFAULT);
+
+    assertSame(HttpTransport.sharedTransport(), client.getRequestFactory().getTransport());
+  }
+}
@@ -0,0 +1,317 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCircuitBreaker {
+  private static final String BACKEND = "example.googleapis.com";
+  private static final CircuitBreaker.Options OPTIONS = new CircuitBreaker.Options(
+    0.5,
+    Duration.ofSeconds(1),
+    10,
+    Duration.ofSeconds(30));
+
+  private static void send(
+    CircuitBreaker breaker,
+    int count,
+    int statusCode,
+    Duration latency
+  ) throws Exception {
+    for (int i = 0; i < count; i++) {
+      var permit = breaker.acquire(BACKEND);
+      breaker.record(BACKEND, permit, statusCode, latency.toNanos());
+    }
+  }
+
+  //---------------------------------------------------------------------------
+  // Options.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void options_whenFailureRateOutOfRange_thenThrowsException() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new CircuitBreaker.Options(0, Duration.ofSeconds(1), 10, Duration.ofSeconds(1)));
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new CircuitBreaker.Options(1.1, Duration.ofSeconds(1), 10, Duration.ofSeconds(1)));
+  }
+
+  //---------------------------------------------------------------------------
+  // acquire.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void acquire_whenRequestsSucceed_thenBreakerStaysClosed() throws Exception {
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, () -> 0);
+
+    send(breaker, 100, 200, Duration.ofMillis(10));
+
+    var statistics = breaker.statistics().get(BACKEND);
+    assertEquals(CircuitBreaker.State.CLOSED, statistics.state());
+    assertEquals(100, statistics.requests());
+    assertEquals(0, statistics.failureRate());
+  }
+
+  @Test
+  public void acquire_whenClientErrors_thenBreakerStaysClosed() throws Exception {
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, () -> 0);
+
+    send(breaker, 20, 404, Duration.ofMillis(10));
+
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.statistics().get(BACKEND).state());
+  }
+
+  @Test
+  public void acquire_whenFailureRateExceeded_thenRejectsRequests() throws Exception {
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, () -> 0);
+
+    send(breaker, 5, 200, Duration.ofMillis(10));
+    send(breaker, 5, 503, Duration.ofMillis(10));
+
+    assertThrows(
+      BackendUnavailableException.class,
+      () -> breaker.acquire(BACKEND));
+
+    var statistics = breaker.statistics().get(BACKEND);
+    assertEquals(CircuitBreaker.State.OPEN, statistics.state());
+    assertEquals(1, statistics.rejected());
+    assertEquals(1, statistics.opened());
+  }
+
+  @Test
+  public void acquire_whenCallerErrors_thenBreakerStaysClosed() throws Exception {
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE);
+
+    for (int i = 0; i < 20; i++) {
+      var permit = breaker.acquire(BACKEND);
+      breaker.record(BACKEND, permit, 500, true, Duration.ofMillis(10).toNanos());
+    }
+
+    var statistics = breaker.statistics().get(BACKEND);
+    assertEquals(CircuitBreaker.State.CLOSED, statistics.state());
+    assertEquals(0, statistics.failureRate());
+  }
+
+  @Test
+  public void acquire_whenRequestsSlow_thenRejectsRequests() throws Exception {
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, () -> 0);
+
+    send(breaker, 5, 200, Duration.ofSeconds(2));
+
+    assertThrows(
+      BackendUnavailableException.class,
+      () -> breaker.acquire(BACKEND));
+  }
+
+  @Test
+  public void acquire_whenWindowNotFilled_thenBreakerStaysClosed() throws Exception {
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, () -> 0);
+
+    send(breaker, 4, RequestMetrics.NO_RESPONSE, Duration.ofMillis(10));
+
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.statistics().get(BACKEND).state());
+  }
+
+  @Test
+  public void acquire_whenBreakerOpen_thenOtherBackendsUnaffected() throws Exception {
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, () -> 0);
+
+    send(breaker, 5, 429, Duration.ofMillis(10));
+
+    assertThrows(
+      BackendUnavailableException.class,
+      () -> breaker.acquire(BACKEND));
+    breaker.acquire("other.googleapis.com");
+  }
+
+  @Test
+  public void acquire_whenProbeSucceeds_thenBreakerCloses() throws Exception {
+    var clock = new AtomicLong();
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, clock::get);
+
+    send(breaker, 5, 503, Duration.ofMillis(10));
+    assertThrows(BackendUnavailableException.class, () -> breaker.acquire(BACKEND));
+
+    clock.addAndGet(OPTIONS.openDuration().toNanos());
+
+    //
+    // Only a single probe is permitted.
+    //
+    var probe = breaker.acquire(BACKEND);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.statistics().get(BACKEND).state());
+    assertThrows(BackendUnavailableException.class, () -> breaker.acquire(BACKEND));
+
+    breaker.record(BACKEND, probe, 200, 0);
+
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.statistics().get(BACKEND).state());
+    breaker.acquire(BACKEND);
+  }
+
+  @Test
+  public void acquire_whenProbeFails_thenBreakerOpensAgain() throws Exception {
+    var clock = new AtomicLong();
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, clock::get);
+
+    send(breaker, 5, 503, Duration.ofMillis(10));
+
+    clock.addAndGet(OPTIONS.openDuration().toNanos());
+
+    var probe = breaker.acquire(BACKEND);
+    breaker.record(BACKEND, probe, 503, 0);
+
+    var statistics = breaker.statistics().get(BACKEND);
+    assertEquals(CircuitBreaker.State.OPEN, statistics.state());
+    assertEquals(2, statistics.opened());
+    assertThrows(BackendUnavailableException.class, () -> breaker.acquire(BACKEND));
+  }
+
+  @Test
+  public void acquire_whenLateOutcomeRecordedWhileHalfOpen_thenIgnoresOutcome() throws Exception {
+    var clock = new AtomicLong();
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, clock::get);
+
+    var latePermit = breaker.acquire(BACKEND);
+    send(breaker, 5, 503, Duration.ofMillis(10));
+
+    clock.addAndGet(OPTIONS.openDuration().toNanos());
+    var probe = breaker.acquire(BACKEND);
+
+    //
+    // Request that was permitted while the breaker was closed
+    // completes, this isn't the probe's outcome.
+    //
+    breaker.record(BACKEND, latePermit, 200, 0);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.statistics().get(BACKEND).state());
+    assertThrows(BackendUnavailableException.class, () -> breaker.acquire(BACKEND));
+
+    breaker.record(BACKEND, probe, 503, 0);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.statistics().get(BACKEND).state());
+  }
+
+  @Test
+  public void acquire_whenPreviousProbeOutcomeRecorded_thenIgnoresOutcome() throws Exception {
+    var clock = new AtomicLong();
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, clock::get);
+
+    send(breaker, 5, 503, Duration.ofMillis(10));
+
+    clock.addAndGet(OPTIONS.openDuration().toNanos());
+    var abandonedProbe = breaker.acquire(BACKEND);
+
+    clock.addAndGet(OPTIONS.openDuration().toNanos());
+    var probe = breaker.acquire(BACKEND);
+
+    breaker.record(BACKEND, abandonedProbe, 200, 0);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.statistics().get(BACKEND).state());
+
+    breaker.record(BACKEND, probe, 200, 0);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.statistics().get(BACKEND).state());
+  }
+
+  @Test
+  public void acquire_whenProbeOutcomeNeverRecorded_thenPermitsAnotherProbe() throws Exception {
+    var clock = new AtomicLong();
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, clock::get);
+
+    send(breaker, 5, 503, Duration.ofMillis(10));
+
+    clock.addAndGet(OPTIONS.openDuration().toNanos());
+    breaker.acquire(BACKEND);
+    assertThrows(BackendUnavailableException.class, () -> breaker.acquire(BACKEND));
+
+    clock.addAndGet(OPTIONS.openDuration().toNanos());
+    breaker.acquire(BACKEND);
+  }
+
+  //---------------------------------------------------------------------------
+  // release.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void release_whenProbeCancelled_thenPermitsAnotherProbe() throws Exception {
+    var clock = new AtomicLong();
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE, clock::get);
+
+    send(breaker, 5, 503, Duration.ofMillis(10));
+
+    clock.addAndGet(OPTIONS.openDuration().toNanos());
+    var cancelledProbe = breaker.acquire(BACKEND);
+    breaker.release(BACKEND, cancelledProbe);
+
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.statistics().get(BACKEND).state());
+
+    var probe = breaker.acquire(BACKEND);
+    breaker.record(BACKEND, probe, 200, 0);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.statistics().get(BACKEND).state());
+  }
+
+  @Test
+  public void release_whenClosed_thenDoesNotRecordOutcome() throws Exception {
+    var breaker = new CircuitBreaker(OPTIONS, CircuitBreaker.Listener.NONE);
+
+    for (int i = 0; i < OPTIONS.windowSize(); i++) {
+      breaker.release(BACKEND, breaker.acquire(BACKEND));
+    }
+
+    var statistics = breaker.statistics().get(BACKEND);
+    assertEquals(CircuitBreaker.State.CLOSED, statistics.state());
+    assertEquals(0, statistics.failureRate());
+  }
+
+  //---------------------------------------------------------------------------
+  // Listener.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void listener_whenStateChanges_thenListenerIsNotified() throws Exception {
+    var clock = new AtomicLong();
+    var transitions = new ArrayList<CircuitBreaker.State>();
+    var breaker = new CircuitBreaker(
+      OPTIONS,
+      (backend, previous, current, statistics) -> {
+        assertEquals(BACKEND, backend);
+        assertEquals(current, statistics.state());
+        transitions.add(current);
+      },
+      clock::get);
+
+    send(breaker, 5, 500, Duration.ofMillis(10));
+    clock.addAndGet(OPTIONS.openDuration().toNanos());
+    send(breaker, 1, 200, Duration.ofMillis(10));
+
+    assertEquals(
+      List.of(
+        CircuitBreaker.State.OPEN,
+        CircuitBreaker.State.HALF_OPEN,
+        CircuitBreaker.State.CLOSED),
+      transitions);
+  }
+}
@@ -0,0 +1,233 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.api.services.cloudidentity.v1.model.EntityKey;
+import com.google.api.services.cloudidentity.v1.model.Membership;
+import com.google.api.services.cloudidentity.v1.model.MembershipRole;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.solutions.jitaccess.apis.CustomerId;
+import com.google.solutions.jitaccess.auth.EndUserId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCloudIdentityGroupsClient {
+  private FakeGoogleApis server;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    this.server = FakeGoogleApis.start();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    this.server.close();
+  }
+
+  private CloudIdentityGroupsClient createClient() {
+    return new CloudIdentityGroupsClient(
+      GoogleCredentials.create(new AccessToken("token", null)),
+      new CloudIdentityGroupsClient.Options(new CustomerId("C123")),
+      this.server.httpOptions());
+  }
+
+  private CloudIdentityGroupsClient.MembershipId addMembership(int index) {
+    var name = String.format("groups/group-1/memberships/member-%d", index);
+    this.server.addMembership(
+      name,
+      new Membership()
+        .setPreferredMemberKey(new EntityKey().setId(String.format("user-%d@example.com", index)))
+        .setRoles(List.of(new MembershipRole().setName("MEMBER"))));
+
+    return new CloudIdentityGroupsClient.MembershipId(name);
+  }
+
+  //---------------------------------------------------------------------
+  // getMemberships.
+  //---------------------------------------------------------------------
+
+  @Test
+  public void getMemberships_whenIdsEmpty_thenReturnsEmptyMap() throws Exception {
+    var memberships = createClient().getMemberships(List.of());
+
+    assertTrue(memberships.isEmpty());
+    assertEquals(0, this.server.requestCount());
+  }
+
+  @Test
+  public void getMemberships_whenSingleId_thenUsesSingleRequest() throws Exception {
+    var id = addMembership(1);
+
+    var memberships = createClient().getMemberships(List.of(id, id));
+
+    assertEquals(1, memberships.size());
+    assertEquals("user-1@example.com", memberships.get(id).getPreferredMemberKey().getId());
+    assertEquals(1, this.server.requestCount());
+  }
+
+  @Test
+  public void getMemberships_whenMultipleIds_thenUsesBatchRequest() throws Exception {
+    var ids = IntStream.range(0, 10).mapToObj(this::addMembership).toList();
+
+    var memberships = createClient().getMemberships(ids);
+
+    assertEquals(10, memberships.size());
+    for (int i = 0; i < ids.size(); i++) {
+      assertEquals(
+        String.format("user-%d@example.com", i),
+        memberships.get(ids.get(i)).getPreferredMemberKey().getId());
+    }
+
+    assertEquals(1, this.server.requestCount());
+  }
+
+  @Test
+  public void getMemberships_whenIdsExceedBatchSize_thenUsesMultipleBatchRequests() throws Exception {
+    var ids = IntStream
+      .range(0, CloudIdentityGroupsClient.MAX_BATCH_SIZE + 1)
+      .mapToObj(this::addMembership)
+      .toList();
+
+    var memberships = createClient().getMemberships(ids);
+
+    assertEquals(ids.size(), memberships.size());
+    assertEquals(2, this.server.requestCount());
+  }
+
+  @Test
+  public void getMemberships_whenMembershipNotFound_thenMembershipIsOmitted() throws Exception {
+    var existing = addMembership(1);
+    var missing = new CloudIdentityGroupsClient.MembershipId("groups/group-1/memberships/missing");
+
+    var memberships = createClient().getMemberships(List.of(existing, missing));
+
+    assertEquals(1, memberships.size());
+    assertTrue(memberships.containsKey(existing));
+  }
+
+  @Test
+  public void getMemberships_whenAccessDenied_thenThrowsException() {
+    var existing = addMembership(1);
+    var denied = addMembership(2);
+    this.server.injectError(denied.id(), 403);
+
+    assertThrows(
+      AccessDeniedException.class,
+      () -> createClient().getMemberships(List.of(existing, denied)));
+  }
+
+  //---------------------------------------------------------------------
+  // getMembershipAsync.
+  //---------------------------------------------------------------------
+
+  @Test
+  public void getMembershipAsync_whenRequestsConcurrent_thenUsesSingleRequest() throws Exception {
+    var id = addMembership(1);
+    this.server.setLatency(Duration.ofMillis(200));
+
+    var client = createClient();
+    var futures = IntStream.range(0, 5)
+      .mapToObj(i -> client.getMembershipAsync(id))
+      .toList();
+
+    for (var future : futures) {
+      assertEquals("user-1@example.com", future.get().getPreferredMemberKey().getId());
+    }
+
+    assertEquals(1, this.server.requestCount());
+  }
+
+  //---------------------------------------------------------------------
+  // listMembershipsByUser.
+  //---------------------------------------------------------------------
+
+  @Test
+  public void listMembershipsByUser_whenUsersInvalid_thenCircuitBreakerStaysClosed() throws Exception {
+    RetryPolicy.configureShared(new RetryPolicy.Options(
+      3,
+      Duration.ofMillis(1),
+      Duration.ofSeconds(1),
+      0.1));
+    CircuitBreaker.configureShared(
+      new CircuitBreaker.Options(0.5, Duration.ofSeconds(10), 4, Duration.ofMinutes(1)),
+      CircuitBreaker.Listener.NONE);
+
+    try {
+      var client = createClient();
+      for (int i = 0; i < 10; i++) {
+        var user = new EndUserId(String.format("deleted-%d@example.com", i));
+        this.server.addInvalidUser(user.email);
+
+        assertThrows(
+          ResourceNotFoundException.class,
+          () -> client.listMembershipsByUser(user, FieldProjection.ALL));
+      }
+
+      var statistics = CircuitBreaker.shared().statistics();
+      assertFalse(statistics.isEmpty());
+      assertTrue(statistics.values()
+        .stream()
+        .allMatch(s -> s.state() == CircuitBreaker.State.CLOSED && s.failureRate() == 0));
+    }
+    finally {
+      RetryPolicy.configureShared(RetryPolicy.Options.DEFAULT);
+      CircuitBreaker.configureShared(CircuitBreaker.Options.DEFAULT, CircuitBreaker.Listener.NONE);
+    }
+  }
+
+  @Test
+  public void listMembershipsByUserAsync_whenAccessTokenExpired_thenRefreshesCredentialsAndRetries() throws Exception {
+    this.server.expireAccessToken("expired");
+
+    var refreshes = new AtomicInteger();
+    var credentials = new GoogleCredentials(new AccessToken("expired", null)) {
+      @Override
+      public AccessToken refreshAccessToken() {
+        refreshes.incrementAndGet();
+        return new AccessToken("refreshed", null);
+      }
+    };
+
+    var client = new CloudIdentityGroupsClient(
+      credentials,
+      new CloudIdentityGroupsClient.Options(new CustomerId("C123")),
+      this.server.httpOptions());
+
+    var memberships = client
+      .listMembershipsByUserAsync(new EndUserId("user@example.com"), FieldProjection.ALL)
+      .get();
+
+    assertTrue(memberships.isEmpty());
+    assertEquals(1, refreshes.get());
+    assertEquals(2, this.server.requestCount());
+  }
+}
@@ -0,0 +1,192 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestCredentialManager {
+  private static final CredentialManager.Options OPTIONS = new CredentialManager.Options(
+    Duration.ofMinutes(5),
+    Duration.ofMillis(10));
+
+  private ScheduledExecutorService scheduler;
+
+  @BeforeEach
+  public void setUp() {
+    this.scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.scheduler.shutdownNow();
+  }
+
+  private static AccessToken createToken(Duration validity) {
+    return new AccessToken("token", Date.from(Instant.now().plus(validity)));
+  }
+
+  private static void awaitStatistics(
+    CredentialManager.ManagedCredentials credentials,
+    Predicate<CredentialManager.Statistics> condition
+  ) throws InterruptedException {
+    for (int i = 0; i < 500; i++) {
+      if (condition.test(credentials.statistics())) {
+        return;
+      }
+
+      Thread.sleep(10);
+    }
+
+    fail("Condition not met: " + credentials.statistics());
+  }
+
+  //---------------------------------------------------------------------------
+  // manage.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void manage_whenCalledTwice_thenReturnsSameCredentials() {
+    var manager = new CredentialManager(OPTIONS, Mockito.mock(ScheduledExecutorService.class));
+    var source = Mockito.mock(GoogleCredentials.class);
+
+    assertSame(manager.manage("name", source), manager.manage("name", source));
+    assertNotSame(manager.manage("name", source), manager.manage("other", source));
+  }
+
+  @Test
+  public void manage_whenTokenAboutToExpire_thenRefreshesInBackground() throws Exception {
+    var source = Mockito.mock(GoogleCredentials.class);
+    when(source.refreshAccessToken())
+      .thenReturn(createToken(OPTIONS.refreshMargin().plusMillis(50)))
+      .thenReturn(createToken(Duration.ofHours(1)));
+
+    var credentials = new CredentialManager(OPTIONS, this.scheduler).manage("name", source);
+
+    awaitStatistics(credentials, s -> s.refreshes() == 2);
+    verify(source, times(2)).refreshAccessToken();
+  }
+
+  @Test
+  public void manage_whenRefreshFails_thenRetries() throws Exception {
+    var source = Mockito.mock(GoogleCredentials.class);
+    when(source.refreshAccessToken())
+      .thenThrow(new IOException("mock"))
+      .thenReturn(createToken(Duration.ofHours(1)));
+
+    var credentials = new CredentialManager(OPTIONS, this.scheduler).manage("name", source);
+
+    awaitStatistics(credentials, CredentialManager.Statistics::isValid);
+
+    var statistics = credentials.statistics();
+    assertEquals(1, statistics.failures());
+    assertEquals(1, statistics.refreshes());
+    assertNull(statistics.lastError());
+  }
+
+  //---------------------------------------------------------------------------
+  // verify.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void verify_whenRefreshSucceeded_thenReturns() throws Exception {
+    var source = Mockito.mock(GoogleCredentials.class);
+    when(source.refreshAccessToken()).thenReturn(createToken(Duration.ofHours(1)));
+
+    var credentials = new CredentialManager(OPTIONS, this.scheduler).manage("name", source);
+    credentials.verify();
+
+    assertTrue(credentials.statistics().isValid());
+  }
+
+  @Test
+  public void verify_whenRefreshFailed_thenThrowsException() throws Exception {
+    var source = Mockito.mock(GoogleCredentials.class);
+    when(source.refreshAccessToken()).thenThrow(new IOException("mock"));
+
+    var credentials = new CredentialManager(OPTIONS, this.scheduler).manage("name", source);
+
+    assertThrows(
+      NotAuthenticatedException.class,
+      () -> credentials.verify());
+
+    var statistics = credentials.statistics();
+    assertFalse(statistics.isValid());
+    assertNotEquals(0, statistics.failures());
+    assertEquals("mock", statistics.lastError());
+  }
+
+  //---------------------------------------------------------------------------
+  // getRequestMetadata.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void getRequestMetadata_whenTokenValid_thenUsesCachedToken() throws Exception {
+    var source = Mockito.mock(GoogleCredentials.class);
+    when(source.refreshAccessToken()).thenReturn(createToken(Duration.ofHours(1)));
+
+    var credentials = new CredentialManager(OPTIONS, this.scheduler).manage("name", source);
+    credentials.verify();
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(
+        "Bearer token",
+        credentials.getRequestMetadata(new URI("https://example.com/")).get("Authorization").get(0));
+    }
+
+    verify(source, times(1)).refreshAccessToken();
+  }
+
+  //---------------------------------------------------------------------------
+  // statistics.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void statistics() throws Exception {
+    var source = Mockito.mock(GoogleCredentials.class);
+    when(source.refreshAccessToken()).thenReturn(createToken(Duration.ofHours(1)));
+
+    var manager = new CredentialManager(OPTIONS, this.scheduler);
+    manager.manage("name", source).verify();
+
+    var statistics = manager.statistics();
+    assertEquals(1, statistics.size());
+    assertEquals(1, statistics.get("name").refreshes());
+    assertNotNull(statistics.get("name").expiry());
+  }
+}
@@ -0,0 +1,295 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.json.webtoken.JsonWebToken;
+import com.google.api.services.cloudresourcemanager.v3.model.Binding;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.solutions.jitaccess.apis.CustomerId;
+import com.google.solutions.jitaccess.apis.ProjectId;
+import com.google.solutions.jitaccess.auth.EndUserId;
+import com.google.solutions.jitaccess.auth.GroupId;
+import com.google.solutions.jitaccess.auth.ServiceAccountId;
+import com.google.solutions.jitaccess.common.CompletableFutures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFakeGoogleApis {
+  private static final GroupId GROUP = new GroupId("group@example.com");
+  private static final EndUserId USER = new EndUserId("user@example.com");
+
+  private FakeGoogleApis server;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    RetryPolicy.configureShared(new RetryPolicy.Options(
+      3,
+      Duration.ofMillis(1),
+      Duration.ofMillis(10),
+      0.1));
+
+    this.server = FakeGoogleApis.start();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    this.server.close();
+    RetryPolicy.configureShared(RetryPolicy.Options.DEFAULT);
+  }
+
+  private static GoogleCredentials createCredentials() {
+    return GoogleCredentials.create(new AccessToken("token", null));
+  }
+
+  private CloudIdentityGroupsClient createGroupsClient() {
+    return new CloudIdentityGroupsClient(
+      createCredentials(),
+      new CloudIdentityGroupsClient.Options(new CustomerId("C123")),
+      this.server.httpOptions());
+  }
+
+  //---------------------------------------------------------------------------
+  // Cloud Identity.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void cloudIdentity_whenGroupCreated_thenMembershipsCanBeAdded() throws Exception {
+    var client = createGroupsClient();
+
+    var groupKey = client.createGroup(
+      GROUP,
+      CloudIdentityGroupsClient.GroupType.Security,
+      "Group",
+      "Description");
+
+    //
+    // Creating the group again is idempotent.
+    //
+    assertEquals(
+      groupKey,
+      client.createGroup(GROUP, CloudIdentityGroupsClient.GroupType.Security, "Group", ""));
+
+    var expiry = Instant.now().plus(Duration.ofHours(1));
+    client.addMembership(groupKey, USER, expiry);
+    client.addMembership(groupKey, USER, expiry.plusSeconds(60));
+
+    var memberships = client.listMemberships(GROUP);
+    assertEquals(1, memberships.size());
+    assertEquals(USER.email, memberships.get(0).getPreferredMemberKey().getId());
+
+    var relations = client.listMembershipsByUser(USER);
+    assertEquals(1, relations.size());
+    assertEquals(GROUP.email, relations.get(0).getGroupKey().getId());
+    assertNull(relations.get(0).getRoles().get(0).getExpiryDetail());
+  }
+
+  @Test
+  public void cloudIdentity_whenMembershipExpired_thenMembershipIsOmitted() throws Exception {
+    this.server.addGroup(GROUP.email);
+    this.server.addMembership(GROUP.email, USER.email, Instant.now().minusSeconds(60));
+
+    var client = createGroupsClient();
+
+    assertTrue(client.listMemberships(GROUP).isEmpty());
+    assertTrue(client.listMembershipsByUser(USER).isEmpty());
+  }
+
+  @Test
+  public void cloudIdentity_whenGroupsMatchPrefix_thenSearchReturnsGroups() throws Exception {
+    this.server.addGroup("jit.env-1.a@example.com");
+    this.server.addGroup("jit.env-1.b@example.com");
+    this.server.addGroup("jit.env-2.a@example.com");
+
+    var groups = createGroupsClient().searchGroupsByPrefix("jit.env-1.", false);
+
+    assertEquals(2, groups.size());
+  }
+
+  @Test
+  public void cloudIdentity_whenProjectionSpecified_thenReturnsPartialResponse() throws Exception {
+    this.server.addGroup(GROUP.email);
+    this.server.addMembership(GROUP.email, USER.email, null);
+
+    var client = createGroupsClient();
+
+    var relations = client.listMembershipsByUser(USER, FieldProjection.of("groupKey", "roles/name"));
+    assertEquals(1, relations.size());
+    assertEquals(GROUP.email, relations.get(0).getGroupKey().getId());
+    assertEquals("MEMBER", relations.get(0).getRoles().get(0).getName());
+    assertNull(relations.get(0).getDisplayName());
+    assertNull(relations.get(0).getMembership());
+
+    var memberships = client.listMemberships(GROUP, FieldProjection.of("preferredMemberKey"));
+    assertEquals(1, memberships.size());
+    assertEquals(USER.email, memberships.get(0).getPreferredMemberKey().getId());
+    assertNull(memberships.get(0).getType());
+    assertNull(memberships.get(0).getRoles());
+  }
+
+  //---------------------------------------------------------------------------
+  // Resource Manager.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void resourceManager_whenPolicyModifiedConcurrently_thenAllModificationsApplied() throws Exception {
+    var client = new ResourceManagerClient(createCredentials(), this.server.httpOptions());
+    var project = new ProjectId("project-1");
+
+    //
+    // Each writer can run into a conflict with each other writer
+    // at most once, so the number of writers must not exceed the
+    // client's number of attempts.
+    //
+    var futures = IntStream.range(0, 4)
+      .mapToObj(i -> client.modifyIamPolicyAsync(
+        project,
+        policy -> {
+          var bindings = policy.getBindings() == null
+            ? new ArrayList<Binding>()
+            : new ArrayList<>(policy.getBindings());
+          bindings.add(new Binding()
+            .setRole("roles/role-" + i)
+            .setMembers(List.of("user:" + USER.email)));
+          policy.setBindings(bindings);
+        },
+        "test"))
+      .toList();
+
+    CompletableFutures.allOf(futures).get();
+
+    assertEquals(4, this.server.getIamPolicy("projects/project-1").getBindings().size());
+  }
+
+  //---------------------------------------------------------------------------
+  // Secret Manager.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void secretManager_whenSecretExists_thenReturnsValue() throws Exception {
+    this.server.addSecret("projects/p/secrets/s/versions/latest", "value");
+
+    var client = new SecretManagerClient(createCredentials(), this.server.httpOptions());
+
+    assertEquals("value", client.accessSecret("projects/p/secrets/s/versions/latest"));
+    assertThrows(
+      ResourceNotFoundException.class,
+      () -> client.accessSecret("projects/p/secrets/other/versions/latest"));
+  }
+
+  //---------------------------------------------------------------------------
+  // IAM Credentials.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void iamCredentials_whenPayloadSigned_thenReturnsJwt() throws Exception {
+    var client = new IamCredentialsClient(createCredentials(), this.server.httpOptions());
+
+    var jwt = client.signJwt(
+      new ServiceAccountId("sa", new ProjectId("project-1")),
+      new JsonWebToken.Payload().setSubject("subject"));
+
+    assertEquals(3, jwt.split("\\.").length);
+  }
+
+  //---------------------------------------------------------------------------
+  // Asset Inventory.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void assetInventory_whenPolicySet_thenReturnsEffectivePolicy() throws Exception {
+    this.server.setIamPolicy(
+      "projects/project-1",
+      new com.google.api.services.cloudresourcemanager.v3.model.Policy()
+        .setBindings(List.of(new Binding()
+          .setRole("roles/viewer")
+          .setMembers(List.of("user:" + USER.email)))));
+
+    var policies = new AssetInventoryClient(createCredentials(), this.server.httpOptions())
+      .getEffectiveIamPolicies("organizations/1", "projects/project-1");
+
+    assertEquals(1, policies.size());
+    assertEquals("roles/viewer", policies.get(0).getPolicy().getBindings().get(0).getRole());
+  }
+
+  //---------------------------------------------------------------------------
+  // Faults.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void injectErrors_whenErrorsTransient_thenClientRetries() throws Exception {
+    this.server.addSecret("projects/p/secrets/s/versions/1", "value");
+    this.server.injectErrors(503, 1.0);
+
+    var client = new SecretManagerClient(createCredentials(), this.server.httpOptions());
+
+    var exception = assertThrows(
+      GoogleJsonResponseException.class,
+      () -> client.accessSecret("projects/p/secrets/s/versions/1"));
+    assertEquals(503, exception.getStatusCode());
+    assertEquals(3, this.server.requestCount(FakeGoogleApis.Api.SECRET_MANAGER));
+
+    this.server.injectErrors(503, 0);
+
+    assertEquals("value", client.accessSecret("projects/p/secrets/s/versions/1"));
+  }
+
+  @Test
+  public void setQuota_whenQuotaExceeded_thenRequestsFail() throws Exception {
+    this.server.addSecret("projects/p/secrets/s/versions/1", "value");
+    this.server.setQuota(FakeGoogleApis.Api.SECRET_MANAGER, 1);
+
+    var client = new SecretManagerClient(createCredentials(), this.server.httpOptions());
+    client.accessSecret("projects/p/secrets/s/versions/1");
+
+    var exception = assertThrows(
+      GoogleJsonResponseException.class,
+      () -> client.accessSecret("projects/p/secrets/s/versions/1"));
+    assertEquals(429, exception.getStatusCode());
+  }
+
+  @Test
+  public void setLatency_whenLatencyDistributionSet_thenDelaysRequests() throws Exception {
+    this.server.addSecret("projects/p/secrets/s/versions/1", "value");
+    this.server.setLatency(FakeGoogleApis.Latency.uniform(
+      Duration.ofMillis(50),
+      Duration.ofMillis(60)));
+
+    var client = new SecretManagerClient(createCredentials(), this.server.httpOptions());
+
+    var start = System.nanoTime();
+    client.accessSecret("projects/p/secrets/s/versions/1");
+
+    assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 50);
+  }
+}
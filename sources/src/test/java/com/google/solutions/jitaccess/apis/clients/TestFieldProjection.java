@@ -0,0 +1,83 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.solutions.jitaccess.TestRecord;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFieldProjection extends TestRecord<FieldProjection> {
+  @Override
+  protected @NotNull FieldProjection createInstance() {
+    return FieldProjection.of("name", "groupKey");
+  }
+
+  @Override
+  protected @NotNull FieldProjection createDifferentInstance() {
+    return FieldProjection.of("name");
+  }
+
+  // -------------------------------------------------------------------------
+  // Constructor.
+  // -------------------------------------------------------------------------
+
+  @Test
+  public void constructor_whenFieldsBlank() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new FieldProjection(" "));
+  }
+
+  // -------------------------------------------------------------------------
+  // of.
+  // -------------------------------------------------------------------------
+
+  @Test
+  public void of_whenFieldsEmpty() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> FieldProjection.of());
+  }
+
+  @Test
+  public void of_joinsFields() {
+    assertEquals("name,groupKey(id)", FieldProjection.of("name", "groupKey(id)").fields());
+  }
+
+  // -------------------------------------------------------------------------
+  // forPage.
+  // -------------------------------------------------------------------------
+
+  @Test
+  public void forPage_whenAllFields() {
+    assertNull(FieldProjection.ALL.forPage("groups"));
+  }
+
+  @Test
+  public void forPage_whenFieldsSpecified() {
+    assertEquals(
+      "nextPageToken,groups(name,groupKey)",
+      FieldProjection.of("name", "groupKey").forPage("groups"));
+  }
+}
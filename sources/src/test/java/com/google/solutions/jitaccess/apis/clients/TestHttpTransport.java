@@ -0,0 +1,226 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.services.iam.v1.Iam;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestHttpTransport {
+  private HttpServer server;
+  private final AtomicInteger requests = new AtomicInteger();
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    RetryPolicy.configureShared(new RetryPolicy.Options(
+      3,
+      Duration.ofMillis(1),
+      Duration.ofSeconds(1),
+      0.1));
+
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.server.start();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    this.server.stop(0);
+    RetryPolicy.configureShared(RetryPolicy.Options.DEFAULT);
+    QuotaGovernor.configureShared(QuotaGovernor.Options.DEFAULT);
+    CircuitBreaker.configureShared(CircuitBreaker.Options.DEFAULT, CircuitBreaker.Listener.NONE);
+  }
+
+  /**
+   * Let the first requests fail with the given status code,
+   * and succeed afterwards.
+   */
+  private void failRequests(int failures, int statusCode) {
+    this.server.createContext("/", exchange -> {
+      var failed = this.requests.incrementAndGet() <= failures;
+      var bytes = (failed
+        ? String.format("{\"error\": {\"code\": %d, \"message\": \"failed\"}}", statusCode)
+        : "{\"email\": \"sa@example.iam.gserviceaccount.com\"}")
+        .getBytes(StandardCharsets.UTF_8);
+
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(failed ? statusCode : 200, bytes.length);
+      exchange.getResponseBody().write(bytes);
+      exchange.close();
+    });
+  }
+
+  private Iam.Projects.ServiceAccounts.Get createRequest() throws IOException {
+    return Builders
+      .newBuilder(
+        Iam.Builder::new,
+        GoogleCredentials.create(new AccessToken("token", null)),
+        HttpTransport.Options.DEFAULT)
+      .setRootUrl(String.format("http://localhost:%d/", this.server.getAddress().getPort()))
+      .build()
+      .projects()
+      .serviceAccounts()
+      .get("projects/-/serviceAccounts/sa@example.iam.gserviceaccount.com");
+  }
+
+  //---------------------------------------------------------------------------
+  // newAuthenticatingRequestInitializer.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void newAuthenticatingRequestInitializer_whenRequestFailsTransiently_thenRetries() throws Exception {
+    failRequests(2, 503);
+
+    var serviceAccount = createRequest().execute();
+
+    assertEquals("sa@example.iam.gserviceaccount.com", serviceAccount.getEmail());
+    assertEquals(3, this.requests.get());
+
+    var statistics = RetryPolicy.shared()
+      .statistics()
+      .get(String.format("localhost:%d", this.server.getAddress().getPort()));
+    assertEquals(2, statistics.retries());
+    assertEquals(1, statistics.successes());
+  }
+
+  @Test
+  public void newAuthenticatingRequestInitializer_whenRequestRetried_thenRecordsMetrics() throws Exception {
+    failRequests(2, 503);
+
+    createRequest().execute();
+
+    var backend = String.format("localhost:%d", this.server.getAddress().getPort());
+    var statistics = RequestMetrics.shared()
+      .statistics()
+      .stream()
+      .filter(s -> s.backend().equals(backend))
+      .toList();
+
+    assertEquals(1, statistics.size());
+    assertEquals("GET projects/*/serviceAccounts/*", statistics.get(0).method());
+    assertEquals(1, statistics.get(0).requests());
+    assertEquals(2, statistics.get(0).retries());
+    assertEquals(Map.of(200, 1L), statistics.get(0).statusCodes());
+    assertNotEquals(0, statistics.get(0).responseBytes());
+  }
+
+  @Test
+  public void newAuthenticatingRequestInitializer_whenRequestFailsPermanently_thenRecordsStatusCode() throws Exception {
+    failRequests(10, 403);
+
+    assertThrows(
+      GoogleJsonResponseException.class,
+      () -> createRequest().execute());
+
+    var backend = String.format("localhost:%d", this.server.getAddress().getPort());
+    var statistics = RequestMetrics.shared()
+      .statistics()
+      .stream()
+      .filter(s -> s.backend().equals(backend))
+      .findFirst()
+      .get();
+
+    assertEquals(Map.of(403, 1L), statistics.statusCodes());
+    assertEquals(0, statistics.retries());
+  }
+
+  @Test
+  public void newAuthenticatingRequestInitializer_whenMaxAttemptsReached_thenThrowsException() throws Exception {
+    failRequests(10, 429);
+
+    var exception = assertThrows(
+      GoogleJsonResponseException.class,
+      () -> createRequest().execute());
+
+    assertEquals(429, exception.getStatusCode());
+    assertEquals(3, this.requests.get());
+  }
+
+  @Test
+  public void newAuthenticatingRequestInitializer_whenRequestFailsPermanently_thenDoesNotRetry() throws Exception {
+    failRequests(10, 403);
+
+    assertThrows(
+      GoogleJsonResponseException.class,
+      () -> createRequest().execute());
+
+    assertEquals(1, this.requests.get());
+  }
+
+  @Test
+  public void newAuthenticatingRequestInitializer_whenRequestSent_thenConsumesQuota() throws Exception {
+    QuotaGovernor.configureShared(new QuotaGovernor.Options(
+      60,
+      10,
+      0.5,
+      Duration.ofSeconds(5),
+      Duration.ofSeconds(5)));
+    failRequests(1, 503);
+
+    createRequest().execute();
+
+    //
+    // Retries consume quota too.
+    //
+    var statistics = QuotaGovernor.shared()
+      .statistics()
+      .get(String.format("localhost:%d (GoogleCredentials)", this.server.getAddress().getPort()));
+    assertEquals(8, statistics.level());
+  }
+
+  @Test
+  public void newAuthenticatingRequestInitializer_whenCircuitBreakerOpen_thenFailsFast() throws Exception {
+    CircuitBreaker.configureShared(
+      new CircuitBreaker.Options(0.5, Duration.ofSeconds(10), 2, Duration.ofMinutes(1)),
+      CircuitBreaker.Listener.NONE);
+    failRequests(10, 503);
+
+    assertThrows(
+      GoogleJsonResponseException.class,
+      () -> createRequest().execute());
+    assertEquals(3, this.requests.get());
+
+    assertThrows(
+      BackendUnavailableException.class,
+      () -> createRequest().execute());
+    assertEquals(3, this.requests.get());
+
+    var statistics = CircuitBreaker.shared()
+      .statistics()
+      .get(String.format("localhost:%d", this.server.getAddress().getPort()));
+    assertEquals(CircuitBreaker.State.OPEN, statistics.state());
+    assertEquals(1, statistics.rejected());
+  }
+}
@@ -0,0 +1,174 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestMemcachedClient {
+  private static final byte[] VALUE = new byte[] { 'a', '\r', '\n', 0, (byte)0xFF };
+
+  private FakeMemcached server;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    this.server = FakeMemcached.start();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    this.server.close();
+  }
+
+  //---------------------------------------------------------------------------
+  // encodeKey.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void encodeKey_whenKeyValid() {
+    assertEquals("subjects.v1:user@example.com", MemcachedClient.encodeKey("subjects.v1:user@example.com"));
+  }
+
+  @Test
+  public void encodeKey_whenKeyContainsWhitespace_thenHashesKey() {
+    var encoded = MemcachedClient.encodeKey("key with spaces");
+
+    assertTrue(encoded.startsWith("sha256:"));
+    assertEquals(encoded, MemcachedClient.encodeKey("key with spaces"));
+  }
+
+  @Test
+  public void encodeKey_whenKeyTooLong_thenHashesKey() {
+    var encoded = MemcachedClient.encodeKey("k".repeat(MemcachedClient.MAX_KEY_LENGTH + 1));
+
+    assertTrue(encoded.startsWith("sha256:"));
+    assertTrue(encoded.length() <= MemcachedClient.MAX_KEY_LENGTH);
+  }
+
+  //---------------------------------------------------------------------------
+  // get.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void get_whenKeyNotFound() throws Exception {
+    var client = new MemcachedClient(this.server.options());
+
+    assertFalse(client.get("key").isPresent());
+  }
+
+  @Test
+  public void get_whenKeyFound() throws Exception {
+    var client = new MemcachedClient(this.server.options());
+
+    client.put("key", VALUE, Duration.ofMinutes(1));
+
+    assertArrayEquals(VALUE, client.get("key").get());
+    assertEquals(60, this.server.ttl("key"));
+  }
+
+  @Test
+  public void get_whenCalledRepeatedly_thenReusesConnection() throws Exception {
+    var client = new MemcachedClient(this.server.options());
+
+    for (int i = 0; i < 10; i++) {
+      client.get("key");
+    }
+
+    assertEquals(1, this.server.connectionCount());
+  }
+
+  @Test
+  public void get_whenServerFails_thenThrowsException() throws Exception {
+    var client = new MemcachedClient(this.server.options());
+    this.server.setFailing(true);
+
+    assertThrows(
+      MemcachedClient.MemcachedException.class,
+      () -> client.get("key"));
+
+    this.server.setFailing(false);
+    assertFalse(client.get("key").isPresent());
+  }
+
+  @Test
+  public void get_whenServerUnavailable_thenThrowsException() throws Exception {
+    int port;
+    try (var socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+
+    var client = new MemcachedClient(new MemcachedClient.Options(
+      "localhost",
+      port,
+      Duration.ofSeconds(1),
+      1));
+
+    assertThrows(
+      IOException.class,
+      () -> client.get("key"));
+  }
+
+  //---------------------------------------------------------------------------
+  // put.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void put_whenTtlTooLong_thenThrowsException() {
+    var client = new MemcachedClient(this.server.options());
+
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> client.put("key", VALUE, Duration.ofDays(31)));
+  }
+
+  @Test
+  public void put_whenServerFails_thenThrowsException() {
+    var client = new MemcachedClient(this.server.options());
+    this.server.setFailing(true);
+
+    assertThrows(
+      MemcachedClient.MemcachedException.class,
+      () -> client.put("key", VALUE, Duration.ofMinutes(1)));
+  }
+
+  //---------------------------------------------------------------------------
+  // remove.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void remove() throws Exception {
+    var client = new MemcachedClient(this.server.options());
+
+    client.put("key", VALUE, Duration.ofMinutes(1));
+    client.remove("key");
+    client.remove("key");
+
+    assertFalse(client.get("key").isPresent());
+  }
+}
@@ -0,0 +1,263 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestQuotaGovernor {
+  private static final String BACKEND = "example.googleapis.com";
+
+  /**
+   * 60 requests per minute, burst of 4, half of which is
+   * reserved for interactive requests.
+   */
+  private static final QuotaGovernor.Options OPTIONS = new QuotaGovernor.Options(
+    60,
+    4,
+    0.5,
+    Duration.ofSeconds(5),
+    Duration.ofSeconds(30));
+
+  private static GoogleCredentials createCredentials() {
+    return GoogleCredentials.create(new AccessToken("token", null));
+  }
+
+  //---------------------------------------------------------------------------
+  // Options.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void options_whenBurstDerivedFromRate() {
+    var options = new QuotaGovernor.Options(600, Duration.ZERO, Duration.ZERO);
+
+    assertEquals(100, options.burst());
+  }
+
+  @Test
+  public void options_whenRequestsPerMinuteNegative_thenThrowsException() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new QuotaGovernor.Options(-1, Duration.ZERO, Duration.ZERO));
+  }
+
+  //---------------------------------------------------------------------------
+  // backgroundScope.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void backgroundScope_whenClosed_thenRestoresPriority() {
+    assertEquals(QuotaGovernor.Priority.INTERACTIVE, QuotaGovernor.currentPriority());
+
+    try (var outer = QuotaGovernor.backgroundScope()) {
+      assertEquals(QuotaGovernor.Priority.BACKGROUND, QuotaGovernor.currentPriority());
+
+      try (var inner = QuotaGovernor.backgroundScope()) {
+        assertEquals(QuotaGovernor.Priority.BACKGROUND, QuotaGovernor.currentPriority());
+      }
+
+      assertEquals(QuotaGovernor.Priority.BACKGROUND, QuotaGovernor.currentPriority());
+    }
+
+    assertEquals(QuotaGovernor.Priority.INTERACTIVE, QuotaGovernor.currentPriority());
+  }
+
+  @Test
+  public void scope_whenClosed_thenRestoresPriority() {
+    try (var outer = QuotaGovernor.backgroundScope()) {
+      try (var inner = QuotaGovernor.scope(QuotaGovernor.Priority.INTERACTIVE)) {
+        assertEquals(QuotaGovernor.Priority.INTERACTIVE, QuotaGovernor.currentPriority());
+      }
+
+      assertEquals(QuotaGovernor.Priority.BACKGROUND, QuotaGovernor.currentPriority());
+    }
+
+    assertEquals(QuotaGovernor.Priority.INTERACTIVE, QuotaGovernor.currentPriority());
+  }
+
+  //---------------------------------------------------------------------------
+  // bucket.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void bucket_whenCredentialsAndBackendSame_thenReturnsSameBucket() {
+    var governor = new QuotaGovernor(OPTIONS);
+    var credentials = createCredentials();
+
+    assertSame(
+      governor.bucket(credentials, BACKEND),
+      governor.bucket(credentials, BACKEND));
+    assertNotSame(
+      governor.bucket(credentials, BACKEND),
+      governor.bucket(credentials, "other.googleapis.com"));
+    assertNotSame(
+      governor.bucket(credentials, BACKEND),
+      governor.bucket(createCredentials(), BACKEND));
+  }
+
+  //---------------------------------------------------------------------------
+  // reserve.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void reserve_whenDisabled_thenReturnsZero() {
+    var bucket = new QuotaGovernor(QuotaGovernor.Options.DISABLED)
+      .bucket(createCredentials(), BACKEND);
+
+    for (int i = 0; i < 100; i++) {
+      assertEquals(Duration.ZERO, bucket.reserve(1, QuotaGovernor.Priority.INTERACTIVE));
+    }
+  }
+
+  @Test
+  public void reserve_whenBucketHasTokens_thenReturnsZero() {
+    var bucket = new QuotaGovernor(OPTIONS, () -> 0L).bucket(createCredentials(), BACKEND);
+
+    for (int i = 0; i < OPTIONS.burst(); i++) {
+      assertEquals(Duration.ZERO, bucket.reserve(1, QuotaGovernor.Priority.INTERACTIVE));
+    }
+
+    assertEquals(0, bucket.statistics().level());
+    assertEquals(0, bucket.statistics().throttled());
+  }
+
+  @Test
+  public void reserve_whenBucketEmpty_thenRequestsQueue() {
+    var bucket = new QuotaGovernor(OPTIONS, () -> 0L).bucket(createCredentials(), BACKEND);
+
+    bucket.reserve(OPTIONS.burst(), QuotaGovernor.Priority.INTERACTIVE);
+
+    //
+    // The bucket refills at 1 token per second.
+    //
+    assertEquals(Duration.ofSeconds(1), bucket.reserve(1, QuotaGovernor.Priority.INTERACTIVE));
+    assertEquals(Duration.ofSeconds(2), bucket.reserve(1, QuotaGovernor.Priority.INTERACTIVE));
+    assertEquals(2, bucket.statistics().throttled());
+  }
+
+  @Test
+  public void reserve_whenTimePasses_thenBucketRefills() {
+    var clock = new AtomicLong(0);
+    var bucket = new QuotaGovernor(OPTIONS, clock::get).bucket(createCredentials(), BACKEND);
+
+    bucket.reserve(OPTIONS.burst(), QuotaGovernor.Priority.INTERACTIVE);
+    clock.addAndGet(Duration.ofSeconds(2).toNanos());
+
+    assertEquals(Duration.ZERO, bucket.reserve(2, QuotaGovernor.Priority.INTERACTIVE));
+  }
+
+  @Test
+  public void reserve_whenBucketBelowReserve_thenBackgroundRequestsQueue() {
+    var bucket = new QuotaGovernor(OPTIONS, () -> 0L).bucket(createCredentials(), BACKEND);
+
+    //
+    // Use up the tokens that aren't reserved.
+    //
+    assertEquals(Duration.ZERO, bucket.reserve(1, QuotaGovernor.Priority.BACKGROUND));
+    assertEquals(Duration.ZERO, bucket.reserve(1, QuotaGovernor.Priority.BACKGROUND));
+    assertEquals(Duration.ofSeconds(1), bucket.reserve(1, QuotaGovernor.Priority.BACKGROUND));
+
+    //
+    // Interactive requests can still use the reserved tokens.
+    //
+    assertEquals(Duration.ZERO, bucket.reserve(1, QuotaGovernor.Priority.INTERACTIVE));
+  }
+
+  @Test
+  public void reserve_whenManyBackgroundRequestsQueued_thenInteractiveRequestsDontWait() {
+    var bucket = new QuotaGovernor(OPTIONS, () -> 0L).bucket(createCredentials(), BACKEND);
+
+    //
+    // Queue more background requests than the reserve holds.
+    //
+    assertEquals(Duration.ZERO, bucket.reserve(1, QuotaGovernor.Priority.BACKGROUND));
+    assertEquals(Duration.ZERO, bucket.reserve(1, QuotaGovernor.Priority.BACKGROUND));
+    for (int i = 1; i <= 4; i++) {
+      assertEquals(Duration.ofSeconds(i), bucket.reserve(1, QuotaGovernor.Priority.BACKGROUND));
+    }
+
+    //
+    // Interactive requests can still use the entire reserve.
+    //
+    assertEquals(Duration.ZERO, bucket.reserve(1, QuotaGovernor.Priority.INTERACTIVE));
+    assertEquals(Duration.ZERO, bucket.reserve(1, QuotaGovernor.Priority.INTERACTIVE));
+    assertEquals(Duration.ofSeconds(1), bucket.reserve(1, QuotaGovernor.Priority.INTERACTIVE));
+  }
+
+  @Test
+  public void reserve_whenTimePasses_thenBucketReplenishesReserveBeforeBackgroundDebt() {
+    var clock = new AtomicLong(0);
+    var bucket = new QuotaGovernor(OPTIONS, clock::get).bucket(createCredentials(), BACKEND);
+
+    //
+    // Use up all tokens, and queue 2 background requests.
+    //
+    bucket.reserve(2, QuotaGovernor.Priority.BACKGROUND);
+    bucket.reserve(2, QuotaGovernor.Priority.INTERACTIVE);
+    assertEquals(Duration.ofSeconds(4), bucket.reserve(2, QuotaGovernor.Priority.BACKGROUND));
+    assertEquals(-2, bucket.statistics().level());
+
+    //
+    // Refilled tokens replenish the reserve first.
+    //
+    clock.addAndGet(Duration.ofSeconds(2).toNanos());
+    assertEquals(Duration.ZERO, bucket.reserve(2, QuotaGovernor.Priority.INTERACTIVE));
+
+    //
+    // Then, they pay off the background debt.
+    //
+    clock.addAndGet(Duration.ofSeconds(4).toNanos());
+    assertEquals(Duration.ZERO, bucket.reserve(2, QuotaGovernor.Priority.INTERACTIVE));
+    assertEquals(Duration.ofSeconds(3), bucket.reserve(1, QuotaGovernor.Priority.BACKGROUND));
+  }
+
+  @Test
+  public void reserve_whenWaitExceedsMaxWait_thenReturnsMaxWait() {
+    var bucket = new QuotaGovernor(OPTIONS, () -> 0L).bucket(createCredentials(), BACKEND);
+
+    bucket.reserve(OPTIONS.burst(), QuotaGovernor.Priority.INTERACTIVE);
+
+    assertEquals(OPTIONS.maxWait(), bucket.reserve(10, QuotaGovernor.Priority.INTERACTIVE));
+    assertEquals(1, bucket.statistics().overdrafts());
+  }
+
+  //---------------------------------------------------------------------------
+  // statistics.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void statistics() {
+    var governor = new QuotaGovernor(OPTIONS, () -> 0L);
+    governor.bucket(createCredentials(), BACKEND).reserve(1, QuotaGovernor.Priority.INTERACTIVE);
+
+    var statistics = governor.statistics().get(BACKEND + " (GoogleCredentials)");
+    assertNotNull(statistics);
+    assertEquals(3, statistics.level());
+    assertEquals(4, statistics.capacity());
+  }
+}
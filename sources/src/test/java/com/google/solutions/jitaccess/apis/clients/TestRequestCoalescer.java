@@ -0,0 +1,363 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import com.google.api.client.json.GenericJson;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRequestCoalescer {
+  private static String uniqueApi() {
+    return UUID.randomUUID() + ".googleapis.com";
+  }
+
+  private static void awaitCoalesced(String api, long expected) throws InterruptedException {
+    for (int i = 0; i < 500; i++) {
+      var statistics = RequestCoalescer.statistics().get(api);
+      if (statistics != null && statistics.coalesced() >= expected) {
+        return;
+      }
+
+      Thread.sleep(10);
+    }
+
+    fail("Request was not coalesced");
+  }
+
+  //---------------------------------------------------------------------------
+  // execute.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void execute_whenRequestInFlight_thenSharesResult() throws Exception {
+    var api = uniqueApi();
+    var coalescer = new RequestCoalescer(api);
+    var release = new CountDownLatch(1);
+    var calls = new AtomicInteger();
+
+    RequestCoalescer.Request<String> request = () -> {
+      calls.incrementAndGet();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return "result";
+    };
+
+    var leader = CompletableFuture.supplyAsync(() -> {
+      try {
+        return coalescer.execute("op", "arg", request);
+      }
+      catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    while (calls.get() == 0) {
+      Thread.sleep(10);
+    }
+
+    var follower = CompletableFuture.supplyAsync(() -> {
+      try {
+        return coalescer.execute("op", "arg", request);
+      }
+      catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    awaitCoalesced(api, 1);
+    release.countDown();
+
+    assertEquals("result", leader.get());
+    assertEquals("result", follower.get());
+    assertEquals(1, calls.get());
+
+    var statistics = RequestCoalescer.statistics().get(api);
+    assertEquals(1, statistics.requests());
+    assertEquals(1, statistics.coalesced());
+  }
+
+  @Test
+  public void execute_whenRequestFails_thenFollowersReceiveException() throws Exception {
+    var api = uniqueApi();
+    var coalescer = new RequestCoalescer(api);
+    var pending = new CompletableFuture<String>();
+
+    var leader = coalescer.executeAsync("op", "arg", () -> pending);
+    var follower = CompletableFuture.supplyAsync(() -> {
+      try {
+        return coalescer.execute("op", "arg", () -> "not used");
+      }
+      catch (ResourceNotFoundException e) {
+        return "not found";
+      }
+      catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    awaitCoalesced(api, 1);
+    pending.completeExceptionally(new ResourceNotFoundException("mock"));
+
+    assertEquals("not found", follower.get());
+    var exception = assertThrows(ExecutionException.class, leader::get);
+    assertInstanceOf(ResourceNotFoundException.class, exception.getCause());
+  }
+
+  @Test
+  public void execute_whenRequestFails_thenThrowsException() {
+    var coalescer = new RequestCoalescer(uniqueApi());
+
+    assertThrows(
+      AccessDeniedException.class,
+      () -> coalescer.execute("op", "arg", () -> {
+        throw new AccessDeniedException("mock");
+      }));
+  }
+
+  @Test
+  public void execute_whenRequestFailsWithError_thenRemovesRequest() throws Exception {
+    var api = uniqueApi();
+    var coalescer = new RequestCoalescer(api);
+
+    assertThrows(
+      StackOverflowError.class,
+      () -> coalescer.execute("op", "arg", () -> {
+        throw new StackOverflowError();
+      }));
+
+    assertEquals("retried", coalescer.execute("op", "arg", () -> "retried"));
+
+    var statistics = RequestCoalescer.statistics().get(api);
+    assertEquals(2, statistics.requests());
+    assertEquals(0, statistics.coalesced());
+  }
+
+  @Test
+  public void execute_whenPreviousRequestCompleted_thenPerformsNewRequest() throws Exception {
+    var api = uniqueApi();
+    var coalescer = new RequestCoalescer(api);
+    var calls = new AtomicInteger();
+
+    assertEquals(1, coalescer.execute("op", "arg", calls::incrementAndGet));
+    assertEquals(2, coalescer.execute("op", "arg", calls::incrementAndGet));
+
+    var statistics = RequestCoalescer.statistics().get(api);
+    assertEquals(2, statistics.requests());
+    assertEquals(0, statistics.coalesced());
+  }
+
+  @Test
+  public void execute_whenAsyncRequestInFlight_thenJoinsAsyncRequest() throws Exception {
+    var api = uniqueApi();
+    var coalescer = new RequestCoalescer(api);
+    var pending = new CompletableFuture<String>();
+
+    coalescer.executeAsync("op", "arg", () -> pending);
+
+    var follower = CompletableFuture.supplyAsync(() -> {
+      try {
+        return coalescer.execute("op", "arg", () -> "not used");
+      }
+      catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    awaitCoalesced(api, 1);
+    pending.complete("result");
+
+    assertEquals("result", follower.get());
+  }
+
+  //---------------------------------------------------------------------------
+  // executeAsync.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void executeAsync_whenRequestInFlight_thenSharesResult() throws Exception {
+    var coalescer = new RequestCoalescer(uniqueApi());
+    var pending = new CompletableFuture<String>();
+    var calls = new AtomicInteger();
+
+    var first = coalescer.executeAsync("op", "arg", () -> {
+      calls.incrementAndGet();
+      return pending;
+    });
+    var second = coalescer.executeAsync("op", "arg", () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture("not used");
+    });
+
+    pending.complete("result");
+
+    assertEquals("result", first.get());
+    assertEquals("result", second.get());
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void executeAsync_whenArgumentsDiffer_thenPerformsSeparateRequests() throws Exception {
+    var coalescer = new RequestCoalescer(uniqueApi());
+    var pending = new CompletableFuture<String>();
+
+    var first = coalescer.executeAsync("op", "arg-1", () -> pending);
+    var second = coalescer.executeAsync("op", "arg-2", () -> CompletableFuture.completedFuture("other"));
+    var third = coalescer.executeAsync("other-op", "arg-1", () -> CompletableFuture.completedFuture("other"));
+
+    assertEquals("other", second.get());
+    assertEquals("other", third.get());
+    assertFalse(first.isDone());
+  }
+
+  @Test
+  public void executeAsync_whenCallerCancels_thenOtherCallersUnaffected() throws Exception {
+    var coalescer = new RequestCoalescer(uniqueApi());
+    var pending = new CompletableFuture<String>();
+
+    var first = coalescer.executeAsync("op", "arg", () -> pending);
+    var second = coalescer.executeAsync("op", "arg", () -> pending);
+
+    first.cancel(true);
+    pending.complete("result");
+
+    assertEquals("result", second.get());
+  }
+
+  @Test
+  public void executeAsync_whenSomeCallersCancel_thenRequestContinues() throws Exception {
+    var coalescer = new RequestCoalescer(uniqueApi());
+    var pending = new CompletableFuture<String>();
+
+    var first = coalescer.executeAsync("op", "arg", () -> pending);
+    var second = coalescer.executeAsync("op", "arg", () -> pending);
+    var third = coalescer.executeAsync("op", "arg", () -> pending);
+
+    first.cancel(true);
+    second.cancel(true);
+
+    assertFalse(pending.isCancelled());
+    assertFalse(third.isDone());
+  }
+
+  @Test
+  public void executeAsync_whenAllCallersCancel_thenCancelsRequest() throws Exception {
+    var coalescer = new RequestCoalescer(uniqueApi());
+    var pending = new CompletableFuture<String>();
+
+    var first = coalescer.executeAsync("op", "arg", () -> pending);
+    var second = coalescer.executeAsync("op", "arg", () -> pending);
+
+    first.cancel(true);
+    second.cancel(true);
+
+    assertTrue(pending.isCancelled());
+  }
+
+  @Test
+  public void executeAsync_whenAllCallersCancelled_thenPerformsNewRequest() throws Exception {
+    var coalescer = new RequestCoalescer(uniqueApi());
+    var cancelled = new CompletableFuture<String>();
+
+    coalescer.executeAsync("op", "arg", () -> cancelled).cancel(true);
+
+    var result = coalescer.executeAsync(
+      "op",
+      "arg",
+      () -> CompletableFuture.completedFuture("result"));
+
+    assertEquals("result", result.get());
+    assertTrue(cancelled.isCancelled());
+  }
+
+  @Test
+  public void executeAsync_whenRequestInFlight_thenCallersReceiveCopies() throws Exception {
+    var coalescer = new RequestCoalescer(uniqueApi());
+    var pending = new CompletableFuture<List<GenericJson>>();
+
+    var first = coalescer.executeAsync("op", "arg", () -> pending);
+    var second = coalescer.executeAsync("op", "arg", () -> pending);
+
+    pending.complete(List.of(new GenericJson().set("name", "value")));
+
+    assertEquals(first.get(), second.get());
+    assertNotSame(first.get().get(0), second.get().get(0));
+
+    first.get().get(0).set("name", "changed");
+    assertEquals("value", second.get().get(0).get("name"));
+  }
+
+  //---------------------------------------------------------------------------
+  // invalidate.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void invalidate_whenRequestInFlight_thenSubsequentCallersPerformNewRequest() throws Exception {
+    var api = uniqueApi();
+    var coalescer = new RequestCoalescer(api);
+    var pending = new CompletableFuture<String>();
+
+    var beforeWrite = coalescer.executeAsync("op", "arg", () -> pending);
+
+    coalescer.invalidate();
+
+    var afterWrite = coalescer.executeAsync(
+      "op",
+      "arg",
+      () -> CompletableFuture.completedFuture("after write"));
+    assertEquals("after write", afterWrite.get());
+
+    pending.complete("before write");
+    assertEquals("before write", beforeWrite.get());
+
+    assertEquals(2, RequestCoalescer.statistics().get(api).requests());
+    assertEquals(0, RequestCoalescer.statistics().get(api).coalesced());
+  }
+
+  @Test
+  public void invalidate_whenRequestInFlight_thenExistingCallersReceiveResult() throws Exception {
+    var coalescer = new RequestCoalescer(uniqueApi());
+    var pending = new CompletableFuture<String>();
+
+    var first = coalescer.executeAsync("op", "arg", () -> pending);
+    var second = coalescer.executeAsync("op", "arg", () -> pending);
+
+    coalescer.invalidate();
+    pending.complete("result");
+
+    assertEquals("result", first.get());
+    assertEquals("result", second.get());
+  }
+}
@@ -0,0 +1,225 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRequestHedger {
+  private static final String OPERATION = "example.googleapis.com/get";
+  private static final RequestHedger.Options OPTIONS = new RequestHedger.Options(
+    90,
+    Duration.ofMillis(1),
+    1.0);
+
+  /**
+   * Send enough fast requests to let the hedger observe latencies.
+   */
+  private static void warmUp(RequestHedger hedger) throws Exception {
+    for (int i = 0; i < RequestHedger.MIN_SAMPLES; i++) {
+      hedger.executeAsync(OPERATION, () -> CompletableFuture.completedFuture("fast")).get();
+    }
+  }
+
+  //---------------------------------------------------------------------------
+  // Options.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void options_whenPercentileOutOfRange_thenThrowsException() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new RequestHedger.Options(100, Duration.ofMillis(1), 0.1));
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new RequestHedger.Options(-1, Duration.ofMillis(1), 0.1));
+  }
+
+  @Test
+  public void options_whenBudgetRatioOutOfRange_thenThrowsException() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new RequestHedger.Options(90, Duration.ofMillis(1), 0));
+  }
+
+  //---------------------------------------------------------------------------
+  // executeAsync.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void executeAsync_whenDisabled_thenSendsSingleRequest() throws Exception {
+    var hedger = new RequestHedger(RequestHedger.Options.DISABLED);
+    var calls = new AtomicInteger();
+
+    for (int i = 0; i < RequestHedger.MIN_SAMPLES * 2; i++) {
+      assertEquals(
+        "response",
+        hedger.executeAsync(OPERATION, () -> {
+          calls.incrementAndGet();
+          return CompletableFuture.completedFuture("response");
+        }).get());
+    }
+
+    assertEquals(RequestHedger.MIN_SAMPLES * 2, calls.get());
+    assertTrue(hedger.statistics().isEmpty());
+  }
+
+  @Test
+  public void executeAsync_whenNotEnoughSamples_thenDoesNotHedge() throws Exception {
+    var hedger = new RequestHedger(OPTIONS);
+    var calls = new AtomicInteger();
+
+    var slow = new CompletableFuture<String>();
+    var result = hedger.executeAsync(OPERATION, () -> {
+      calls.incrementAndGet();
+      return slow;
+    });
+
+    Thread.sleep(50);
+    assertFalse(result.isDone());
+    assertEquals(1, calls.get());
+
+    slow.complete("slow");
+    assertEquals("slow", result.get());
+  }
+
+  @Test
+  public void executeAsync_whenRequestSlow_thenHedgeWins() throws Exception {
+    var hedger = new RequestHedger(OPTIONS);
+    warmUp(hedger);
+
+    var calls = new AtomicInteger();
+    var slow = new CompletableFuture<String>();
+    var result = hedger.executeAsync(OPERATION, () -> calls.incrementAndGet() == 1
+      ? slow
+      : CompletableFuture.completedFuture("hedge"));
+
+    assertEquals("hedge", result.get(5, TimeUnit.SECONDS));
+    assertEquals(2, calls.get());
+
+    //
+    // The initial request completing late doesn't change the result.
+    //
+    slow.complete("slow");
+    assertEquals("hedge", result.get());
+
+    var statistics = hedger.statistics().get(OPERATION);
+    assertEquals(RequestHedger.MIN_SAMPLES + 1, statistics.requests());
+    assertEquals(1, statistics.hedges());
+    assertEquals(1, statistics.wins());
+    assertNotNull(statistics.delay());
+  }
+
+  @Test
+  public void executeAsync_whenHedgeFails_thenWaitsForInitialRequest() throws Exception {
+    var hedger = new RequestHedger(OPTIONS);
+    warmUp(hedger);
+
+    var calls = new AtomicInteger();
+    var slow = new CompletableFuture<String>();
+    var result = hedger.executeAsync(OPERATION, () -> calls.incrementAndGet() == 1
+      ? slow
+      : CompletableFuture.failedFuture(new IOException("mock")));
+
+    while (calls.get() < 2) {
+      Thread.sleep(5);
+    }
+
+    assertFalse(result.isDone());
+
+    slow.complete("slow");
+    assertEquals("slow", result.get());
+    assertEquals(0, hedger.statistics().get(OPERATION).wins());
+  }
+
+  @Test
+  public void executeAsync_whenInitialRequestFails_thenReturnsError() throws Exception {
+    var hedger = new RequestHedger(OPTIONS);
+    warmUp(hedger);
+
+    var result = hedger.executeAsync(
+      OPERATION,
+      () -> CompletableFuture.<String>failedFuture(new IOException("mock")));
+
+    var exception = assertThrows(ExecutionException.class, result::get);
+    assertInstanceOf(IOException.class, exception.getCause());
+  }
+
+  @Test
+  public void executeAsync_whenBudgetExhausted_thenDoesNotHedge() throws Exception {
+    var hedger = new RequestHedger(new RequestHedger.Options(90, Duration.ofMillis(1), 0.01));
+    warmUp(hedger);
+
+    var calls = new AtomicInteger();
+    var slow = new CompletableFuture<String>();
+    var result = hedger.executeAsync(OPERATION, () -> {
+      calls.incrementAndGet();
+      return slow;
+    });
+
+    for (int i = 0; i < 100 && hedger.statistics().get(OPERATION).throttled() == 0; i++) {
+      Thread.sleep(5);
+    }
+
+    assertEquals(1, calls.get());
+    assertEquals(0, hedger.statistics().get(OPERATION).hedges());
+    assertEquals(1, hedger.statistics().get(OPERATION).throttled());
+
+    slow.complete("slow");
+    assertEquals("slow", result.get());
+  }
+
+  @Test
+  public void executeAsync_whenCancelled_thenCancelsRequests() throws Exception {
+    var hedger = new RequestHedger(OPTIONS);
+    warmUp(hedger);
+
+    var requests = new LinkedBlockingQueue<CompletableFuture<String>>();
+    var result = hedger.executeAsync(OPERATION, () -> {
+      var request = new CompletableFuture<String>();
+      requests.add(request);
+      return request;
+    });
+
+    var initial = requests.take();
+    var hedge = requests.poll(10, TimeUnit.SECONDS);
+    assertNotNull(hedge);
+
+    result.cancel(true);
+
+    //
+    // The hedge might still be registering, so wait for it to be cancelled.
+    //
+    assertTrue(initial.isCancelled());
+    assertThrows(CancellationException.class, () -> hedge.get(10, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,142 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+package com.google.solutions.jitaccess.apis.clients;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRequestMetrics {
+
+  //---------------------------------------------------------------------------
+  // methodOf.
+  //---------------------------------------------------------------------------
+
+  @ParameterizedTest
+  @CsvSource({
+    "GET,/v1/groups:lookup,GET groups:lookup",
+    "GET,/v1/groups/abc,GET groups/*",
+    "GET,/v1/groups/abc/memberships:lookup,GET groups/*/memberships:lookup",
+    "GET,/v1/groups/-/memberships:searchDirectGroups,GET groups/*/memberships:searchDirectGroups",
+    "POST,/v3/projects/project-1:getIamPolicy,POST projects/*:getIamPolicy",
+    "GET,/v1/projects/p/secrets/s/versions/latest:access,GET projects/*/secrets/*/versions/*:access",
+    "GET,/groups/v1/groups/group@example.com,GET groups/*",
+    "GET,/v1beta1/organizations/1/effectiveIamPolicies:batchGet,GET organizations/*/effectiveIamPolicies:batchGet",
+    "POST,/batch,POST batch",
+  })
+  public void methodOf(String httpMethod, String path, String expected) {
+    assertEquals(expected, RequestMetrics.methodOf(httpMethod, path));
+  }
+
+  //---------------------------------------------------------------------------
+  // record.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void record_whenLatencyExceedsLastBucket_thenUsesOverflowBucket() {
+    var metrics = new RequestMetrics();
+    var recorder = metrics.recorder("backend", "GET items");
+
+    recorder.record(Duration.ofMillis(1).toNanos(), 200, 1, 100);
+    recorder.record(Duration.ofMillis(7).toNanos(), 200, 1, 100);
+    recorder.record(Duration.ofMinutes(1).toNanos(), 200, 1, 100);
+
+    var buckets = metrics.statistics().get(0).latencyBuckets();
+    assertEquals(1, buckets.get("5"));
+    assertEquals(1, buckets.get("10"));
+    assertEquals(1, buckets.get("+Inf"));
+    assertEquals(0, buckets.get("10000"));
+  }
+
+  @Test
+  public void record_whenRequestsRetriedOrFailed_thenUpdatesCounters() {
+    var metrics = new RequestMetrics();
+    var recorder = metrics.recorder("backend", "GET items");
+
+    recorder.record(Duration.ofMillis(10).toNanos(), 200, 3, 100);
+    recorder.record(Duration.ofMillis(30).toNanos(), 404, 1, 50);
+    recorder.record(Duration.ofMillis(20).toNanos(), RequestMetrics.NO_RESPONSE, 2, 0);
+
+    var statistics = metrics.statistics().get(0);
+    assertEquals("backend", statistics.backend());
+    assertEquals("GET items", statistics.method());
+    assertEquals(3, statistics.requests());
+    assertEquals(3, statistics.retries());
+    assertEquals(150, statistics.responseBytes());
+    assertEquals(Duration.ofMillis(20), statistics.meanLatency());
+    assertEquals(
+      Map.of(200, 1L, 404, 1L, RequestMetrics.NO_RESPONSE, 1L),
+      statistics.statusCodes());
+  }
+
+  @Test
+  public void record_whenStatusCodeOutOfRange_thenRecordsNoResponse() {
+    var metrics = new RequestMetrics();
+    metrics.recorder("backend", "GET items").record(0, 1000, 1, 0);
+
+    assertEquals(
+      Map.of(RequestMetrics.NO_RESPONSE, 1L),
+      metrics.statistics().get(0).statusCodes());
+  }
+
+  //---------------------------------------------------------------------------
+  // recorder.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void recorder_whenCalledTwice_thenReturnsSameRecorder() {
+    var metrics = new RequestMetrics();
+
+    assertSame(
+      metrics.recorder("backend", "GET items"),
+      metrics.recorder("backend", "GET items"));
+    assertNotSame(
+      metrics.recorder("backend", "GET items"),
+      metrics.recorder("other", "GET items"));
+  }
+
+  //---------------------------------------------------------------------------
+  // statistics.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void statistics_whenEmpty() {
+    assertTrue(new RequestMetrics().statistics().isEmpty());
+  }
+
+  @Test
+  public void statistics_isOrderedByBackendAndMethod() {
+    var metrics = new RequestMetrics();
+    metrics.recorder("b", "GET y").record(0, 200, 1, 0);
+    metrics.recorder("b", "GET x").record(0, 200, 1, 0);
+    metrics.recorder("a", "GET z").record(0, 200, 1, 0);
+
+    var statistics = metrics.statistics();
+    assertEquals("a", statistics.get(0).backend());
+    assertEquals("GET x", statistics.get(1).method());
+    assertEquals("GET y", statistics.get(2).method());
+  }
+}
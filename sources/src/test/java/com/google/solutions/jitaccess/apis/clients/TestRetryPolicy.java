@@ -0,0 +1,235 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.apis.clients;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRetryPolicy {
+  private static final String BACKEND = "example.googleapis.com";
+  private static final RetryPolicy.Options OPTIONS = new RetryPolicy.Options(
+    4,
+    Duration.ofMillis(100),
+    Duration.ofSeconds(1),
+    0.1);
+
+  //---------------------------------------------------------------------------
+  // Options.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void options_whenMaxBackoffLessThanInitialBackoff_thenThrowsException() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new RetryPolicy.Options(4, Duration.ofSeconds(2), Duration.ofSeconds(1), 0.1));
+  }
+
+  @Test
+  public void options_whenMaxAttemptsNotPositive_thenThrowsException() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new RetryPolicy.Options(0, Duration.ofSeconds(1), Duration.ofSeconds(1), 0.1));
+  }
+
+  //---------------------------------------------------------------------------
+  // isRetryable.
+  //---------------------------------------------------------------------------
+
+  @ParameterizedTest
+  @ValueSource(ints = {429, 503})
+  public void isRetryable_whenRequestNotProcessed_thenReturnsTrue(int statusCode) {
+    assertTrue(RetryPolicy.isRetryable(statusCode, "GET"));
+    assertTrue(RetryPolicy.isRetryable(statusCode, "POST"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {500, 502, 504})
+  public void isRetryable_whenServerError_thenReturnsTrueForIdempotentMethods(int statusCode) {
+    assertTrue(RetryPolicy.isRetryable(statusCode, "GET"));
+    assertTrue(RetryPolicy.isRetryable(statusCode, "delete"));
+    assertFalse(RetryPolicy.isRetryable(statusCode, "POST"));
+    assertFalse(RetryPolicy.isRetryable(statusCode, "PATCH"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {400, 401, 403, 404, 409, 412})
+  public void isRetryable_whenClientError_thenReturnsFalse(int statusCode) {
+    assertFalse(RetryPolicy.isRetryable(statusCode, "GET"));
+  }
+
+  //---------------------------------------------------------------------------
+  // parseRetryAfter.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void parseRetryAfter_whenNullOrMalformed_thenReturnsNull() {
+    assertNull(RetryPolicy.parseRetryAfter(null, Instant.now()));
+    assertNull(RetryPolicy.parseRetryAfter("", Instant.now()));
+    assertNull(RetryPolicy.parseRetryAfter("soon", Instant.now()));
+  }
+
+  @Test
+  public void parseRetryAfter_whenSeconds() {
+    assertEquals(Duration.ofSeconds(3), RetryPolicy.parseRetryAfter(" 3 ", Instant.now()));
+    assertEquals(Duration.ZERO, RetryPolicy.parseRetryAfter("-1", Instant.now()));
+  }
+
+  @Test
+  public void parseRetryAfter_whenDate() {
+    var now = Instant.parse("2015-10-21T07:28:00Z");
+
+    assertEquals(
+      Duration.ofSeconds(5),
+      RetryPolicy.parseRetryAfter("Wed, 21 Oct 2015 07:28:05 GMT", now));
+    assertEquals(
+      Duration.ZERO,
+      RetryPolicy.parseRetryAfter("Wed, 21 Oct 2015 07:27:00 GMT", now));
+  }
+
+  //---------------------------------------------------------------------------
+  // backoff.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void backoff_whenRandomIsZero_thenReturnsHalfOfCeiling() {
+    var policy = new RetryPolicy(OPTIONS, () -> 0.0);
+
+    assertEquals(Duration.ofMillis(50), policy.backoff(1));
+    assertEquals(Duration.ofMillis(100), policy.backoff(2));
+    assertEquals(Duration.ofMillis(200), policy.backoff(3));
+  }
+
+  @Test
+  public void backoff_whenRandomIsOne_thenReturnsCeiling() {
+    var policy = new RetryPolicy(OPTIONS, () -> 1.0);
+
+    assertEquals(Duration.ofMillis(100), policy.backoff(1));
+    assertEquals(Duration.ofMillis(200), policy.backoff(2));
+    assertEquals(Duration.ofMillis(400), policy.backoff(3));
+  }
+
+  @Test
+  public void backoff_whenAttemptLarge_thenReturnsMaxBackoff() {
+    var policy = new RetryPolicy(OPTIONS, () -> 1.0);
+
+    assertEquals(OPTIONS.maxBackoff(), policy.backoff(10));
+    assertEquals(OPTIONS.maxBackoff(), policy.backoff(100));
+  }
+
+  //---------------------------------------------------------------------------
+  // nextRetryDelay.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void nextRetryDelay_whenNotRetryable_thenReturnsEmpty() {
+    var policy = new RetryPolicy(OPTIONS);
+
+    assertFalse(policy.nextRetryDelay(BACKEND, "GET", 404, null, 1).isPresent());
+    assertFalse(policy.nextRetryDelay(BACKEND, "POST", 500, null, 1).isPresent());
+
+    var statistics = policy.statistics().get(BACKEND);
+    assertEquals(2, statistics.successes());
+    assertEquals(0, statistics.failures());
+  }
+
+  @Test
+  public void nextRetryDelay_whenMaxAttemptsReached_thenReturnsEmpty() {
+    var policy = new RetryPolicy(OPTIONS, () -> 0.0);
+
+    assertTrue(policy.nextRetryDelay(BACKEND, "GET", 503, null, 1).isPresent());
+    assertTrue(policy.nextRetryDelay(BACKEND, "GET", 503, null, 2).isPresent());
+    assertTrue(policy.nextRetryDelay(BACKEND, "GET", 503, null, 3).isPresent());
+    assertFalse(policy.nextRetryDelay(BACKEND, "GET", 503, null, 4).isPresent());
+
+    var statistics = policy.statistics().get(BACKEND);
+    assertEquals(4, statistics.failures());
+    assertEquals(3, statistics.retries());
+  }
+
+  @Test
+  public void nextRetryDelay_whenRetryAfterExceedsBackoff_thenReturnsRetryAfter() {
+    var policy = new RetryPolicy(OPTIONS, () -> 0.0);
+
+    assertEquals(
+      Duration.ofSeconds(1),
+      policy.nextRetryDelay(BACKEND, "GET", 429, "1", 1).get());
+  }
+
+  @Test
+  public void nextRetryDelay_whenRetryAfterLessThanBackoff_thenReturnsBackoff() {
+    var policy = new RetryPolicy(OPTIONS, () -> 0.0);
+
+    assertEquals(
+      Duration.ofMillis(50),
+      policy.nextRetryDelay(BACKEND, "GET", 429, "0", 1).get());
+  }
+
+  @Test
+  public void nextRetryDelay_whenRetryAfterExceedsMaxBackoff_thenReturnsEmpty() {
+    var policy = new RetryPolicy(OPTIONS);
+
+    assertFalse(policy.nextRetryDelay(BACKEND, "GET", 429, "60", 1).isPresent());
+  }
+
+  @Test
+  public void nextRetryDelay_whenBudgetExhausted_thenReturnsEmpty() {
+    var policy = new RetryPolicy(OPTIONS);
+
+    //
+    // Fail enough requests to use up half the tokens.
+    //
+    for (int i = 0; i < RetryPolicy.BUDGET_TOKENS / 2 - 1; i++) {
+      assertTrue(policy.nextRetryDelay(BACKEND, "GET", 503, null, 1).isPresent());
+    }
+
+    assertFalse(policy.nextRetryDelay(BACKEND, "GET", 503, null, 1).isPresent());
+    assertEquals(1, policy.statistics().get(BACKEND).throttled());
+
+    //
+    // Other backends are unaffected.
+    //
+    assertTrue(policy.nextRetryDelay("other.googleapis.com", "GET", 503, null, 1).isPresent());
+  }
+
+  @Test
+  public void nextRetryDelay_whenRequestsSucceedAgain_thenBudgetRecovers() {
+    var policy = new RetryPolicy(OPTIONS);
+
+    for (int i = 0; i < RetryPolicy.BUDGET_TOKENS / 2; i++) {
+      policy.nextRetryDelay(BACKEND, "GET", 503, null, 1);
+    }
+
+    assertFalse(policy.nextRetryDelay(BACKEND, "GET", 503, null, 1).isPresent());
+
+    for (int i = 0; i < 30; i++) {
+      policy.recordSuccess(BACKEND);
+    }
+
+    assertTrue(policy.nextRetryDelay(BACKEND, "GET", 503, null, 1).isPresent());
+  }
+}
@@ -0,0 +1,102 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.auth;
+
+import com.google.api.client.json.GenericJson;
+import com.google.solutions.jitaccess.common.MicroBenchmark;
+import com.google.solutions.jitaccess.common.cel.Cel;
+import dev.cel.common.types.CelTypes;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures the cost of mapping a principal to an email address using
+ * a CEL expression.
+ * <p>
+ * The benchmark compares compiling the expression for each mapping
+ * (as done previously) against reusing a precompiled program, for
+ * principals that are mapped once and principals that are mapped
+ * repeatedly.
+ *
+ * @see MicroBenchmark
+ */
+public class BenchmarkEmailMapping {
+  private static final String EXPRESSION =
+    "principal.type == 'user' " +
+      "? principal.id.extract('{handle}@example.com') + '@users.example.com' " +
+      ": principal.id.extract('{handle}@example.com') + '@groups.example.com'";
+
+  private static final int WARMUP_ITERATIONS = 2_000;
+  private static final int ITERATIONS = 20_000;
+
+  /**
+   * Number of distinct principals, exceeds the size of the cache.
+   */
+  private static final int PRINCIPALS = 5_000;
+
+  private interface Mapping {
+    String map(IamPrincipalId id) throws Exception;
+  }
+
+  private static IamPrincipalId principal(int i) {
+    return new EndUserId(String.format("user-%d@example.com", i % PRINCIPALS));
+  }
+
+  private static void measure(String variant, boolean distinctPrincipals, Mapping mapping) throws Exception {
+    MicroBenchmark.measure(
+      String.format("%s, %s principals", variant, distinctPrincipals ? "distinct" : "repeated"),
+      WARMUP_ITERATIONS,
+      ITERATIONS,
+      i -> {
+        var id = principal(distinctPrincipals ? i : 0);
+        assertEquals(
+          id.value().replace("@example.com", "@users.example.com"),
+          mapping.map(id));
+      });
+  }
+
+  @Test
+  public void emailFromPrincipalId() throws Exception {
+    var compiler = Cel.createCompilerBuilder()
+      .addVar("user", CelTypes.createMap(CelTypes.STRING, CelTypes.STRING))
+      .addVar("principal", CelTypes.createMap(CelTypes.STRING, CelTypes.STRING))
+      .build();
+    var runtime = Cel.createRuntime();
+
+    Mapping recompiled = id -> (String)runtime
+      .createProgram(compiler.compile(EXPRESSION).getAst())
+      .eval(Map.of(
+        "user", new GenericJson().set("email", id.value()),
+        "principal", new GenericJson().set("type", id.type()).set("id", id.value())));
+
+    MicroBenchmark.printHeader("Variant");
+    for (var distinctPrincipals : new boolean[] { true, false }) {
+      var mapping = new EmailMapping(EXPRESSION);
+
+      measure("compile per mapping", distinctPrincipals, recompiled);
+      measure("precompiled", distinctPrincipals, id -> mapping.emailFromPrincipalId(id).value());
+    }
+  }
+}
@@ -0,0 +1,229 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.auth;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.solutions.jitaccess.apis.CustomerId;
+import com.google.solutions.jitaccess.apis.Domain;
+import com.google.solutions.jitaccess.apis.Logger;
+import com.google.solutions.jitaccess.apis.clients.CloudIdentityGroupsClient;
+import com.google.solutions.jitaccess.apis.clients.FakeGoogleApis;
+import com.google.solutions.jitaccess.apis.clients.LoadGenerator;
+import com.google.solutions.jitaccess.apis.clients.QuotaGovernor;
+import com.google.solutions.jitaccess.common.InProcessCacheStore;
+import com.google.solutions.jitaccess.common.MicroBenchmark;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures throughput and latency of resolving subjects against a
+ * local fake with realistic API latencies, individually and in bulk.
+ *
+ * @see MicroBenchmark
+ */
+public class BenchmarkSubjectResolver {
+  private static final Domain DOMAIN = new Domain("example.com", Domain.Type.PRIMARY);
+  private static final FakeGoogleApis.Latency LATENCY = FakeGoogleApis.Latency.logNormal(
+    Duration.ofMillis(40),
+    Duration.ofMillis(250));
+  private static final int USERS = 100;
+  private static final int OPERATIONS = 300;
+
+  @Test
+  public void resolvePrincipals() throws Exception {
+    //
+    // Measure the requests, not the client-side quota.
+    //
+    QuotaGovernor.configureShared(QuotaGovernor.Options.DISABLED);
+
+    var executor = Executors.newFixedThreadPool(32);
+    try (var server = FakeGoogleApis.start()) {
+      var mapping = new GroupMapping(DOMAIN);
+      var expiry = Instant.now().plus(Duration.ofHours(1));
+
+      System.out.printf("%-12s %-12s %s%n", "JIT groups", "Concurrency", LoadGenerator.Results.header());
+      for (var jitGroups : List.of(1, 10, 50)) {
+        //
+        // Let each user be a member of a few regular groups
+        // and the given number of JIT groups.
+        //
+        for (int g = 0; g < jitGroups; g++) {
+          var group = mapping.groupFromJitGroup(
+            new JitGroupId("env", "sys", String.format("g%d-%d", jitGroups, g)));
+          server.addGroup(group.email);
+          for (int u = 0; u < USERS; u++) {
+            server.addMembership(group.email, String.format("user-%d-%d@example.com", jitGroups, u), expiry);
+          }
+        }
+
+        for (int g = 0; g < 5; g++) {
+          var group = String.format("group-%d-%d@example.com", jitGroups, g);
+          server.addGroup(group);
+          for (int u = 0; u < USERS; u++) {
+            server.addMembership(group, String.format("user-%d-%d@example.com", jitGroups, u), null);
+          }
+        }
+
+        server.setLatency(LATENCY);
+
+        var resolver = new SubjectResolver(
+          new CloudIdentityGroupsClient(
+            GoogleCredentials.create(new AccessToken("token", null)),
+            new CloudIdentityGroupsClient.Options(new CustomerId("C123")),
+            server.httpOptions()),
+          new MembershipExpiryCache(),
+          mapping,
+          new Directory(DOMAIN),
+          executor,
+          Mockito.mock(Logger.class));
+
+        for (var concurrency : List.of(1, 8, 32)) {
+          var groupCount = jitGroups;
+          var results = LoadGenerator.run(
+            OPERATIONS,
+            concurrency,
+            i -> {
+              var principals = resolver.resolvePrincipals(
+                new EndUserId(String.format("user-%d-%d@example.com", groupCount, i % USERS)),
+                new Directory(DOMAIN));
+
+              //
+              // User, class principals, and groups.
+              //
+              assertEquals(4 + 5 + groupCount, principals.size());
+            });
+
+          System.out.printf("%-12d %-12d %s%n", jitGroups, concurrency, results);
+          assertEquals(0, results.errors());
+        }
+
+        server.setLatency(Duration.ZERO);
+      }
+    }
+    finally {
+      executor.shutdown();
+      QuotaGovernor.configureShared(QuotaGovernor.Options.DEFAULT);
+    }
+  }
+
+  @Test
+  public void resolvePrincipalsInBulk() throws Exception {
+    QuotaGovernor.configureShared(QuotaGovernor.Options.DISABLED);
+
+    var executor = Executors.newFixedThreadPool(32);
+    try (var server = FakeGoogleApis.start()) {
+      var mapping = new GroupMapping(DOMAIN);
+      var expiry = Instant.now().plus(Duration.ofHours(1));
+      var jitGroups = 5;
+
+      System.out.printf("%-8s %-24s %-12s %s%n", "Users", "Variant", "Requests", "ms");
+      for (var userCount : List.of(100, 1000)) {
+        var users = IntStream.range(0, userCount)
+          .mapToObj(u -> new EndUserId(String.format("bulk-%d-%d@example.com", userCount, u)))
+          .toList();
+
+        for (int g = 0; g < jitGroups; g++) {
+          var group = mapping.groupFromJitGroup(
+            new JitGroupId("env", "sys", String.format("bulk-%d-%d", userCount, g)));
+          server.addGroup(group.email);
+          for (var user : users) {
+            server.addMembership(group.email, user.email, expiry);
+          }
+        }
+
+        server.setLatency(FakeGoogleApis.Latency.uniform(
+          Duration.ofMillis(5),
+          Duration.ofMillis(10)));
+
+        var groupsClient = new CloudIdentityGroupsClient(
+          GoogleCredentials.create(new AccessToken("token", null)),
+          new CloudIdentityGroupsClient.Options(new CustomerId("C123")),
+          server.httpOptions());
+
+        //
+        // Resolve users one by one, as callers would have to
+        // without the bulk API.
+        //
+        var individualResolver = new SubjectResolver(
+          groupsClient,
+          new MembershipExpiryCache(),
+          mapping,
+          new Directory(DOMAIN),
+          executor,
+          Mockito.mock(Logger.class));
+        measure(server, userCount, "individual", () -> {
+          for (var user : users) {
+            assertEquals(4 + jitGroups, individualResolver.resolvePrincipals(user, new Directory(DOMAIN)).size());
+          }
+        });
+
+        var cachedResolver = new CachedSubjectResolver(
+          groupsClient,
+          new MembershipExpiryCache(),
+          mapping,
+          executor,
+          Mockito.mock(Logger.class),
+          new InProcessCacheStore(10_000),
+          new CachedSubjectResolver.Options(Duration.ofMinutes(5), new Directory(DOMAIN)));
+        for (var variant : List.of("bulk", "bulk, cached")) {
+          measure(server, userCount, variant, () -> {
+            var principals = cachedResolver.resolvePrincipals(users, u -> new Directory(DOMAIN));
+            assertEquals(userCount, principals.size());
+            assertTrue(principals.values().stream().allMatch(p -> p.size() == 4 + jitGroups));
+          });
+        }
+
+        server.setLatency(Duration.ZERO);
+      }
+    }
+    finally {
+      executor.shutdown();
+      QuotaGovernor.configureShared(QuotaGovernor.Options.DEFAULT);
+    }
+  }
+
+  private interface Operation {
+    void run() throws Exception;
+  }
+
+  private static void measure(
+    FakeGoogleApis server,
+    int users,
+    String variant,
+    Operation operation
+  ) throws Exception {
+    var requests = server.requestCount();
+    var millis = MicroBenchmark.run(0, 1, i -> operation.run()).elapsed().toMillis();
+
+    System.out.printf("%-8d %-24s %-12d %d%n", users, variant, server.requestCount() - requests, millis);
+  }
+}
@@ -23,14 +23,32 @@ package com.google.solutions.jitaccess.auth;
 
 import com.google.solutions.jitaccess.apis.Domain;
 import com.google.solutions.jitaccess.apis.Logger;
+import com.google.api.services.cloudidentity.v1.model.EntityKey;
+import com.google.api.services.cloudidentity.v1.model.MembershipRelation;
+import com.google.solutions.jitaccess.apis.clients.AccessDeniedException;
+import com.google.solutions.jitaccess.apis.clients.BackendUnavailableException;
 import com.google.solutions.jitaccess.apis.clients.CloudIdentityGroupsClient;
+import com.google.solutions.jitaccess.apis.clients.QuotaExceededException;
+import com.google.solutions.jitaccess.apis.clients.ResourceNotFoundException;
+import com.google.solutions.jitaccess.catalog.EventIds;
+import com.google.solutions.jitaccess.common.CacheStore;
+import com.google.solutions.jitaccess.common.InProcessCacheStore;
+import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -48,14 +66,16 @@ public class TestCachedSubjectResolver {
     var mapping = new GroupMapping(SAMPLE_DOMAIN);
 
     var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
-    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER)))
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
       .thenReturn(List.of());
 
     var resolver = new CachedSubjectResolver(
       groupsClient,
+      new MembershipExpiryCache(),
       mapping,
       EXECUTOR,
       Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
       new CachedSubjectResolver.Options(
         Duration.ofMinutes(1),
         new Directory(SAMPLE_DOMAIN)));
@@ -63,6 +83,704 @@ public class TestCachedSubjectResolver {
     resolver.resolveGroupPrincipals(SAMPLE_USER); // Triggers load
     resolver.resolveGroupPrincipals(SAMPLE_USER); // Triggers cache
 
-    verify(groupsClient, times(1)).listMembershipsByUser(eq(SAMPLE_USER));
+    verify(groupsClient, times(1)).listMembershipsByUser(eq(SAMPLE_USER), any());
+  }
+
+  @Test
+  public void resolve_whenBackendUnavailable_thenReturnsLastKnownPrincipals() throws Exception {
+    var mapping = new GroupMapping(SAMPLE_DOMAIN);
+    var group = new GroupId("group@example.com");
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenReturn(List.of(new MembershipRelation().setGroupKey(new EntityKey().setId(group.email))))
+      .thenThrow(new BackendUnavailableException("mock"));
+
+    var logger = Mockito.mock(Logger.class);
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      mapping,
+      EXECUTOR,
+      logger,
+      new InProcessCacheStore(100),
+      new CachedSubjectResolver.Options(
+        Duration.ofNanos(1),
+        Duration.ofNanos(1),
+        100,
+        new Directory(SAMPLE_DOMAIN),
+        Duration.ofMinutes(1)));
+
+    var principals = resolver.resolveGroupPrincipals(SAMPLE_USER);
+    assertEquals(Set.of(new Principal(group)), principals);
+
+    assertEquals(principals, resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    verify(groupsClient, times(2)).listMembershipsByUser(eq(SAMPLE_USER), any());
+    verify(logger, times(1)).warn(
+      eq(EventIds.SUBJECT_RESOLUTION),
+      anyString(),
+      eq(SAMPLE_USER));
+  }
+
+  @Test
+  public void resolve_whenBackendUnavailableAndNoLastKnownPrincipals_thenThrowsException() throws Exception {
+    var mapping = new GroupMapping(SAMPLE_DOMAIN);
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenThrow(new BackendUnavailableException("mock"));
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      mapping,
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      new CachedSubjectResolver.Options(
+        Duration.ofMinutes(1),
+        Duration.ofMinutes(1),
+        100,
+        new Directory(SAMPLE_DOMAIN),
+        Duration.ofMinutes(1)));
+
+    assertThrows(
+      BackendUnavailableException.class,
+      () -> resolver.resolveGroupPrincipals(SAMPLE_USER));
+  }
+
+  @Test
+  public void resolve_whenEntryNeedsRefresh_thenReturnsPreviousPrincipalsWhileRefreshing() throws Exception {
+    var mapping = new GroupMapping(SAMPLE_DOMAIN);
+    var group1 = new GroupId("group-1@example.com");
+    var group2 = new GroupId("group-2@example.com");
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenReturn(List.of(new MembershipRelation().setGroupKey(new EntityKey().setId(group1.email))))
+      .thenReturn(List.of(new MembershipRelation().setGroupKey(new EntityKey().setId(group2.email))));
+
+    //
+    // Queue background work instead of running it.
+    //
+    var pendingTasks = new LinkedList<Runnable>();
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      mapping,
+      pendingTasks::add,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      new CachedSubjectResolver.Options(
+        Duration.ofNanos(1),
+        Duration.ofMinutes(1),
+        100,
+        new Directory(SAMPLE_DOMAIN),
+        Duration.ofMinutes(1)));
+
+    assertEquals(Set.of(new Principal(group1)), resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    //
+    // Entry is due for a refresh, but the refresh doesn't block.
+    //
+    assertEquals(Set.of(new Principal(group1)), resolver.resolveGroupPrincipals(SAMPLE_USER));
+    assertEquals(1, pendingTasks.size());
+    verify(groupsClient, times(1)).listMembershipsByUser(eq(SAMPLE_USER), any());
+
+    pendingTasks.removeFirst().run();
+
+    assertEquals(Set.of(new Principal(group2)), resolver.resolveGroupPrincipals(SAMPLE_USER));
+    verify(groupsClient, times(2)).listMembershipsByUser(eq(SAMPLE_USER), any());
+  }
+
+  //---------------------------------------------------------------------------
+  // onJitGroupMembershipProvisioned
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void onJitGroupMembershipProvisioned_whenPrincipalsCached_thenUpdatesPrincipals() throws Exception {
+    var mapping = new GroupMapping(SAMPLE_DOMAIN);
+    var jitGroup = new JitGroupId("env-1", "sys-1", "grp-1");
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenReturn(List.of());
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      mapping,
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      new CachedSubjectResolver.Options(
+        Duration.ofMinutes(1),
+        new Directory(SAMPLE_DOMAIN)));
+
+    assertEquals(Set.of(), resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    var expiry = Instant.now().plusSeconds(60);
+    resolver.onJitGroupMembershipProvisioned(SAMPLE_USER, jitGroup, expiry);
+    assertEquals(Set.of(new Principal(jitGroup, expiry)), resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    //
+    // Extending the membership replaces the principal.
+    //
+    resolver.onJitGroupMembershipProvisioned(SAMPLE_USER, jitGroup, expiry.plusSeconds(60));
+    assertEquals(
+      Set.of(new Principal(jitGroup, expiry.plusSeconds(60))),
+      resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    verify(groupsClient, times(1)).listMembershipsByUser(eq(SAMPLE_USER), any());
+  }
+
+  @Test
+  public void onJitGroupMembershipProvisioned_whenRefreshInProgress_thenRefreshDoesNotOverwriteUpdate() throws Exception {
+    var jitGroup = new JitGroupId("env-1", "sys-1", "grp-1");
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenReturn(List.of());
+
+    //
+    // Queue background work instead of running it.
+    //
+    var pendingTasks = new LinkedList<Runnable>();
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      pendingTasks::add,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      new CachedSubjectResolver.Options(
+        Duration.ofNanos(1),
+        Duration.ofMinutes(1),
+        100,
+        new Directory(SAMPLE_DOMAIN),
+        Duration.ofMinutes(1)));
+
+    assertEquals(Set.of(), resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    //
+    // Start a refresh, then provision a membership before the
+    // refresh completes.
+    //
+    assertEquals(Set.of(), resolver.resolveGroupPrincipals(SAMPLE_USER));
+    assertEquals(1, pendingTasks.size());
+
+    var expiry = Instant.now().plusSeconds(60);
+    resolver.onJitGroupMembershipProvisioned(SAMPLE_USER, jitGroup, expiry);
+
+    pendingTasks.removeFirst().run();
+    verify(groupsClient, times(2)).listMembershipsByUser(eq(SAMPLE_USER), any());
+
+    assertEquals(
+      Set.of(new Principal(jitGroup, expiry)),
+      resolver.resolveGroupPrincipals(SAMPLE_USER));
+  }
+
+  @Test
+  public void onJitGroupMembershipProvisioned_whenPrincipalsNotCached_thenDoesNotLoadPrincipals() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenReturn(List.of());
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      new CachedSubjectResolver.Options(
+        Duration.ofMinutes(1),
+        new Directory(SAMPLE_DOMAIN)));
+
+    resolver.onJitGroupMembershipProvisioned(
+      SAMPLE_USER,
+      new JitGroupId("env-1", "sys-1", "grp-1"),
+      Instant.now().plusSeconds(60));
+
+    assertEquals(0, resolver.statistics().size());
+  }
+
+  //---------------------------------------------------------------------------
+  // onJitGroupMembershipRemoved
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void onJitGroupMembershipRemoved_whenMembershipProvisioned_thenRemovesPrincipal() throws Exception {
+    var jitGroup = new JitGroupId("env-1", "sys-1", "grp-1");
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenReturn(List.of());
+
+    var cacheStore = new InProcessCacheStore(100);
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      cacheStore,
+      new CachedSubjectResolver.Options(
+        Duration.ofMinutes(1),
+        new Directory(SAMPLE_DOMAIN)));
+
+    assertEquals(Set.of(), resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    var expiry = Instant.now().plusSeconds(60);
+    resolver.onJitGroupMembershipProvisioned(SAMPLE_USER, jitGroup, expiry);
+    assertEquals(Set.of(new Principal(jitGroup, expiry)), resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    resolver.onJitGroupMembershipRemoved(SAMPLE_USER, jitGroup);
+    assertEquals(Set.of(), resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    //
+    // The removal discards the cached principals, so they're loaded again.
+    //
+    verify(groupsClient, times(2)).listMembershipsByUser(eq(SAMPLE_USER), any());
+  }
+
+  @Test
+  public void onJitGroupMembershipRemoved_whenPrincipalsNotCached_thenDoesNotLoadPrincipals() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      new CachedSubjectResolver.Options(
+        Duration.ofMinutes(1),
+        new Directory(SAMPLE_DOMAIN)));
+
+    resolver.onJitGroupMembershipRemoved(
+      SAMPLE_USER,
+      new JitGroupId("env-1", "sys-1", "grp-1"));
+
+    verify(groupsClient, times(0)).listMembershipsByUser(any(), any());
+  }
+
+  //---------------------------------------------------------------------------
+  // Shared cache.
+  //---------------------------------------------------------------------------
+
+  private static CachedSubjectResolver createResolver(
+    @NotNull CloudIdentityGroupsClient groupsClient,
+    @NotNull CacheStore sharedCacheStore
+  ) {
+    return new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      sharedCacheStore,
+      new CachedSubjectResolver.Options(
+        Duration.ofMinutes(1),
+        new Directory(SAMPLE_DOMAIN)));
+  }
+
+  @Test
+  public void resolve_whenPrincipalsInSharedCache_thenDoesNotLoad() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenReturn(List.of());
+
+    var sharedCacheStore = new InProcessCacheStore(100);
+    var resolver1 = createResolver(groupsClient, sharedCacheStore);
+    var resolver2 = createResolver(groupsClient, sharedCacheStore);
+
+    resolver1.resolveGroupPrincipals(SAMPLE_USER); // Triggers load
+    resolver2.resolveGroupPrincipals(SAMPLE_USER); // Triggers shared cache hit
+
+    verify(groupsClient, times(1)).listMembershipsByUser(eq(SAMPLE_USER), any());
+    assertEquals(0, resolver1.sharedCacheStatistics().hits());
+    assertEquals(1, resolver2.sharedCacheStatistics().hits());
+  }
+
+  @Test
+  public void resolve_whenSharedCacheFails_thenLoads() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenReturn(List.of());
+
+    var sharedCacheStore = Mockito.mock(CacheStore.class);
+    when(sharedCacheStore.get(anyString())).thenThrow(new IOException("mock"));
+    doThrow(new IOException("mock")).when(sharedCacheStore).put(anyString(), any(), any());
+
+    var resolver = createResolver(groupsClient, sharedCacheStore);
+
+    assertEquals(Set.of(), resolver.resolveGroupPrincipals(SAMPLE_USER));
+    assertEquals(2, resolver.sharedCacheStatistics().errors());
+  }
+
+  @Test
+  public void onJitGroupMembershipProvisioned_whenPrincipalsCached_thenUpdatesSharedCache() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenReturn(List.of());
+
+    var sharedCacheStore = new InProcessCacheStore(100);
+    var resolver1 = createResolver(groupsClient, sharedCacheStore);
+    var resolver2 = createResolver(groupsClient, sharedCacheStore);
+
+    var jitGroup = new JitGroupId("env-1", "sys-1", "grp-1");
+    var expiry = Instant.ofEpochSecond(Instant.now().getEpochSecond() + 60, 123);
+
+    resolver1.resolveGroupPrincipals(SAMPLE_USER);
+    resolver1.onJitGroupMembershipProvisioned(SAMPLE_USER, jitGroup, expiry);
+
+    assertEquals(
+      Set.of(new Principal(jitGroup, expiry)),
+      resolver2.resolveGroupPrincipals(SAMPLE_USER));
+    verify(groupsClient, times(1)).listMembershipsByUser(eq(SAMPLE_USER), any());
+  }
+
+  //---------------------------------------------------------------------------
+  // statistics
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void statistics() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenReturn(List.of());
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      new CachedSubjectResolver.Options(
+        Duration.ofMinutes(1),
+        new Directory(SAMPLE_DOMAIN)));
+
+    resolver.resolveGroupPrincipals(SAMPLE_USER);
+    resolver.resolveGroupPrincipals(SAMPLE_USER);
+    resolver.resolveGroupPrincipals(SAMPLE_USER);
+
+    var statistics = resolver.statistics();
+    assertEquals(1, statistics.size());
+    assertEquals(2, statistics.hits());
+    assertEquals(1, statistics.misses());
+    assertEquals(1, statistics.loads());
+    assertEquals(0, statistics.loadFailures());
+  }
+
+  //---------------------------------------------------------------------------
+  // resolvePrincipals (bulk)
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void resolvePrincipals_whenSomeUsersCached_thenResolvesOthersAndCachesThem() throws Exception {
+    var otherUser = new EndUserId("other@example.com");
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenReturn(List.of());
+    when(groupsClient.listMembershipsByUserAsync(eq(otherUser), any()))
+      .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      new CachedSubjectResolver.Options(
+        Duration.ofMinutes(1),
+        new Directory(SAMPLE_DOMAIN)));
+
+    resolver.resolveGroupPrincipals(SAMPLE_USER);
+
+    var principals = resolver.resolvePrincipals(
+      List.of(SAMPLE_USER, otherUser),
+      user -> Directory.CONSUMER);
+    assertEquals(Set.of(SAMPLE_USER, otherUser), principals.keySet());
+
+    resolver.resolveGroupPrincipals(otherUser);
+
+    verify(groupsClient, never()).listMembershipsByUserAsync(eq(SAMPLE_USER), any());
+    verify(groupsClient, times(1)).listMembershipsByUserAsync(eq(otherUser), any());
+    verify(groupsClient, never()).listMembershipsByUser(eq(otherUser), any());
+  }
+
+  @Test
+  public void resolvePrincipals_whenPrincipalsInSharedCache_thenDoesNotLoad() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    var sharedCacheStore = new InProcessCacheStore(100);
+
+    var instance1 = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      sharedCacheStore,
+      new CachedSubjectResolver.Options(
+        Duration.ofMinutes(1),
+        new Directory(SAMPLE_DOMAIN)));
+    var instance2 = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      sharedCacheStore,
+      new CachedSubjectResolver.Options(
+        Duration.ofMinutes(1),
+        new Directory(SAMPLE_DOMAIN)));
+
+    when(groupsClient.listMembershipsByUserAsync(eq(SAMPLE_USER), any()))
+      .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+    instance1.resolvePrincipals(List.of(SAMPLE_USER), user -> Directory.CONSUMER);
+    instance2.resolvePrincipals(List.of(SAMPLE_USER), user -> Directory.CONSUMER);
+
+    verify(groupsClient, times(1)).listMembershipsByUserAsync(eq(SAMPLE_USER), any());
+  }
+
+  @Test
+  public void resolvePrincipals_whenBackendUnavailable_thenReturnsLastKnownPrincipals() throws Exception {
+    var group = new GroupId("group@example.com");
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUserAsync(eq(SAMPLE_USER), any()))
+      .thenReturn(CompletableFuture.completedFuture(
+        List.of(new MembershipRelation().setGroupKey(new EntityKey().setId(group.email)))))
+      .thenReturn(CompletableFuture.failedFuture(new BackendUnavailableException("mock")));
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      new CachedSubjectResolver.Options(
+        Duration.ofNanos(1),
+        Duration.ofNanos(1),
+        100,
+        new Directory(SAMPLE_DOMAIN),
+        Duration.ofMinutes(1)));
+
+    var principals = resolver.resolvePrincipals(List.of(SAMPLE_USER), user -> Directory.CONSUMER);
+    assertEquals(principals, resolver.resolvePrincipals(List.of(SAMPLE_USER), user -> Directory.CONSUMER));
+
+    verify(groupsClient, times(2)).listMembershipsByUserAsync(eq(SAMPLE_USER), any());
+  }
+
+  //---------------------------------------------------------------------------
+  // Negative caching
+  //---------------------------------------------------------------------------
+
+  private static CachedSubjectResolver.Options negativeCachingOptions(
+    Duration negativeCacheDuration,
+    Duration maximumNegativeCacheDuration
+  ) {
+    return new CachedSubjectResolver.Options(
+      Duration.ofMinutes(1),
+      Duration.ofMinutes(1),
+      100,
+      new Directory(SAMPLE_DOMAIN),
+      Duration.ofMinutes(1),
+      negativeCacheDuration,
+      maximumNegativeCacheDuration);
+  }
+
+  @Test
+  public void resolve_whenUserNotFound_thenRejectsRepeatedLookupsLocally() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenThrow(new ResourceNotFoundException("mock"));
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      negativeCachingOptions(Duration.ofMinutes(1), Duration.ofMinutes(5)));
+
+    assertThrows(AccessDeniedException.class, () -> resolver.resolveGroupPrincipals(SAMPLE_USER));
+    assertThrows(AccessDeniedException.class, () -> resolver.resolveGroupPrincipals(SAMPLE_USER));
+    assertThrows(AccessDeniedException.class, () -> resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    verify(groupsClient, times(1)).listMembershipsByUser(eq(SAMPLE_USER), any());
+
+    var statistics = resolver.statistics();
+    assertEquals(1, statistics.failedUsers());
+    assertEquals(2, statistics.rejections());
+  }
+
+  @Test
+  public void resolve_whenNegativeCacheDurationElapsed_thenRetries() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenThrow(new ResourceNotFoundException("mock"))
+      .thenReturn(List.of());
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      negativeCachingOptions(Duration.ofMillis(1), Duration.ofMinutes(1)));
+
+    assertThrows(AccessDeniedException.class, () -> resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    Thread.sleep(10);
+
+    assertEquals(Set.of(), resolver.resolveGroupPrincipals(SAMPLE_USER));
+    assertEquals(0, resolver.statistics().failedUsers());
+  }
+
+  @Test
+  public void resolve_whenBackendUnavailable_thenDoesNotRejectLocally() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenThrow(new BackendUnavailableException("mock"));
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      negativeCachingOptions(Duration.ofMinutes(1), Duration.ofMinutes(5)));
+
+    assertThrows(IOException.class, () -> resolver.resolveGroupPrincipals(SAMPLE_USER));
+    assertThrows(IOException.class, () -> resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    verify(groupsClient, times(2)).listMembershipsByUser(eq(SAMPLE_USER), any());
+  }
+
+  @Test
+  public void resolve_whenAccessDenied_thenDoesNotRejectLocally() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenThrow(new AccessDeniedException("mock"))
+      .thenReturn(List.of());
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      negativeCachingOptions(Duration.ofMinutes(1), Duration.ofMinutes(5)));
+
+    assertThrows(AccessDeniedException.class, () -> resolver.resolveGroupPrincipals(SAMPLE_USER));
+    assertEquals(Set.of(), resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    verify(groupsClient, times(2)).listMembershipsByUser(eq(SAMPLE_USER), any());
+
+    var statistics = resolver.statistics();
+    assertEquals(0, statistics.failedUsers());
+    assertEquals(0, statistics.rejections());
+  }
+
+  @Test
+  public void resolve_whenQuotaExceeded_thenDoesNotRejectLocally() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
+      .thenThrow(new QuotaExceededException("mock", null))
+      .thenReturn(List.of());
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      negativeCachingOptions(Duration.ofMinutes(1), Duration.ofMinutes(5)));
+
+    assertThrows(QuotaExceededException.class, () -> resolver.resolveGroupPrincipals(SAMPLE_USER));
+    assertEquals(Set.of(), resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    verify(groupsClient, times(2)).listMembershipsByUser(eq(SAMPLE_USER), any());
+
+    var statistics = resolver.statistics();
+    assertEquals(0, statistics.failedUsers());
+    assertEquals(0, statistics.rejections());
+  }
+
+  @Test
+  public void resolvePrincipals_whenUserNotFound_thenRejectsLaterLookups() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUserAsync(eq(SAMPLE_USER), any()))
+      .thenReturn(CompletableFuture.failedFuture(new ResourceNotFoundException("mock")));
+
+    var resolver = new CachedSubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class),
+      new InProcessCacheStore(100),
+      negativeCachingOptions(Duration.ofMinutes(1), Duration.ofMinutes(5)));
+
+    assertEquals(
+      Map.of(),
+      resolver.resolvePrincipals(List.of(SAMPLE_USER), user -> Directory.CONSUMER));
+    assertEquals(
+      Map.of(),
+      resolver.resolvePrincipals(List.of(SAMPLE_USER), user -> Directory.CONSUMER));
+    assertThrows(AccessDeniedException.class, () -> resolver.resolveGroupPrincipals(SAMPLE_USER));
+
+    verify(groupsClient, times(1)).listMembershipsByUserAsync(eq(SAMPLE_USER), any());
+    verify(groupsClient, never()).listMembershipsByUser(eq(SAMPLE_USER), any());
+  }
+
+  @Test
+  public void negativeCacheDuration_whenFailuresRepeat_thenDoublesUpToMaximum() {
+    var options = negativeCachingOptions(Duration.ofSeconds(10), Duration.ofSeconds(60));
+
+    assertEquals(Duration.ofSeconds(10), CachedSubjectResolver.negativeCacheDuration(options, 1));
+    assertEquals(Duration.ofSeconds(20), CachedSubjectResolver.negativeCacheDuration(options, 2));
+    assertEquals(Duration.ofSeconds(40), CachedSubjectResolver.negativeCacheDuration(options, 3));
+    assertEquals(Duration.ofSeconds(60), CachedSubjectResolver.negativeCacheDuration(options, 4));
+    assertEquals(Duration.ofSeconds(60), CachedSubjectResolver.negativeCacheDuration(options, 100));
+  }
+
+  //---------------------------------------------------------------------------
+  // Options
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void options_whenMaxStalenessLessThanRefreshInterval_thenThrowsException() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new CachedSubjectResolver.Options(
+        Duration.ofMinutes(1),
+        Duration.ofSeconds(30),
+        100,
+        new Directory(SAMPLE_DOMAIN),
+        Duration.ofMinutes(1)));
+  }
+
+  @Test
+  public void options_whenMaximumNegativeCacheDurationLessThanNegativeCacheDuration_thenThrowsException() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> negativeCachingOptions(Duration.ofMinutes(2), Duration.ofMinutes(1)));
   }
 }
@@ -26,6 +26,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class TestEmailMapping {
@@ -107,10 +108,38 @@ public class TestEmailMapping {
 
   @Test
   public void emailFromPrincipalId_whenExpressionInvalid() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new EmailMapping("user.email.extract("));
+  }
+
+  @Test
+  public void emailFromPrincipalId_whenExpressionDoesNotReturnString() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new EmailMapping("size(principal.id)"));
+  }
+
+  @Test
+  public void emailFromPrincipalId_whenEvaluationFails() {
+    var mapping = new EmailMapping("principal.email");
+
     assertThrows(
       EmailMapping.MappingException.class,
-      () -> new EmailMapping("user.email.extract(")
-        .emailFromPrincipalId(new EndUserId("user@example.com"))
-        .value());
+      () -> mapping.emailFromPrincipalId(new EndUserId("user@example.com")));
+  }
+
+  @Test
+  public void emailFromPrincipalId_whenCalledRepeatedly_thenReturnsSameResult() {
+    var mapping = new EmailMapping("principal.id.extract('{handle}@example.com') + '@test.example.com'");
+
+    var first = mapping.emailFromPrincipalId(new EndUserId("user@example.com"));
+    var second = mapping.emailFromPrincipalId(new EndUserId("user@example.com"));
+
+    assertEquals("user@test.example.com", first.value());
+    assertSame(first, second);
+    assertEquals(
+      "group@test.example.com",
+      mapping.emailFromPrincipalId(new GroupId("group@example.com")).value());
   }
 }
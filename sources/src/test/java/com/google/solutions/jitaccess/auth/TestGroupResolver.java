@@ -23,16 +23,25 @@ package com.google.solutions.jitaccess.auth;
 
 import com.google.api.services.cloudidentity.v1.model.EntityKey;
 import com.google.api.services.cloudidentity.v1.model.Membership;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.solutions.jitaccess.apis.clients.AccessDeniedException;
 import com.google.solutions.jitaccess.apis.clients.CloudIdentityGroupsClient;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TestGroupResolver {
@@ -80,12 +89,12 @@ public class TestGroupResolver {
     var member2 = new GroupId("member-1@example.com");
 
     var groupsClient = mock(CloudIdentityGroupsClient.class);
-    when(groupsClient.listMemberships(TEST_GROUP_1))
-      .thenReturn(List.of(new Membership()
+    when(groupsClient.streamMemberships(eq(TEST_GROUP_1), any()))
+      .thenReturn(Stream.of(new Membership()
         .setType("SERVICE_ACCOUNT")
         .setPreferredMemberKey(new EntityKey().setId("sa@example.com"))));
-    when(groupsClient.listMemberships(TEST_GROUP_2))
-      .thenReturn(List.of(
+    when(groupsClient.streamMemberships(eq(TEST_GROUP_2), any()))
+      .thenReturn(Stream.of(
         new Membership()
           .setType("USER")
           .setPreferredMemberKey(new EntityKey().setId(member1.email)),
@@ -108,4 +117,133 @@ public class TestGroupResolver {
     assertTrue(outputSet.contains(member1));
     assertTrue(outputSet.contains(member2));
   }
+
+  @Test
+  public void expand_whenFetchingPageFails_thenThrowsAccessException() throws Exception {
+    var groupsClient = mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.streamMemberships(eq(TEST_GROUP_1), any()))
+      .thenReturn(Stream.generate(() -> {
+        throw new UncheckedExecutionException(new AccessDeniedException("mock"));
+      }));
+
+    var expander = new GroupResolver(groupsClient, new SynchronousExecutor());
+
+    assertThrows(
+      AccessDeniedException.class,
+      () -> expander.expand(Set.of(TEST_GROUP_1)));
+  }
+
+  //---------------------------------------------------------------------------
+  // expandTransitively.
+  //---------------------------------------------------------------------------
+
+  private static Membership userMembership(EndUserId user) {
+    return new Membership()
+      .setType("USER")
+      .setPreferredMemberKey(new EntityKey().setId(user.email));
+  }
+
+  private static Membership groupMembership(GroupId group) {
+    return new Membership()
+      .setType("GROUP")
+      .setPreferredMemberKey(new EntityKey().setId(group.email));
+  }
+
+  private static void addMembers(
+    CloudIdentityGroupsClient groupsClient,
+    GroupId group,
+    Membership... members
+  ) throws Exception {
+    when(groupsClient.streamMemberships(eq(group), any()))
+      .thenAnswer(invocation -> Stream.of(members));
+  }
+
+  @Test
+  public void expandTransitively_whenGroupsNested() throws Exception {
+    var groupsClient = mock(CloudIdentityGroupsClient.class);
+    addMembers(groupsClient, TEST_GROUP_1, userMembership(TEST_USER_1), groupMembership(TEST_GROUP_2));
+    addMembers(groupsClient, TEST_GROUP_2, userMembership(TEST_USER_2));
+
+    var expander = new GroupResolver(groupsClient, new SynchronousExecutor());
+
+    assertEquals(
+      Set.of(TEST_USER_1, TEST_USER_2),
+      expander.expandTransitively(Set.of(TEST_GROUP_1)));
+
+    var statistics = expander.statistics();
+    assertEquals(1, statistics.expansions());
+    assertEquals(2, statistics.expandedGroups());
+    assertEquals(0, statistics.truncatedExpansions());
+  }
+
+  @Test
+  public void expandTransitively_whenGroupsContainEachOther() throws Exception {
+    var groupsClient = mock(CloudIdentityGroupsClient.class);
+    addMembers(groupsClient, TEST_GROUP_1, userMembership(TEST_USER_1), groupMembership(TEST_GROUP_2));
+    addMembers(groupsClient, TEST_GROUP_2, userMembership(TEST_USER_2), groupMembership(TEST_GROUP_1));
+
+    var expander = new GroupResolver(groupsClient, new SynchronousExecutor());
+
+    assertEquals(
+      Set.of(TEST_USER_1, TEST_USER_2),
+      expander.expandTransitively(Set.of(TEST_GROUP_1, TEST_USER_1)));
+    verify(groupsClient, times(1)).streamMemberships(eq(TEST_GROUP_1), any());
+    verify(groupsClient, times(1)).streamMemberships(eq(TEST_GROUP_2), any());
+  }
+
+  @Test
+  public void expandTransitively_whenMaxDepthExceeded_thenRetainsGroups() throws Exception {
+    var groupsClient = mock(CloudIdentityGroupsClient.class);
+    addMembers(groupsClient, TEST_GROUP_1, userMembership(TEST_USER_1), groupMembership(TEST_GROUP_2));
+    addMembers(groupsClient, TEST_GROUP_2, userMembership(TEST_USER_2));
+
+    var expander = new GroupResolver(
+      groupsClient,
+      new SynchronousExecutor(),
+      new GroupResolver.Options(1, Duration.ofMinutes(1), 10));
+
+    assertEquals(
+      Set.of(TEST_USER_1, TEST_GROUP_2),
+      expander.expandTransitively(Set.of(TEST_GROUP_1)));
+    assertEquals(1, expander.statistics().truncatedExpansions());
+  }
+
+  @Test
+  public void expandTransitively_whenCalledRepeatedly_thenUsesCache() throws Exception {
+    var groupsClient = mock(CloudIdentityGroupsClient.class);
+    addMembers(groupsClient, TEST_GROUP_1, userMembership(TEST_USER_1), groupMembership(TEST_GROUP_2));
+    addMembers(groupsClient, TEST_GROUP_2, userMembership(TEST_USER_2));
+
+    var expander = new GroupResolver(groupsClient, new SynchronousExecutor());
+
+    expander.expandTransitively(Set.of(TEST_GROUP_1));
+    expander.expandTransitively(Set.of(TEST_GROUP_1));
+    expander.expand(Set.of(TEST_GROUP_2));
+
+    verify(groupsClient, times(1)).streamMemberships(eq(TEST_GROUP_1), any());
+    verify(groupsClient, times(1)).streamMemberships(eq(TEST_GROUP_2), any());
+
+    var statistics = expander.statistics();
+    assertEquals(2, statistics.cacheSize());
+    assertEquals(3, statistics.cacheHits());
+    assertEquals(2, statistics.cacheMisses());
+    assertEquals(0.6, statistics.cacheHitRatio(), 0.01);
+    assertEquals(2.0, statistics.averageFanOut(), 0.01);
+  }
+
+  @Test
+  public void expandTransitively_whenCacheDisabled_thenLooksUpMembersAgain() throws Exception {
+    var groupsClient = mock(CloudIdentityGroupsClient.class);
+    addMembers(groupsClient, TEST_GROUP_1, userMembership(TEST_USER_1));
+
+    var expander = new GroupResolver(
+      groupsClient,
+      new SynchronousExecutor(),
+      new GroupResolver.Options(10, Duration.ZERO, 10));
+
+    expander.expandTransitively(Set.of(TEST_GROUP_1));
+    expander.expandTransitively(Set.of(TEST_GROUP_1));
+
+    verify(groupsClient, times(2)).streamMemberships(eq(TEST_GROUP_1), any());
+  }
 }
@@ -0,0 +1,96 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+
+package com.google.solutions.jitaccess.auth;
+
+import com.google.solutions.jitaccess.apis.clients.CloudIdentityGroupsClient;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestMembershipExpiryCache {
+  private static final CloudIdentityGroupsClient.MembershipId SAMPLE_MEMBERSHIP =
+    new CloudIdentityGroupsClient.MembershipId("groups/1/memberships/1");
+  private static final Instant NOW = Instant.parse("2030-01-01T00:00:00Z");
+
+  //---------------------------------------------------------------------------
+  // get.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void get_whenNotCached() {
+    var cache = new MembershipExpiryCache(() -> NOW);
+
+    assertNull(cache.get(SAMPLE_MEMBERSHIP));
+    assertEquals(1, cache.statistics().misses());
+  }
+
+  @Test
+  public void get_whenCached() {
+    var cache = new MembershipExpiryCache(() -> NOW);
+    var expiry = NOW.plusSeconds(60);
+    cache.put(SAMPLE_MEMBERSHIP, expiry);
+
+    assertEquals(expiry, cache.get(SAMPLE_MEMBERSHIP));
+    assertEquals(1, cache.statistics().hits());
+  }
+
+  @Test
+  public void get_whenExpired() {
+    var clock = new AtomicReference<>(NOW);
+    var cache = new MembershipExpiryCache(clock::get);
+    cache.put(SAMPLE_MEMBERSHIP, NOW.plusSeconds(60));
+
+    clock.set(NOW.plusSeconds(60));
+
+    assertNull(cache.get(SAMPLE_MEMBERSHIP));
+    assertEquals(0, cache.statistics().size());
+  }
+
+  //---------------------------------------------------------------------------
+  // put.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void put_whenAlreadyExpired() {
+    var cache = new MembershipExpiryCache(() -> NOW);
+    cache.put(SAMPLE_MEMBERSHIP, NOW.minusSeconds(1));
+
+    assertEquals(0, cache.statistics().size());
+  }
+
+  //---------------------------------------------------------------------------
+  // invalidate.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void invalidate() {
+    var cache = new MembershipExpiryCache(() -> NOW);
+    cache.put(SAMPLE_MEMBERSHIP, NOW.plusSeconds(60));
+    cache.invalidate(SAMPLE_MEMBERSHIP);
+
+    assertNull(cache.get(SAMPLE_MEMBERSHIP));
+  }
+}
@@ -0,0 +1,101 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPrincipalHandles {
+  private static final GroupId GROUP_1 = new GroupId("group-1@example.com");
+  private static final GroupId GROUP_2 = new GroupId("group-2@example.com");
+  private static final EndUserId USER = new EndUserId("user@example.com");
+
+  //---------------------------------------------------------------------------
+  // of.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void of_whenPrincipalsNotRegistered_thenOmitsPrincipals() {
+    var registry = new PrincipalRegistry();
+    var group1 = registry.register(GROUP_1);
+
+    var handles = PrincipalHandles.of(
+      Set.of(new Principal(GROUP_1), new Principal(GROUP_2), new Principal(USER)),
+      registry);
+
+    assertEquals(1, handles.size());
+    assertTrue(handles.contains(group1));
+    assertFalse(handles.contains(PrincipalRegistry.UNREGISTERED));
+  }
+
+  @Test
+  public void of_whenPrincipalsExpired_thenOmitsPrincipals() {
+    var registry = new PrincipalRegistry();
+    var group1 = registry.register(GROUP_1);
+    var group2 = registry.register(GROUP_2);
+
+    var handles = PrincipalHandles.of(
+      Set.of(
+        new Principal(GROUP_1, Instant.now().minusSeconds(1)),
+        new Principal(GROUP_2, Instant.now().plusSeconds(60))),
+      registry);
+
+    assertEquals(1, handles.size());
+    assertFalse(handles.contains(group1));
+    assertTrue(handles.contains(group2));
+  }
+
+  //---------------------------------------------------------------------------
+  // isCurrent.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void isCurrent_whenPrincipalExpired() throws Exception {
+    var registry = new PrincipalRegistry();
+    var group1 = registry.register(GROUP_1);
+
+    var handles = PrincipalHandles.of(
+      Set.of(new Principal(GROUP_1, Instant.now().plusMillis(200))),
+      registry);
+    assertTrue(handles.contains(group1));
+
+    Thread.sleep(250);
+
+    assertFalse(handles.isCurrent());
+  }
+
+  @Test
+  public void isCurrent_whenPrincipalRegisteredSince() {
+    var registry = new PrincipalRegistry();
+    registry.register(GROUP_1);
+
+    var handles = PrincipalHandles.of(Set.of(new Principal(GROUP_1)), registry);
+    assertTrue(handles.isCurrent());
+
+    registry.register(GROUP_2);
+    assertFalse(handles.isCurrent());
+  }
+}
@@ -0,0 +1,148 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPrincipalRegistry {
+  //---------------------------------------------------------------------------
+  // register.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void register_whenRegisteredBefore_thenReturnsSameHandle() {
+    var registry = new PrincipalRegistry();
+
+    var handle = registry.register(new GroupId("group@example.com"));
+
+    assertEquals(handle, registry.register(new GroupId("group@example.com")));
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  public void register_assignsDenseHandles() {
+    var registry = new PrincipalRegistry();
+
+    assertEquals(0, registry.register(new GroupId("group@example.com")));
+    assertEquals(1, registry.register(new EndUserId("user@example.com")));
+    assertEquals(2, registry.register(ClassPrincipalSet.IAP_USERS));
+    assertEquals(3, registry.size());
+  }
+
+  @Test
+  public void register_whenRegisteredBefore_thenVersionIsUnchanged() {
+    var registry = new PrincipalRegistry();
+    assertEquals(0, registry.version());
+
+    registry.register(new GroupId("group@example.com"));
+    assertEquals(1, registry.version());
+
+    registry.register(new GroupId("group@example.com"));
+    assertEquals(1, registry.version());
+  }
+
+  @Test
+  public void register_whenRegisteringConcurrently_thenCurrentHandlesContainAllPrincipals() throws Exception {
+    var registry = new PrincipalRegistry();
+    var principals = IntStream.range(0, 2000)
+      .mapToObj(i -> new Principal(new GroupId(String.format("group-%d@example.com", i))))
+      .toList();
+
+    var executor = Executors.newFixedThreadPool(5);
+    try {
+      var start = new CountDownLatch(1);
+
+      //
+      // Take snapshots while other threads register the principals.
+      //
+      Future<List<PrincipalHandles>> snapshots = executor.submit(() -> {
+        start.await();
+        var result = new ArrayList<PrincipalHandles>();
+        while (registry.size() < principals.size()) {
+          result.add(PrincipalHandles.of(principals, registry));
+        }
+        result.add(PrincipalHandles.of(principals, registry));
+        return result;
+      });
+
+      var registrations = new ArrayList<Future<?>>();
+      for (int t = 0; t < 4; t++) {
+        var offset = t;
+        registrations.add(executor.submit(() -> {
+          start.await();
+          for (int i = offset; i < principals.size(); i += 4) {
+            registry.register(principals.get(i).id());
+          }
+          return null;
+        }));
+      }
+
+      start.countDown();
+      for (var registration : registrations) {
+        registration.get(30, TimeUnit.SECONDS);
+      }
+
+      //
+      // A snapshot that's still current must not have missed
+      // any of the principals.
+      //
+      for (var snapshot : snapshots.get(30, TimeUnit.SECONDS)) {
+        if (snapshot.isCurrent()) {
+          assertEquals(principals.size(), snapshot.size());
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  //---------------------------------------------------------------------------
+  // lookup.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void lookup_whenNotRegistered() {
+    var registry = new PrincipalRegistry();
+
+    assertEquals(PrincipalRegistry.UNREGISTERED, registry.lookup(new GroupId("group@example.com")));
+    assertEquals(0, registry.size());
+  }
+
+  @Test
+  public void lookup_whenRegistered() {
+    var registry = new PrincipalRegistry();
+    var handle = registry.register(new GroupId("group@example.com"));
+
+    assertEquals(handle, registry.lookup(new GroupId("group@example.com")));
+  }
+}
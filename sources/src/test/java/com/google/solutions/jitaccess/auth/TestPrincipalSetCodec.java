@@ -0,0 +1,94 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.auth;
+
+import com.google.solutions.jitaccess.apis.ProjectId;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPrincipalSetCodec {
+  private static final PrincipalSetCodec CODEC = new PrincipalSetCodec();
+
+  //---------------------------------------------------------------------------
+  // encode/decode.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void decode_whenEmpty() throws Exception {
+    assertEquals(Set.of(), CODEC.decode(CODEC.encode(Set.of())));
+  }
+
+  @Test
+  public void decode_whenEncodedByEncode() throws Exception {
+    var principals = Set.of(
+      new Principal(new EndUserId("user@example.com")),
+      new Principal(new GroupId("group@example.com")),
+      new Principal(new GroupId("group-with-expiry@example.com"), Instant.ofEpochSecond(1700000000, 123)),
+      new Principal(new JitGroupId("env-1", "sys-1", "grp-1"), Instant.ofEpochSecond(1700000000)),
+      new Principal(ClassPrincipalSet.IAP_USERS),
+      new Principal(ClassPrincipalSet.INTERNAL_USERS),
+      new Principal(CloudIdentityDirectoryPrincipalSet.parse("domain:example.com").get()));
+
+    assertEquals(principals, CODEC.decode(CODEC.encode(principals)));
+  }
+
+  @Test
+  public void encode_whenPrincipalTypeUnsupported_thenThrowsException() {
+    var principals = Set.of(new Principal(new ServiceAccountId("sa", new ProjectId("project-1"))));
+
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> CODEC.encode(principals));
+  }
+
+  @Test
+  public void decode_whenVersionUnsupported_thenThrowsException() {
+    assertThrows(
+      IOException.class,
+      () -> CODEC.decode(new byte[] { 2, 0 }));
+  }
+
+  @Test
+  public void decode_whenTagUnknown_thenThrowsException() {
+    assertThrows(
+      IOException.class,
+      () -> CODEC.decode(new byte[] { 1, 1, 9 }));
+  }
+
+  @Test
+  public void decode_whenTruncated_thenThrowsException() throws Exception {
+    var encoded = CODEC.encode(Set.of(new Principal(new GroupId("group@example.com"))));
+
+    for (int length = 0; length < encoded.length; length++) {
+      var truncated = Arrays.copyOf(encoded, length);
+      assertThrows(
+        IOException.class,
+        () -> CODEC.decode(truncated));
+    }
+  }
+}
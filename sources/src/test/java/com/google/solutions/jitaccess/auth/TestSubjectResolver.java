@@ -24,6 +24,7 @@ package com.google.solutions.jitaccess.auth;
 import com.google.api.services.cloudidentity.v1.model.*;
 import com.google.solutions.jitaccess.apis.Domain;
 import com.google.solutions.jitaccess.apis.Logger;
+import com.google.solutions.jitaccess.apis.clients.AccessDeniedException;
 import com.google.solutions.jitaccess.apis.clients.CloudIdentityGroupsClient;
 import com.google.solutions.jitaccess.apis.clients.ResourceNotFoundException;
 import com.google.solutions.jitaccess.catalog.EventIds;
@@ -32,10 +33,14 @@ import org.mockito.Mockito;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -58,8 +63,8 @@ public class TestSubjectResolver {
     var membershipId = new CloudIdentityGroupsClient.MembershipId("m1");
 
     var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
-    when(groupsClient.getMembership(eq(membershipId)))
-      .thenReturn(new Membership()
+    when(groupsClient.getMemberships(eq(List.of(membershipId))))
+      .thenReturn(Map.of(membershipId, new Membership()
         .setPreferredMemberKey(new EntityKey().setId(SAMPLE_USER.email))
         .setRoles(List.of(
           new MembershipRole()
@@ -69,10 +74,11 @@ public class TestSubjectResolver {
             .setExpiryDetail(new ExpiryDetail().setExpireTime("2031-01-01T00:00:00Z")),
           new MembershipRole()
             .setName("MEMBER")
-            .setExpiryDetail(new ExpiryDetail().setExpireTime("2030-01-01T00:00:00Z")))));
+            .setExpiryDetail(new ExpiryDetail().setExpireTime("2030-01-01T00:00:00Z"))))));
 
     var resolver = new SubjectResolver(
       groupsClient,
+      new MembershipExpiryCache(),
       mapping,
       new Directory(SAMPLE_DOMAIN),
       EXECUTOR,
@@ -91,22 +97,58 @@ public class TestSubjectResolver {
     assertEquals(Instant.parse("2030-01-01T00:00:00Z"), principal.expiry());
   }
 
+  @Test
+  public void resolveJitGroupMemberships_whenExpiryCached_thenSkipsLookup() throws Exception {
+    var mapping = new GroupMapping(SAMPLE_DOMAIN);
+    var membershipId = new CloudIdentityGroupsClient.MembershipId("m1");
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.getMemberships(eq(List.of(membershipId))))
+      .thenReturn(Map.of(membershipId, new Membership()
+        .setPreferredMemberKey(new EntityKey().setId(SAMPLE_USER.email))
+        .setRoles(List.of(new MembershipRole()
+          .setName("MEMBER")
+          .setExpiryDetail(new ExpiryDetail().setExpireTime("2030-01-01T00:00:00Z"))))));
+
+    var resolver = new SubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      mapping,
+      new Directory(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class));
+
+    var memberships = List.of(new SubjectResolver.UnresolvedMembership(
+      mapping.groupFromJitGroup(SAMPLE_JITGROUP),
+      membershipId));
+
+    var principals = resolver.resolveJitGroupMemberships(SAMPLE_USER, memberships);
+    assertEquals(principals, resolver.resolveJitGroupMemberships(SAMPLE_USER, memberships));
+
+    var principal = principals.stream().findFirst().get();
+    assertEquals(SAMPLE_JITGROUP, principal.id());
+    assertEquals(Instant.parse("2030-01-01T00:00:00Z"), principal.expiry());
+
+    verify(groupsClient, times(1)).getMemberships(any());
+  }
+
   @Test
   public void resolveJitGroupMemberships_whenGroupLacksExpiry_thenGrouplIsIgnored() throws Exception {
     var mapping = new GroupMapping(SAMPLE_DOMAIN);
     var membershipId = new CloudIdentityGroupsClient.MembershipId("m1");
 
     var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
-    when(groupsClient.getMembership(eq(membershipId)))
-      .thenReturn(new Membership()
+    when(groupsClient.getMemberships(eq(List.of(membershipId))))
+      .thenReturn(Map.of(membershipId, new Membership()
         .setPreferredMemberKey(new EntityKey().setId(SAMPLE_USER.email))
         .setRoles(List.of(
           new MembershipRole()
-            .setName("OWNER"))));
+            .setName("OWNER")))));
 
     var logger = Mockito.mock(Logger.class);
     var resolver = new SubjectResolver(
       groupsClient,
+      new MembershipExpiryCache(),
       mapping,
       new Directory(SAMPLE_DOMAIN),
       EXECUTOR,
@@ -123,17 +165,18 @@ public class TestSubjectResolver {
   }
 
   @Test
-  public void resolveJitGroupMemberships_whenLookupFails_thenGroupIsIgnored() throws Exception {
+  public void resolveJitGroupMemberships_whenMembershipNotFound_thenGroupIsIgnored() throws Exception {
     var mapping = new GroupMapping(SAMPLE_DOMAIN);
     var membershipId = new CloudIdentityGroupsClient.MembershipId("m1");
 
     var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
-    when(groupsClient.getMembership(eq(membershipId)))
-      .thenThrow(new ResourceNotFoundException("mock"));
+    when(groupsClient.getMemberships(eq(List.of(membershipId))))
+      .thenReturn(Map.of());
 
     var logger = Mockito.mock(Logger.class);
     var resolver = new SubjectResolver(
       groupsClient,
+      new MembershipExpiryCache(),
       mapping,
       new Directory(SAMPLE_DOMAIN),
       EXECUTOR,
@@ -148,6 +191,76 @@ public class TestSubjectResolver {
     assertEquals(0, principals.size());
   }
 
+  @Test
+  public void resolveJitGroupMemberships_whenLookupFails_thenGroupsAreIgnored() throws Exception {
+    var mapping = new GroupMapping(SAMPLE_DOMAIN);
+    var membershipId = new CloudIdentityGroupsClient.MembershipId("m1");
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.getMemberships(eq(List.of(membershipId))))
+      .thenThrow(new AccessDeniedException("mock"));
+
+    var logger = Mockito.mock(Logger.class);
+    var resolver = new SubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      mapping,
+      new Directory(SAMPLE_DOMAIN),
+      EXECUTOR,
+      logger);
+
+    var principals = resolver.resolveJitGroupMemberships(
+      SAMPLE_USER,
+      List.of(new SubjectResolver.UnresolvedMembership(
+        mapping.groupFromJitGroup(SAMPLE_JITGROUP),
+        membershipId)));
+
+    assertEquals(0, principals.size());
+    verify(logger, times(1)).error(eq(EventIds.SUBJECT_RESOLUTION), anyString(), any(Exception.class));
+  }
+
+  @Test
+  public void resolveJitGroupMemberships_whenMultipleMemberships_thenLooksUpMembershipsInSingleCall() throws Exception {
+    var mapping = new GroupMapping(SAMPLE_DOMAIN);
+    var jitGroup2 = new JitGroupId("env-1", "sys-1", "grp-2");
+    var membershipId1 = new CloudIdentityGroupsClient.MembershipId("m1");
+    var membershipId2 = new CloudIdentityGroupsClient.MembershipId("m2");
+
+    var membership = new Membership()
+      .setPreferredMemberKey(new EntityKey().setId(SAMPLE_USER.email))
+      .setRoles(List.of(
+        new MembershipRole()
+          .setName("MEMBER")
+          .setExpiryDetail(new ExpiryDetail().setExpireTime("2030-01-01T00:00:00Z"))));
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.getMemberships(eq(List.of(membershipId1, membershipId2))))
+      .thenReturn(Map.of(membershipId1, membership, membershipId2, membership));
+
+    var resolver = new SubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      mapping,
+      new Directory(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class));
+
+    var principals = resolver.resolveJitGroupMemberships(
+        SAMPLE_USER,
+        List.of(
+          new SubjectResolver.UnresolvedMembership(mapping.groupFromJitGroup(SAMPLE_JITGROUP), membershipId1),
+          new SubjectResolver.UnresolvedMembership(mapping.groupFromJitGroup(jitGroup2), membershipId2)))
+      .stream()
+      .map(p -> p.id())
+      .collect(Collectors.toSet());
+
+    assertEquals(2, principals.size());
+    assertTrue(principals.contains(SAMPLE_JITGROUP));
+    assertTrue(principals.contains(jitGroup2));
+    verify(groupsClient, times(1)).getMemberships(anyList());
+    verify(groupsClient, never()).getMembership(any(CloudIdentityGroupsClient.MembershipId.class));
+  }
+
   //---------------------------------------------------------------------------
   // resolveGroupPrincipals
   //---------------------------------------------------------------------------
@@ -157,23 +270,24 @@ public class TestSubjectResolver {
     var mapping = new GroupMapping(SAMPLE_DOMAIN);
 
     var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
-    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER)))
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
       .thenReturn(List.of(
         new MembershipRelation()
           .setGroupKey(new EntityKey().setId(SAMPLE_GROUP.email)),
         new MembershipRelation()
           .setGroupKey(new EntityKey().setId(mapping.groupFromJitGroup(SAMPLE_JITGROUP).email))
           .setMembership("m1")));
-    when(groupsClient.getMembership(eq(new CloudIdentityGroupsClient.MembershipId("m1"))))
-      .thenReturn(new Membership()
+    when(groupsClient.getMemberships(eq(List.of(new CloudIdentityGroupsClient.MembershipId("m1")))))
+      .thenReturn(Map.of(new CloudIdentityGroupsClient.MembershipId("m1"), new Membership()
         .setPreferredMemberKey(new EntityKey().setId(SAMPLE_USER.email))
         .setRoles(List.of(
           new MembershipRole()
             .setName("MEMBER")
-            .setExpiryDetail(new ExpiryDetail().setExpireTime("2030-01-01T00:00:00Z")))));
+            .setExpiryDetail(new ExpiryDetail().setExpireTime("2030-01-01T00:00:00Z"))))));
 
     var resolver = new SubjectResolver(
       groupsClient,
+      new MembershipExpiryCache(),
       mapping,
       new Directory(SAMPLE_DOMAIN),
       EXECUTOR,
@@ -198,11 +312,12 @@ public class TestSubjectResolver {
     var mapping = new GroupMapping(SAMPLE_DOMAIN);
 
     var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
-    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER)))
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
       .thenReturn(List.of());
 
     var resolver = new SubjectResolver(
       groupsClient,
+      new MembershipExpiryCache(),
       mapping,
       new Directory(SAMPLE_DOMAIN),
       EXECUTOR,
@@ -225,11 +340,12 @@ public class TestSubjectResolver {
     var mapping = new GroupMapping(SAMPLE_DOMAIN);
 
     var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
-    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER)))
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
       .thenReturn(List.of());
 
     var resolver = new SubjectResolver(
       groupsClient,
+      new MembershipExpiryCache(),
       mapping,
       new Directory(SAMPLE_DOMAIN),
       EXECUTOR,
@@ -252,11 +368,12 @@ public class TestSubjectResolver {
     var mapping = new GroupMapping(SAMPLE_DOMAIN);
 
     var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
-    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER)))
+    when(groupsClient.listMembershipsByUser(eq(SAMPLE_USER), any()))
       .thenReturn(List.of());
 
     var resolver = new SubjectResolver(
       groupsClient,
+      new MembershipExpiryCache(),
       mapping,
       new Directory(SAMPLE_DOMAIN),
       EXECUTOR,
@@ -272,4 +389,148 @@ public class TestSubjectResolver {
     assertTrue(principals.contains(ClassPrincipalSet.IAP_USERS), "All");
     assertTrue(principals.contains(ClassPrincipalSet.EXTERNAL_USERS), "External");
   }
+
+  //---------------------------------------------------------------------------
+  // resolvePrincipals (bulk)
+  //---------------------------------------------------------------------------
+
+  private static MembershipRelation jitGroupMembership(
+    GroupMapping mapping,
+    JitGroupId group,
+    String membershipId
+  ) {
+    return new MembershipRelation()
+      .setGroupKey(new EntityKey().setId(mapping.groupFromJitGroup(group).email))
+      .setMembership(membershipId);
+  }
+
+  private static Membership temporaryMembership(EndUserId user, String expiry) {
+    return new Membership()
+      .setPreferredMemberKey(new EntityKey().setId(user.email))
+      .setRoles(List.of(new MembershipRole()
+        .setName("MEMBER")
+        .setExpiryDetail(new ExpiryDetail().setExpireTime(expiry))));
+  }
+
+  @Test
+  public void resolvePrincipals_whenMultipleUsers_thenLooksUpMembershipsInSingleCall() throws Exception {
+    var mapping = new GroupMapping(SAMPLE_DOMAIN);
+    var otherUser = new EndUserId("other@example.com");
+    var membershipId1 = new CloudIdentityGroupsClient.MembershipId("m1");
+    var membershipId2 = new CloudIdentityGroupsClient.MembershipId("m2");
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUserAsync(eq(SAMPLE_USER), any()))
+      .thenReturn(CompletableFuture.completedFuture(List.of(
+        jitGroupMembership(mapping, SAMPLE_JITGROUP, membershipId1.id()),
+        new MembershipRelation().setGroupKey(new EntityKey().setId(SAMPLE_GROUP.email)))));
+    when(groupsClient.listMembershipsByUserAsync(eq(otherUser), any()))
+      .thenReturn(CompletableFuture.completedFuture(List.of(
+        jitGroupMembership(mapping, SAMPLE_JITGROUP, membershipId2.id()))));
+    when(groupsClient.getMemberships(any()))
+      .thenReturn(Map.of(
+        membershipId1, temporaryMembership(SAMPLE_USER, "2030-01-01T00:00:00Z"),
+        membershipId2, temporaryMembership(otherUser, "2031-01-01T00:00:00Z")));
+
+    var resolver = new SubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      mapping,
+      new Directory(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class));
+
+    var principals = resolver.resolvePrincipals(
+      List.of(SAMPLE_USER, otherUser),
+      user -> new Directory(SAMPLE_DOMAIN));
+
+    assertEquals(2, principals.size());
+    assertTrue(principals.get(SAMPLE_USER).contains(
+      new Principal(SAMPLE_JITGROUP, Instant.parse("2030-01-01T00:00:00Z"))));
+    assertTrue(principals.get(SAMPLE_USER).contains(new Principal(SAMPLE_GROUP)));
+    assertTrue(principals.get(SAMPLE_USER).contains(new Principal(ClassPrincipalSet.INTERNAL_USERS)));
+    assertTrue(principals.get(otherUser).contains(
+      new Principal(SAMPLE_JITGROUP, Instant.parse("2031-01-01T00:00:00Z"))));
+    assertTrue(principals.get(otherUser).contains(new Principal(otherUser)));
+
+    verify(groupsClient, times(1)).getMemberships(eq(List.of(membershipId1, membershipId2)));
+  }
+
+  @Test
+  public void resolvePrincipals_whenUserNotFound_thenUserIsOmitted() throws Exception {
+    var otherUser = new EndUserId("other@example.com");
+
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUserAsync(eq(SAMPLE_USER), any()))
+      .thenReturn(CompletableFuture.completedFuture(List.of()));
+    when(groupsClient.listMembershipsByUserAsync(eq(otherUser), any()))
+      .thenReturn(CompletableFuture.failedFuture(new ResourceNotFoundException("mock")));
+
+    var resolver = new SubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      new Directory(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class));
+
+    var principals = resolver.resolvePrincipals(
+      List.of(SAMPLE_USER, otherUser),
+      user -> Directory.CONSUMER);
+
+    assertEquals(Set.of(SAMPLE_USER), principals.keySet());
+    verify(groupsClient, never()).getMemberships(any());
+  }
+
+  @Test
+  public void resolvePrincipals_whenLookupFails_thenThrowsException() throws Exception {
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUserAsync(eq(SAMPLE_USER), any()))
+      .thenReturn(CompletableFuture.failedFuture(new AccessDeniedException("mock")));
+
+    var resolver = new SubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      new Directory(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class));
+
+    assertThrows(
+      AccessDeniedException.class,
+      () -> resolver.resolvePrincipals(List.of(SAMPLE_USER), user -> Directory.CONSUMER));
+  }
+
+  @Test
+  public void resolvePrincipals_whenOneLookupFails_thenCancelsOutstandingLookups() throws Exception {
+    var otherUser = new EndUserId("other@example.com");
+    var thirdUser = new EndUserId("third@example.com");
+
+    var pendingLookup = new CompletableFuture<List<MembershipRelation>>();
+    var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+    when(groupsClient.listMembershipsByUserAsync(eq(SAMPLE_USER), any()))
+      .thenReturn(pendingLookup);
+    when(groupsClient.listMembershipsByUserAsync(eq(otherUser), any()))
+      .thenReturn(CompletableFuture.failedFuture(new AccessDeniedException("mock")));
+
+    var resolver = new SubjectResolver(
+      groupsClient,
+      new MembershipExpiryCache(),
+      new GroupMapping(SAMPLE_DOMAIN),
+      new Directory(SAMPLE_DOMAIN),
+      EXECUTOR,
+      Mockito.mock(Logger.class));
+
+    //
+    // The failure doesn't wait for the pending lookup to complete.
+    //
+    assertThrows(
+      AccessDeniedException.class,
+      () -> resolver.resolvePrincipals(
+        List.of(SAMPLE_USER, otherUser, thirdUser),
+        user -> Directory.CONSUMER));
+
+    verify(groupsClient, never()).listMembershipsByUserAsync(eq(thirdUser), any());
+    verify(groupsClient, never()).getMemberships(any());
+  }
 }
@@ -0,0 +1,94 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+
+package com.google.solutions.jitaccess.catalog.legacy;
+
+import com.google.api.services.cloudresourcemanager.v3.model.Project;
+import com.google.solutions.jitaccess.apis.Logger;
+import com.google.solutions.jitaccess.apis.clients.AssetInventoryClient;
+import com.google.solutions.jitaccess.apis.clients.QuotaGovernor;
+import com.google.solutions.jitaccess.apis.clients.ResourceManagerClient;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.when;
+
+public class TestLegacyPolicyLoader {
+  private static final String SCOPE = "folders/1";
+
+  //---------------------------------------------------------------------------
+  // load.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void load_whenLoadedInBackground_thenProjectBindingsAreLoadedInBackground() throws Exception {
+    var resourceManagerClient = Mockito.mock(ResourceManagerClient.class);
+    when(resourceManagerClient.streamProjects(anyString()))
+      .thenAnswer(a -> Stream.of(new Project()
+        .setName("projects/123")
+        .setProjectId("project-1")));
+
+    var priorities = new ArrayList<QuotaGovernor.Priority>();
+    var assetInventoryClient = Mockito.mock(AssetInventoryClient.class);
+    when(assetInventoryClient.getEffectiveIamPolicies(eq(SCOPE), anyString()))
+      .thenAnswer(a -> {
+        priorities.add(QuotaGovernor.currentPriority());
+        return List.of();
+      });
+
+    var loader = new LegacyPolicyLoader(
+      () -> resourceManagerClient,
+      () -> assetInventoryClient);
+
+    LegacyPolicy policy;
+    try (var background = QuotaGovernor.backgroundScope()) {
+      policy = loader.load(
+        "query",
+        SCOPE,
+        Duration.ofMinutes(1),
+        "",
+        "",
+        Mockito.mock(Logger.class));
+    }
+
+    assertEquals(List.of(QuotaGovernor.Priority.BACKGROUND), priorities);
+
+    //
+    // Project bindings are loaded lazily, outside the scope.
+    //
+    assertEquals(QuotaGovernor.Priority.INTERACTIVE, QuotaGovernor.currentPriority());
+    assertEquals(1, policy.systems().size());
+    policy.systems().iterator().next().groups();
+
+    assertEquals(
+      List.of(QuotaGovernor.Priority.BACKGROUND, QuotaGovernor.Priority.BACKGROUND),
+      priorities);
+    assertEquals(QuotaGovernor.Priority.INTERACTIVE, QuotaGovernor.currentPriority());
+  }
+}
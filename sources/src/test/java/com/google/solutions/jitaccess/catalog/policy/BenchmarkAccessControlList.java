@@ -0,0 +1,143 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.catalog.policy;
+
+import com.google.solutions.jitaccess.auth.*;
+import com.google.solutions.jitaccess.common.MicroBenchmark;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares access checks that use principal IDs against access checks
+ * that use principal handles, for subjects with different numbers
+ * of groups.
+ * <p>
+ * For each variant, the benchmark reports the time and the number of
+ * bytes allocated per access check.
+ *
+ * @see MicroBenchmark
+ */
+public class BenchmarkAccessControlList {
+  private static final EndUserId USER = new EndUserId("user@example.com");
+  private static final Directory DIRECTORY = new Directory("example.com");
+  private static final int ACL_ENTRIES = 20;
+  private static final int WARMUP_ITERATIONS = 20_000;
+  private static final int ITERATIONS = 200_000;
+  private static final int ACCESS_RIGHTS = 1;
+
+  private interface Check {
+    boolean run();
+  }
+
+  private record PrecomputedSubject(
+    @NotNull EndUserId user,
+    @NotNull Directory directory,
+    @NotNull Set<Principal> principals,
+    @NotNull PrincipalHandles principalHandles
+  ) implements PrincipalHandles.Provider {
+  }
+
+  /**
+   * Access check as implemented before principal handles, which
+   * compares each principal against each entry.
+   */
+  private static boolean isAllowedByPrincipalIds(
+    @NotNull AccessControlList acl,
+    @NotNull Subject subject
+  ) {
+    var principals = subject.principals()
+      .stream()
+      .filter(Principal::isValid)
+      .map(Principal::id)
+      .collect(Collectors.toList());
+
+    int effectiveAccessMask = 0;
+    for (var principal : principals) {
+      for (var entry : acl.entries()) {
+        if (entry.principal.equals(principal)) {
+          if (entry instanceof AccessControlList.AllowedEntry) {
+            effectiveAccessMask |= entry.accessRights;
+          }
+          else if ((entry.accessRights & ACCESS_RIGHTS) != 0) {
+            return false;
+          }
+        }
+      }
+    }
+
+    return (effectiveAccessMask & ACCESS_RIGHTS) == ACCESS_RIGHTS;
+  }
+
+  private static void measure(String variant, int groups, Check check) throws Exception {
+    MicroBenchmark.measure(
+      String.format("%d groups, %s", groups, variant),
+      WARMUP_ITERATIONS,
+      ITERATIONS,
+      i -> assertTrue(check.run()));
+  }
+
+  @Test
+  public void isAllowed() throws Exception {
+    MicroBenchmark.printHeader("Variant");
+
+    for (var groups : List.of(10, 100, 1000)) {
+      //
+      // Let the subject be a member of the given number of groups,
+      // one of which is allowed access by the ACL. The other ACL
+      // entries refer to groups that the subject isn't a member of.
+      //
+      var principals = new HashSet<Principal>();
+      principals.add(new Principal(USER));
+      principals.add(new Principal(ClassPrincipalSet.IAP_USERS));
+      principals.add(new Principal(ClassPrincipalSet.INTERNAL_USERS));
+      for (int i = 0; i < groups; i++) {
+        principals.add(new Principal(new GroupId(String.format("group-%d-%d@example.com", groups, i))));
+      }
+
+      var builder = new AccessControlList.Builder();
+      for (int i = 0; i < ACL_ENTRIES - 1; i++) {
+        builder.allow(new GroupId(String.format("other-%d@example.com", i)), ACCESS_RIGHTS);
+      }
+      builder.allow(new GroupId(String.format("group-%d-%d@example.com", groups, groups - 1)), ACCESS_RIGHTS);
+      var acl = builder.build();
+
+      var subject = new PrecomputedSubject(
+        USER,
+        DIRECTORY,
+        principals,
+        PrincipalHandles.of(principals));
+
+      measure("principal IDs", groups, () -> isAllowedByPrincipalIds(acl, subject));
+      measure("handles", groups, () -> acl.isAllowed(subject, ACCESS_RIGHTS));
+      measure("handles (uncached)", groups, () -> acl.isAllowed(
+        new PrecomputedSubject(USER, DIRECTORY, principals, PrincipalHandles.of(principals)),
+        ACCESS_RIGHTS));
+    }
+  }
+}
@@ -0,0 +1,104 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.catalog.policy;
+
+import com.google.api.client.json.GenericJson;
+import com.google.solutions.jitaccess.common.MicroBenchmark;
+import com.google.solutions.jitaccess.common.cel.Cel;
+import dev.cel.common.types.CelTypes;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures the throughput of evaluating a CEL constraint the way
+ * {@link PolicyAnalysis} does.
+ * <p>
+ * The benchmark compares compiling the expression for each evaluation
+ * (as done previously) against evaluating the constraint's precompiled
+ * program.
+ *
+ * @see MicroBenchmark
+ */
+public class BenchmarkCelConstraint {
+  private static final String EXPRESSION =
+    "subject.email.endsWith('@example.com') && " +
+      "group.environment == 'env-1' && " +
+      "size(input.justification) > 10";
+
+  private static final int WARMUP_ITERATIONS = 2_000;
+  private static final int ITERATIONS = 20_000;
+
+  private static Map<String, Object> variables(int i) {
+    return Map.of(
+      "input", new GenericJson().set("justification", "justification " + i),
+      "subject", new GenericJson()
+        .set("email", String.format("user-%d@example.com", i))
+        .set("principals", List.of("user:user@example.com")),
+      "group", new GenericJson()
+        .set("environment", "env-1")
+        .set("system", "system-1")
+        .set("name", "group-1"));
+  }
+
+  @Test
+  public void evaluate() throws Exception {
+    var runtime = Cel.createRuntime();
+    var constraint = new CelConstraint(
+      "constraint",
+      "Constraint",
+      List.of(new CelConstraint.StringVariable("justification", "Justification", 1, 100)),
+      EXPRESSION);
+
+    MicroBenchmark.printHeader("Variant");
+
+    MicroBenchmark.measure("compile per evaluation", WARMUP_ITERATIONS, ITERATIONS, i -> {
+      var compiler = Cel.createCompilerBuilder();
+      for (var variable : List.of("input", "subject", "group")) {
+        compiler.addVar(variable, CelTypes.createMap(CelTypes.STRING, CelTypes.ANY));
+      }
+
+      assertTrue((Boolean)runtime
+        .createProgram(compiler.build().compile(EXPRESSION).getAst())
+        .eval(variables(i)));
+    });
+
+    MicroBenchmark.measure("precompiled", WARMUP_ITERATIONS, ITERATIONS, i -> {
+      var check = constraint.createCheck();
+      check.input().get(0).set("justification " + i);
+
+      var subject = check.addContext("subject");
+      subject.set("email", String.format("user-%d@example.com", i));
+      subject.set("principals", List.of("user:user@example.com"));
+
+      var group = check.addContext("group");
+      group.set("environment", "env-1");
+      group.set("system", "system-1");
+      group.set("name", "group-1");
+
+      assertTrue(check.evaluate());
+    });
+  }
+}
@@ -27,6 +27,8 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -133,6 +135,31 @@ public class TestCelConstraint {
     assertTrue(issues.isEmpty());
   }
 
+  @Test
+  public void lint_whenExpressionUsesContexts() {
+    var constraint = new CelConstraint(
+      "name",
+      "display name",
+      List.of(),
+      "subject.email == 'user@example.com' && group.name == 'group-1'");
+
+    //
+    // Lint only considers the input declared.
+    //
+    assertFalse(constraint.lint().isEmpty());
+  }
+
+  @Test
+  public void lint_whenExpressionUsesUndeclaredVariable() {
+    var constraint = new CelConstraint(
+      "name",
+      "display name",
+      List.of(),
+      "undeclared.name == 'test'");
+
+    assertFalse(constraint.lint().isEmpty());
+  }
+
   //---------------------------------------------------------------------------
   // Check.
   //---------------------------------------------------------------------------
@@ -164,6 +191,65 @@ public class TestCelConstraint {
     assertTrue(check.evaluate());
   }
 
+  @Test
+  public void execute_whenEvaluatedRepeatedly_thenReusesProgram() throws Exception {
+    var constraint = new CelConstraint(
+      "name",
+      "display name",
+      List.of(),
+      "subject.email == 'user@example.com' && group.name == 'group-1'");
+
+    for (var name : List.of("group-1", "group-2", "group-1")) {
+      var check = constraint.createCheck();
+      check.addContext("subject").set("email", "user@example.com");
+      check.addContext("group").set("name", name);
+      assertEquals(name.equals("group-1"), check.evaluate());
+    }
+  }
+
+  @Test
+  public void execute_whenContextMissing_throwsException() {
+    var constraint = new CelConstraint(
+      "name",
+      "display name",
+      List.of(),
+      "subject.email == 'user@example.com' && group.name == 'group-1'");
+
+    var check = constraint.createCheck();
+    check.addContext("subject").set("email", "user@example.com");
+
+    assertThrows(
+      InvalidExpressionException.class,
+      () -> check.evaluate());
+  }
+
+  @Test
+  public void execute_whenEvaluatedConcurrently() throws Exception {
+    var constraint = new CelConstraint(
+      "name",
+      "display name",
+      List.of(new CelConstraint.LongVariable("value", "Value", 0L, 1000L)),
+      "input.value % 2 == 0");
+
+    var executor = Executors.newFixedThreadPool(4);
+    try {
+      var futures = IntStream.range(0, 100)
+        .mapToObj(i -> executor.submit(() -> {
+          var check = constraint.createCheck();
+          check.input().get(0).set(String.valueOf(i));
+          return check.evaluate() == (i % 2 == 0);
+        }))
+        .toList();
+
+      for (var future : futures) {
+        assertTrue(future.get());
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
   //---------------------------------------------------------------------------
   // Variable.
   //---------------------------------------------------------------------------
@@ -994,6 +994,32 @@ public class TestPolicyDocument {
         issues.issues().get(0).code());
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = {
+      "has(",
+      "unknown.value == 1",
+      "subject.email == 'user@example.com'",
+      "input.value == "
+    })
+    public void toPolicy_whenExpressionDoesNotCompile_thenReportsIssue(String expression) {
+      var element = new PolicyDocument.ConstraintElement(
+        "Expression",
+        "name",
+        "display name",
+        null,
+        null,
+        expression,
+        List.of());
+
+      var issues = new PolicyDocument.IssueCollection();
+      element.toPolicy(issues);
+      assertTrue(issues.containsErrors());
+      assertEquals(
+        PolicyDocument.Issue.Code.CONSTRAINT_INVALID_EXPRESSION,
+        issues.issues().get(0).code());
+    }
+
+
     @Test
     public void toPolicy_whenExpressionVariableInvalid() {
       var element = new PolicyDocument.ConstraintElement(
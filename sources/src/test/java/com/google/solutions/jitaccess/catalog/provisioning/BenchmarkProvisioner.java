@@ -0,0 +1,170 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.catalog.provisioning;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.solutions.jitaccess.apis.CustomerId;
+import com.google.solutions.jitaccess.apis.Domain;
+import com.google.solutions.jitaccess.apis.Logger;
+import com.google.solutions.jitaccess.apis.ProjectId;
+import com.google.solutions.jitaccess.apis.clients.*;
+import com.google.solutions.jitaccess.auth.EndUserId;
+import com.google.solutions.jitaccess.auth.GroupMapping;
+import com.google.solutions.jitaccess.auth.IamRole;
+import com.google.solutions.jitaccess.auth.MembershipExpiryCache;
+import com.google.solutions.jitaccess.catalog.Policies;
+import com.google.solutions.jitaccess.catalog.policy.AccessControlList;
+import com.google.solutions.jitaccess.catalog.policy.IamRoleBinding;
+import com.google.solutions.jitaccess.catalog.policy.JitGroupPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures throughput and latency of joining and reconciling JIT
+ * groups against a local fake with realistic API latencies.
+ *
+ * @see LoadGenerator
+ */
+public class BenchmarkProvisioner {
+  private static final FakeGoogleApis.Latency LATENCY = FakeGoogleApis.Latency.logNormal(
+    Duration.ofMillis(40),
+    Duration.ofMillis(250));
+  private static final int GROUPS = 20;
+  private static final int PROJECTS = 3;
+  private static final int OPERATIONS = 100;
+  private static final List<Integer> CONCURRENCY = List.of(1, 8, 32);
+
+  private FakeGoogleApis server;
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    //
+    // Measure the requests, not the client-side quota.
+    //
+    QuotaGovernor.configureShared(QuotaGovernor.Options.DISABLED);
+
+    this.server = FakeGoogleApis.start();
+    this.server.setLatency(LATENCY);
+    this.executor = Executors.newFixedThreadPool(32);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.server.close();
+    this.executor.shutdown();
+    QuotaGovernor.configureShared(QuotaGovernor.Options.DEFAULT);
+  }
+
+  private Provisioner createProvisioner() {
+    var credentials = GoogleCredentials.create(new AccessToken("token", null));
+    return new Provisioner(
+      "env-1",
+      new GroupMapping(new Domain("example.com", Domain.Type.PRIMARY)),
+      new CloudIdentityGroupsClient(
+        credentials,
+        new CloudIdentityGroupsClient.Options(new CustomerId("C123")),
+        this.server.httpOptions()),
+      new MembershipExpiryCache(),
+      new ResourceManagerClient(credentials, this.server.httpOptions()),
+      this.executor,
+      Provisioner.MembershipListener.NONE,
+      Mockito.mock(Logger.class));
+  }
+
+  /**
+   * Create groups that grant roles on a small number of projects,
+   * so that groups compete for updating the same IAM policies.
+   */
+  private static List<JitGroupPolicy> createGroups(String role) {
+    return IntStream.range(0, GROUPS)
+      .mapToObj(i -> Policies.createJitGroupPolicy(
+        "group-" + i,
+        AccessControlList.EMPTY,
+        Map.of(),
+        List.of(new IamRoleBinding(
+          new ProjectId("project-" + (i % PROJECTS)),
+          new IamRole(role)))))
+      .toList();
+  }
+
+  @Test
+  public void join() throws Exception {
+    var provisioner = createProvisioner();
+    var groups = createGroups("roles/viewer");
+    var expiry = Instant.now().plus(Duration.ofHours(1));
+
+    System.out.printf("Join%n%-12s %s%n", "Concurrency", LoadGenerator.Results.header());
+    for (var concurrency : CONCURRENCY) {
+      var results = LoadGenerator.run(
+        OPERATIONS,
+        concurrency,
+        i -> provisioner.provisionMembership(
+          groups.get(i % GROUPS),
+          new EndUserId(String.format("user-%d-%d@example.com", concurrency, i)),
+          expiry));
+
+      System.out.printf("%-12d %s%n", concurrency, results);
+      assertEquals(0, results.errors());
+    }
+  }
+
+  @Test
+  public void reconcile() throws Exception {
+    var provisioner = createProvisioner();
+    var expiry = Instant.now().plus(Duration.ofHours(1));
+
+    for (var group : createGroups("roles/viewer")) {
+      provisioner.provisionMembership(group, new EndUserId("user@example.com"), expiry);
+    }
+
+    System.out.printf("Reconcile%n%-12s %s%n", "Concurrency", LoadGenerator.Results.header());
+    for (var concurrency : CONCURRENCY) {
+      //
+      // Change the policy so that each group needs to be
+      // re-provisioned once, the remaining reconciliations
+      // are no-ops.
+      //
+      var groups = createGroups("roles/role-" + concurrency);
+      var results = LoadGenerator.run(
+        OPERATIONS,
+        concurrency,
+        i -> provisioner.reconcile(groups.get(i % GROUPS)));
+
+      System.out.printf("%-12d %s%n", concurrency, results);
+      assertEquals(0, results.errors());
+    }
+  }
+}
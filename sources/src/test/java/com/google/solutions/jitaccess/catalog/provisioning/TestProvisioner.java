@@ -25,6 +25,7 @@ import com.google.api.services.cloudidentity.v1.model.EntityKey;
 import com.google.api.services.cloudidentity.v1.model.Group;
 import com.google.api.services.cloudresourcemanager.v3.model.Binding;
 import com.google.api.services.cloudresourcemanager.v3.model.Policy;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.solutions.jitaccess.apis.*;
 import com.google.solutions.jitaccess.apis.clients.*;
 import com.google.solutions.jitaccess.auth.*;
@@ -42,7 +43,9 @@ import org.mockito.Mockito;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -84,10 +87,12 @@ public class TestProvisioner {
         new IamRoleBinding(SAMPLE_PROJECT_1, SAMPLE_ROLE_2),
         Mockito.mock(Privilege.class)));
 
+    var listener = Mockito.mock(Provisioner.MembershipListener.class);
     var provisioner = new Provisioner(
       group.id().environment(),
       groupProvisioner,
-      iamProvisioner);
+      iamProvisioner,
+      listener);
 
     var expiry = Instant.now();
     provisioner.provisionMembership(
@@ -97,6 +102,8 @@ public class TestProvisioner {
 
     verify(groupProvisioner, times(1))
       .provision(eq(group), eq(SAMPLE_USER_1), eq(expiry));
+    verify(listener, times(1))
+      .onMembershipProvisioned(eq(group.id()), eq(SAMPLE_USER_1), eq(expiry));
     verify(iamProvisioner, times(1))
       .provisionAccess(eq(new GroupId("group@example.com")), argThat(roles -> roles.size() == 2));
   }
@@ -124,7 +131,8 @@ public class TestProvisioner {
     var provisioner = new Provisioner(
       group.id().environment(),
       groupProvisioner,
-      iamProvisioner);
+      iamProvisioner,
+      Provisioner.MembershipListener.NONE);
 
     provisioner.reconcile(group);
 
@@ -152,7 +160,8 @@ public class TestProvisioner {
     var provisioner = new Provisioner(
       group.id().environment(),
       groupProvisioner,
-      iamProvisioner);
+      iamProvisioner,
+      Provisioner.MembershipListener.NONE);
 
     provisioner.reconcile(group);
 
@@ -180,7 +189,8 @@ public class TestProvisioner {
     var provisioner = new Provisioner(
       group.id().environment(),
       groupProvisioner,
-      Mockito.mock(Provisioner.IamProvisioner.class));
+      Mockito.mock(Provisioner.IamProvisioner.class),
+      Provisioner.MembershipListener.NONE);
 
     assertFalse(provisioner.cloudIdentityGroupKey(group.id()).isPresent());
   }
@@ -207,6 +217,7 @@ public class TestProvisioner {
       var provisioner = new Provisioner.GroupProvisioner(
         mapping,
         Mockito.mock(CloudIdentityGroupsClient.class),
+        new MembershipExpiryCache(),
         Mockito.mock(Logger.class));
 
       assertEquals(
@@ -229,6 +240,7 @@ public class TestProvisioner {
       var provisioner = new Provisioner.GroupProvisioner(
         Mockito.mock(GroupMapping.class),
         groupsClient,
+        new MembershipExpiryCache(),
         logger);
 
       assertFalse(provisioner.cloudIdentityGroupKey(SAMPLE_GROUP).isPresent());
@@ -247,6 +259,7 @@ public class TestProvisioner {
       var provisioner = new Provisioner.GroupProvisioner(
         Mockito.mock(GroupMapping.class),
         groupsClient,
+        new MembershipExpiryCache(),
         logger);
 
       assertTrue(provisioner.cloudIdentityGroupKey(SAMPLE_GROUP).isPresent());
@@ -268,6 +281,7 @@ public class TestProvisioner {
       var provisioner = new Provisioner.GroupProvisioner(
         Mockito.mock(GroupMapping.class),
         groupsClient,
+        new MembershipExpiryCache(),
         logger);
 
       assertFalse(provisioner.isProvisioned(SAMPLE_GROUP));
@@ -284,6 +298,7 @@ public class TestProvisioner {
       var provisioner = new Provisioner.GroupProvisioner(
         Mockito.mock(GroupMapping.class),
         groupsClient,
+        new MembershipExpiryCache(),
         logger);
 
       assertTrue(provisioner.isProvisioned(SAMPLE_GROUP));
@@ -322,6 +337,7 @@ public class TestProvisioner {
       var provisioner = new Provisioner.GroupProvisioner(
         mapping,
         groupsClient,
+        new MembershipExpiryCache(),
         logger);
 
       assertThrows(
@@ -362,9 +378,17 @@ public class TestProvisioner {
       when(groupsClient.getGroup(eq(SAMPLE_GROUP)))
         .thenReturn(new Group());
 
+      var membershipId = new CloudIdentityGroupsClient.MembershipId("m1");
+      when(groupsClient.addMembership(any(GroupKey.class), eq(SAMPLE_USER_1), any()))
+        .thenReturn(membershipId);
+
+      var membershipCache = new MembershipExpiryCache();
+      membershipCache.put(membershipId, Instant.now().plusSeconds(60));
+
       var provisioner = new Provisioner.GroupProvisioner(
         mapping,
         groupsClient,
+        membershipCache,
         Mockito.mock(Logger.class));
 
       var expiry = Instant.now();
@@ -379,6 +403,11 @@ public class TestProvisioner {
         eq(new GroupKey("1")),
         eq(SAMPLE_USER_1),
         eq(expiry));
+
+      //
+      // Cached expiry is outdated now.
+      //
+      assertNull(membershipCache.get(membershipId));
     }
 
     //---------------------------------------------------------------------------
@@ -388,10 +417,11 @@ public class TestProvisioner {
     @Test
     public void provisionedGroups() throws Exception {
       var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
-      when(groupsClient.searchGroupsByPrefix(
+      when(groupsClient.streamGroupsByPrefix(
         eq("jit.env-1."),
-        eq(false)))
-        .thenReturn(List.of(
+        eq(false),
+        any()))
+        .thenReturn(Stream.of(
           // Invalid groups
           new Group().setGroupKey(new EntityKey().setId("jit.env-1.invalid@example.com")),
           new Group().setGroupKey(new EntityKey().setId("jit.env-1.system-1.group-1@invalid.example.com")),
@@ -405,6 +435,7 @@ public class TestProvisioner {
       var provisioner = new Provisioner.GroupProvisioner(
         mapping,
         groupsClient,
+        new MembershipExpiryCache(),
         Mockito.mock(Logger.class));
 
       var groups = provisioner.provisionedGroups("env-1");
@@ -412,6 +443,28 @@ public class TestProvisioner {
       assertTrue(groups.contains(new JitGroupId("env-1", "system-1", "group-1")));
       assertTrue(groups.contains(new JitGroupId("env-1", "system-1", "group-2")));
     }
+
+    @Test
+    public void provisionedGroups_whenFetchingPageFails() throws Exception {
+      var groupsClient = Mockito.mock(CloudIdentityGroupsClient.class);
+      when(groupsClient.streamGroupsByPrefix(
+        eq("jit.env-1."),
+        eq(false),
+        any()))
+        .thenReturn(Stream.generate(() -> {
+          throw new UncheckedExecutionException(new AccessDeniedException("mock"));
+        }));
+
+      var provisioner = new Provisioner.GroupProvisioner(
+        new GroupMapping(new Domain("example.com", Domain.Type.PRIMARY)),
+        groupsClient,
+        new MembershipExpiryCache(),
+        Mockito.mock(Logger.class));
+
+      assertThrows(
+        AccessDeniedException.class,
+        () -> provisioner.provisionedGroups("env-1"));
+    }
   }
   
   @Nested
@@ -514,7 +567,7 @@ public class TestProvisioner {
         SAMPLE_GROUP,
         Set.of());
 
-      verify(resourceManagerClient, times(0)).modifyIamPolicy(any(ProjectId.class), any(), any());
+      verify(resourceManagerClient, times(0)).modifyIamPolicyAsync(any(ProjectId.class), any(), any());
       verify(groupsClient, times(0)).patchGroup(any(), any());
     }
 
@@ -536,7 +589,7 @@ public class TestProvisioner {
         SAMPLE_GROUP,
         Set.of(new IamRoleBinding(SAMPLE_PROJECT_1, SAMPLE_ROLE_1)));
 
-      verify(resourceManagerClient, times(0)).modifyIamPolicy(any(ProjectId.class), any(), any());
+      verify(resourceManagerClient, times(0)).modifyIamPolicyAsync(any(ProjectId.class), any(), any());
       verify(groupsClient, times(0)).patchGroup(any(), any());
     }
 
@@ -549,6 +602,8 @@ public class TestProvisioner {
           .setDescription("Test group #d4c347b3"));
 
       var resourceManagerClient = Mockito.mock(ResourceManagerClient.class);
+      when(resourceManagerClient.modifyIamPolicyAsync(any(ResourceId.class), any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(null));
 
       var provisioner = new Provisioner.IamProvisioner(
         groupsClient,
@@ -566,13 +621,13 @@ public class TestProvisioner {
           new IamRoleBinding(SAMPLE_ORGANIZATION, SAMPLE_ROLE_2)));
 
       verify(resourceManagerClient, times(1))
-        .modifyIamPolicy(eq(SAMPLE_PROJECT_1), any(), any());
+        .modifyIamPolicyAsync(eq(SAMPLE_PROJECT_1), any(), any());
       verify(resourceManagerClient, times(1))
-        .modifyIamPolicy(eq(SAMPLE_PROJECT_2), any(), any());
+        .modifyIamPolicyAsync(eq(SAMPLE_PROJECT_2), any(), any());
       verify(resourceManagerClient, times(1))
-        .modifyIamPolicy(eq(SAMPLE_FOLDER), any(), any());
+        .modifyIamPolicyAsync(eq(SAMPLE_FOLDER), any(), any());
       verify(resourceManagerClient, times(1))
-        .modifyIamPolicy(eq(SAMPLE_ORGANIZATION), any(), any());
+        .modifyIamPolicyAsync(eq(SAMPLE_ORGANIZATION), any(), any());
 
       verify(groupsClient, times(1)).patchGroup(
         any(),
@@ -588,9 +643,8 @@ public class TestProvisioner {
           .setDescription("Test group"));
 
       var resourceManagerClient = Mockito.mock(ResourceManagerClient.class);
-      doThrow(new AccessDeniedException("mock"))
-        .when(resourceManagerClient)
-        .modifyIamPolicy(eq(SAMPLE_PROJECT_1), any(), any());
+      when(resourceManagerClient.modifyIamPolicyAsync(eq(SAMPLE_PROJECT_1), any(), any()))
+        .thenReturn(CompletableFuture.failedFuture(new AccessDeniedException("mock")));
 
       var logger = Mockito.mock(Logger.class);
       var provisioner = new Provisioner.IamProvisioner(
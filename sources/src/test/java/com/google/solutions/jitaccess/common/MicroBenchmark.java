@@ -0,0 +1,152 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.common;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+/**
+ * Runs an operation repeatedly on the current thread and measures
+ * the time and memory it takes. Intended for benchmarks that
+ * compare variants of an implementation.
+ * <p>
+ * Benchmarks are named Benchmark* and aren't run as part of the
+ * regular build. Run them explicitly using, for example,
+ * {@code mvn test -Dtest=BenchmarkCelConstraint}.
+ */
+public class MicroBenchmark {
+  private MicroBenchmark() {
+  }
+
+  /**
+   * Print the header of a table of results, see {@link #measure}.
+   *
+   * @param label heading of the first column
+   */
+  public static void printHeader(@NotNull String label) {
+    System.out.printf("%-40s %s%n", label, Results.header());
+  }
+
+  /**
+   * Run an operation and print the results as a table row.
+   *
+   * @param label label of the row, typically the variant
+   */
+  public static @NotNull Results measure(
+    @NotNull String label,
+    int warmupIterations,
+    int iterations,
+    @NotNull Operation operation
+  ) throws Exception {
+    var results = run(warmupIterations, iterations, operation);
+    System.out.printf("%-40s %s%n", label, results);
+    return results;
+  }
+
+  /**
+   * Run an operation, without measuring the first iterations so
+   * that the JIT compiler can warm up.
+   *
+   * @param warmupIterations number of iterations to run before measuring
+   * @param iterations number of iterations to measure
+   * @param operation operation, receives the iteration number
+   */
+  @SuppressWarnings("removal")
+  public static @NotNull Results run(
+    int warmupIterations,
+    int iterations,
+    @NotNull Operation operation
+  ) throws Exception {
+    Preconditions.checkArgument(warmupIterations >= 0, "warmupIterations must not be negative");
+    Preconditions.checkArgument(iterations > 0, "iterations must be positive");
+
+    for (int i = 0; i < warmupIterations; i++) {
+      operation.run(i);
+    }
+
+    var threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    var threadId = Thread.currentThread().getId();
+
+    var bytesBefore = threadBean.getThreadAllocatedBytes(threadId);
+    var start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      operation.run(warmupIterations + i);
+    }
+    var elapsed = Duration.ofNanos(System.nanoTime() - start);
+    var bytes = threadBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+    return new Results(iterations, elapsed, bytes);
+  }
+
+  //---------------------------------------------------------------------------
+  // Inner classes.
+  //---------------------------------------------------------------------------
+
+  @FunctionalInterface
+  public interface Operation {
+    void run(int iteration) throws Exception;
+  }
+
+  /**
+   * Results of a run.
+   *
+   * @param iterations number of iterations measured
+   * @param elapsed total time
+   * @param allocatedBytes bytes allocated by the current thread
+   */
+  public record Results(
+    int iterations,
+    @NotNull Duration elapsed,
+    long allocatedBytes
+  ) {
+    public long nanosPerOperation() {
+      return this.elapsed.toNanos() / this.iterations;
+    }
+
+    public long operationsPerSecond() {
+      return this.iterations * 1_000_000_000L / Math.max(1, this.elapsed.toNanos());
+    }
+
+    public long bytesPerOperation() {
+      return this.allocatedBytes / this.iterations;
+    }
+
+    /**
+     * Header for a table of results, see {@link #toString()}.
+     */
+    public static @NotNull String header() {
+      return String.format("%-12s %-12s %s", "ns/op", "ops/s", "bytes/op");
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "%-12d %-12d %d",
+        nanosPerOperation(),
+        operationsPerSecond(),
+        bytesPerOperation());
+    }
+  }
+}
@@ -0,0 +1,130 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+
+package com.google.solutions.jitaccess.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestAuthenticatedCacheStore {
+  private static final byte[] SECRET = "secret-secret-secret".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] VALUE = new byte[] { 1, 2, 3 };
+
+  //---------------------------------------------------------------------------
+  // constructor.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void constructor_whenSecretTooShort() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new AuthenticatedCacheStore(new InProcessCacheStore(10), new byte[8]));
+  }
+
+  //---------------------------------------------------------------------------
+  // get.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void get_whenKeyNotFound() throws Exception {
+    var store = new AuthenticatedCacheStore(new InProcessCacheStore(10), SECRET);
+
+    assertFalse(store.get("key").isPresent());
+  }
+
+  @Test
+  public void get_whenValueAuthentic() throws Exception {
+    var backingStore = new InProcessCacheStore(10);
+    var store = new AuthenticatedCacheStore(backingStore, SECRET);
+
+    store.put("key", VALUE, Duration.ofMinutes(1));
+
+    assertArrayEquals(VALUE, store.get("key").get());
+    assertFalse(Arrays.equals(VALUE, backingStore.get("key").get()));
+  }
+
+  @Test
+  public void get_whenValueWrittenWithDifferentSecret() throws Exception {
+    var backingStore = new InProcessCacheStore(10);
+    new AuthenticatedCacheStore(backingStore, "other-secret-other-secret".getBytes(StandardCharsets.UTF_8))
+      .put("key", VALUE, Duration.ofMinutes(1));
+
+    var store = new AuthenticatedCacheStore(backingStore, SECRET);
+
+    assertThrows(IOException.class, () -> store.get("key"));
+  }
+
+  @Test
+  public void get_whenValueTampered() throws Exception {
+    var backingStore = new InProcessCacheStore(10);
+    var store = new AuthenticatedCacheStore(backingStore, SECRET);
+
+    store.put("key", VALUE, Duration.ofMinutes(1));
+
+    var tampered = backingStore.get("key").get();
+    tampered[tampered.length - 1] ^= 1;
+    backingStore.put("key", tampered, Duration.ofMinutes(1));
+
+    assertThrows(IOException.class, () -> store.get("key"));
+  }
+
+  @Test
+  public void get_whenValueMovedToDifferentKey() throws Exception {
+    var backingStore = new InProcessCacheStore(10);
+    var store = new AuthenticatedCacheStore(backingStore, SECRET);
+
+    store.put("key-1", VALUE, Duration.ofMinutes(1));
+    backingStore.put("key-2", backingStore.get("key-1").get(), Duration.ofMinutes(1));
+
+    assertThrows(IOException.class, () -> store.get("key-2"));
+  }
+
+  @Test
+  public void get_whenValueNotAuthenticated() throws Exception {
+    var backingStore = new InProcessCacheStore(10);
+    var store = new AuthenticatedCacheStore(backingStore, SECRET);
+
+    backingStore.put("key", VALUE, Duration.ofMinutes(1));
+
+    assertThrows(IOException.class, () -> store.get("key"));
+  }
+
+  //---------------------------------------------------------------------------
+  // remove.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void remove() throws Exception {
+    var store = new AuthenticatedCacheStore(new InProcessCacheStore(10), SECRET);
+
+    store.put("key", VALUE, Duration.ofMinutes(1));
+    store.remove("key");
+
+    assertFalse(store.get("key").isPresent());
+  }
+}
@@ -24,6 +24,7 @@ package com.google.solutions.jitaccess.common;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 
@@ -137,4 +138,43 @@ public class TestCompletableFutures {
     var aggregateException = assertInstanceOf(AggregateException.class, exception.getCause());
     assertEquals(2, aggregateException.getCauses().size());
   }
+
+  //---------------------------------------------------------------------------
+  // allOf.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void allOf_whenFuturesEmpty() throws Exception {
+    var future = CompletableFutures.<String>allOf(List.of());
+
+    var results = future.get();
+    assertEquals(0, results.size());
+  }
+
+  @Test
+  public void allOf_whenAllSucceed() throws Exception {
+    var future = CompletableFutures.allOf(List.of(
+      CompletableFuture.completedFuture("foo"),
+      CompletableFuture.completedFuture("bar")));
+
+    var results = future.get();
+    assertEquals(
+      List.of("foo", "bar"),
+      results);
+  }
+
+  @Test
+  public void allOf_whenOneFails() throws Exception {
+    var future = CompletableFutures.allOf(List.of(
+      CompletableFuture.completedFuture("foo"),
+      CompletableFuture.<String>failedFuture(new IllegalStateException())));
+
+    var exception = assertThrows(
+      ExecutionException.class,
+      () -> future.get());
+
+    var aggregateException = assertInstanceOf(AggregateException.class, exception.getCause());
+    assertEquals(1, aggregateException.getCauses().size());
+    assertInstanceOf(IllegalStateException.class, aggregateException.getCauses().get(0));
+  }
 }
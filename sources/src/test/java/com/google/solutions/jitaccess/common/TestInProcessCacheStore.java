@@ -0,0 +1,85 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestInProcessCacheStore {
+  private static final byte[] VALUE = new byte[] { 1, 2, 3 };
+
+  //---------------------------------------------------------------------------
+  // get.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void get_whenKeyNotFound() {
+    var store = new InProcessCacheStore(10);
+
+    assertFalse(store.get("key").isPresent());
+  }
+
+  @Test
+  public void get_whenEntryExpired() {
+    var clock = new AtomicLong();
+    var store = new InProcessCacheStore(10, clock::get);
+
+    store.put("key", VALUE, Duration.ofSeconds(10));
+    assertArrayEquals(VALUE, store.get("key").get());
+
+    clock.addAndGet(Duration.ofSeconds(10).toNanos());
+    assertFalse(store.get("key").isPresent());
+  }
+
+  @Test
+  public void get_whenMaximumSizeExceeded_thenLeastRecentlyUsedEntryIsEvicted() {
+    var store = new InProcessCacheStore(2);
+
+    store.put("key-1", VALUE, Duration.ofMinutes(1));
+    store.put("key-2", VALUE, Duration.ofMinutes(1));
+    store.get("key-1");
+    store.put("key-3", VALUE, Duration.ofMinutes(1));
+
+    assertTrue(store.get("key-1").isPresent());
+    assertFalse(store.get("key-2").isPresent());
+    assertTrue(store.get("key-3").isPresent());
+  }
+
+  //---------------------------------------------------------------------------
+  // remove.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void remove() {
+    var store = new InProcessCacheStore(10);
+
+    store.put("key", VALUE, Duration.ofMinutes(1));
+    store.remove("key");
+    store.remove("key");
+
+    assertFalse(store.get("key").isPresent());
+  }
+}
@@ -0,0 +1,178 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.common;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TestSecondLevelCache {
+  private static final SecondLevelCache.Codec<String> CODEC = new SecondLevelCache.Codec<>() {
+    @Override
+    public byte @NotNull [] encode(@NotNull String value) {
+      return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public @NotNull String decode(byte @NotNull [] encoded) throws IOException {
+      if (encoded.length == 0) {
+        throw new IOException("Empty");
+      }
+
+      return new String(encoded, StandardCharsets.UTF_8);
+    }
+  };
+
+  //---------------------------------------------------------------------------
+  // get.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void get_whenStoreIsNone_thenDoesNotEncodeOrDecode() {
+    var codec = Mockito.<SecondLevelCache.Codec<String>>mock();
+    var cache = new SecondLevelCache<>(CacheStore.NONE, "test", codec, Duration.ofMinutes(1));
+
+    assertFalse(cache.isEnabled());
+
+    cache.put("key", "value");
+    assertFalse(cache.get("key").isPresent());
+    cache.remove("key");
+
+    verifyNoInteractions(codec);
+
+    var statistics = cache.statistics();
+    assertEquals(0, statistics.hits());
+    assertEquals(0, statistics.misses());
+  }
+
+  @Test
+  public void get_whenValueNotFound() {
+    var cache = new SecondLevelCache<>(new InProcessCacheStore(10), "test", CODEC, Duration.ofMinutes(1));
+
+    assertFalse(cache.get("key").isPresent());
+
+    var statistics = cache.statistics();
+    assertEquals(0, statistics.hits());
+    assertEquals(1, statistics.misses());
+    assertEquals(0, statistics.hitRatio());
+  }
+
+  @Test
+  public void get_whenValueFound() {
+    var cache = new SecondLevelCache<>(new InProcessCacheStore(10), "test", CODEC, Duration.ofMinutes(1));
+
+    cache.put("key", "value");
+    assertEquals("value", cache.get("key").get());
+    assertFalse(cache.get("other").isPresent());
+
+    var statistics = cache.statistics();
+    assertEquals(1, statistics.hits());
+    assertEquals(1, statistics.misses());
+    assertEquals(0.5, statistics.hitRatio());
+    assertEquals(5, statistics.bytesWritten());
+    assertEquals(5, statistics.bytesRead());
+  }
+
+  @Test
+  public void get_whenNamespacesDiffer_thenValuesAreSeparate() {
+    var store = new InProcessCacheStore(10);
+    var cache1 = new SecondLevelCache<>(store, "test-1", CODEC, Duration.ofMinutes(1));
+    var cache2 = new SecondLevelCache<>(store, "test-2", CODEC, Duration.ofMinutes(1));
+
+    cache1.put("key", "value");
+
+    assertTrue(cache1.get("key").isPresent());
+    assertFalse(cache2.get("key").isPresent());
+  }
+
+  @Test
+  public void get_whenValueCannotBeDecoded_thenReturnsEmpty() {
+    var cache = new SecondLevelCache<>(new InProcessCacheStore(10), "test", CODEC, Duration.ofMinutes(1));
+
+    cache.put("key", "");
+
+    assertFalse(cache.get("key").isPresent());
+    assertEquals(1, cache.statistics().errors());
+    assertEquals("Empty", cache.statistics().lastError());
+  }
+
+  @Test
+  public void get_whenStoreFails_thenReturnsEmpty() throws Exception {
+    var store = Mockito.mock(CacheStore.class);
+    when(store.get(anyString())).thenThrow(new IOException("mock"));
+
+    var cache = new SecondLevelCache<>(store, "test", CODEC, Duration.ofMinutes(1));
+
+    assertFalse(cache.get("key").isPresent());
+    assertEquals(1, cache.statistics().errors());
+    assertEquals("mock", cache.statistics().lastError());
+  }
+
+  //---------------------------------------------------------------------------
+  // put.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void put_usesQualifiedKeyAndTtl() throws Exception {
+    var store = Mockito.mock(CacheStore.class);
+    var cache = new SecondLevelCache<>(store, "test", CODEC, Duration.ofMinutes(1));
+
+    cache.put("key", "value");
+
+    verify(store, times(1)).put(eq("test:key"), any(), eq(Duration.ofMinutes(1)));
+  }
+
+  @Test
+  public void put_whenStoreFails_thenRecordsError() throws Exception {
+    var store = Mockito.mock(CacheStore.class);
+    doThrow(new IOException("mock")).when(store).put(anyString(), any(), any());
+
+    var cache = new SecondLevelCache<>(store, "test", CODEC, Duration.ofMinutes(1));
+    cache.put("key", "value");
+
+    assertEquals(1, cache.statistics().errors());
+    assertEquals(0, cache.statistics().bytesWritten());
+  }
+
+  //---------------------------------------------------------------------------
+  // remove.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void remove_whenStoreFails_thenRecordsError() throws Exception {
+    var store = Mockito.mock(CacheStore.class);
+    doThrow(new IOException("mock")).when(store).remove(anyString());
+
+    var cache = new SecondLevelCache<>(store, "test", CODEC, Duration.ofMinutes(1));
+    cache.remove("key");
+
+    assertEquals(1, cache.statistics().errors());
+  }
+}
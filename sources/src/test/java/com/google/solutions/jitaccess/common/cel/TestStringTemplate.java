@@ -75,6 +75,59 @@ public class TestStringTemplate {
     assertEquals("The CEL expression 'unknown' is invalid", e.getMessage());
   }
 
+  @Test
+  public void evaluate_whenExpressionIsUnterminated() throws Exception {
+    var template = new StringTemplate("{{ 1 }} {{ 2 }");
+    assertEquals("1 {{ 2 }", template.evaluate());
+  }
+
+  @Test
+  public void evaluate_whenParsedTemplateShared() throws Exception {
+    var parsed = StringTemplate.Parsed.parse("Hello {{ context.name }}!");
+
+    var first = new StringTemplate(parsed);
+    first.addContext("context").set("name", "first");
+
+    var second = new StringTemplate(parsed);
+    second.addContext("context").set("name", "second");
+
+    assertEquals("Hello first!", first.evaluate());
+    assertEquals("Hello second!", second.evaluate());
+    assertEquals("Hello first!", first.evaluate());
+  }
+
+  @Test
+  public void evaluate_whenParsedTemplateUsedWithDifferentVariables() throws Exception {
+    var parsed = StringTemplate.Parsed.parse("{{ has(a.x) ? a.x : 'none' }}");
+
+    var withContext = new StringTemplate(parsed);
+    withContext.addContext("a").set("x", "value");
+    assertEquals("value", withContext.evaluate());
+
+    //
+    // Compiling against a different set of variables fails, but
+    // must not affect the programs compiled earlier.
+    //
+    var withoutContext = new StringTemplate(parsed);
+    assertThrows(
+      InvalidExpressionException.class,
+      () -> withoutContext.evaluate());
+
+    assertEquals("value", withContext.evaluate());
+  }
+
+  //---------------------------------------------------------------------------
+  // parse.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void parse_whenStringHasEmbeddedExpressions() {
+    assertEquals(0, StringTemplate.Parsed.parse("text").expressions());
+    assertEquals(0, StringTemplate.Parsed.parse("}}{{").expressions());
+    assertEquals(1, StringTemplate.Parsed.parse("{{ 1 }}").expressions());
+    assertEquals(2, StringTemplate.Parsed.parse("a {{ 1 }}{{{ 2 }} b").expressions());
+  }
+
   //---------------------------------------------------------------------------
   // toString.
   //---------------------------------------------------------------------------
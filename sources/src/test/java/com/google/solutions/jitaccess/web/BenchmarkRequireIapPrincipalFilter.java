@@ -0,0 +1,129 @@
+//
+// Copyright 2022 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.web;
+
+import com.google.auth.oauth2.TokenVerifier;
+import com.google.solutions.jitaccess.apis.Logger;
+import com.google.solutions.jitaccess.auth.SubjectResolver;
+import com.google.solutions.jitaccess.common.MicroBenchmark;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures the cost of authenticating a request using an IAP assertion.
+ * <p>
+ * The benchmark compares building a new token verifier per request (as
+ * done previously, minus the cost of fetching the public keys, which
+ * the previous implementation also did for every request) against a
+ * shared verifier, with and without caching verified assertions.
+ *
+ * @see MicroBenchmark
+ */
+public class BenchmarkRequireIapPrincipalFilter {
+  private static final String AUDIENCE = "/projects/1/apps/project-1";
+  private static final String EMAIL = "user@example.com";
+
+  private static final int WARMUP_ITERATIONS = 1_000;
+  private static final int ITERATIONS = 10_000;
+
+  private interface Authentication {
+    void authenticate() throws Exception;
+  }
+
+  private static void measure(String variant, Authentication authentication) throws Exception {
+    MicroBenchmark.measure(
+      variant,
+      WARMUP_ITERATIONS,
+      ITERATIONS,
+      i -> authentication.authenticate());
+  }
+
+  private static RequireIapPrincipalFilter createFilter(
+    FakeIap iap,
+    int maximumCachedAssertions
+  ) {
+    var filter = new RequireIapPrincipalFilter();
+    filter.options = new RequireIapPrincipalFilter.Options(false, AUDIENCE);
+    filter.logger = Mockito.mock(Logger.class);
+    filter.verifier = new IapAssertionVerifier(
+      new IapAssertionVerifier.Options(
+        AUDIENCE,
+        Duration.ofHours(1),
+        Duration.ofMinutes(1),
+        maximumCachedAssertions),
+      iap.keySource(),
+      Mockito.mock(ScheduledExecutorService.class));
+    return filter;
+  }
+
+  private static Authentication filterRequest(
+    RequireIapPrincipalFilter filter,
+    ContainerRequestContext request
+  ) {
+    var subjectResolver = Mockito.mock(SubjectResolver.class);
+    return () -> {
+      filter.requestContext = new RequestContext(subjectResolver);
+      filter.filter(request);
+      assertEquals(EMAIL, filter.requestContext.user().email);
+    };
+  }
+
+  @Test
+  public void filter() throws Exception {
+    var iap = new FakeIap();
+    var publicKey = iap.keySource().fetchKeys().get(FakeIap.KEY_ID);
+    var token = iap.issue(EMAIL, AUDIENCE, Instant.now().plus(Duration.ofHours(1)));
+
+    var request = Mockito.mock(ContainerRequestContext.class);
+    when(request.getHeaderString(eq("x-goog-iap-jwt-assertion"))).thenReturn(token);
+
+    MicroBenchmark.printHeader("Variant");
+
+    measure(
+      "verifier per request",
+      () -> assertEquals(EMAIL, new IapAssertion(TokenVerifier.newBuilder()
+        .setAudience(AUDIENCE)
+        .setIssuer(IapAssertionVerifier.IAP_ISSUER_URL)
+        .setPublicKey(publicKey)
+        .build()
+        .verify(token)).user().value()));
+
+    var uncachedFilter = createFilter(iap, 0);
+    measure("shared verifier, no cache", filterRequest(uncachedFilter, request));
+
+    var cachedFilter = createFilter(iap, 1000);
+    measure("shared verifier, cached", filterRequest(cachedFilter, request));
+
+    System.out.println();
+    System.out.printf("no cache: %s%n", uncachedFilter.verifier.statistics());
+    System.out.printf("cached:   %s%n", cachedFilter.verifier.statistics());
+  }
+}
@@ -0,0 +1,121 @@
+//
+// Copyright 2022 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.web;
+
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import com.google.api.client.json.webtoken.JsonWebToken;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for IAP that issues ES256-signed assertions using
+ * an ephemeral key pair.
+ */
+public class FakeIap {
+  public static final String KEY_ID = "key-1";
+
+  private final @NotNull KeyPair keyPair;
+  private final @NotNull AtomicInteger keyFetches = new AtomicInteger();
+
+  public FakeIap() throws GeneralSecurityException {
+    var generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    this.keyPair = generator.generateKeyPair();
+  }
+
+  /**
+   * Key source that serves the public key.
+   */
+  public @NotNull IapAssertionVerifier.KeySource keySource() {
+    return () -> {
+      this.keyFetches.incrementAndGet();
+      return Map.of(KEY_ID, this.keyPair.getPublic());
+    };
+  }
+
+  /**
+   * Number of times the keys have been fetched.
+   */
+  public int keyFetches() {
+    return this.keyFetches.get();
+  }
+
+  /**
+   * Issue an assertion.
+   */
+  public @NotNull String issue(
+    @NotNull String keyId,
+    @NotNull String email,
+    @NotNull String audience,
+    @NotNull Instant expiry
+  ) throws GeneralSecurityException, IOException {
+    var header = new JsonWebSignature.Header()
+      .setAlgorithm("ES256")
+      .setType("JWT")
+      .setKeyId(keyId);
+    var payload = new JsonWebToken.Payload()
+      .setIssuer(IapAssertionVerifier.IAP_ISSUER_URL)
+      .setAudience(audience)
+      .setSubject("accounts.google.com:" + email)
+      .setIssuedAtTimeSeconds(Instant.now().getEpochSecond())
+      .setExpirationTimeSeconds(expiry.getEpochSecond())
+      .set("email", email);
+
+    var json = GsonFactory.getDefaultInstance();
+    var encoder = Base64.getUrlEncoder().withoutPadding();
+    var content =
+      encoder.encodeToString(json.toByteArray(header)) + "." +
+      encoder.encodeToString(json.toByteArray(payload));
+
+    //
+    // JWS uses the raw R || S encoding for ECDSA signatures.
+    //
+    var signer = Signature.getInstance("SHA256withECDSAinP1363Format");
+    signer.initSign(this.keyPair.getPrivate());
+    signer.update(content.getBytes(StandardCharsets.US_ASCII));
+
+    return content + "." + encoder.encodeToString(signer.sign());
+  }
+
+  /**
+   * Issue an assertion using the default key.
+   */
+  public @NotNull String issue(
+    @NotNull String email,
+    @NotNull String audience,
+    @NotNull Instant expiry
+  ) throws GeneralSecurityException, IOException {
+    return issue(KEY_ID, email, audience, expiry);
+  }
+}
@@ -24,6 +24,7 @@ package com.google.solutions.jitaccess.web;
 import com.google.solutions.jitaccess.apis.CustomerId;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -180,4 +181,102 @@ public class TestApplicationConfiguration {
     assertEquals("2", configuration.smtpExtraOptionsMap().get("b"));
 
   }
+
+  // -------------------------------------------------------------------------
+  // Backend.
+  // -------------------------------------------------------------------------
+
+  @Test
+  public void backend_whenEmpty() {
+    var configuration = new ApplicationConfiguration(createMandatorySettings());
+
+    assertEquals(200, configuration.backendMaxConnections);
+    assertEquals(50, configuration.backendMaxConnectionsPerHost);
+    assertEquals(Duration.ofSeconds(60), configuration.backendIdleConnectionTimeout);
+
+    assertEquals(4, configuration.backendRetryMaxAttempts);
+    assertEquals(Duration.ofMillis(200), configuration.backendRetryInitialBackoff);
+    assertEquals(Duration.ofSeconds(10), configuration.backendRetryMaxBackoff);
+    assertEquals(0.1, configuration.backendRetryBudgetRatio);
+
+    assertEquals(3000, configuration.backendQuotaRequestsPerMinute);
+    assertEquals(Duration.ofSeconds(5), configuration.backendQuotaMaxWait);
+    assertEquals(Duration.ofSeconds(60), configuration.backendQuotaBackgroundMaxWait);
+
+    assertEquals(0, configuration.backendHedgePercentile);
+    assertEquals(Duration.ofMillis(20), configuration.backendHedgeMinDelay);
+    assertEquals(0.05, configuration.backendHedgeBudgetRatio);
+
+    assertEquals(0.5, configuration.backendCircuitFailureRate);
+    assertEquals(Duration.ofSeconds(10), configuration.backendCircuitSlowCallThreshold);
+    assertEquals(Duration.ofSeconds(30), configuration.backendCircuitOpenDuration);
+  }
+
+  @Test
+  public void backend_whenProvided() {
+    var settings = new HashMap<>(createMandatorySettings());
+    settings.put("BACKEND_MAX_CONNECTIONS", " 100 ");
+    settings.put("BACKEND_MAX_CONNECTIONS_PER_HOST", "10");
+    settings.put("BACKEND_IDLE_CONNECTION_TIMEOUT", "30");
+    settings.put("BACKEND_RETRY_MAX_ATTEMPTS", "2");
+    settings.put("BACKEND_RETRY_INITIAL_BACKOFF", "50");
+    settings.put("BACKEND_RETRY_MAX_BACKOFF", "1000");
+    settings.put("BACKEND_RETRY_BUDGET_RATIO", "0.5");
+    settings.put("BACKEND_QUOTA_REQUESTS_PER_MINUTE", "600");
+    settings.put("BACKEND_QUOTA_MAX_WAIT", "1");
+    settings.put("BACKEND_QUOTA_BACKGROUND_MAX_WAIT", "10");
+    settings.put("BACKEND_HEDGE_PERCENTILE", "90");
+    settings.put("BACKEND_HEDGE_MIN_DELAY", "5");
+    settings.put("BACKEND_HEDGE_BUDGET_RATIO", "0.1");
+    settings.put("BACKEND_CIRCUIT_FAILURE_RATE", "0.8");
+    settings.put("BACKEND_CIRCUIT_SLOW_CALL_THRESHOLD", "5");
+    settings.put("BACKEND_CIRCUIT_OPEN_DURATION", "60");
+
+    var configuration = new ApplicationConfiguration(settings);
+
+    assertEquals(100, configuration.backendMaxConnections);
+    assertEquals(10, configuration.backendMaxConnectionsPerHost);
+    assertEquals(Duration.ofSeconds(30), configuration.backendIdleConnectionTimeout);
+
+    assertEquals(2, configuration.backendRetryMaxAttempts);
+    assertEquals(Duration.ofMillis(50), configuration.backendRetryInitialBackoff);
+    assertEquals(Duration.ofSeconds(1), configuration.backendRetryMaxBackoff);
+    assertEquals(0.5, configuration.backendRetryBudgetRatio);
+
+    assertEquals(600, configuration.backendQuotaRequestsPerMinute);
+    assertEquals(Duration.ofSeconds(1), configuration.backendQuotaMaxWait);
+    assertEquals(Duration.ofSeconds(10), configuration.backendQuotaBackgroundMaxWait);
+
+    assertEquals(90, configuration.backendHedgePercentile);
+    assertEquals(Duration.ofMillis(5), configuration.backendHedgeMinDelay);
+    assertEquals(0.1, configuration.backendHedgeBudgetRatio);
+
+    assertEquals(0.8, configuration.backendCircuitFailureRate);
+    assertEquals(Duration.ofSeconds(5), configuration.backendCircuitSlowCallThreshold);
+    assertEquals(Duration.ofSeconds(60), configuration.backendCircuitOpenDuration);
+  }
+
+  //---------------------------------------------------------------------------
+  // Cache.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void cache_whenEmpty() {
+    var configuration = new ApplicationConfiguration(createMandatorySettings());
+
+    assertFalse(configuration.cacheMemcachedHost.isPresent());
+    assertEquals(11211, configuration.cacheMemcachedPort);
+  }
+
+  @Test
+  public void cache_whenProvided() {
+    var settings = new HashMap<>(createMandatorySettings());
+    settings.put("CACHE_MEMCACHED_HOST", "10.0.0.1");
+    settings.put("CACHE_MEMCACHED_PORT", "11212");
+
+    var configuration = new ApplicationConfiguration(settings);
+
+    assertEquals("10.0.0.1", configuration.cacheMemcachedHost.get());
+    assertEquals(11212, configuration.cacheMemcachedPort);
+  }
 }
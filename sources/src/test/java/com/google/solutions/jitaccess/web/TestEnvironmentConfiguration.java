@@ -24,6 +24,7 @@ package com.google.solutions.jitaccess.web;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.auth.oauth2.ImpersonatedCredentials;
 import com.google.solutions.jitaccess.apis.ProjectId;
+import com.google.solutions.jitaccess.apis.clients.CredentialManager;
 import com.google.solutions.jitaccess.apis.clients.HttpTransport;
 import com.google.solutions.jitaccess.auth.ServiceAccountId;
 import org.junit.jupiter.api.Test;
@@ -34,10 +35,19 @@ import org.mockito.Mockito;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.nio.file.Files;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class TestEnvironmentConfiguration {
+  /**
+   * Create a manager that never refreshes credentials.
+   */
+  private static CredentialManager createCredentialManager() {
+    return new CredentialManager(
+      CredentialManager.Options.DEFAULT,
+      Mockito.mock(ScheduledExecutorService.class));
+  }
 
   //---------------------------------------------------------------------------
   // forFile.
@@ -107,6 +117,7 @@ public class TestEnvironmentConfiguration {
         new ServiceAccountId("no-prefix", new ProjectId("project-1")),
         new ServiceAccountId("app", new ProjectId("project-1")),
         Mockito.mock(GoogleCredentials.class),
+        createCredentialManager(),
         HttpTransport.Options.DEFAULT));
   }
 
@@ -116,10 +127,14 @@ public class TestEnvironmentConfiguration {
       new ServiceAccountId("jit-environment", new ProjectId("project-1")),
       new ServiceAccountId("app", new ProjectId("project-1")),
       Mockito.mock(GoogleCredentials.class),
+      createCredentialManager(),
       HttpTransport.Options.DEFAULT);
 
     assertEquals("environment", configuration.name());
-    assertInstanceOf(ImpersonatedCredentials.class, configuration.resourceCredentials());
+    var credentials = assertInstanceOf(
+      CredentialManager.ManagedCredentials.class,
+      configuration.resourceCredentials());
+    assertInstanceOf(ImpersonatedCredentials.class, credentials.source());
   }
 
   //---------------------------------------------------------------------------
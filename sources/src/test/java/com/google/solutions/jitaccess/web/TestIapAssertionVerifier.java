@@ -0,0 +1,215 @@
+//
+// Copyright 2022 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.google.solutions.jitaccess.web;
+
+import com.google.auth.oauth2.TokenVerifier;
+import com.google.solutions.jitaccess.auth.EndUserId;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestIapAssertionVerifier {
+  private static final String AUDIENCE = "/projects/1/apps/project-1";
+  private static final String EMAIL = "user@example.com";
+
+  private static IapAssertionVerifier createVerifier(
+    IapAssertionVerifier.KeySource keySource,
+    int maximumCachedAssertions
+  ) {
+    return new IapAssertionVerifier(
+      new IapAssertionVerifier.Options(
+        AUDIENCE,
+        Duration.ofHours(1),
+        Duration.ofMinutes(1),
+        maximumCachedAssertions),
+      keySource,
+      Mockito.mock(ScheduledExecutorService.class));
+  }
+
+  //---------------------------------------------------------------------------
+  // verify.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void verify_whenAssertionMalformed_thenThrowsException() throws Exception {
+    var iap = new FakeIap();
+    var verifier = createVerifier(iap.keySource(), 10);
+
+    assertThrows(
+      TokenVerifier.VerificationException.class,
+      () -> verifier.verify("ey00"));
+    assertEquals(0, iap.keyFetches());
+    assertEquals(1, verifier.statistics().failures());
+  }
+
+  @Test
+  public void verify_whenAssertionValid_thenReturnsAssertion() throws Exception {
+    var iap = new FakeIap();
+    var verifier = createVerifier(iap.keySource(), 10);
+
+    var assertion = verifier.verify(iap.issue(EMAIL, AUDIENCE, Instant.now().plusSeconds(600)));
+
+    assertEquals(new EndUserId(EMAIL), assertion.user());
+    assertEquals(1, iap.keyFetches());
+  }
+
+  @Test
+  public void verify_whenAudienceMismatches_thenThrowsException() throws Exception {
+    var iap = new FakeIap();
+    var verifier = createVerifier(iap.keySource(), 10);
+
+    var token = iap.issue(EMAIL, "/projects/1/apps/other", Instant.now().plusSeconds(600));
+    assertThrows(
+      TokenVerifier.VerificationException.class,
+      () -> verifier.verify(token));
+  }
+
+  @Test
+  public void verify_whenAssertionExpired_thenThrowsException() throws Exception {
+    var iap = new FakeIap();
+    var verifier = createVerifier(iap.keySource(), 10);
+
+    var token = iap.issue(EMAIL, AUDIENCE, Instant.now().minusSeconds(600));
+    assertThrows(
+      TokenVerifier.VerificationException.class,
+      () -> verifier.verify(token));
+  }
+
+  @Test
+  public void verify_whenSignatureInvalid_thenThrowsException() throws Exception {
+    var iap = new FakeIap();
+    var verifier = createVerifier(iap.keySource(), 10);
+
+    //
+    // Sign with a different key that uses the same key ID.
+    //
+    var token = new FakeIap().issue(EMAIL, AUDIENCE, Instant.now().plusSeconds(600));
+    assertThrows(
+      TokenVerifier.VerificationException.class,
+      () -> verifier.verify(token));
+  }
+
+  @Test
+  public void verify_whenKeyIdUnknown_thenThrowsException() throws Exception {
+    var iap = new FakeIap();
+    var verifier = createVerifier(iap.keySource(), 10);
+
+    var token = iap.issue("unknown-key", EMAIL, AUDIENCE, Instant.now().plusSeconds(600));
+    assertThrows(
+      TokenVerifier.VerificationException.class,
+      () -> verifier.verify(token));
+
+    //
+    // Repeated attempts don't cause additional refreshes.
+    //
+    assertThrows(
+      TokenVerifier.VerificationException.class,
+      () -> verifier.verify(token));
+    assertEquals(1, iap.keyFetches());
+  }
+
+  @Test
+  public void verify_whenKeysCannotBeFetched_thenThrowsException() throws Exception {
+    var iap = new FakeIap();
+    var verifier = createVerifier(
+      () -> { throw new IOException("mock"); },
+      10);
+
+    var token = iap.issue(EMAIL, AUDIENCE, Instant.now().plusSeconds(600));
+    assertThrows(
+      TokenVerifier.VerificationException.class,
+      () -> verifier.verify(token));
+
+    var statistics = verifier.statistics();
+    assertEquals(0, statistics.keys());
+    assertEquals("mock", statistics.lastKeyRefreshError());
+  }
+
+  @Test
+  public void verify_whenAssertionVerifiedBefore_thenReturnsCachedAssertion() throws Exception {
+    var iap = new FakeIap();
+    var verifier = createVerifier(iap.keySource(), 10);
+
+    var token = iap.issue(EMAIL, AUDIENCE, Instant.now().plusSeconds(600));
+    var first = verifier.verify(token);
+    var second = verifier.verify(token);
+
+    assertSame(first, second);
+
+    var statistics = verifier.statistics();
+    assertEquals(1, statistics.verifications());
+    assertEquals(1, statistics.cacheHits());
+    assertEquals(0.5, statistics.cacheHitRatio());
+  }
+
+  @Test
+  public void verify_whenCachingDisabled_thenVerifiesEveryTime() throws Exception {
+    var iap = new FakeIap();
+    var verifier = createVerifier(iap.keySource(), 0);
+
+    var token = iap.issue(EMAIL, AUDIENCE, Instant.now().plusSeconds(600));
+    verifier.verify(token);
+    verifier.verify(token);
+
+    var statistics = verifier.statistics();
+    assertEquals(2, statistics.verifications());
+    assertEquals(0, statistics.cacheHits());
+    assertEquals(1, iap.keyFetches());
+  }
+
+  @Test
+  public void verify_whenCachedAssertionExpired_thenVerifiesAgain() throws Exception {
+    var iap = new FakeIap();
+    var verifier = createVerifier(iap.keySource(), 10);
+
+    var token = iap.issue(EMAIL, AUDIENCE, Instant.now().plusSeconds(1));
+    verifier.verify(token);
+
+    Thread.sleep(1100);
+
+    assertThrows(
+      TokenVerifier.VerificationException.class,
+      () -> verifier.verify(token));
+    assertEquals(0, verifier.statistics().cacheHits());
+  }
+
+  //---------------------------------------------------------------------------
+  // statistics.
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void statistics_whenNew() {
+    var statistics = createVerifier(() -> { throw new IOException(); }, 10).statistics();
+
+    assertEquals(0, statistics.verifications());
+    assertEquals(0, statistics.keys());
+    assertEquals(0, statistics.cacheHitRatio());
+    assertNull(statistics.lastKeyRefresh());
+    assertNotNull(statistics.toString());
+  }
+}
@@ -30,6 +30,8 @@ import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -73,4 +75,23 @@ public class TestRequestContext {
 
     verify(resolver, times(1)).resolvePrincipals(eq(SAMPLE_USER), eq(SAMPLE_DIRECTORY));
   }
+
+  @Test
+  public void principalHandles_whenAuthenticated_thenHandlesAreReused() throws Exception {
+    var group = new GroupId("group-handles@example.com");
+    PrincipalRegistry.shared().register(group);
+
+    var resolver = Mockito.mock(SubjectResolver.class);
+    when(resolver.resolvePrincipals(eq(SAMPLE_USER), eq(SAMPLE_DIRECTORY)))
+      .thenReturn(Set.of(
+        new Principal(SAMPLE_USER),
+        new Principal(group)));
+
+    var context = new RequestContext(resolver);
+    context.authenticate(SAMPLE_USER, SAMPLE_DIRECTORY, new IapDevice("device-1", List.of()));
+
+    var handles = PrincipalHandles.of(context.subject());
+    assertTrue(handles.contains(PrincipalRegistry.shared().lookup(group)));
+    assertSame(handles, PrincipalHandles.of(context.subject()));
+  }
 }
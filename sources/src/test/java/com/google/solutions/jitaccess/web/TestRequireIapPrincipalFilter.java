@@ -28,6 +28,9 @@ import jakarta.ws.rs.container.ContainerRequestContext;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.time.Instant;
+import java.util.concurrent.ScheduledExecutorService;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.eq;
@@ -35,12 +38,20 @@ import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.when;
 
 public class TestRequireIapPrincipalFilter {
+  private static IapAssertionVerifier createVerifier(String audience) throws Exception {
+    return new IapAssertionVerifier(
+      new IapAssertionVerifier.Options(audience),
+      new FakeIap().keySource(),
+      Mockito.mock(ScheduledExecutorService.class));
+  }
+
   @Test()
-  public void filter_whenHeaderMissing_thenThrowsForbiddenException() {
+  public void filter_whenHeaderMissing_thenThrowsForbiddenException() throws Exception {
     RequireIapPrincipalFilter filter = new RequireIapPrincipalFilter();
     filter.options = new RequireIapPrincipalFilter.Options(false, "audience");
     filter.requestContext = new RequestContext(Mockito.mock(SubjectResolver.class));
     filter.logger = Mockito.mock(Logger.class);
+    filter.verifier = createVerifier("audience");
 
     ContainerRequestContext request = Mockito.mock(ContainerRequestContext.class);
     when(request.getHeaderString(anyString())).thenReturn(null);
@@ -49,11 +60,12 @@ public class TestRequireIapPrincipalFilter {
   }
 
   @Test
-  public void filter_whenHeaderContainsMalformedJwt_thenThrowsForbiddenException() {
+  public void filter_whenHeaderContainsMalformedJwt_thenThrowsForbiddenException() throws Exception {
     RequireIapPrincipalFilter filter = new RequireIapPrincipalFilter();
     filter.options = new RequireIapPrincipalFilter.Options(false, "audience");
     filter.requestContext = new RequestContext(Mockito.mock(SubjectResolver.class));
     filter.logger = Mockito.mock(Logger.class);
+    filter.verifier = createVerifier("audience");
 
     ContainerRequestContext request = Mockito.mock(ContainerRequestContext.class);
     when(request.getHeaderString(anyString())).thenReturn("ey00");
@@ -62,11 +74,12 @@ public class TestRequireIapPrincipalFilter {
   }
 
   @Test
-  public void filter_whenHeaderContainsInvalidJwt_thenThrowsForbiddenException() {
+  public void filter_whenHeaderContainsInvalidJwt_thenThrowsForbiddenException() throws Exception {
     RequireIapPrincipalFilter filter = new RequireIapPrincipalFilter();
     filter.options = new RequireIapPrincipalFilter.Options(false, "audience");
     filter.requestContext = new RequestContext(Mockito.mock(SubjectResolver.class));
     filter.logger = Mockito.mock(Logger.class);
+    filter.verifier = createVerifier("audience");
 
     // Random JWT that doesn't even come from IAP.
     String randomJwt =
@@ -80,6 +93,28 @@ public class TestRequireIapPrincipalFilter {
     assertThrows(ForbiddenException.class, () -> filter.filter(request));
   }
 
+  @Test
+  public void filter_whenHeaderContainsValidJwt_thenAuthenticatesUser() throws Exception {
+    var iap = new FakeIap();
+
+    var filter = new RequireIapPrincipalFilter();
+    filter.options = new RequireIapPrincipalFilter.Options(false, "audience");
+    filter.requestContext = new RequestContext(Mockito.mock(SubjectResolver.class));
+    filter.logger = Mockito.mock(Logger.class);
+    filter.verifier = new IapAssertionVerifier(
+      new IapAssertionVerifier.Options("audience"),
+      iap.keySource(),
+      Mockito.mock(ScheduledExecutorService.class));
+
+    ContainerRequestContext request = Mockito.mock(ContainerRequestContext.class);
+    when(request.getHeaderString(eq("x-goog-iap-jwt-assertion"))).thenReturn(
+      iap.issue("bob@example.com", "audience", Instant.now().plusSeconds(600)));
+
+    filter.filter(request);
+
+    assertEquals("bob@example.com", filter.requestContext.user().email);
+  }
+
   // -------------------------------------------------------------------------
   // Debug mode.
   // -------------------------------------------------------------------------
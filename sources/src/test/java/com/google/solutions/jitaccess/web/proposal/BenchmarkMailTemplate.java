@@ -0,0 +1,183 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+
+package com.google.solutions.jitaccess.web.proposal;
+
+import com.google.api.client.json.GenericJson;
+import com.google.solutions.jitaccess.auth.EndUserId;
+import com.google.solutions.jitaccess.auth.JitGroupId;
+import com.google.solutions.jitaccess.common.MicroBenchmark;
+import com.google.solutions.jitaccess.common.cel.Cel;
+import dev.cel.common.types.CelTypes;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Measures the throughput of rendering the proposal and approval
+ * mail templates.
+ * <p>
+ * The benchmark compares reading the resource and compiling each
+ * embedded expression for every rendering (as done previously) against
+ * rendering a template that has been parsed once and cached.
+ *
+ * @see MicroBenchmark
+ */
+public class BenchmarkMailTemplate {
+  private static final Pattern TEMPLATE_PATTERN = Pattern.compile(
+    "\\{\\{(.*?)\\}\\}",
+    Pattern.DOTALL);
+
+  private static final JitGroupId GROUP = new JitGroupId("env-1", "system-1", "group-1");
+
+  private static final int WARMUP_ITERATIONS = 500;
+  private static final int ITERATIONS = 5_000;
+
+  private interface Rendering {
+    String render(int i) throws Exception;
+  }
+
+  private static void measure(String variant, Rendering rendering) throws Exception {
+    MicroBenchmark.measure(
+      variant,
+      WARMUP_ITERATIONS,
+      ITERATIONS,
+      i -> assertFalse(rendering.render(i).contains("{{")));
+  }
+
+  /**
+   * Initialize the template like {@link MailProposalHandler} does.
+   */
+  private static MailProposalHandler.MailTemplate initialize(
+    MailProposalHandler.MailTemplate template,
+    boolean isProposal,
+    int i
+  ) {
+    template.addContext("input", List.of(), true);
+    template.addContext("user", new EndUserId(String.format("user-%d@example.com", i)));
+    template.addContext("joining_user", new EndUserId(String.format("user-%d@example.com", i)));
+    template.addContext("group", GROUP);
+
+    if (isProposal) {
+      template.addContext("proposal")
+        .set("action_uri", "https://example.com/?token=" + i)
+        .set("token", "token-" + i)
+        .set("expiry", "Mon, 1 Jan 2024 00:00:00 GMT");
+    }
+
+    return template;
+  }
+
+  /**
+   * Render a template the way {@code StringTemplate} did previously:
+   * compile and evaluate each embedded expression on every call.
+   */
+  private static String renderUncached(
+    String template,
+    Map<String, GenericJson> variables
+  ) throws Exception {
+    var compilerFactory = Cel.createCompilerBuilder();
+    for (var variable : variables.keySet()) {
+      compilerFactory.addVar(variable, CelTypes.createMap(CelTypes.STRING, CelTypes.ANY));
+    }
+
+    var compiler = compilerFactory.build();
+    var runtime = Cel.createRuntime();
+
+    var output = new StringBuilder();
+    var matcher = TEMPLATE_PATTERN.matcher(template);
+
+    int lastIndex = 0;
+    while (matcher.find()) {
+      output.append(template, lastIndex, matcher.start());
+      output.append(runtime
+        .createProgram(compiler.compile(matcher.group(1).trim()).getAst())
+        .eval(variables));
+      lastIndex = matcher.end();
+    }
+
+    output.append(template, lastIndex, template.length());
+    return output.toString();
+  }
+
+  private static String readResource(String resourceName) throws Exception {
+    try (var stream = BenchmarkMailTemplate.class
+      .getClassLoader()
+      .getResourceAsStream(resourceName)) {
+      return new String(stream.readAllBytes());
+    }
+  }
+
+  private static Map<String, GenericJson> variables(boolean isProposal, int i) {
+    var group = new GenericJson()
+      .set("environment", GROUP.environment())
+      .set("system", GROUP.system())
+      .set("name", GROUP.name())
+      .set("id", GROUP.value());
+    var user = new GenericJson().set("email", String.format("user-%d@example.com", i));
+
+    return isProposal
+      ? Map.of(
+        "input", new GenericJson(),
+        "user", user,
+        "joining_user", user,
+        "group", group,
+        "proposal", new GenericJson()
+          .set("action_uri", "https://example.com/?token=" + i)
+          .set("token", "token-" + i)
+          .set("expiry", "Mon, 1 Jan 2024 00:00:00 GMT"))
+      : Map.of(
+        "input", new GenericJson(),
+        "user", user,
+        "joining_user", user,
+        "group", group);
+  }
+
+  private static void benchmark(String resourceName, boolean isProposal) throws Exception {
+    MicroBenchmark.printHeader(resourceName);
+
+    measure(
+      "read and compile per rendering",
+      i -> renderUncached(readResource(resourceName), variables(isProposal, i)));
+
+    measure(
+      "cached",
+      i -> initialize(
+        MailProposalHandler.MailTemplate.fromResource(resourceName),
+        isProposal,
+        i).evaluate());
+  }
+
+  @Test
+  public void renderProposal() throws Exception {
+    benchmark(MailProposalHandler.PROPOSAL_TEMPLATE, true);
+  }
+
+  @Test
+  public void renderApproval() throws Exception {
+    benchmark(MailProposalHandler.PROPOSAL_APPROVED_TEMPLATE, false);
+  }
+}
@@ -153,6 +153,17 @@ public class TestMailProposalHandler {
       assertNotNull(template.toString());
     }
 
+    @Test
+    public void fromResource_whenCalledRepeatedly_thenReusesParsedTemplate() throws Exception {
+      var first = MailProposalHandler.MailTemplate.fromResource(
+        MailProposalHandler.PROPOSAL_TEMPLATE);
+      var second = MailProposalHandler.MailTemplate.fromResource(
+        MailProposalHandler.PROPOSAL_TEMPLATE);
+
+      assertNotSame(first, second);
+      assertSame(first.parsed(), second.parsed());
+    }
+
 
     //-------------------------------------------------------------------------
     // formatProperty.
@@ -103,4 +103,31 @@ public class TestHealthResource {
       Map.of("Sample-1", true, "Sample-2", false),
       response.getBody().details());
   }
+
+  @Test
+  public void ready_whenAnyCheckDegraded() throws Exception {
+    var resource = new HealthResource();
+    resource.logger = Mockito.mock(Logger.class);
+    resource.executor = new Executor() {
+      @Override
+      public void execute(@NotNull Runnable command) {
+        command.run();
+      }
+    };
+
+    resource.diagnosables = MockitoUtils.toCdiInstance(
+      () -> List.of(
+        new DiagnosticsResult("Sample-1"),
+        new DiagnosticsResult("Sample-2", true, "degraded", true)));
+
+    var response = new RestDispatcher<>(resource, SAMPLE_USER)
+      .get("/health/ready", HealthResource.HealthInfo.class);
+
+    assertEquals(200, response.getStatus());
+    assertTrue(response.getBody().healthy());
+    assertTrue(response.getBody().degraded());
+    assertEquals(
+      Map.of("Sample-1", true, "Sample-2", true),
+      response.getBody().details());
+  }
 }
@@ -0,0 +1,75 @@
+//
+// Copyright 2024 Google LLC
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+package com.google.solutions.jitaccess.web.rest;
+
+import com.google.solutions.jitaccess.apis.clients.RequestMetrics;
+import com.google.solutions.jitaccess.auth.EndUserId;
+import com.google.solutions.jitaccess.web.RestDispatcher;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestMetricsResource {
+  private static final EndUserId SAMPLE_USER = new EndUserId("user-1@example.com");
+
+  //---------------------------------------------------------------------------
+  // /metrics/backends
+  //---------------------------------------------------------------------------
+
+  @Test
+  public void backends_whenNoRequestsRecorded() throws Exception {
+    var resource = new MetricsResource();
+    resource.metrics = new RequestMetrics();
+
+    var response = new RestDispatcher<>(resource, SAMPLE_USER)
+      .get("/metrics/backends", MetricsResource.MetricsInfo.class);
+
+    assertEquals(200, response.getStatus());
+    assertTrue(response.getBody().methods().isEmpty());
+  }
+
+  @Test
+  public void backends_whenRequestsRecorded() throws Exception {
+    var resource = new MetricsResource();
+    resource.metrics = new RequestMetrics();
+    resource.metrics
+      .recorder("cloudidentity.googleapis.com", "GET groups:lookup")
+      .record(Duration.ofMillis(40).toNanos(), 200, 2, 100);
+
+    var response = new RestDispatcher<>(resource, SAMPLE_USER)
+      .get("/metrics/backends", MetricsResource.MetricsInfo.class);
+
+    assertEquals(200, response.getStatus());
+
+    var methods = response.getBody().methods();
+    assertEquals(1, methods.size());
+    assertEquals("cloudidentity.googleapis.com", methods.get(0).backend());
+    assertEquals("GET groups:lookup", methods.get(0).method());
+    assertEquals(1, methods.get(0).requests());
+    assertEquals(1, methods.get(0).retries());
+    assertEquals(100, methods.get(0).responseBytes());
+    assertEquals(40, methods.get(0).meanLatencyMillis());
+    assertEquals(1L, methods.get(0).statusCodes().get(200));
+    assertEquals(1L, methods.get(0).latencyBuckets().get("50"));
+  }
+}